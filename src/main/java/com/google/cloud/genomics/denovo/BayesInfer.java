@@ -13,16 +13,19 @@
  */
 package com.google.cloud.genomics.denovo;
 
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
 import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
 import com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod;
 import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
-import com.google.common.base.Function;
 import com.google.common.base.Joiner;
-import com.google.common.collect.Iterables;
+import com.google.common.cache.CacheStats;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Performs Bayesian Inference over reads. Contains logic for creating the bayes net, calculating
@@ -32,6 +35,13 @@ import java.util.Map.Entry;
 class BayesInfer {
   private final DenovoBayesNet dbn;
   private final DenovoShared shared;
+  private final InferenceCache inferenceCache;
+  private final QualityBins qualityBins;
+  private final InferencePrefilter prefilter;
+  private final AtomicLong prefilteredSites = new AtomicLong();
+  private final AtomicLong tabulatedSites = new AtomicLong();
+  private final AtomicLong inferredSites = new AtomicLong();
+  private InferenceTable inferenceTable;
   
   /**
    * @param shared the shared parameters for the tool
@@ -39,10 +49,87 @@ class BayesInfer {
   BayesInfer(DenovoShared shared) {
     dbn = new DenovoBayesNet(shared);
     this.shared = shared;
+    qualityBins = shared.getQualityBins();
+    inferenceCache = new InferenceCache(dbn, shared, shared.getInferenceCacheSize());
+    prefilter = shared.isPrefilter() ? new InferencePrefilter(dbn) : null;
   }
   
   /**
-   * Delegates the inference task to the MAP, Bayes Rule or LRT handler methods
+   * Precomputes the inference results of low coverage sites when a tabulation depth is set. Must
+   * be called before inference starts. With quality bins the table covers the sites whose bases
+   * all fall in the highest bin
+   * @throws IOException
+   */
+  void prepareInferenceTable() throws IOException {
+    if (shared.getTabulateDepth() > 0 && qualityBins == null) {
+      inferenceTable = InferenceTable.loadOrBuild(dbn, shared, shared.getSequenceErrorRate());
+    } else if (shared.getTabulateDepth() > 0) {
+      double topBinErrorRate = qualityBins.getBinErrorRates()[qualityBins.getNumBins() - 1];
+      inferenceTable = InferenceTable.loadOrBuild(
+          new DenovoBayesNet(shared, new ErrorModel(topBinErrorRate)), shared, topBinErrorRate);
+    }
+  }
+
+  /**
+   * @param alleleCounts read base counts of the trio, by quality bin when bins are set
+   * @return the tabulated result, null when the site is not tabulated
+   */
+  private BayesInferenceResult getTabulatedResult(int[] alleleCounts) {
+    if (inferenceTable == null || qualityBins == null) {
+      return inferenceTable == null ? null : inferenceTable.get(alleleCounts);
+    }
+    int numCounts = qualityBins.getNumBins() * DenovoBayesNet.NUM_ALLELES;
+    int topBinOffset = numCounts - DenovoBayesNet.NUM_ALLELES;
+    int[] topBinCounts = new int[DenovoBayesNet.TRIO_MEMBERS.length * DenovoBayesNet.NUM_ALLELES];
+    for (int index = 0; index < alleleCounts.length; index++) {
+      int binnedIndex = index % numCounts;
+      if (binnedIndex < topBinOffset) {
+        if (alleleCounts[index] > 0) {
+          return null;
+        }
+      } else {
+        topBinCounts[index / numCounts * DenovoBayesNet.NUM_ALLELES + binnedIndex - topBinOffset] =
+            alleleCounts[index];
+      }
+    }
+    return inferenceTable.get(topBinCounts);
+  }
+
+  /**
+   * Largest denovo odds that no verdict of the inference method calls denovo ; MAP and Bayes
+   * call denovo at odds above 1, LRT above its threshold
+   * @param inferMethod the chosen bayesian inference method
+   * @return the odds
+   */
+  private double getMaxMendelianOdds(InferenceMethod inferMethod) {
+    double maxOdds = inferMethod == InferenceMethod.LRT ? shared.getLrtThreshold() : 1.0;
+    if (inferMethod == InferenceMethod.ALL) {
+      for (double lrtThreshold : shared.getLrtThresholds()) {
+        maxOdds = Math.min(maxOdds, lrtThreshold);
+      }
+    }
+    return maxOdds;
+  }
+
+  /**
+   * First inference tier ; a relative slack covers the rounding of the bayes net's own sums
+   * @param alleleCounts read base counts of the trio, by quality bin when bins are set
+   * @param inferMethod the chosen bayesian inference method
+   * @return whether the site is shown not denovo without running the bayes net
+   */
+  private boolean isPrefiltered(int[] alleleCounts, InferenceMethod inferMethod) {
+    if (prefilter == null
+        || prefilter.getDenovoOddsBound(alleleCounts) * (1 + 1e-9)
+            >= getMaxMendelianOdds(inferMethod)) {
+      return false;
+    }
+    prefilteredSites.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * Delegates the inference task to the MAP, Bayes Rule or LRT handler methods. Sites go through
+   * the prefilter when enabled, then the inference table and finally the bayes net
    * @param readSummaryMap the summary statistics of the reads at a position
    * @param inferMethod the chosen bayesian inference method
    * @return result of the inference procedure for that position
@@ -51,57 +138,244 @@ class BayesInfer {
       InferenceMethod inferMethod) {
 
     // Get the trio genotype with the max likelihood
-    BayesInferenceResult result = dbn.performInference(readSummaryMap);
-    boolean isDenovo = inferMethod.isDenovo(result, shared);
-
-    String readCounts = Joiner.on(";").join(Iterables.transform(readSummaryMap.entrySet(),
-        new Function<Entry<TrioMember, ReadSummary>, String>() {
-          @Override
-          public String apply(Entry<TrioMember, ReadSummary> e) {
-            return String.format("%s:%s", e.getKey().name(), e.getValue().getCount());
-          }
-        }));
+    int[] alleleCounts = DenovoBayesNet.getAlleleCounts(readSummaryMap, qualityBins);
+    if (isPrefiltered(alleleCounts, inferMethod)) {
+      return createPrefilteredResult(readSummaryMap);
+    }
+    BayesInferenceResult result = getTabulatedResult(alleleCounts);
+    if (result == null) {
+      inferredSites.incrementAndGet();
+      result = inferenceCache.performInference(alleleCounts);
+    } else {
+      tabulatedSites.incrementAndGet();
+    }
+    return createCallResult(readSummaryMap, result, inferMethod);
+  }
 
-    return new BayesCallResult(isDenovo, result.getMaxTrioGenotype(), 
-        String.format("readCounts=%s,maxGenoType=%s,isDenovo=%b", 
-            readCounts,
-            result.getMaxTrioGenotype(), isDenovo));
+  /**
+   * Batch counterpart of {@link #infer(Map, InferenceMethod)}. Sites that are not tabulated run
+   * through the bayes net as one {@link InferenceBatch}, or one at a time with quality bins
+   * @param readSummaryMaps the summary statistics of the reads at each position
+   * @param inferMethod the chosen bayesian inference method
+   * @return results of the inference procedure, in the order of the positions
+   */
+  List<BayesCallResult> infer(List<Map<TrioMember, ReadSummary>> readSummaryMaps,
+      InferenceMethod inferMethod) {
+    int numSites = readSummaryMaps.size();
+    if (qualityBins != null) {
+      List<BayesCallResult> callResults = new ArrayList<>(numSites);
+      for (Map<TrioMember, ReadSummary> readSummaryMap : readSummaryMaps) {
+        callResults.add(infer(readSummaryMap, inferMethod));
+      }
+      return callResults;
+    }
+    BayesInferenceResult[] results = new BayesInferenceResult[numSites];
+    boolean[] prefiltered = new boolean[numSites];
+    int[] batchSites = new int[numSites];
+    InferenceBatch batch = new InferenceBatch(Math.max(1, numSites));
+    for (int site = 0; site < numSites; site++) {
+      int[] alleleCounts = DenovoBayesNet.getAlleleCounts(readSummaryMaps.get(site));
+      prefiltered[site] = isPrefiltered(alleleCounts, inferMethod);
+      if (prefiltered[site]) {
+        continue;
+      }
+      results[site] = inferenceTable == null ? null : inferenceTable.get(alleleCounts);
+      if (results[site] == null) {
+        batchSites[site] = batch.add(alleleCounts);
+      } else {
+        tabulatedSites.incrementAndGet();
+      }
+    }
+    inferredSites.addAndGet(batch.size());
+    dbn.performInference(batch);
+
+    List<BayesCallResult> callResults = new ArrayList<>(numSites);
+    for (int site = 0; site < numSites; site++) {
+      if (prefiltered[site]) {
+        callResults.add(createPrefilteredResult(readSummaryMaps.get(site)));
+        continue;
+      }
+      BayesInferenceResult result = results[site] == null
+          ? batch.getResult(batchSites[site])
+          : results[site];
+      callResults.add(createCallResult(readSummaryMaps.get(site), result, inferMethod));
+    }
+    return callResults;
+  }
+
+  private BayesCallResult createCallResult(Map<TrioMember, ReadSummary> readSummaryMap,
+      BayesInferenceResult result, InferenceMethod inferMethod) {
+    List<Genotype> maxTrioGenotype = result.getMaxTrioGenotype();
+    int[] maxGenotypeOrdinals = new int[maxTrioGenotype.size()];
+    for (int idx = 0; idx < maxGenotypeOrdinals.length; idx++) {
+      maxGenotypeOrdinals[idx] = maxTrioGenotype.get(idx).ordinal();
+    }
+    return new BayesCallResult(inferMethod.isDenovo(result, shared),
+        DenovoBayesNet.getAlleleCounts(readSummaryMap), maxGenotypeOrdinals,
+        result.getBayesDenovoProb(), result.getLikelihoodRatio(), inferMethod);
   }
 
   /**
-   * This container holds the call result from the Bayesian Inference procedure  
+   * Result of a site shown not denovo by the prefilter ; the bayes net did not run so there is no
+   * inference result
+   */
+  private BayesCallResult createPrefilteredResult(Map<TrioMember, ReadSummary> readSummaryMap) {
+    return new BayesCallResult(false, DenovoBayesNet.getAlleleCounts(readSummaryMap), null,
+        Double.NaN, Double.NaN, null);
+  }
+
+  /**
+   * @return the number of sites resolved by each inference tier
+   */
+  String getTierCounts() {
+    return String.format("prefilter=%d,table=%d,bayesNet=%d", prefilteredSites.get(),
+        tabulatedSites.get(), inferredSites.get());
+  }
+
+  /**
+   * @return hit and miss counts of the inference cache
+   */
+  CacheStats getCacheStats() {
+    return inferenceCache.getStats();
+  }
+
+  /**
+   * This container holds the call result from the Bayesian Inference procedure. Only the read
+   * counts, the max trio genotype and the two statistics are kept ; the details are formatted on
+   * demand, by the output sink for the calls it writes
    */
   public static class BayesCallResult {
+    private static final Genotype[] GENOTYPES = Genotype.values();
+    private static final Allele[] ALLELES = Allele.values();
+
     private final boolean denovo;
-    private final String details;
-    private final List<Genotype> maxTrioGenoType;
+    private final int[] readCounts;
+    private final int[] maxGenotypeOrdinals;
+    private final double bayesDenovoProb;
+    private final double likelihoodRatio;
+    private final InferenceMethod inferMethod;
 
     /**
      * @param isDenovo if call is denovo
-     * @param maxTrioGenoType the genotype of the trio with max likelihood
-     * @param details additional details
+     * @param readCounts read base counts of the trio laid out as described in
+     *        {@link DenovoBayesNet#getAlleleCountIndex}
+     * @param maxGenotypeOrdinals ordinals of the max likelihood trio genotype in the order of
+     *        {@link BayesInferenceResult#getMaxTrioGenotype}, null for prefiltered sites
+     * @param bayesDenovoProb the bayesian probability of the position being denovo
+     * @param likelihoodRatio the likelihood ratio of denovo over mendelian
+     * @param inferMethod the inference method that made the call, null for prefiltered sites
      */
-    public BayesCallResult(boolean isDenovo, List<Genotype> maxTrioGenoType, String details) {
+    BayesCallResult(boolean isDenovo, int[] readCounts, int[] maxGenotypeOrdinals,
+        double bayesDenovoProb, double likelihoodRatio, InferenceMethod inferMethod) {
       this.denovo = isDenovo;
-      this.details = details;
-      this.maxTrioGenoType = maxTrioGenoType;
+      this.readCounts = readCounts;
+      this.maxGenotypeOrdinals = maxGenotypeOrdinals;
+      this.bayesDenovoProb = bayesDenovoProb;
+      this.likelihoodRatio = likelihoodRatio;
+      this.inferMethod = inferMethod;
     }
 
     @Override
     public String toString() {
-      return "<" + details + ">";
+      return "<" + getDetails(Collections.<Double>emptyList()) + ">";
     }
-    
+
     public boolean isDenovo() {
       return denovo;
     }
 
-    public String getDetails() {
-      return details;
+    /**
+     * @return whether the site was shown not denovo without running the bayes net
+     */
+    public boolean isPrefiltered() {
+      return maxGenotypeOrdinals == null;
+    }
+
+    /**
+     * @return the read base counts of the trio laid out as described in
+     *         {@link DenovoBayesNet#getAlleleCountIndex}
+     */
+    public int[] getReadCounts() {
+      return readCounts;
     }
 
+    /**
+     * @return the genotype of the trio with max likelihood, null for prefiltered sites
+     */
     public List<Genotype> getMaxTrioGenoType() {
-      return maxTrioGenoType;
+      if (maxGenotypeOrdinals == null) {
+        return null;
+      }
+      List<Genotype> maxTrioGenotype = new ArrayList<>(maxGenotypeOrdinals.length);
+      for (int ordinal : maxGenotypeOrdinals) {
+        maxTrioGenotype.add(GENOTYPES[ordinal]);
+      }
+      return maxTrioGenotype;
+    }
+
+    /**
+     * @return the bayesian probability of the position being denovo, NaN for prefiltered sites
+     */
+    public double getBayesDenovoProb() {
+      return bayesDenovoProb;
+    }
+
+    /**
+     * @return the likelihood ratio of denovo over mendelian, NaN for prefiltered sites
+     */
+    public double getLikelihoodRatio() {
+      return likelihoodRatio;
+    }
+
+    /**
+     * Formats the details of the call ; read counts, max trio genotype and verdict, along with the
+     * verdicts of every method for the all method
+     * @param lrtThresholds the LRT thresholds of the verdicts of the all method
+     * @return the details as key=value pairs
+     */
+    public String getDetails(List<Double> lrtThresholds) {
+      StringBuilder details = new StringBuilder("readCounts=");
+      for (TrioMember person : DenovoBayesNet.TRIO_MEMBERS) {
+        details.append(person.ordinal() == 0 ? "" : ";").append(person.name()).append(":{");
+        boolean first = true;
+        for (Allele allele : ALLELES) {
+          int count = readCounts[DenovoBayesNet.getAlleleCountIndex(person, allele)];
+          if (count > 0) {
+            details.append(first ? "" : ", ").append(allele).append('=').append(count);
+            first = false;
+          }
+        }
+        details.append('}');
+      }
+      if (isPrefiltered()) {
+        return details.append(",isDenovo=false,prefiltered=true").toString();
+      }
+      details.append(",maxGenoType=").append(getMaxTrioGenoType())
+          .append(",isDenovo=").append(denovo);
+      if (inferMethod == InferenceMethod.ALL) {
+        details.append(',').append(getVerdicts(lrtThresholds));
+      }
+      return details.toString();
+    }
+
+    /**
+     * Verdicts of every inference method and LRT threshold along with the raw denovo posterior
+     * and likelihood ratio, so that a single pass answers all of them
+     * @param lrtThresholds the LRT thresholds to give a verdict for
+     * @return verdicts formatted as key=value pairs, LRT verdicts as threshold:verdict pairs
+     */
+    private String getVerdicts(List<Double> lrtThresholds) {
+      List<String> lrtVerdicts = new ArrayList<>();
+      for (double lrtThreshold : lrtThresholds) {
+        lrtVerdicts.add(String.format("%s:%b", lrtThreshold, likelihoodRatio > lrtThreshold));
+      }
+      return String.format("map=%b,bayes=%b,lrt=%s,bayesDenovoProb=%s,likelihoodRatio=%s",
+          DenovoUtil.checkTrioGenoTypeIsDenovo(GENOTYPES[maxGenotypeOrdinals[0]],
+              GENOTYPES[maxGenotypeOrdinals[1]], GENOTYPES[maxGenotypeOrdinals[2]]),
+          bayesDenovoProb > 0.5,
+          Joiner.on(";").join(lrtVerdicts),
+          bayesDenovoProb,
+          likelihoodRatio);
     }
   }
 }
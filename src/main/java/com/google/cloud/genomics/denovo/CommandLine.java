@@ -28,12 +28,12 @@ class CommandLine {
 
   CmdLineParser parser;
 
-  @Option(name = "--caller", metaVar = "<variant|read>",
+  @Option(name = "--caller", metaVar = "<variant|read|full|sweep>",
       usage = "The caller mode", required = true)
   public DenovoUtil.Caller caller;
 
-  @Option(name = "--inference_method", metaVar = "<map|bayes|lrt>",
-      usage = "Inference method (map | bayes | lrt)")
+  @Option(name = "--inference_method", metaVar = "<map|bayes|lrt|all>",
+      usage = "Inference method (map | bayes | lrt | all)")
   public DenovoUtil.InferenceMethod inferMethod = DenovoUtil.InferenceMethod.BAYES;
 
   @Option(name = "--output_file", metaVar = "<file>",
@@ -57,8 +57,9 @@ class CommandLine {
   public String momCallsetName;
 
   @Option(name = "--child_callset_name", metaVar = "<name>",
-      usage = "Child's callset name e.g. NA12879")
-  public String childCallsetName;
+      usage = "Child's callset name e.g. NA12879 (specify multiple times for children of the same "
+      + "parents, called together in variant mode ; other modes call the first)")
+  public List<String> childCallsetNames;
 
   @Option(name = "--dataset_id", metaVar = "<id>",
       usage = "Dataset id", required = true)
@@ -73,8 +74,9 @@ class CommandLine {
   public double denovoMutationRate = 1e-8;
 
   @Option(name = "--lrt_threshold", metaVar = "<sig_level>",
-      usage = "likelihood ratio test significance level (default 1. ;higher the stricter)")
-  public double lrtThreshold = 1.0;
+      usage = "likelihood ratio test significance level (default 1. ;higher the stricter ; "
+      + "specify multiple times for a grid evaluated by the all method, lrt uses the first)")
+  public List<Double> lrtThresholds;
 
   @Option(name = "--num_threads", metaVar = "<num>",
       usage = "Specify the number of threads (default 1 ; 1 to 50 suggested)")
@@ -89,9 +91,15 @@ class CommandLine {
   public String logFile;
 
   @Option(name = "--chromosome", metaVar = "<name>",
-      usage = "specify the chromosomes to search (specify multiple times for multiple chromsomes)")
+      usage = "specify the chromosomes to search (specify multiple times for multiple chromsomes "
+      + "; default 1 to 22, X, Y and M)")
   public List<String> chromosomes;
 
+  @Option(name = "--contig_dict", metaVar = "<file>",
+      usage = "sequence dictionary (.dict) or fasta index (.fai) of the reference contigs "
+      + "(default the reference bounds of the variant set)")
+  public String contigDictionaryFileName;
+
   @Option(name = "--start_position", metaVar = "<position>",
       usage = "start position ( usually 1 )")
   public Long startPosition;
@@ -104,6 +112,69 @@ class CommandLine {
       usage = "max variants returned per request (default 1000)")
   public long maxVariantResults = 1000L;
 
+  @Option(name = "--inference_cache_size", metaVar = "<num>",
+      usage = "max inference results cached by read counts (default 100000 ; 0 disables)")
+  public long inferenceCacheSize = 100000L;
+
+  @Option(name = "--tabulate_depth", metaVar = "<num>",
+      usage = "precompute inference for sites with at most this many reads per member "
+      + "(default 0 ; 0 disables, at most 5)")
+  public int tabulateDepth = 0;
+
+  @Option(name = "--prefilter",
+      usage = "skip the bayes net at sites whose denovo odds are bounded below the call "
+      + "threshold by the genotypes the reads of each member favor")
+  public boolean prefilter = false;
+
+  @Option(name = "--include_indels",
+      usage = "call indels and multi-allelic sites in variant mode over the alleles seen at "
+      + "each site")
+  public boolean includeIndels = false;
+
+  @Option(name = "--per_member_streams",
+      usage = "fetch the variants of every family member by its own prefetched stream in "
+      + "variant mode and merge the streams by position")
+  public boolean perMemberStreams = false;
+
+  @Option(name = "--inference_table_file", metaVar = "<file>",
+      usage = "File to persist and reuse the precomputed inference table")
+  public String inferenceTableFileName;
+
+  @Option(name = "--quality_bin", metaVar = "<phred>",
+      usage = "lowest base quality of a quality bin ; enables base quality aware likelihoods "
+      + "(specify multiple times for multiple bins)")
+  public List<Integer> qualityBins;
+
+  @Option(name = "--read_filter",
+      metaVar = "<mapping_quality|duplicate|secondary|supplementary|failed_qc>",
+      usage = "drop reads by flag or mapping quality before counting their bases (specify "
+      + "multiple times for multiple filters ; default none)")
+  public List<ReadFilter> readFilters;
+
+  @Option(name = "--min_mapping_quality", metaVar = "<mapq>",
+      usage = "minimum mapping quality of counted reads, enables the mapping_quality filter "
+      + "(default 0)")
+  public int minMappingQuality = 0;
+
+  @Option(name = "--counts_file", metaVar = "<file>",
+      usage = "File to save and reuse the read counts of the candidates in sweep mode")
+  public String countsFileName;
+
+  @Option(name = "--estimate_seq_err_rate",
+      usage = "fit the sequence error rate to the candidate read counts in sweep mode and sweep "
+      + "the fitted rate instead of --sweep_seq_err_rate")
+  public boolean estimateSequenceErrorRate = false;
+
+  @Option(name = "--sweep_seq_err_rate", metaVar = "<rate>",
+      usage = "sequence error rates swept in sweep mode (specify multiple times for multiple "
+      + "rates ; default the --seq_err_rate)")
+  public List<Double> sweepSequenceErrorRates;
+
+  @Option(name = "--sweep_denovo_mut_rate", metaVar = "<rate>",
+      usage = "denovo mutation rates swept in sweep mode (specify multiple times for multiple "
+      + "rates ; default the --denovo_mut_rate)")
+  public List<Double> sweepDenovoMutationRates;
+
   public CommandLine() {
     parser = new CmdLineParser(this);
   }
@@ -0,0 +1,268 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.api.services.genomics.model.ReferenceBound;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Names and lengths of the contigs of a reference, each with a compact integer id in reference
+ * order. Loaded from the reference bounds of a variant set or from a local sequence dictionary
+ * (.dict) or fasta index (.fai), so any reference works, not only the human chromosomes. Names
+ * resolve exactly, or else through an alias ignoring case, a chr prefix and the M / MT spelling of
+ * the mitochondrion, so that 1 and chr1 name the same contig. Immutable
+ */
+public class ContigDictionary {
+
+  /**
+   * Aliases of the contigs searched by default, the human autosomes, sex chromosomes and
+   * mitochondrion
+   */
+  static final List<String> DEFAULT_CONTIGS;
+
+  static {
+    List<String> contigs = new ArrayList<>();
+    for (int chromosome = 1; chromosome <= 22; chromosome++) {
+      contigs.add(String.valueOf(chromosome));
+    }
+    contigs.addAll(Arrays.asList("X", "Y", "M"));
+    DEFAULT_CONTIGS = ImmutableList.copyOf(contigs);
+  }
+
+  private final List<String> names;
+  private final long[] lengths;
+  private final Map<String, Integer> idMap = new HashMap<>();
+  private final Map<String, Integer> aliasMap = new HashMap<>();
+
+  /**
+   * @param names contig names in reference order
+   * @param lengths contig lengths in the same order
+   * @throws IllegalArgumentException if a name is repeated or the lists differ in size
+   */
+  ContigDictionary(List<String> names, List<Long> lengths) {
+    if (names.size() != lengths.size()) {
+      throw new IllegalArgumentException(
+          String.format("Got %d contig names for %d lengths", names.size(), lengths.size()));
+    }
+    this.names = ImmutableList.copyOf(names);
+    this.lengths = new long[names.size()];
+    Map<String, Integer> aliasCounts = new HashMap<>();
+    for (int id = 0; id < names.size(); id++) {
+      if (idMap.put(names.get(id), id) != null) {
+        throw new IllegalArgumentException("Repeated contig " + names.get(id));
+      }
+      this.lengths[id] = lengths.get(id);
+      String alias = getAlias(names.get(id));
+      aliasMap.put(alias, id);
+      aliasCounts.put(alias, aliasCounts.containsKey(alias) ? aliasCounts.get(alias) + 1 : 1);
+    }
+    // ambiguous aliases only resolve exactly
+    for (Map.Entry<String, Integer> entry : aliasCounts.entrySet()) {
+      if (entry.getValue() > 1) {
+        aliasMap.remove(entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * @param referenceBounds reference bounds of a variant set
+   * @return dictionary of the referenced contigs with their upper bounds as lengths
+   */
+  public static ContigDictionary fromReferenceBounds(List<ReferenceBound> referenceBounds) {
+    List<String> names = new ArrayList<>();
+    List<Long> lengths = new ArrayList<>();
+    for (ReferenceBound referenceBound : referenceBounds) {
+      names.add(referenceBound.getReferenceName());
+      lengths.add(referenceBound.getUpperBound());
+    }
+    return new ContigDictionary(names, lengths);
+  }
+
+  /**
+   * @param file a sequence dictionary, read from its @SQ lines, if its name ends with .dict and
+   *        otherwise a fasta index of tab separated names and lengths
+   * @return dictionary of the contigs of the file
+   * @throws IOException
+   * @throws IllegalArgumentException on malformed lines
+   */
+  public static ContigDictionary fromFile(File file) throws IOException {
+    boolean dict = file.getName().endsWith(".dict");
+    List<String> names = new ArrayList<>();
+    List<Long> lengths = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.isEmpty() || dict && !line.startsWith("@SQ")) {
+          continue;
+        }
+        String[] fields = line.split("\t");
+        String name = null;
+        String length = null;
+        if (dict) {
+          for (String field : fields) {
+            if (field.startsWith("SN:")) {
+              name = field.substring(3);
+            } else if (field.startsWith("LN:")) {
+              length = field.substring(3);
+            }
+          }
+        } else if (fields.length >= 2) {
+          name = fields[0];
+          length = fields[1];
+        }
+        if (name == null || length == null) {
+          throw new IllegalArgumentException("Malformed line in " + file + " : " + line);
+        }
+        names.add(name);
+        lengths.add(Long.parseLong(length));
+      }
+    }
+    return new ContigDictionary(names, lengths);
+  }
+
+  /**
+   * Renames the contigs to the spelling of the variant set, so that a local dictionary naming a
+   * contig 1 still searches a variant set naming it chr1
+   * @param referenceNames reference names of a variant set
+   * @return dictionary with the lengths of this one and the matching reference names
+   * @throws IllegalArgumentException if a reference name matches no contig
+   */
+  public ContigDictionary withReferenceNames(Collection<String> referenceNames) {
+    List<String> renamed = new ArrayList<>(names);
+    List<String> unknown = new ArrayList<>();
+    for (String referenceName : referenceNames) {
+      int id = getId(referenceName);
+      if (id < 0) {
+        unknown.add(referenceName);
+      } else {
+        renamed.set(id, referenceName);
+      }
+    }
+    if (!unknown.isEmpty()) {
+      throw new IllegalArgumentException("References " + unknown
+          + " of the variant set are not in the contig dictionary " + names);
+    }
+    List<Long> lengthList = new ArrayList<>();
+    for (long length : lengths) {
+      lengthList.add(length);
+    }
+    return new ContigDictionary(renamed, lengthList);
+  }
+
+  /**
+   * @param name a contig name
+   * @return the name upper cased without a chr prefix, and M for MT
+   */
+  private static String getAlias(String name) {
+    String alias = name.toUpperCase();
+    if (alias.startsWith("CHR")) {
+      alias = alias.substring(3);
+    }
+    return alias.equals("MT") ? "M" : alias;
+  }
+
+  /**
+   * @param name a contig name or alias
+   * @return the id of the contig, -1 if unknown
+   */
+  public int getId(String name) {
+    Integer id = idMap.get(name);
+    if (id == null) {
+      id = aliasMap.get(getAlias(name));
+    }
+    return id == null ? -1 : id;
+  }
+
+  /**
+   * @param names contig names or aliases, null for the default contigs : those of
+   *        {@link #DEFAULT_CONTIGS} in the dictionary, or all contigs if there are none
+   * @return the ids of the contigs
+   * @throws IllegalArgumentException if a name is unknown
+   */
+  public BitSet getIds(Collection<String> names) {
+    BitSet ids = new BitSet(size());
+    if (names == null) {
+      for (String name : DEFAULT_CONTIGS) {
+        int id = getId(name);
+        if (id >= 0) {
+          ids.set(id);
+        }
+      }
+      if (ids.isEmpty()) {
+        ids.set(0, size());
+      }
+      return ids;
+    }
+    for (String name : names) {
+      int id = getId(name);
+      if (id < 0) {
+        throw new IllegalArgumentException("Unknown contig " + name + " ; known contigs are "
+            + this.names);
+      }
+      ids.set(id);
+    }
+    return ids;
+  }
+
+  /**
+   * @param id contig id
+   * @return the contig name
+   */
+  public String getName(int id) {
+    return names.get(id);
+  }
+
+  /**
+   * @param id contig id
+   * @return the contig length
+   */
+  public long getLength(int id) {
+    return lengths[id];
+  }
+
+  /**
+   * @return the contig names by id
+   */
+  public List<String> getNames() {
+    return names;
+  }
+
+  /**
+   * @return the number of contigs
+   */
+  public int size() {
+    return names.size();
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder builder = new StringBuilder("[");
+    for (int id = 0; id < size(); id++) {
+      builder.append(id == 0 ? "" : ", ").append(names.get(id)).append(':').append(lengths[id]);
+    }
+    return builder.append(']').toString();
+  }
+}
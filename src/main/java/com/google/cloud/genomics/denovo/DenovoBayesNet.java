@@ -43,23 +43,107 @@ import java.util.Map;
  */ 
 public class DenovoBayesNet {
 
+    static final Genotype[] GENOTYPES = Genotype.values();
+    static final int NUM_GENOTYPES = GENOTYPES.length;
+    static final Allele[] ALLELES = Allele.values();
+    static final int NUM_ALLELES = ALLELES.length;
+    static final TrioMember[] TRIO_MEMBERS = TrioMember.values();
+
+    /* Genotype ordinals made of / not made of the alleles in a set, indexed by allele bit mask */
+    private static final int[][] OBSERVED_GENOTYPES = new int[1 << NUM_ALLELES][];
+    private static final int[][] UNOBSERVED_GENOTYPES = new int[1 << NUM_ALLELES][];
+
+    static {
+      for (int alleleMask = 0; alleleMask < 1 << NUM_ALLELES; alleleMask++) {
+        List<Integer> observed = new ArrayList<>();
+        List<Integer> unobserved = new ArrayList<>();
+        for (Genotype genotype : GENOTYPES) {
+          boolean isObserved = true;
+          for (Allele allele : genotype.getAlleleSet()) {
+            isObserved &= (alleleMask & (1 << allele.ordinal())) != 0;
+          }
+          (isObserved ? observed : unobserved).add(genotype.ordinal());
+        }
+        OBSERVED_GENOTYPES[alleleMask] = toIntArray(observed);
+        UNOBSERVED_GENOTYPES[alleleMask] = toIntArray(unobserved);
+      }
+    }
+
     private final DenovoShared shared;
+    private final ErrorModel errorModel;
     private final Map<TrioMember, Node<TrioMember, Genotype>> nodeMap; 
+    private final double[] mendelianChildCpt;
+    private final double[] denovoChildCpt;
+    private final double maxRelationshipLogLikelihood;
+    private final ThreadLocal<InferenceScratch> scratch = new ThreadLocal<InferenceScratch>() {
+      @Override
+      protected InferenceScratch initialValue() {
+        return new InferenceScratch(NUM_GENOTYPES);
+      }
+    };
     
   /**
    * @param shared Shared parameters for tool
    */
   public DenovoBayesNet(DenovoShared shared) {
+    this(shared, ErrorModel.fromShared(shared));
+  }
+
+  /**
+   * @param shared Shared parameters for tool
+   * @param errorModel sequencing error model, may be shared with other nets
+   */
+  DenovoBayesNet(DenovoShared shared, ErrorModel errorModel) {
     this.shared = shared;
+    this.errorModel = errorModel;
     nodeMap = new HashMap<TrioMember, Node<TrioMember, Genotype>>();
 
     // Initialize the conditional Probability table
-    addNode(new Node<>(DAD, null, createConditionalProbabilityTable(DAD)));
-    addNode(new Node<>(MOM, null, createConditionalProbabilityTable(MOM)));
+    addNode(createNode(DAD, null));
+    addNode(createNode(MOM, null));
     List<Node<TrioMember, Genotype>> childParents = new ArrayList<>();
     childParents.add(nodeMap.get(DAD));
     childParents.add(nodeMap.get(MOM));
-    addNode(new Node<>(CHILD, childParents, createConditionalProbabilityTable(CHILD)));
+    addNode(createNode(CHILD, childParents));
+
+    // Split the child table for the factorized evaluation of the marginals
+    Map<List<Genotype>, Double> childCpt = nodeMap.get(CHILD).getConditionalProbabilityTable();
+    mendelianChildCpt = createChildCptPart(childCpt, false);
+    denovoChildCpt = createChildCptPart(childCpt, true);
+    maxRelationshipLogLikelihood = max(nodeMap.get(DAD).getLogConditionalProbabilityTable())
+        + max(nodeMap.get(MOM).getLogConditionalProbabilityTable())
+        + max(nodeMap.get(CHILD).getLogConditionalProbabilityTable());
+  }
+
+  /**
+   * Dense table holding either the mendelian or the denovo entries of the child conditional
+   * probability table and zeros elsewhere
+   * @param childCpt child Conditional Probability Table
+   * @param denovo whether to keep the denovo or the mendelian entries
+   * @return probabilities indexed as described in {@link #getCptIndex(List)}
+   */
+  static double[] createChildCptPart(Map<List<Genotype>, Double> childCpt,
+      boolean denovo) {
+    double[] cptPart = new double[NUM_GENOTYPES * NUM_GENOTYPES * NUM_GENOTYPES];
+    for (Map.Entry<List<Genotype>, Double> entry : childCpt.entrySet()) {
+      int index = getCptIndex(entry.getKey());
+      if (isDenovoTrioGenotype(index) == denovo) {
+        cptPart[index] = entry.getValue();
+      }
+    }
+    return cptPart;
+  }
+
+  /**
+   * Creates a node holding both the conditional probability table and its dense log space form
+   * @param individual : Mom, dad or child
+   * @param parents parent nodes, null for dad and mom
+   * @return node for the bayes net
+   */
+  private Node<TrioMember, Genotype> createNode(TrioMember individual,
+      List<Node<TrioMember, Genotype>> parents) {
+    Map<List<Genotype>, Double> cpt = createConditionalProbabilityTable(individual);
+    return new Node<>(individual, parents, cpt, createLogConditionalProbabilityTable(cpt));
   }
 
   /**
@@ -82,7 +166,7 @@ public class DenovoBayesNet {
     if (individual == DAD || individual == MOM) {
       for (Genotype genoType : Genotype.values()) {
         conditionalProbabilityTable.put(Collections.singletonList(genoType),
-            (genoType.isHomozygous() ? 1.0 : 2.0) / (Allele.values().length * Allele.values().length));
+            getParentProbability(genoType.isHomozygous(), NUM_ALLELES));
       }
     } else { // individual == TrioIndividuals.CHILD
 
@@ -90,25 +174,20 @@ public class DenovoBayesNet {
       for (Genotype genoTypeDad : Genotype.values()) {
         for (Genotype genoTypeMom : Genotype.values()) {
 
-          // Get a map of mendelian genotypes and their frequencies of occurence
-          Map<Genotype, Integer> mendelianAlleles = mendelianGenotypes(genoTypeDad, genoTypeMom);
-          int numDenovoGenotypes = Genotype.values().length - mendelianAlleles.size();
-          Integer mendelianCount = 0;
-          for(Integer count : mendelianAlleles.values() ) { 
-            mendelianCount += count;
+          // Count the denovo child genotypes ; the mendelian ones share the 4 transmissions
+          int numDenovoGenotypes = 0;
+          for (Genotype genoTypeChild : Genotype.values()) {
+            numDenovoGenotypes += DenovoUtil.isDenovoTrioGenotype(getChildCptIndex(
+                genoTypeDad.ordinal(), genoTypeMom.ordinal(), genoTypeChild.ordinal())) ? 1 : 0;
           }
-          
-          // Initial pass to count valid inheritance cases
+
           for (Genotype genoTypeChild : Genotype.values()) {
-            List<Genotype> cptKey = Arrays.asList(genoTypeDad, genoTypeMom, genoTypeChild);
-            boolean isDenovo = DenovoUtil.checkTrioGenoTypeIsDenovo(cptKey);
-          
-            double value = isDenovo
-                ? shared.getDenovoMutationRate() / numDenovoGenotypes
-                : (1.0 - shared.getDenovoMutationRate()) / mendelianCount 
-                    * mendelianAlleles.get(genoTypeChild);
+            int trioIndex = getChildCptIndex(genoTypeDad.ordinal(), genoTypeMom.ordinal(),
+                genoTypeChild.ordinal());
+            double value = getChildProbability(DenovoUtil.getTransmissionCount(trioIndex),
+                numDenovoGenotypes, shared.getDenovoMutationRate());
             conditionalProbabilityTable.put(
-                cptKey,
+                Arrays.asList(genoTypeDad, genoTypeMom, genoTypeChild),
                 value
                 );
           }
@@ -119,29 +198,76 @@ public class DenovoBayesNet {
   }
 
   /**
-   * Get the set of genotypes that are mendelian for a certain mom and dad genotype pair
-   * @param genoTypeDad Dad genotype
-   * @param genoTypeMom Mom genotype
-   * @return a Map containing mendelian Genotypes and their counts by mendelian inheritance
-   */
-  Map<Genotype, Integer> mendelianGenotypes(Genotype genoTypeDad, Genotype genoTypeMom) {
-    Map<Genotype, Integer> mendelCases = new HashMap<>();
-    for (int ii = 0 ; ii < genoTypeDad.name().length() ; ii++) {
-      for (int jj= 0 ; jj < genoTypeMom.name().length() ; jj++) {
-        char[] mendelianCharAlleles = new char[2];
-        mendelianCharAlleles[0] = genoTypeDad.name().charAt(ii) ;
-        mendelianCharAlleles[1] = genoTypeMom.name().charAt(jj) ;
-        Arrays.sort(mendelianCharAlleles);
-        Genotype mendelianAlleles = 
-            Genotype.valueOf(new String(mendelianCharAlleles));
-        mendelCases.put(mendelianAlleles, 
-            (mendelCases.containsKey(mendelianAlleles) 
-                ? mendelCases.get(mendelianAlleles)
-                : 0) + 1 );
-      }
+   * Hardy-Weinberg prior of a parent genotype over equally frequent alleles
+   * @param homozygous whether the genotype is homozygous
+   * @param numAlleles number of alleles
+   * @return probability of the genotype
+   */
+  static double getParentProbability(boolean homozygous, int numAlleles) {
+    return (homozygous ? 1.0 : 2.0) / (numAlleles * numAlleles);
+  }
+
+  /**
+   * Probability of a child genotype given the parent genotypes ; denovo genotypes share the
+   * mutation rate equally and the others follow the 4 equally likely allele transmissions
+   * @param transmissions number of the 4 transmissions giving the child genotype, 0 when denovo
+   * @param numDenovoGenotypes number of denovo child genotypes for the parent genotypes
+   * @param denovoMutationRate probability of a child genotype being denovo
+   * @return probability of the child genotype
+   */
+  static double getChildProbability(int transmissions, int numDenovoGenotypes,
+      double denovoMutationRate) {
+    return transmissions == 0
+        ? denovoMutationRate / numDenovoGenotypes
+        : (1.0 - denovoMutationRate) / 4 * transmissions;
+  }
+
+  /**
+   * Flattens a conditional probability table into a dense table of log probabilities indexed as
+   * described in {@link #getCptIndex(List)}
+   * @param cpt Conditional Probability Table
+   * @return log probabilities with one entry per key
+   */
+  static double[] createLogConditionalProbabilityTable(Map<List<Genotype>, Double> cpt) {
+    int keyLength = cpt.keySet().iterator().next().size();
+    double[] logCpt = new double[(int) Math.pow(NUM_GENOTYPES, keyLength)];
+    for (Map.Entry<List<Genotype>, Double> entry : cpt.entrySet()) {
+      logCpt[getCptIndex(entry.getKey())] = Math.log(entry.getValue());
     }
-    return mendelCases;
-    
+    return logCpt;
+  }
+
+  /**
+   * Index of a conditional probability table key in the dense tables. The genotype ordinals are
+   * the digits of the index with the last genotype varying fastest
+   * @param cptKey genotype of the parent, or the dad, mom and child genotypes
+   * @return index into the dense table
+   */
+  static int getCptIndex(List<Genotype> cptKey) {
+    int index = 0;
+    for (Genotype genotype : cptKey) {
+      index = index * NUM_GENOTYPES + genotype.ordinal();
+    }
+    return index;
+  }
+
+  /**
+   * Index of a trio genotype in the dense child table
+   * @param dadOrdinal ordinal of the dad genotype
+   * @param momOrdinal ordinal of the mom genotype
+   * @param childOrdinal ordinal of the child genotype
+   * @return index into the dense table
+   */
+  static int getChildCptIndex(int dadOrdinal, int momOrdinal, int childOrdinal) {
+    return DenovoUtil.getTrioGenotypeIndex(dadOrdinal, momOrdinal, childOrdinal);
+  }
+
+  /**
+   * @param trioIndex index of a trio genotype in the dense child table
+   * @return whether the child genotype can't be inherited from the parent genotypes
+   */
+  static boolean isDenovoTrioGenotype(int trioIndex) {
+    return DenovoUtil.isDenovoTrioGenotype(trioIndex);
   }
 
   /**
@@ -152,17 +278,7 @@ public class DenovoBayesNet {
    * @return logLikeliHood likelihood of genotype generating the base
    */
   double getBaseLogLikelihood(Genotype genotype, Allele base) {
-    if (base == null || genotype == null) {
-      throw new NullPointerException("Can't get base log likelihood of null members");
-    }
-
-    return genotype.isHomozygous()
-        ? genotype.containsAllele(base)
-            ? Math.log(1 - shared.getSequenceErrorRate())
-            : Math.log(shared.getSequenceErrorRate()) - Math.log(3)
-        : genotype.containsAllele(base)
-            ? Math.log(1 - 2 * shared.getSequenceErrorRate() / 3) - Math.log(2)
-            : Math.log(shared.getSequenceErrorRate()) - Math.log(3);
+    return errorModel.getBaseLogLikelihood(genotype, base);
   }
 
   /**
@@ -210,6 +326,84 @@ public class DenovoBayesNet {
     return genotypeLogLikelihood;
   }
 
+  /**
+   * Get the log likelihood for all possible Genotypes for the reads of one trio member without
+   * allocating
+   *
+   * @param alleleCounts read base counts laid out as described in {@link #getAlleleCountIndex}
+   * @param person the trio member whose reads are used
+   * @param genotypeLogLikelihood output, indexed by genotype ordinal
+   */
+  void computeGenotypeLogLikelihood(int[] alleleCounts, TrioMember person,
+      double[] genotypeLogLikelihood) {
+    errorModel.computeGenotypeLogLikelihood(alleleCounts,
+        person.ordinal() * errorModel.getNumAlleleCounts(), genotypeLogLikelihood);
+  }
+
+  /**
+   * Index of the count of a read base for a trio member in the allele count arrays used by the
+   * primitive inference kernel
+   * @param person trio member
+   * @param allele read base
+   * @return index into the allele count array
+   */
+  static int getAlleleCountIndex(TrioMember person, Allele allele) {
+    return person.ordinal() * NUM_ALLELES + allele.ordinal();
+  }
+
+  /**
+   * Flattens the read summaries of a trio into an allele count array
+   * @param readSummaryMap Summary stats for reads for all trio members
+   * @return allele counts laid out as described in {@link #getAlleleCountIndex}
+   */
+  static int[] getAlleleCounts(Map<TrioMember, ReadSummary> readSummaryMap) {
+    int[] alleleCounts = new int[TRIO_MEMBERS.length * NUM_ALLELES];
+    for (TrioMember person : TRIO_MEMBERS) {
+      ReadSummary readSummary = readSummaryMap.get(person);
+      if (readSummary == null) {
+        throw new NullPointerException("Did not expect ReadSummary to be null");
+      }
+      for (Map.Entry<Allele, Integer> entry : readSummary.getCount().entrySet()) {
+        alleleCounts[getAlleleCountIndex(person, entry.getKey())] += entry.getValue();
+      }
+    }
+    return alleleCounts;
+  }
+
+  /**
+   * Flattens the read summaries of a trio into an allele count array, by quality bin when bins
+   * are given. Each member then has a block of counts indexed by bin and then allele ordinal ;
+   * summaries without binned counts are counted in the default bin
+   * @param readSummaryMap Summary stats for reads for all trio members
+   * @param qualityBins base quality bins of the error model, null for a single error rate
+   * @return allele counts laid out as described in {@link #getAlleleCountIndex} without bins
+   */
+  static int[] getAlleleCounts(Map<TrioMember, ReadSummary> readSummaryMap,
+      QualityBins qualityBins) {
+    if (qualityBins == null) {
+      return getAlleleCounts(readSummaryMap);
+    }
+    int numCounts = qualityBins.getNumBins() * NUM_ALLELES;
+    int[] alleleCounts = new int[TRIO_MEMBERS.length * numCounts];
+    for (TrioMember person : TRIO_MEMBERS) {
+      ReadSummary readSummary = readSummaryMap.get(person);
+      if (readSummary == null) {
+        throw new NullPointerException("Did not expect ReadSummary to be null");
+      }
+      int offset = person.ordinal() * numCounts;
+      int[] binnedCount = readSummary.getQualityBinnedCount();
+      if (binnedCount != null) {
+        System.arraycopy(binnedCount, 0, alleleCounts, offset, numCounts);
+        continue;
+      }
+      for (Map.Entry<Allele, Integer> entry : readSummary.getCount().entrySet()) {
+        alleleCounts[offset + qualityBins.getDefaultBin() * NUM_ALLELES
+            + entry.getKey().ordinal()] += entry.getValue();
+      }
+    }
+    return alleleCounts;
+  }
+
   /**
    * Extract likelihood from conditional probability table
    * 
@@ -225,17 +419,21 @@ public class DenovoBayesNet {
       throw new IllegalArgumentException("Expected three Genotype argument : got " + keyParts.length);
     }
     
-    List<Genotype> cptKey = Arrays.asList(keyParts);
-    return Math.log(getNodeMap().
-        get(person).
-        getConditionalProbabilityTable().
-        get(cptKey));
+    double[] logCpt = getNodeMap().get(person).getLogConditionalProbabilityTable();
+    return person == CHILD
+        ? logCpt[getChildCptIndex(keyParts[0].ordinal(), keyParts[1].ordinal(),
+            keyParts[2].ordinal())]
+        : logCpt[keyParts[0].ordinal()];
   }
 
   Map<TrioMember, Node<TrioMember, Genotype>> getNodeMap() {
     return nodeMap;
   }
 
+  ErrorModel getErrorModel() {
+    return errorModel;
+  }
+
   /**
    * Performs Bayesian inference by adding iteraing over all possible genotypes in the trio and 
    * calculating the likelihood the of trip by adding the likelihood of the reads as well as the 
@@ -245,36 +443,462 @@ public class DenovoBayesNet {
    * @return A BayesInference result object storing likelihoods, genpotypes and other pertinent data
    */
   public BayesInferenceResult performInference(Map<TrioMember, ReadSummary> readSummaryMap) {
+    return performInference(getAlleleCounts(readSummaryMap), new MutableBayesInferenceResult())
+        .toBayesInferenceResult();
+  }
+
+  /**
+   * Primitive counterpart of {@link #performInference(Map)}. Genotype likelihoods are kept in
+   * per thread scratch space and the result is written into the supplied container, so repeated
+   * calls do not allocate.
+   *
+   * <p>The denovo and mendelian marginals are evaluated in factorized form. Each member's
+   * likelihoods are exponentiated once, shifted by their max, and the child is summed out inside
+   * the parent loops using the split child table. This keeps sums from underflowing at high depth
+   * sites and needs a few dozen calls to {@link Math#exp} instead of one per trio genotype
+   *
+   * <p>The MAP trio genotype is first searched among genotypes made of the alleles read in the
+   * trio, 27 trio genotypes at a biallelic site. It is exact when the max found beats a closed
+   * form bound on every trio genotype with an unobserved allele, otherwise all 1000 trio
+   * genotypes are scanned
+   *
+   * @param alleleCounts read base counts laid out as described in {@link #getAlleleCountIndex}
+   * @param result container to write the result into
+   * @return the result container
+   */
+  public MutableBayesInferenceResult performInference(int[] alleleCounts,
+      MutableBayesInferenceResult result) {
+    return performInference(alleleCounts, result, true);
+  }
+
+  /**
+   * @param alleleCounts read base counts laid out as described in {@link #getAlleleCountIndex}
+   * @param result container to write the result into
+   * @param restrictGenotypes whether to search the MAP among genotypes of observed alleles first
+   * @return the result container
+   */
+  MutableBayesInferenceResult performInference(int[] alleleCounts,
+      MutableBayesInferenceResult result, boolean restrictGenotypes) {
+    InferenceScratch workspace = scratch.get();
+    double[][] individualLogLikelihood = workspace.individualLogLikelihood;
+    for (TrioMember person : TRIO_MEMBERS) {
+      computeGenotypeLogLikelihood(alleleCounts, person,
+          individualLogLikelihood[person.ordinal()]);
+    }
+    double[] dadLogCpt = getNodeMap().get(DAD).getLogConditionalProbabilityTable();
+    double[] momLogCpt = getNodeMap().get(MOM).getLogConditionalProbabilityTable();
+    double[] childLogCpt = getNodeMap().get(CHILD).getLogConditionalProbabilityTable();
+
+    // Find the trio genotype with max likelihood, first among genotypes of observed alleles
+    int observedAlleleMask = getObservedAlleleMask(alleleCounts);
+    int[] observedGenotypes = OBSERVED_GENOTYPES[observedAlleleMask];
+    boolean found = false;
+    if (restrictGenotypes && observedGenotypes.length > 0
+        && observedGenotypes.length < NUM_GENOTYPES) {
+      scanMaxTrioGenotype(observedGenotypes, individualLogLikelihood, dadLogCpt, momLogCpt,
+          childLogCpt, workspace);
+      found = workspace.maxLogLikelihood > getUnobservedTrioBound(
+          UNOBSERVED_GENOTYPES[observedAlleleMask], individualLogLikelihood);
+    }
+    if (!found) {
+      scanMaxTrioGenotype(OBSERVED_GENOTYPES[(1 << NUM_ALLELES) - 1], individualLogLikelihood,
+          dadLogCpt, momLogCpt, childLogCpt, workspace);
+    }
+    double maxLogLikelihood = workspace.maxLogLikelihood;
+    int maxTrioIndex = workspace.maxTrioIndex;
+
+    sumOutChild(dadLogCpt, momLogCpt, denovoChildCpt, mendelianChildCpt, workspace);
+    double denovoLikelihood = workspace.denovoLikelihood;
+    double mendelianLikelihood = workspace.mendelianLikelihood;
+    double logShift = workspace.logShift;
+    double bayesDenovoProb = denovoLikelihood  / (denovoLikelihood + mendelianLikelihood);
+
+    // ln(likelihood null/likelihood alternate)
+    double likelihoodRatio = denovoLikelihood / mendelianLikelihood;
+
+    return result.set(maxTrioIndex / (NUM_GENOTYPES * NUM_GENOTYPES),
+        maxTrioIndex / NUM_GENOTYPES % NUM_GENOTYPES, maxTrioIndex % NUM_GENOTYPES,
+        maxLogLikelihood, bayesDenovoProb, likelihoodRatio,
+        Math.log(mendelianLikelihood) + logShift, Math.log(denovoLikelihood) + logShift);
+  }
+
+  /**
+   * Scans the trio genotypes whose members all have one of the given genotypes, in ordinal order,
+   * for the one with max likelihood. Ties keep the first. Writes the max into the scratch space.
+   * Trio genotypes are indexed as in {@link #getChildCptIndex} over the genotype count of the
+   * scratch space, so that {@link SiteBayesNet} shares the kernel
+   *
+   * @param genotypes genotype ordinals to scan, ascending
+   */
+  static void scanMaxTrioGenotype(int[] genotypes, double[][] individualLogLikelihood,
+      double[] dadLogCpt, double[] momLogCpt, double[] childLogCpt, InferenceScratch workspace) {
+    int numGenotypes = workspace.numGenotypes;
+    double[] dadLogLikelihood = individualLogLikelihood[DAD.ordinal()];
+    double[] momLogLikelihood = individualLogLikelihood[MOM.ordinal()];
+    double[] childLogLikelihood = individualLogLikelihood[CHILD.ordinal()];
+
+    double maxLogLikelihood = Double.NEGATIVE_INFINITY;
+    int maxTrioIndex = 0;
+    for (int dad : genotypes) {
+      for (int mom : genotypes) {
+        for (int child : genotypes) {
+          int trioIndex = (dad * numGenotypes + mom) * numGenotypes + child;
+          double logLikelihood = 0;
+          logLikelihood += dadLogLikelihood[dad] + momLogLikelihood[mom]
+              + childLogLikelihood[child];
+          logLikelihood += dadLogCpt[dad] + momLogCpt[mom] + childLogCpt[trioIndex];
+
+          if (logLikelihood > maxLogLikelihood) {
+            maxLogLikelihood = logLikelihood;
+            maxTrioIndex = trioIndex;
+          }
+        }
+      }
+    }
+    workspace.maxLogLikelihood = maxLogLikelihood;
+    workspace.maxTrioIndex = maxTrioIndex;
+  }
+
+  /**
+   * Sums the trio likelihoods over the denovo and the mendelian trio genotypes, with the child
+   * summed out inside the parent loops. Each member's likelihoods are exponentiated once after
+   * shifting by their max ; parents also carry their prior. Reads the member log likelihoods from
+   * the scratch space and writes the shifted sums and the shift into it
+   *
+   * @param dadLogCpt log prior per dad genotype
+   * @param momLogCpt log prior per mom genotype
+   * @param denovoChildCpt child probabilities of the denovo trio genotypes, 0 elsewhere
+   * @param mendelianChildCpt child probabilities of the mendelian trio genotypes, 0 elsewhere
+   * @param workspace scratch space
+   */
+  static void sumOutChild(double[] dadLogCpt, double[] momLogCpt, double[] denovoChildCpt,
+      double[] mendelianChildCpt, InferenceScratch workspace) {
+    int numGenotypes = workspace.numGenotypes;
+    double[][] individualLogLikelihood = workspace.individualLogLikelihood;
+    double[] dadWeight = workspace.dadWeight;
+    double[] momWeight = workspace.momWeight;
+    double[] childWeight = workspace.childWeight;
+    workspace.logShift = exponentiate(individualLogLikelihood[DAD.ordinal()], dadLogCpt, dadWeight)
+        + exponentiate(individualLogLikelihood[MOM.ordinal()], momLogCpt, momWeight)
+        + exponentiate(individualLogLikelihood[CHILD.ordinal()], null, childWeight);
 
-    // Calculate Likelihoods of the different reads
-    Map<TrioMember, Map<Genotype, Double>> individualLogLikelihood =
-        getIndividualLogLikelihood(readSummaryMap);
+    double denovoLikelihood = 0.0;
+    double mendelianLikelihood = 0.0;
+    for (int dad = 0; dad < numGenotypes; dad++) {
+      for (int mom = 0; mom < numGenotypes; mom++) {
+        int offset = (dad * numGenotypes + mom) * numGenotypes;
+        double denovoChild = 0.0;
+        double mendelianChild = 0.0;
+        for (int child = 0; child < numGenotypes; child++) {
+          denovoChild += denovoChildCpt[offset + child] * childWeight[child];
+          mendelianChild += mendelianChildCpt[offset + child] * childWeight[child];
+        }
+        double parentWeight = dadWeight[dad] * momWeight[mom];
+        denovoLikelihood += parentWeight * denovoChild;
+        mendelianLikelihood += parentWeight * mendelianChild;
+      }
+    }
+    workspace.denovoLikelihood = denovoLikelihood;
+    workspace.mendelianLikelihood = mendelianLikelihood;
+  }
+
+  /**
+   * Upper bound on the log likelihood of every trio genotype where some member has a genotype
+   * with an unobserved allele. It takes the best unobserved genotype for one member, the best
+   * genotype for the others and the most likely relationship. A small relative slack covers the
+   * rounding of the scan's own sums
+   *
+   * @param unobservedGenotypes genotype ordinals with an unobserved allele
+   * @param individualLogLikelihood log likelihood per member and genotype
+   * @return the bound
+   */
+  private double getUnobservedTrioBound(int[] unobservedGenotypes,
+      double[][] individualLogLikelihood) {
+    double sumOfMax = 0.0;
+    double maxGap = Double.NEGATIVE_INFINITY;
+    for (double[] logLikelihood : individualLogLikelihood) {
+      double maxAll = max(logLikelihood);
+      double maxUnobserved = Double.NEGATIVE_INFINITY;
+      for (int genotype : unobservedGenotypes) {
+        maxUnobserved = Math.max(maxUnobserved, logLikelihood[genotype]);
+      }
+      sumOfMax += maxAll;
+      maxGap = Math.max(maxGap, maxUnobserved - maxAll);
+    }
+    double bound = sumOfMax + maxGap + maxRelationshipLogLikelihood;
+    return bound + 1e-9 * (1.0 + Math.abs(bound));
+  }
+
+  /**
+   * @param alleleCounts read base counts laid out as described in {@link #getAlleleCountIndex}
+   * @return bit mask of the alleles read in any trio member, by allele ordinal
+   */
+  static int getObservedAlleleMask(int[] alleleCounts) {
+    int alleleMask = 0;
+    for (int index = 0; index < alleleCounts.length; index++) {
+      if (alleleCounts[index] > 0) {
+        alleleMask |= 1 << (index % NUM_ALLELES);
+      }
+    }
+    return alleleMask;
+  }
+
+  /**
+   * @param alleleMask bit mask of alleles by allele ordinal
+   * @return ordinals of the genotypes made of the alleles, ascending
+   */
+  static int[] getObservedGenotypes(int alleleMask) {
+    return OBSERVED_GENOTYPES[alleleMask].clone();
+  }
+
+  private static double max(double[] values) {
+    double max = Double.NEGATIVE_INFINITY;
+    for (double value : values) {
+      max = Math.max(max, value);
+    }
+    return max;
+  }
+
+  private static int[] toIntArray(List<Integer> values) {
+    int[] array = new int[values.size()];
+    for (int index = 0; index < array.length; index++) {
+      array[index] = values.get(index);
+    }
+    return array;
+  }
+
+  /**
+   * Exponentiates log likelihoods after shifting them by their max
+   * @param logLikelihood log likelihood per genotype
+   * @param logPrior log prior per genotype added before exponentiating, may be null
+   * @param weight output, the shifted likelihoods per genotype
+   * @return the shift that was subtracted in log space
+   */
+  private static double exponentiate(double[] logLikelihood, double[] logPrior,
+      double[] weight) {
+    double shift = Double.NEGATIVE_INFINITY;
+    for (int genotype = 0; genotype < weight.length; genotype++) {
+      weight[genotype] = logLikelihood[genotype] + (logPrior == null ? 0 : logPrior[genotype]);
+      shift = Math.max(shift, weight[genotype]);
+    }
+    for (int genotype = 0; genotype < weight.length; genotype++) {
+      weight[genotype] = Math.exp(weight[genotype] - shift);
+    }
+    return shift;
+  }
+
+  /**
+   * Batch counterpart of {@link #performInference(int[], MutableBayesInferenceResult)}. Sites are
+   * processed in blocks with the site loop innermost, so that the loops run over contiguous
+   * arrays and can be unrolled and vectorized by the JIT. Results are identical to the per site
+   * path
+   *
+   * @param batch the sites to run inference on ; results are written back into it
+   */
+  public void performInference(InferenceBatch batch) {
+    if (errorModel.getNumQualityBins() != 1) {
+      throw new IllegalStateException("Batch inference does not support base quality bins");
+    }
+    if (!errorModel.isFinite()) {
+      // Zero counts times infinite log likelihoods need the branches of the per site path
+      int[] alleleCounts = new int[TRIO_MEMBERS.length * NUM_ALLELES];
+      MutableBayesInferenceResult result = new MutableBayesInferenceResult();
+      for (int site = 0; site < batch.size(); site++) {
+        batch.getSiteAlleleCounts(site, alleleCounts);
+        performInference(alleleCounts, result);
+        batch.set(site, result.getMaxDadOrdinal(), result.getMaxMomOrdinal(),
+            result.getMaxChildOrdinal(), result.getMaxLikelihood(), result.getBayesDenovoProb(),
+            result.getLikelihoodRatio(), result.getMendelianLogLikelihood(),
+            result.getDenovoLogLikelihood());
+      }
+      return;
+    }
+    for (int start = 0; start < batch.size(); start += InferenceBatch.BLOCK_SIZE) {
+      performInference(batch, start, Math.min(InferenceBatch.BLOCK_SIZE, batch.size() - start));
+    }
+  }
+
+  /**
+   * Runs the inference on one block of sites of the batch
+   */
+  private void performInference(InferenceBatch batch, int start, int length) {
+    double[][][] individualLogLikelihood = batch.individualLogLikelihood;
+    for (TrioMember person : TRIO_MEMBERS) {
+      errorModel.computeGenotypeLogLikelihood(batch.getAlleleCounts(),
+          getAlleleCountIndex(person, ALLELES[0]), start, length,
+          individualLogLikelihood[person.ordinal()]);
+    }
+    double[][] dadLogLikelihood = individualLogLikelihood[DAD.ordinal()];
+    double[][] momLogLikelihood = individualLogLikelihood[MOM.ordinal()];
+    double[][] childLogLikelihood = individualLogLikelihood[CHILD.ordinal()];
+
+    double[] dadLogCpt = getNodeMap().get(DAD).getLogConditionalProbabilityTable();
+    double[] momLogCpt = getNodeMap().get(MOM).getLogConditionalProbabilityTable();
+    double[] childLogCpt = getNodeMap().get(CHILD).getLogConditionalProbabilityTable();
+
+    // Find the trio genotype with max likelihood
+    double[] maxLogLikelihood = batch.maxLogLikelihood;
+    int[] maxTrioIndex = batch.maxTrioIndex;
+    Arrays.fill(maxLogLikelihood, 0, length, Double.NEGATIVE_INFINITY);
+    Arrays.fill(maxTrioIndex, 0, length, 0);
+    for (int dad = 0; dad < NUM_GENOTYPES; dad++) {
+      double[] dadSite = dadLogLikelihood[dad];
+      for (int mom = 0; mom < NUM_GENOTYPES; mom++) {
+        double[] momSite = momLogLikelihood[mom];
+        for (int child = 0; child < NUM_GENOTYPES; child++) {
+          double[] childSite = childLogLikelihood[child];
+          int trioIndex = getChildCptIndex(dad, mom, child);
+          double logPrior = dadLogCpt[dad] + momLogCpt[mom] + childLogCpt[trioIndex];
+          for (int site = 0; site < length; site++) {
+            double logLikelihood = dadSite[site] + momSite[site] + childSite[site] + logPrior;
+            if (logLikelihood > maxLogLikelihood[site]) {
+              maxLogLikelihood[site] = logLikelihood;
+              maxTrioIndex[site] = trioIndex;
+            }
+          }
+        }
+      }
+    }
+
+    // Exponentiate each member's likelihoods once, in place ; parents also carry their prior
+    double[] logShift = batch.logShift;
+    Arrays.fill(logShift, 0, length, 0.0);
+    exponentiate(dadLogLikelihood, dadLogCpt, length, batch.memberShift, logShift);
+    exponentiate(momLogLikelihood, momLogCpt, length, batch.memberShift, logShift);
+    exponentiate(childLogLikelihood, null, length, batch.memberShift, logShift);
+
+    // Sum out the child inside the parent loops
+    double[] denovoChild = batch.denovoChild;
+    double[] mendelianChild = batch.mendelianChild;
+    double[] denovoLikelihood = batch.denovoSum;
+    double[] mendelianLikelihood = batch.mendelianSum;
+    Arrays.fill(denovoLikelihood, 0, length, 0.0);
+    Arrays.fill(mendelianLikelihood, 0, length, 0.0);
+    for (int dad = 0; dad < NUM_GENOTYPES; dad++) {
+      double[] dadWeight = dadLogLikelihood[dad];
+      for (int mom = 0; mom < NUM_GENOTYPES; mom++) {
+        double[] momWeight = momLogLikelihood[mom];
+        int offset = getChildCptIndex(dad, mom, 0);
+        Arrays.fill(denovoChild, 0, length, 0.0);
+        Arrays.fill(mendelianChild, 0, length, 0.0);
+        for (int child = 0; child < NUM_GENOTYPES; child++) {
+          double[] childWeight = childLogLikelihood[child];
+          double denovoCpt = denovoChildCpt[offset + child];
+          double mendelianCpt = mendelianChildCpt[offset + child];
+          for (int site = 0; site < length; site++) {
+            denovoChild[site] += denovoCpt * childWeight[site];
+            mendelianChild[site] += mendelianCpt * childWeight[site];
+          }
+        }
+        for (int site = 0; site < length; site++) {
+          double parentWeight = dadWeight[site] * momWeight[site];
+          denovoLikelihood[site] += parentWeight * denovoChild[site];
+          mendelianLikelihood[site] += parentWeight * mendelianChild[site];
+        }
+      }
+    }
+
+    for (int site = 0; site < length; site++) {
+      double denovo = denovoLikelihood[site];
+      double mendelian = mendelianLikelihood[site];
+      int trioIndex = maxTrioIndex[site];
+      batch.set(start + site,
+          trioIndex / (NUM_GENOTYPES * NUM_GENOTYPES),
+          trioIndex / NUM_GENOTYPES % NUM_GENOTYPES,
+          trioIndex % NUM_GENOTYPES,
+          maxLogLikelihood[site],
+          denovo / (denovo + mendelian),
+          denovo / mendelian,
+          Math.log(mendelian) + logShift[site],
+          Math.log(denovo) + logShift[site]);
+    }
+  }
+
+  /**
+   * Batch counterpart of {@link #exponentiate(double[], double[], double[])}, in place over a
+   * block of sites
+   * @param logLikelihood log likelihood per genotype and site, overwritten by the shifted
+   *        likelihoods
+   * @param logPrior log prior per genotype added before exponentiating, may be null
+   * @param length number of sites
+   * @param shift working space for the per site shift
+   * @param logShift the per site shift is added to it
+   */
+  private static void exponentiate(double[][] logLikelihood, double[] logPrior, int length,
+      double[] shift, double[] logShift) {
+    Arrays.fill(shift, 0, length, Double.NEGATIVE_INFINITY);
+    for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+      double prior = logPrior == null ? 0 : logPrior[genotype];
+      double[] weight = logLikelihood[genotype];
+      for (int site = 0; site < length; site++) {
+        weight[site] = weight[site] + prior;
+        shift[site] = Math.max(shift[site], weight[site]);
+      }
+    }
+    for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+      double[] weight = logLikelihood[genotype];
+      for (int site = 0; site < length; site++) {
+        weight[site] = Math.exp(weight[site] - shift[site]);
+      }
+    }
+    for (int site = 0; site < length; site++) {
+      logShift[site] += shift[site];
+    }
+  }
+
+  /**
+   * Exhaustive reference evaluation of {@link #performInference(int[],
+   * MutableBayesInferenceResult)} that exponentiates the likelihood of every trio genotype.
+   * Underflows at high depth sites; kept to check the factorized evaluation against
+   *
+   * @param alleleCounts read base counts laid out as described in {@link #getAlleleCountIndex}
+   * @param result container to write the result into
+   * @return the result container
+   */
+  MutableBayesInferenceResult enumerateInference(int[] alleleCounts,
+      MutableBayesInferenceResult result) {
+    double[][] individualLogLikelihood = new double[TRIO_MEMBERS.length][NUM_GENOTYPES];
+    for (TrioMember person : TRIO_MEMBERS) {
+      computeGenotypeLogLikelihood(alleleCounts, person,
+          individualLogLikelihood[person.ordinal()]);
+    }
+    double[] dadLogLikelihood = individualLogLikelihood[DAD.ordinal()];
+    double[] momLogLikelihood = individualLogLikelihood[MOM.ordinal()];
+    double[] childLogLikelihood = individualLogLikelihood[CHILD.ordinal()];
+
+    double[] dadLogCpt = getNodeMap().get(DAD).getLogConditionalProbabilityTable();
+    double[] momLogCpt = getNodeMap().get(MOM).getLogConditionalProbabilityTable();
+    double[] childLogCpt = getNodeMap().get(CHILD).getLogConditionalProbabilityTable();
 
     double maxLogLikelihood = Double.NEGATIVE_INFINITY;
     double denovoLikelihood = 0.0;
     double mendelianLikelihood = 0.0;
-    
-    List<Genotype> maxGenoType = null;
-    
+    int maxDad = 0;
+    int maxMom = 0;
+    int maxChild = 0;
+
     // Calculate overall bayes net log likelihood
-    for (Genotype genoTypeDad : Genotype.values()) {
-      for (Genotype genoTypeMom : Genotype.values()) {
-        for (Genotype genoTypeChild : Genotype.values()) {
-          
+    for (int dad = 0; dad < NUM_GENOTYPES; dad++) {
+      for (int mom = 0; mom < NUM_GENOTYPES; mom++) {
+        for (int child = 0; child < NUM_GENOTYPES; child++) {
+          int trioIndex = getChildCptIndex(dad, mom, child);
+
           double logLikelihood = 0;
-          logLikelihood += getTrioGenotypeLogLikelihood(individualLogLikelihood, genoTypeDad,
-              genoTypeMom, genoTypeChild);
-          logLikelihood += getRelationshipLogLikelihood(genoTypeDad, genoTypeMom, genoTypeChild);
-          
-          if (DenovoUtil.checkTrioGenoTypeIsDenovo(genoTypeDad, genoTypeMom, genoTypeChild)) {
+          logLikelihood += dadLogLikelihood[dad] + momLogLikelihood[mom]
+              + childLogLikelihood[child];
+          logLikelihood += dadLogCpt[dad] + momLogCpt[mom] + childLogCpt[trioIndex];
+
+          if (isDenovoTrioGenotype(trioIndex)) {
             denovoLikelihood += Math.exp(logLikelihood);
           } else {
             mendelianLikelihood += Math.exp(logLikelihood);
           }
-          
+
           if (logLikelihood > maxLogLikelihood) {
             maxLogLikelihood = logLikelihood;
-            maxGenoType = Arrays.asList(genoTypeDad, genoTypeMom, genoTypeChild);
+            maxDad = dad;
+            maxMom = mom;
+            maxChild = child;
           }
         }
       }
@@ -283,9 +907,9 @@ public class DenovoBayesNet {
     
     // ln(likelihood null/likelihood alternate)
     double likelihoodRatio = denovoLikelihood / mendelianLikelihood;
-    
-    return new BayesInferenceResult(maxGenoType, maxLogLikelihood, 
-        bayesDenovoProb, likelihoodRatio, Math.log(mendelianLikelihood), Math.log(denovoLikelihood));
+
+    return result.set(maxDad, maxMom, maxChild, maxLogLikelihood, bayesDenovoProb,
+        likelihoodRatio, Math.log(mendelianLikelihood), Math.log(denovoLikelihood));
   }
 
   /**
@@ -328,4 +952,29 @@ public class DenovoBayesNet {
     logLikelihood += getLogLikelihoodFromCPT(CHILD, genoTypeDad, genoTypeMom, genoTypeChild);
     return logLikelihood;
   }
+
+  /**
+   * Per thread working space of the primitive inference kernel, sized to a number of genotypes per
+   * member
+   */
+  static class InferenceScratch {
+    final int numGenotypes;
+    final double[][] individualLogLikelihood;
+    private final double[] dadWeight;
+    private final double[] momWeight;
+    private final double[] childWeight;
+    double maxLogLikelihood;
+    int maxTrioIndex;
+    double denovoLikelihood;
+    double mendelianLikelihood;
+    double logShift;
+
+    InferenceScratch(int numGenotypes) {
+      this.numGenotypes = numGenotypes;
+      individualLogLikelihood = new double[TRIO_MEMBERS.length][numGenotypes];
+      dadWeight = new double[numGenotypes];
+      momWeight = new double[numGenotypes];
+      childWeight = new double[numGenotypes];
+    }
+  }
 }
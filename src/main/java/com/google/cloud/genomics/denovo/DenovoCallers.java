@@ -43,4 +43,15 @@ public class DenovoCallers {
   public static DenovoCaller getReadCaller(DenovoShared shared) {
     return new ReadCaller(shared);
   }
+
+  /**
+   * Create a new SweepCaller which collects the read counts at the candidate positions once and
+   * then reruns the inference for a grid of sequence error and denovo mutation rates
+   *
+   * @param shared shared parameters in project
+   * @return Caller that sweeps the inference parameters
+   */
+  public static DenovoCaller getSweepCaller(DenovoShared shared) {
+    return new SweepCaller(shared);
+  }
 }
@@ -15,6 +15,7 @@ package com.google.cloud.genomics.denovo;
 
 import static com.google.cloud.genomics.denovo.DenovoUtil.Caller.FULL;
 import static com.google.cloud.genomics.denovo.DenovoUtil.Caller.READ;
+import static com.google.cloud.genomics.denovo.DenovoUtil.Caller.SWEEP;
 import static com.google.cloud.genomics.denovo.DenovoUtil.Caller.VARIANT;
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
@@ -23,24 +24,21 @@ import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
 import com.google.api.services.genomics.Genomics;
 import com.google.api.services.genomics.model.CallSet;
 import com.google.api.services.genomics.model.ReadGroupSet;
+import com.google.api.services.genomics.model.ReferenceBound;
 import com.google.api.services.genomics.model.SearchCallSetsRequest;
 import com.google.api.services.genomics.model.SearchCallSetsResponse;
 import com.google.api.services.genomics.model.SearchReadGroupSetsRequest;
-import com.google.cloud.genomics.denovo.DenovoUtil.Chromosome;
 import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
 import com.google.cloud.genomics.utils.GenomicsFactory;
-import com.google.common.base.Function;
-import com.google.common.collect.FluentIterable;
 
 import java.io.IOException;
 import java.security.GeneralSecurityException;
 import java.text.ParseException;
+import java.util.ArrayList;
 import java.util.Collections;
-import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.ConsoleHandler;
 import java.util.logging.FileHandler;
 import java.util.logging.Formatter;
@@ -79,34 +77,31 @@ public class DenovoRunner {
         .fromApplicationDefaultCredential();
 
     Map<TrioMember, String> personToCallsetNameMap = createCallsetNameMap(cmdLine);
+    List<CallSet> callsets = getCallsets(cmdLine.datasetId, genomics);
     Map<TrioMember, String> personToCallsetIdMap = createCallsetIdMap(
-        getCallsets(cmdLine.datasetId, genomics), personToCallsetNameMap);
+        callsets, personToCallsetNameMap);
     this.cmdLine = cmdLine;
-    Set<Chromosome> chromosomes = cmdLine.chromosomes == null
-        ? Chromosome.ALL
-        : EnumSet.copyOf(FluentIterable
-            .from(cmdLine.chromosomes)
-            .transform(new Function<String, Chromosome>() {
-                @Override
-                public Chromosome apply(String input) {
-                  return Chromosome.fromString(input);
-                }
-            }).toImmutableSet());
-
     // Initialize the shared object
     shared = new DenovoShared.Builder()
       .datasetId(cmdLine.datasetId)
       .numThreads(cmdLine.numThreads)
       .logger(setUpLogger(cmdLine))
-      .lrtThreshold(cmdLine.lrtThreshold)
+      .lrtThresholds(cmdLine.lrtThresholds == null
+          ? Collections.singletonList(1.0)
+          : cmdLine.lrtThresholds)
       .genomics(genomics)
       .personToCallsetNameMap(personToCallsetNameMap)
       .personToReadGroupSetIdMap(createReadGroupSetIdMap(cmdLine.datasetId, personToCallsetNameMap, genomics))
       .personToCallsetIdMap(personToCallsetIdMap)
       .callsetIdToPersonMap(DenovoUtil.getReversedMap(personToCallsetIdMap))
+      .childCallsetNames(cmdLine.childCallsetNames)
+      .childCallsetIds(cmdLine.childCallsetNames == null
+          ? null
+          : createChildCallsetIds(callsets, cmdLine.childCallsetNames))
       .startPosition(cmdLine.startPosition)
       .endPosition(cmdLine.endPosition)
-      .chromosomes(chromosomes)
+      .contigDictionary(createContigDictionary(cmdLine, genomics))
+      .chromosomes(cmdLine.chromosomes)
       .inferMethod(cmdLine.inferMethod)
       .caller(cmdLine.caller)
       .inputFileName(cmdLine.inputFileName)
@@ -114,9 +109,74 @@ public class DenovoRunner {
       .max_variant_results(cmdLine.maxVariantResults)
       .denovoMutationRate(cmdLine.denovoMutationRate)
       .sequenceErrorRate(cmdLine.sequenceErrorRate)
+      .inferenceCacheSize(cmdLine.inferenceCacheSize)
+      .tabulateDepth(cmdLine.tabulateDepth)
+      .prefilter(cmdLine.prefilter)
+      .includeIndels(cmdLine.includeIndels)
+      .perMemberStreams(cmdLine.perMemberStreams)
+      .inferenceTableFileName(cmdLine.inferenceTableFileName)
+      .countsFileName(cmdLine.countsFileName)
+      .estimateSequenceErrorRate(cmdLine.estimateSequenceErrorRate)
+      .qualityBins(cmdLine.qualityBins == null
+          ? null
+          : new QualityBins(cmdLine.qualityBins,
+              QualityBins.toPhredQuality(cmdLine.sequenceErrorRate)))
+      .readFilterChain(createReadFilterChain(cmdLine))
+      .sweepSequenceErrorRates(cmdLine.sweepSequenceErrorRates)
+      .sweepDenovoMutationRates(cmdLine.sweepDenovoMutationRates)
       .build();
   }
 
+  /**
+   * Contigs of the reference, from the local dictionary if any and otherwise from the reference
+   * bounds of the variant set. The contigs of a local dictionary take the names of the variant set
+   * so that searches match its spelling
+   * @param cmdLine Commandline arguments
+   * @param genomics Genomics API client
+   * @return dictionary of the contigs of the reference
+   * @throws IOException
+   * @throws IllegalArgumentException if a reference of the variant set is not in the local
+   *         dictionary
+   */
+  private static ContigDictionary createContigDictionary(CommandLine cmdLine, Genomics genomics)
+      throws IOException {
+    List<ReferenceBound> referenceBounds = genomics.variantsets()
+        .get(cmdLine.datasetId)
+        .setDisableGZipContent(true)
+        .execute()
+        .getReferenceBounds();
+    if (cmdLine.contigDictionaryFileName == null) {
+      return ContigDictionary.fromReferenceBounds(referenceBounds);
+    }
+    ContigDictionary contigs = ContigDictionary.fromFile(
+        DenovoUtil.getNormalizedFile(cmdLine.contigDictionaryFileName));
+    if (referenceBounds == null || referenceBounds.isEmpty()) {
+      return contigs;
+    }
+    List<String> referenceNames = new ArrayList<>();
+    for (ReferenceBound referenceBound : referenceBounds) {
+      referenceNames.add(referenceBound.getReferenceName());
+    }
+    return contigs.withReferenceNames(referenceNames);
+  }
+
+  /**
+   * Read filters of the run ; the mapping quality filter goes first when a minimum is set. Reads
+   * are only filtered on request, so that by default every read is counted as before
+   * @param cmdLine
+   * @return the read filter chain, null when no filter is requested
+   */
+  static ReadFilterChain createReadFilterChain(CommandLine cmdLine) {
+    List<ReadFilter> filters = new ArrayList<>();
+    if (cmdLine.minMappingQuality > 0) {
+      filters.add(ReadFilter.MAPPING_QUALITY);
+    }
+    if (cmdLine.readFilters != null) {
+      filters.addAll(cmdLine.readFilters);
+    }
+    return filters.isEmpty() ? null : new ReadFilterChain(filters, cmdLine.minMappingQuality);
+  }
+
   /** Set up the logger. Creates a new one each time.
    * @param cmdLine
    * @return the logger
@@ -170,6 +230,11 @@ public class DenovoRunner {
       DenovoCallers.getReadCaller(shared).execute();
     } else if (shared.getCaller() == READ && shared.getInputFileName() == null) {
       throw new IllegalArgumentException("Input calls file needed for read mode");
+    } else if (shared.getCaller() == SWEEP && (shared.getInputFileName() != null
+        || shared.getCountsFileName() != null)) {
+      DenovoCallers.getSweepCaller(shared).execute();
+    } else if (shared.getCaller() == SWEEP) {
+      throw new IllegalArgumentException("Input calls file or counts file needed for sweep mode");
     } else if (shared.getCaller() == FULL) {
       String outFile = shared.getOutputFileName();
       String tempOutFile = outFile + ".tmp";
@@ -224,6 +289,29 @@ public class DenovoRunner {
     return Collections.unmodifiableMap(callsetIdMap);
   }
 
+  /**
+   * Resolve the callset names of the children of the parents to callset ids
+   *
+   * @param callsets a list of all the callsets
+   * @param childCallsetNames callset names of the children
+   * @return callset ids in the order of the names
+   * @throws IllegalArgumentException if a name is not a callset of the dataset
+   */
+  List<String> createChildCallsetIds(List<CallSet> callsets, List<String> childCallsetNames) {
+    Map<String, String> callsetNameToIdMap = new HashMap<>();
+    for (CallSet callset : callsets) {
+      callsetNameToIdMap.put(callset.getName(), callset.getId());
+    }
+    List<String> childCallsetIds = new ArrayList<>();
+    for (String callsetName : childCallsetNames) {
+      if (!callsetNameToIdMap.containsKey(callsetName)) {
+        throw new IllegalArgumentException("Unknown child callset : " + callsetName);
+      }
+      childCallsetIds.add(callsetNameToIdMap.get(callsetName));
+    }
+    return Collections.unmodifiableList(childCallsetIds);
+  }
+
   /**
    * Create a mapping from trio members to read group set ids
    *
@@ -270,7 +358,9 @@ public class DenovoRunner {
     Map<TrioMember, String> callsetNameMap = new HashMap<>();
     callsetNameMap.put(DAD, cmdLine.dadCallsetName);
     callsetNameMap.put(MOM, cmdLine.momCallsetName);
-    callsetNameMap.put(CHILD, cmdLine.childCallsetName);
+    callsetNameMap.put(CHILD, cmdLine.childCallsetNames == null
+        ? null
+        : cmdLine.childCallsetNames.get(0));
     return Collections.unmodifiableMap(callsetNameMap);
   }
 
@@ -15,12 +15,14 @@ package com.google.cloud.genomics.denovo;
 
 import com.google.api.services.genomics.Genomics;
 import com.google.cloud.genomics.denovo.DenovoUtil.Caller;
-import com.google.cloud.genomics.denovo.DenovoUtil.Chromosome;
 import com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod;
 import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
 
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 import java.util.logging.Logger;
 
 /**
@@ -34,18 +36,33 @@ public class DenovoShared {
   private final Map<TrioMember, String> personToReadGroupSetIdMap;
   private final Map<TrioMember, String> personToCallsetNameMap;
   private final Map<String, TrioMember> callsetIdToPersonMap;
-  private final Set<Chromosome> chromosomes;
+  private final List<String> childCallsetIds;
+  private final List<String> childCallsetNames;
+  private final ContigDictionary contigDictionary;
+  private final BitSet selectedContigs;
   private final InferenceMethod inferMethod;
   private final String datasetId;
   private final Long startPosition;
   private final Long endPosition;
-  private final double lrtThreshold;
+  private final List<Double> lrtThresholds;
   private final Caller caller;
   private final String outputFileName;
   private final String inputFileName;
   private final long maxVariantResults;
   private final double sequenceErrorRate;
   private final double denovoMutationRate;
+  private final long inferenceCacheSize;
+  private final int tabulateDepth;
+  private final boolean prefilter;
+  private final boolean includeIndels;
+  private final boolean perMemberStreams;
+  private final String inferenceTableFileName;
+  private final String countsFileName;
+  private final boolean estimateSequenceErrorRate;
+  private final QualityBins qualityBins;
+  private final ReadFilterChain readFilterChain;
+  private final List<Double> sweepSequenceErrorRates;
+  private final List<Double> sweepDenovoMutationRates;
   private final Logger logger;
   
   private DenovoShared(Builder builder) {
@@ -55,18 +72,45 @@ public class DenovoShared {
     personToReadGroupSetIdMap = builder.personToReadGroupSetIdMap;
     personToCallsetNameMap = builder.personToCallsetNameMap;
     callsetIdToPersonMap = builder.callsetIdToPersonMap;
-    chromosomes = builder.chromosomes;
+    childCallsetIds = builder.childCallsetIds == null
+        ? null
+        : Collections.unmodifiableList(new ArrayList<>(builder.childCallsetIds));
+    childCallsetNames = builder.childCallsetNames == null
+        ? null
+        : Collections.unmodifiableList(new ArrayList<>(builder.childCallsetNames));
+    contigDictionary = builder.contigDictionary;
+    selectedContigs = contigDictionary == null
+        ? new BitSet()
+        : contigDictionary.getIds(builder.chromosomes);
     inferMethod = builder.inferMethod;
     datasetId = builder.datasetId;
     startPosition = builder.startPosition;
     endPosition = builder.endPosition;
     logger = builder.logger;
-    lrtThreshold = builder.lrtThreshold;
+    lrtThresholds = builder.lrtThresholds == null
+        ? Collections.singletonList(builder.lrtThreshold)
+        : Collections.unmodifiableList(new ArrayList<>(builder.lrtThresholds));
     outputFileName = builder.outputFileName;
     maxVariantResults = builder.maxVariantResults;
     inputFileName = builder.inputFileName;
     sequenceErrorRate = builder.sequenceErrorRate;
     denovoMutationRate = builder.denovoMutationRate;
+    inferenceCacheSize = builder.inferenceCacheSize;
+    tabulateDepth = builder.tabulateDepth;
+    prefilter = builder.prefilter;
+    includeIndels = builder.includeIndels;
+    perMemberStreams = builder.perMemberStreams;
+    inferenceTableFileName = builder.inferenceTableFileName;
+    countsFileName = builder.countsFileName;
+    estimateSequenceErrorRate = builder.estimateSequenceErrorRate;
+    qualityBins = builder.qualityBins;
+    readFilterChain = builder.readFilterChain;
+    sweepSequenceErrorRates = builder.sweepSequenceErrorRates == null
+        ? Collections.singletonList(builder.sequenceErrorRate)
+        : Collections.unmodifiableList(new ArrayList<>(builder.sweepSequenceErrorRates));
+    sweepDenovoMutationRates = builder.sweepDenovoMutationRates == null
+        ? Collections.singletonList(builder.denovoMutationRate)
+        : Collections.unmodifiableList(new ArrayList<>(builder.sweepDenovoMutationRates));
     caller = builder.caller;
   }
 
@@ -106,10 +150,53 @@ public class DenovoShared {
   }
 
   /**
-   * @return the chromosomes
+   * @return the callset ids of the children of the parents, the first is the CHILD callset ; null
+   *         when only the CHILD callset is known
    */
-  public Set<Chromosome> getChromosomes() {
-    return chromosomes;
+  public List<String> getChildCallsetIds() {
+    return childCallsetIds;
+  }
+
+  /**
+   * @return the callset names of the children, in the order of {@link #getChildCallsetIds()}
+   */
+  public List<String> getChildCallsetNames() {
+    return childCallsetNames;
+  }
+
+  /**
+   * @return the contigs of the reference
+   */
+  public ContigDictionary getContigDictionary() {
+    return contigDictionary;
+  }
+
+  /**
+   * @return the ids of the contigs to search, in reference order
+   */
+  public int[] getSelectedContigIds() {
+    int[] ids = new int[selectedContigs.cardinality()];
+    for (int id = selectedContigs.nextSetBit(0), idx = 0; id >= 0;
+        id = selectedContigs.nextSetBit(id + 1)) {
+      ids[idx++] = id;
+    }
+    return ids;
+  }
+
+  /**
+   * @param contigId a contig id, -1 for unknown contigs
+   * @return whether the contig is searched
+   */
+  public boolean isSelectedContig(int contigId) {
+    return contigId >= 0 && selectedContigs.get(contigId);
+  }
+
+  /**
+   * @param contig a contig name or alias
+   * @return whether the contig is searched
+   */
+  public boolean isSelectedContig(String contig) {
+    return contigDictionary != null && isSelectedContig(contigDictionary.getId(contig));
   }
 
   /**
@@ -148,10 +235,17 @@ public class DenovoShared {
   }
 
   /**
-   * @return the lrtThreshold
+   * @return the lrtThreshold used by the LRT method, the first of the lrtThresholds
    */
   public double getLrtThreshold() {
-    return lrtThreshold;
+    return lrtThresholds.get(0);
+  }
+
+  /**
+   * @return the lrtThresholds evaluated together by the ALL method
+   */
+  public List<Double> getLrtThresholds() {
+    return lrtThresholds;
   }
 
   /**
@@ -196,6 +290,90 @@ public class DenovoShared {
     return denovoMutationRate;
   }
 
+  /**
+   * @return the inferenceCacheSize
+   */
+  public long getInferenceCacheSize() {
+    return inferenceCacheSize;
+  }
+
+  /**
+   * @return the tabulateDepth
+   */
+  public int getTabulateDepth() {
+    return tabulateDepth;
+  }
+
+  /**
+   * @return whether sites are first tested against a closed form bound on their denovo odds
+   */
+  public boolean isPrefilter() {
+    return prefilter;
+  }
+
+  /**
+   * @return whether the variant stage calls indels over the genotype space of their site
+   */
+  public boolean isIncludeIndels() {
+    return includeIndels;
+  }
+
+  /**
+   * @return whether the variant stage fetches every family member by its own stream
+   */
+  public boolean isPerMemberStreams() {
+    return perMemberStreams;
+  }
+
+  /**
+   * @return the inferenceTableFileName
+   */
+  public String getInferenceTableFileName() {
+    return inferenceTableFileName;
+  }
+
+  /**
+   * @return the countsFileName
+   */
+  public String getCountsFileName() {
+    return countsFileName;
+  }
+
+  /**
+   * @return whether the sequence error rate is fitted to the candidate read counts
+   */
+  public boolean isEstimateSequenceErrorRate() {
+    return estimateSequenceErrorRate;
+  }
+
+  /**
+   * @return the qualityBins, null when base qualities are ignored
+   */
+  public QualityBins getQualityBins() {
+    return qualityBins;
+  }
+
+  /**
+   * @return the readFilterChain, null when every read is kept
+   */
+  public ReadFilterChain getReadFilterChain() {
+    return readFilterChain;
+  }
+
+  /**
+   * @return the sweepSequenceErrorRates, the sequenceErrorRate unless a grid was given
+   */
+  public List<Double> getSweepSequenceErrorRates() {
+    return sweepSequenceErrorRates;
+  }
+
+  /**
+   * @return the sweepDenovoMutationRates, the denovoMutationRate unless a grid was given
+   */
+  public List<Double> getSweepDenovoMutationRates() {
+    return sweepDenovoMutationRates;
+  }
+
   /**
    * @return the genomics
    */
@@ -214,18 +392,34 @@ public class DenovoShared {
     private Map<TrioMember, String> personToReadGroupSetIdMap;
     private Map<TrioMember, String> personToCallsetNameMap;
     private Map<String, TrioMember> callsetIdToPersonMap;
-    private Set<Chromosome> chromosomes;
+    private List<String> childCallsetIds;
+    private List<String> childCallsetNames;
+    private ContigDictionary contigDictionary;
+    private List<String> chromosomes;
     private InferenceMethod inferMethod;
     private String datasetId;
     private Long startPosition;
     private Long endPosition;
     private double lrtThreshold;
+    private List<Double> lrtThresholds;
     private Caller caller;
     private String outputFileName;
     private long maxVariantResults;
     private String inputFileName;
     private double sequenceErrorRate;
     private double denovoMutationRate;
+    private long inferenceCacheSize;
+    private int tabulateDepth;
+    private boolean prefilter;
+    private boolean includeIndels;
+    private boolean perMemberStreams;
+    private String inferenceTableFileName;
+    private String countsFileName;
+    private boolean estimateSequenceErrorRate;
+    private QualityBins qualityBins;
+    private ReadFilterChain readFilterChain;
+    private List<Double> sweepSequenceErrorRates;
+    private List<Double> sweepDenovoMutationRates;
     private Logger logger;
 
     public Builder denovoMutationRate(double denovoMutationRate) {
@@ -238,6 +432,66 @@ public class DenovoShared {
       return this;
     }
 
+    public Builder inferenceCacheSize(long inferenceCacheSize) {
+      this.inferenceCacheSize = inferenceCacheSize;
+      return this;
+    }
+
+    public Builder tabulateDepth(int tabulateDepth) {
+      this.tabulateDepth = tabulateDepth;
+      return this;
+    }
+
+    public Builder prefilter(boolean prefilter) {
+      this.prefilter = prefilter;
+      return this;
+    }
+
+    public Builder includeIndels(boolean includeIndels) {
+      this.includeIndels = includeIndels;
+      return this;
+    }
+
+    public Builder perMemberStreams(boolean perMemberStreams) {
+      this.perMemberStreams = perMemberStreams;
+      return this;
+    }
+
+    public Builder inferenceTableFileName(String inferenceTableFileName) {
+      this.inferenceTableFileName = inferenceTableFileName;
+      return this;
+    }
+
+    public Builder countsFileName(String countsFileName) {
+      this.countsFileName = countsFileName;
+      return this;
+    }
+
+    public Builder estimateSequenceErrorRate(boolean estimateSequenceErrorRate) {
+      this.estimateSequenceErrorRate = estimateSequenceErrorRate;
+      return this;
+    }
+
+    public Builder qualityBins(QualityBins qualityBins) {
+      this.qualityBins = qualityBins;
+      return this;
+    }
+
+    public Builder readFilterChain(ReadFilterChain readFilterChain) {
+      this.readFilterChain = readFilterChain;
+      return this;
+    }
+
+    public Builder sweepSequenceErrorRates(List<Double> sweepSequenceErrorRates) {
+      this.sweepSequenceErrorRates = sweepSequenceErrorRates;
+      return this;
+    }
+
+    public Builder sweepDenovoMutationRates(List<Double> sweepDenovoMutationRates) {
+      this.sweepDenovoMutationRates = sweepDenovoMutationRates;
+      return this;
+    }
+
     
     public Builder max_variant_results(long max_variant_results) {
       this.maxVariantResults = max_variant_results;
@@ -264,6 +518,11 @@ public class DenovoShared {
       return this;
     }
 
+    public Builder lrtThresholds(List<Double> lrtThresholds) {
+      this.lrtThresholds = lrtThresholds;
+      return this;
+    }
+
     public Builder genomics(Genomics genomics) {
       this.genomics = genomics;
       return this;
@@ -299,7 +558,26 @@ public class DenovoShared {
       return this;
     }
 
-    public Builder chromosomes(Set<Chromosome> chromosomes) {
+    public Builder childCallsetIds(List<String> childCallsetIds) {
+      this.childCallsetIds = childCallsetIds;
+      return this;
+    }
+
+    public Builder childCallsetNames(List<String> childCallsetNames) {
+      this.childCallsetNames = childCallsetNames;
+      return this;
+    }
+
+    public Builder contigDictionary(ContigDictionary contigDictionary) {
+      this.contigDictionary = contigDictionary;
+      return this;
+    }
+
+    /**
+     * @param chromosomes names or aliases of the contigs to search, null for the default contigs
+     *        of {@link ContigDictionary#getIds}
+     */
+    public Builder chromosomes(List<String> chromosomes) {
       this.chromosomes = chromosomes;
       return this;
     }
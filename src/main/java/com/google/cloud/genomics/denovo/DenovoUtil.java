@@ -13,11 +13,9 @@
  */
 package com.google.cloud.genomics.denovo;
 
-import org.javatuples.Triplet;
-
 import java.io.File;
 import java.util.Arrays;
-import java.util.Collections;
+import java.util.BitSet;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
@@ -30,34 +28,43 @@ import java.util.logging.Level;
 class DenovoUtil {
 
   public static final double EPS = 1e-12;
-  public static Map<Triplet<Genotype, Genotype, Genotype>, Boolean> isDenovoMap = new HashMap<>();
   public static int READ_LOG_FREQ = 100;
   public static int VARIANT_LOG_FREQ = 1000000;
-  
+
+  private static final Genotype[] GENOTYPES = Genotype.values();
+  private static final int NUM_GENOTYPES = GENOTYPES.length;
+
+  /* Trio genotypes that are denovo, indexed as in {@link #getTrioGenotypeIndex} */
+  private static final BitSet DENOVO_TRIO_GENOTYPES =
+      new BitSet(NUM_GENOTYPES * NUM_GENOTYPES * NUM_GENOTYPES);
+
+  /* Number of the 4 allele transmissions from the parents giving the child genotype, indexed as in
+   * {@link #getTrioGenotypeIndex} */
+  private static final byte[] TRANSMISSION_COUNTS =
+      new byte[NUM_GENOTYPES * NUM_GENOTYPES * NUM_GENOTYPES];
+
   static {
-    for (Genotype genotypeDad : Genotype.values()) {
-      for (Genotype genotypeMom : Genotype.values()) {
-        for (Genotype genotypeChild : Genotype.values()) {
-          String childAlleles = genotypeChild.name();
-          String momAlleles = genotypeMom.name();
-          String dadAlleles = genotypeDad.name();
-
-          String c1 = childAlleles.substring(0, 1);
-          String c2 = childAlleles.substring(1, 2);
-          boolean alleleInParents = momAlleles.contains(c1) & dadAlleles.contains(c2);
-          boolean alleleInParentsMirror = momAlleles.contains(c2) & dadAlleles.contains(c1);
-          boolean isDenovo = !(alleleInParents || alleleInParentsMirror);
-          isDenovoMap.put(Triplet.with(genotypeDad, genotypeMom, genotypeChild), isDenovo);
+    for (Genotype genotypeDad : GENOTYPES) {
+      for (Genotype genotypeMom : GENOTYPES) {
+        for (Allele dadAllele : genotypeDad.getAllelePair()) {
+          for (Allele momAllele : genotypeMom.getAllelePair()) {
+            TRANSMISSION_COUNTS[getTrioGenotypeIndex(genotypeDad.ordinal(), genotypeMom.ordinal(),
+                Genotype.valueOfPairAlleles(dadAllele, momAllele).ordinal())]++;
+          }
+        }
+        for (Genotype genotypeChild : GENOTYPES) {
+          int index = getTrioGenotypeIndex(genotypeDad.ordinal(), genotypeMom.ordinal(),
+              genotypeChild.ordinal());
+          DENOVO_TRIO_GENOTYPES.set(index, TRANSMISSION_COUNTS[index] == 0);
         }
       }
     }
-    isDenovoMap = Collections.unmodifiableMap(isDenovoMap);
   }
 
   /**
    * Type of Caller. Variant bases or read based (more expensive)
    */
-  public enum Caller { VARIANT, READ, FULL }
+  public enum Caller { VARIANT, READ, FULL, SWEEP }
   
   public enum LogLevel { 
     ERROR(Level.SEVERE), 
@@ -82,6 +89,11 @@ class DenovoUtil {
     }
   }
   
+  /**
+   * Human chromosomes
+   * @deprecated contigs are resolved through a {@link ContigDictionary} of the reference
+   */
+  @Deprecated
   public enum Chromosome {
     CHR1,
     CHR2,
@@ -208,17 +220,32 @@ class DenovoUtil {
       HOMOZYGOUS, HETEROZYGOUS
     }
 
+    /* Genotype made of a pair of alleles, indexed by the allele ordinals in either order */
+    private static final Genotype[][] PAIR_GENOTYPES =
+        new Genotype[Allele.values().length][Allele.values().length];
+
+    static {
+      for (Genotype genotype : values()) {
+        Allele[] allelePair = genotype.getAllelePair();
+        PAIR_GENOTYPES[allelePair[0].ordinal()][allelePair[1].ordinal()] = genotype;
+        PAIR_GENOTYPES[allelePair[1].ordinal()][allelePair[0].ordinal()] = genotype;
+      }
+    }
+
     private final Zygosity zygosity;
     private final EnumSet<Allele> alleles;
+    private final Allele[] allelePair;
 
     Genotype(Zygosity zygosity, Allele a) {
       this.zygosity = zygosity;
       alleles = EnumSet.of(a);
+      allelePair = new Allele[] {a, a};
     }
 
     Genotype(Zygosity zygosity, Allele a, Allele b) {
       this.zygosity = zygosity;
       alleles = EnumSet.of(a, b);
+      allelePair = new Allele[] {a, b};
     }
 
     /**
@@ -227,9 +254,15 @@ class DenovoUtil {
      * @return a genotype from a pair of allele objects
      */
     public static Genotype valueOfPairAlleles(Allele a, Allele b) {
-      Allele[] allelePair = new Allele[] {a, b};
-      Arrays.sort(allelePair);
-      return valueOf(allelePair[0].toString() + allelePair[1].toString());
+      return PAIR_GENOTYPES[a.ordinal()][b.ordinal()];
+    }
+
+    /**
+     * @return both alleles of the genotype in order, the same allele twice when homozygous. Shared,
+     *         must not be modified
+     */
+    Allele[] getAllelePair() {
+      return allelePair;
     }
 
     /**
@@ -276,6 +309,21 @@ class DenovoUtil {
       boolean isDenovo(BayesInferenceResult result, DenovoShared shared) {
         return result.getLikelihoodRatio() > shared.getLrtThreshold();
       }
+    },
+    /** Evaluates MAP, Bayes and LRT at every threshold ; denovo if any of them calls it */
+    ALL {
+      @Override
+      boolean isDenovo(BayesInferenceResult result, DenovoShared shared) {
+        if (MAP.isDenovo(result, shared) || BAYES.isDenovo(result, shared)) {
+          return true;
+        }
+        for (double lrtThreshold : shared.getLrtThresholds()) {
+          if (result.getLikelihoodRatio() > lrtThreshold) {
+            return true;
+          }
+        }
+        return false;
+      }
     };
 
     /**
@@ -315,7 +363,37 @@ class DenovoUtil {
    */
   public static boolean checkTrioGenoTypeIsDenovo(Genotype genotypeDad, Genotype genotypeMom,
       Genotype genotypeChild) {
-    return isDenovoMap.get(Triplet.with(genotypeDad, genotypeMom, genotypeChild));
+    return DENOVO_TRIO_GENOTYPES.get(getTrioGenotypeIndex(genotypeDad.ordinal(),
+        genotypeMom.ordinal(), genotypeChild.ordinal()));
+  }
+
+  /**
+   * Index of a trio genotype in the trio genotype tables ; the genotype ordinals are the digits of
+   * the index with the child varying fastest
+   * @param dadOrdinal ordinal of the dad genotype
+   * @param momOrdinal ordinal of the mom genotype
+   * @param childOrdinal ordinal of the child genotype
+   * @return index of the trio genotype
+   */
+  static int getTrioGenotypeIndex(int dadOrdinal, int momOrdinal, int childOrdinal) {
+    return (dadOrdinal * NUM_GENOTYPES + momOrdinal) * NUM_GENOTYPES + childOrdinal;
+  }
+
+  /**
+   * @param trioIndex index of a trio genotype, see {@link #getTrioGenotypeIndex}
+   * @return whether the child genotype can't be inherited from the parent genotypes
+   */
+  static boolean isDenovoTrioGenotype(int trioIndex) {
+    return DENOVO_TRIO_GENOTYPES.get(trioIndex);
+  }
+
+  /**
+   * @param trioIndex index of a trio genotype, see {@link #getTrioGenotypeIndex}
+   * @return the number of the 4 equally likely allele transmissions from the parents giving the
+   *         child genotype, 0 when denovo
+   */
+  static int getTransmissionCount(int trioIndex) {
+    return TRANSMISSION_COUNTS[trioIndex];
   }
 
   /**
@@ -0,0 +1,233 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+
+/**
+ * Sequencing error model. Holds the log likelihood of a read base given the genotype of an
+ * individual, precomputed for one sequence error rate or for the error rate of every base quality
+ * bin. Read base counts of an individual are then laid out by bin and then by allele ordinal.
+ * Immutable and shared between threads
+ */
+public class ErrorModel {
+
+  private static final Genotype[] GENOTYPES = Genotype.values();
+  private static final Allele[] ALLELES = Allele.values();
+
+  private final double sequenceErrorRate;
+  private final double[][][] binLogLikelihoodMatrix;
+  private final double[][] logLikelihoodMatrix;
+  private final double[][] transposedLogLikelihoodMatrix;
+  private final boolean finite;
+
+  /**
+   * @param sequenceErrorRate probability of a read base being wrong
+   */
+  public ErrorModel(double sequenceErrorRate) {
+    this(new double[] {sequenceErrorRate});
+  }
+
+  /**
+   * @param binErrorRates probability of a read base being wrong for every base quality bin
+   */
+  public ErrorModel(double[] binErrorRates) {
+    this.sequenceErrorRate = binErrorRates[0];
+    binLogLikelihoodMatrix = new double[binErrorRates.length][GENOTYPES.length][ALLELES.length];
+    transposedLogLikelihoodMatrix =
+        new double[binErrorRates.length * ALLELES.length][GENOTYPES.length];
+
+    boolean allFinite = true;
+    for (int bin = 0; bin < binErrorRates.length; bin++) {
+      double errorRate = binErrorRates[bin];
+      for (Genotype genotype : GENOTYPES) {
+        for (Allele base : ALLELES) {
+          double logLikelihood = getBaseLogLikelihood(errorRate, ALLELES.length,
+              genotype.isHomozygous(), genotype.containsAllele(base));
+          binLogLikelihoodMatrix[bin][genotype.ordinal()][base.ordinal()] = logLikelihood;
+          transposedLogLikelihoodMatrix[bin * ALLELES.length + base.ordinal()]
+              [genotype.ordinal()] = logLikelihood;
+          allFinite &= !Double.isInfinite(logLikelihood) && !Double.isNaN(logLikelihood);
+        }
+      }
+    }
+    logLikelihoodMatrix = binLogLikelihoodMatrix[0];
+    finite = allFinite;
+  }
+
+  /**
+   * @param shared shared parameters for tool
+   * @return error model for the quality bins of the run if any, otherwise for its sequence error
+   *         rate
+   */
+  public static ErrorModel fromShared(DenovoShared shared) {
+    return shared.getQualityBins() == null
+        ? new ErrorModel(shared.getSequenceErrorRate())
+        : new ErrorModel(shared.getQualityBins().getBinErrorRates());
+  }
+
+  /**
+   * Log likelihood of a read supporting an allele ; a wrong read supports each other allele
+   * equally
+   *
+   * @param errorRate probability of a read supporting a wrong allele
+   * @param numAlleles number of alleles
+   * @param homozygous whether the genotype is homozygous
+   * @param match whether the genotype carries the allele
+   * @return log likelihood of the genotype generating the read
+   */
+  static double getBaseLogLikelihood(double errorRate, int numAlleles, boolean homozygous,
+      boolean match) {
+    return !match
+        ? Math.log(errorRate) - Math.log(numAlleles - 1)
+        : homozygous
+            ? Math.log(1 - errorRate)
+            : Math.log(1 - (numAlleles - 2) * errorRate / (numAlleles - 1)) - Math.log(2);
+  }
+
+  /**
+   * Get the log likelihood for a particular read base
+   *
+   * @param genotype
+   * @param base
+   * @return logLikeliHood likelihood of genotype generating the base
+   */
+  public double getBaseLogLikelihood(Genotype genotype, Allele base) {
+    if (base == null || genotype == null) {
+      throw new NullPointerException("Can't get base log likelihood of null members");
+    }
+    return logLikelihoodMatrix[genotype.ordinal()][base.ordinal()];
+  }
+
+  /**
+   * Get the log likelihood for a read base of a base quality bin
+   *
+   * @param genotype
+   * @param base
+   * @param bin base quality bin
+   * @return logLikeliHood likelihood of genotype generating the base
+   */
+  public double getBaseLogLikelihood(Genotype genotype, Allele base, int bin) {
+    if (base == null || genotype == null) {
+      throw new NullPointerException("Can't get base log likelihood of null members");
+    }
+    return binLogLikelihoodMatrix[bin][genotype.ordinal()][base.ordinal()];
+  }
+
+  /**
+   * Log likelihood of the reads of an individual for every genotype ; the product of the log
+   * likelihood matrices with the read base counts of every bin
+   *
+   * @param alleleCounts read base counts indexed by bin and then allele ordinal starting at offset
+   * @param offset position of the first count in alleleCounts
+   * @param genotypeLogLikelihood output, indexed by genotype ordinal
+   */
+  public void computeGenotypeLogLikelihood(int[] alleleCounts, int offset,
+      double[] genotypeLogLikelihood) {
+    computeGenotypeLogLikelihood(transposedLogLikelihoodMatrix, alleleCounts, offset,
+        genotypeLogLikelihood);
+  }
+
+  /**
+   * Product of a log likelihood matrix with read counts, skipping zero counts
+   *
+   * @param transposedLogLikelihoodMatrix log likelihoods indexed by read count and then genotype
+   * @param alleleCounts read counts starting at offset, as many as the matrix has rows
+   * @param offset position of the first count in alleleCounts
+   * @param genotypeLogLikelihood output, indexed by genotype
+   */
+  static void computeGenotypeLogLikelihood(double[][] transposedLogLikelihoodMatrix,
+      int[] alleleCounts, int offset, double[] genotypeLogLikelihood) {
+    int numGenotypes = transposedLogLikelihoodMatrix[0].length;
+    for (int genotype = 0; genotype < numGenotypes; genotype++) {
+      genotypeLogLikelihood[genotype] = 0.0;
+    }
+    for (int allele = 0; allele < transposedLogLikelihoodMatrix.length; allele++) {
+      int count = alleleCounts[offset + allele];
+      if (count == 0) {
+        continue;
+      }
+      double[] baseLogLikelihood = transposedLogLikelihoodMatrix[allele];
+      for (int genotype = 0; genotype < numGenotypes; genotype++) {
+        genotypeLogLikelihood[genotype] += count * baseLogLikelihood[genotype];
+      }
+    }
+  }
+
+  /**
+   * Batch counterpart of {@link #computeGenotypeLogLikelihood(int[], int, double[])} over a range
+   * of sites. Zero counts are not skipped so the site loops have no branches ; only valid when
+   * the model is {@link #isFinite} and has a single bin
+   *
+   * @param alleleCounts read base counts indexed by allele row and then by site
+   * @param row row of the first allele of the trio member
+   * @param start first site
+   * @param length number of sites
+   * @param genotypeLogLikelihood output, indexed by genotype ordinal and then by site - start
+   */
+  void computeGenotypeLogLikelihood(int[][] alleleCounts, int row, int start, int length,
+      double[][] genotypeLogLikelihood) {
+    for (int genotype = 0; genotype < GENOTYPES.length; genotype++) {
+      double[] logLikelihood = genotypeLogLikelihood[genotype];
+      for (int site = 0; site < length; site++) {
+        logLikelihood[site] = 0.0;
+      }
+      for (int allele = 0; allele < ALLELES.length; allele++) {
+        double baseLogLikelihood = logLikelihoodMatrix[genotype][allele];
+        int[] counts = alleleCounts[row + allele];
+        for (int site = 0; site < length; site++) {
+          logLikelihood[site] += counts[start + site] * baseLogLikelihood;
+        }
+      }
+    }
+  }
+
+  /**
+   * @return whether all log likelihoods are finite, i.e. the error rate is strictly between 0 and
+   *         1
+   */
+  public boolean isFinite() {
+    return finite;
+  }
+
+  /**
+   * @return the number of base quality bins, 1 for a single sequence error rate
+   */
+  public int getNumQualityBins() {
+    return binLogLikelihoodMatrix.length;
+  }
+
+  /**
+   * @return the number of read base counts of an individual
+   */
+  public int getNumAlleleCounts() {
+    return transposedLogLikelihoodMatrix.length;
+  }
+
+  /**
+   * @return the sequenceErrorRate, the error rate of the first bin with quality bins
+   */
+  public double getSequenceErrorRate() {
+    return sequenceErrorRate;
+  }
+
+  /**
+   * @return log likelihoods of the first bin indexed by genotype ordinal and then allele ordinal.
+   *         Shared, must not be modified
+   */
+  public double[][] getLogLikelihoodMatrix() {
+    return logLikelihoodMatrix;
+  }
+}
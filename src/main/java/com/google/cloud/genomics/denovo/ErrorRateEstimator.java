@@ -0,0 +1,193 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Fits the sequence error rate to the read counts of the candidate positions by expectation
+ * maximization. Every pileup of a trio member is reduced to the counts of its most common allele,
+ * its second most common allele and the rest ; these triples are tallied in per thread histograms,
+ * which are the sufficient statistics of the fit so it never goes back to the reads.
+ * <p>
+ * A pileup is modeled as coming either from a homozygous genotype of its most common allele or
+ * from the heterozygous genotype of its two most common alleles, with the base likelihoods of
+ * {@link ErrorModel} ; the fraction of heterozygous pileups is fitted along with the error rate
+ */
+public class ErrorRateEstimator {
+
+  /** Largest error rate ; beyond it a wrong base is more likely than the right one */
+  static final double MAX_ERROR_RATE = 0.75;
+
+  static final int MAX_ITERATIONS = 200;
+  static final double TOLERANCE = 1e-10;
+
+  private static final int COUNT_BITS = 21;
+  private static final long COUNT_MASK = (1L << COUNT_BITS) - 1;
+
+  private final Queue<Multiset<Long>> histograms = new ConcurrentLinkedQueue<>();
+  private final ThreadLocal<Multiset<Long>> threadHistogram = new ThreadLocal<Multiset<Long>>() {
+    @Override
+    protected Multiset<Long> initialValue() {
+      Multiset<Long> histogram = HashMultiset.create();
+      histograms.add(histogram);
+      return histogram;
+    }
+  };
+
+  /**
+   * Tallies the pileups of a candidate position in the histogram of the calling thread
+   *
+   * @param alleleCounts read base counts of the trio laid out as in
+   *        {@link DenovoBayesNet#getAlleleCountIndex}
+   */
+  public void add(int[] alleleCounts) {
+    Multiset<Long> histogram = threadHistogram.get();
+    for (int offset = 0; offset < alleleCounts.length; offset += DenovoBayesNet.NUM_ALLELES) {
+      int first = 0;
+      int second = 0;
+      int total = 0;
+      for (int allele = 0; allele < DenovoBayesNet.NUM_ALLELES; allele++) {
+        int count = alleleCounts[offset + allele];
+        total += count;
+        if (count > first) {
+          second = first;
+          first = count;
+        } else if (count > second) {
+          second = count;
+        }
+      }
+      if (total > 0) {
+        histogram.add(encode(first, second, total - first - second));
+      }
+    }
+  }
+
+  /**
+   * @return the merged histogram of all threads, keyed by {@link #encode}
+   */
+  Multiset<Long> getStatistics() {
+    Multiset<Long> statistics = HashMultiset.create();
+    for (Multiset<Long> histogram : histograms) {
+      statistics.addAll(histogram);
+    }
+    return statistics;
+  }
+
+  /**
+   * @param initialErrorRate starting point of the fit
+   * @return the fitted sequence error rate, the initial rate if no pileup was added
+   */
+  public double estimate(double initialErrorRate) {
+    return estimate(getStatistics(), initialErrorRate);
+  }
+
+  /**
+   * Expectation maximization over a histogram of pileups
+   *
+   * @param statistics pileup histogram keyed by {@link #encode}
+   * @param initialErrorRate starting point of the fit
+   * @return the fitted sequence error rate
+   */
+  static double estimate(Multiset<Long> statistics, double initialErrorRate) {
+    if (!(initialErrorRate > 0.0 && initialErrorRate < MAX_ERROR_RATE)) {
+      throw new IllegalArgumentException("Initial error rate out of range : " + initialErrorRate);
+    }
+    if (statistics.isEmpty()) {
+      return initialErrorRate;
+    }
+    double errorRate = initialErrorRate;
+    double hetFraction = 0.5;
+    for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+      // base likelihoods of the bayes net at the current rate
+      ErrorModel errorModel = new ErrorModel(errorRate);
+      double logHomMatch = errorModel.getBaseLogLikelihood(Genotype.AA, Allele.A);
+      double logHetMatch = errorModel.getBaseLogLikelihood(Genotype.AC, Allele.A);
+      double logMismatch = errorModel.getBaseLogLikelihood(Genotype.AA, Allele.C);
+
+      // expected errors and matches over homozygous and heterozygous pileups
+      double errors = 0.0;
+      double homMatches = 0.0;
+      double hetMatches = 0.0;
+      double hetPileups = 0.0;
+      for (Multiset.Entry<Long> entry : statistics.entrySet()) {
+        long key = entry.getElement();
+        int first = (int) (key >>> 2 * COUNT_BITS);
+        int second = (int) (key >>> COUNT_BITS & COUNT_MASK);
+        int rest = (int) (key & COUNT_MASK);
+        double homLogLikelihood = Math.log(1 - hetFraction) + first * logHomMatch
+            + (second + rest) * logMismatch;
+        double hetLogLikelihood = Math.log(hetFraction) + (first + second) * logHetMatch
+            + rest * logMismatch;
+        double hetPosterior =
+            1.0 / (1.0 + Math.exp(homLogLikelihood - hetLogLikelihood));
+        double homPosterior = 1.0 - hetPosterior;
+        int count = entry.getCount();
+        errors += count * (homPosterior * (second + rest) + hetPosterior * rest);
+        homMatches += count * homPosterior * first;
+        hetMatches += count * hetPosterior * (first + second);
+        hetPileups += count * hetPosterior;
+      }
+
+      double nextErrorRate = maximize(errors, homMatches, hetMatches);
+      hetFraction = Math.min(Math.max(hetPileups / statistics.size(), Double.MIN_NORMAL),
+          1.0 - 1e-12);
+      boolean converged = Math.abs(nextErrorRate - errorRate) < TOLERANCE * errorRate;
+      errorRate = nextErrorRate;
+      if (converged) {
+        break;
+      }
+    }
+    return errorRate;
+  }
+
+  /**
+   * M step ; maximizes errors * log(e / 3) + homMatches * log(1 - e) + hetMatches * log(1 / 2 -
+   * e / 3), the expected log likelihood under the base likelihoods of {@link ErrorModel}, over e
+   * by bisection on its derivative, which is decreasing
+   */
+  private static double maximize(double errors, double homMatches, double hetMatches) {
+    double low = Double.MIN_NORMAL;
+    double high = MAX_ERROR_RATE;
+    if (errors <= 0.0) {
+      return low;
+    }
+    for (int iteration = 0; iteration < 100; iteration++) {
+      double mid = 0.5 * (low + high);
+      double derivative = errors / mid - homMatches / (1 - mid) - 2 * hetMatches / (3 - 2 * mid);
+      if (derivative > 0) {
+        low = mid;
+      } else {
+        high = mid;
+      }
+    }
+    return 0.5 * (low + high);
+  }
+
+  /**
+   * @return key of a pileup in the histogram
+   */
+  static long encode(int first, int second, int rest) {
+    if (Math.max(first, Math.max(second, rest)) > COUNT_MASK) {
+      throw new IllegalArgumentException("Pileup too deep to tally : " + first);
+    }
+    return (long) first << 2 * COUNT_BITS | (long) second << COUNT_BITS | rest;
+  }
+}
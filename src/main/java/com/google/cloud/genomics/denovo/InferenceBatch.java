@@ -0,0 +1,278 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.NUM_ALLELES;
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.NUM_GENOTYPES;
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.TRIO_MEMBERS;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import java.util.Map;
+
+/**
+ * A batch of sites for {@link DenovoBayesNet#performInference(InferenceBatch)} laid out as
+ * structure of arrays. Read base counts are held per trio member and allele across sites, results
+ * in parallel arrays indexed by site, so the inference loops run over contiguous site arrays. The
+ * batch also owns the working space of the inference and can be cleared and refilled. Not thread
+ * safe; each thread should own its batch
+ */
+public class InferenceBatch {
+
+  /** Sites processed together by the inference ; sized to keep the working space in cache */
+  static final int BLOCK_SIZE = 256;
+
+  private final int capacity;
+  private int size;
+
+  // Inputs, indexed by member ordinal * NUM_ALLELES + allele ordinal and then by site
+  private final int[][] alleleCounts;
+
+  // Outputs, indexed by site
+  private final int[] maxDadOrdinal;
+  private final int[] maxMomOrdinal;
+  private final int[] maxChildOrdinal;
+  private final double[] maxLikelihood;
+  private final double[] bayesDenovoProb;
+  private final double[] likelihoodRatio;
+  private final double[] mendelianLogLikelihood;
+  private final double[] denovoLogLikelihood;
+
+  // Working space, indexed by site within a block
+  final double[][][] individualLogLikelihood;
+  final double[] maxLogLikelihood;
+  final int[] maxTrioIndex;
+  final double[] memberShift;
+  final double[] logShift;
+  final double[] denovoChild;
+  final double[] mendelianChild;
+  final double[] denovoSum;
+  final double[] mendelianSum;
+
+  /**
+   * @param capacity max number of sites in the batch
+   */
+  public InferenceBatch(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Batch capacity must be positive : " + capacity);
+    }
+    this.capacity = capacity;
+    alleleCounts = new int[TRIO_MEMBERS.length * NUM_ALLELES][capacity];
+    maxDadOrdinal = new int[capacity];
+    maxMomOrdinal = new int[capacity];
+    maxChildOrdinal = new int[capacity];
+    maxLikelihood = new double[capacity];
+    bayesDenovoProb = new double[capacity];
+    likelihoodRatio = new double[capacity];
+    mendelianLogLikelihood = new double[capacity];
+    denovoLogLikelihood = new double[capacity];
+
+    int blockSize = Math.min(capacity, BLOCK_SIZE);
+    individualLogLikelihood = new double[TRIO_MEMBERS.length][NUM_GENOTYPES][blockSize];
+    maxLogLikelihood = new double[blockSize];
+    maxTrioIndex = new int[blockSize];
+    memberShift = new double[blockSize];
+    logShift = new double[blockSize];
+    denovoChild = new double[blockSize];
+    mendelianChild = new double[blockSize];
+    denovoSum = new double[blockSize];
+    mendelianSum = new double[blockSize];
+  }
+
+  /**
+   * Appends a site
+   *
+   * @param siteAlleleCounts read base counts laid out as described in
+   *        {@link DenovoBayesNet#getAlleleCountIndex}
+   * @return the index of the site in the batch
+   */
+  public int add(int[] siteAlleleCounts) {
+    if (size == capacity) {
+      throw new IllegalStateException("Batch is full : " + capacity);
+    }
+    for (int row = 0; row < alleleCounts.length; row++) {
+      alleleCounts[row][size] = siteAlleleCounts[row];
+    }
+    return size++;
+  }
+
+  /**
+   * Appends a site
+   *
+   * @param readSummaryMap the summary statistics of the reads at the site
+   * @return the index of the site in the batch
+   */
+  public int add(Map<TrioMember, ReadSummary> readSummaryMap) {
+    return add(DenovoBayesNet.getAlleleCounts(readSummaryMap));
+  }
+
+  /**
+   * Removes all sites so the batch can be refilled
+   */
+  public void clear() {
+    size = 0;
+  }
+
+  /**
+   * @param person the trio member
+   * @param allele the read base
+   * @return the counts of the read base for the trio member indexed by site. This is the backing
+   *         array, offline jobs may fill it directly and call {@link #setSize}
+   */
+  public int[] getAlleleCounts(TrioMember person, Allele allele) {
+    return alleleCounts[DenovoBayesNet.getAlleleCountIndex(person, allele)];
+  }
+
+  int[][] getAlleleCounts() {
+    return alleleCounts;
+  }
+
+  /**
+   * Copies the counts of one site
+   *
+   * @param site index of the site
+   * @param siteAlleleCounts output, laid out as described in
+   *        {@link DenovoBayesNet#getAlleleCountIndex}
+   */
+  void getSiteAlleleCounts(int site, int[] siteAlleleCounts) {
+    for (int row = 0; row < alleleCounts.length; row++) {
+      siteAlleleCounts[row] = alleleCounts[row][site];
+    }
+  }
+
+  /**
+   * Overwrites the results of one site
+   */
+  void set(int site, int maxDad, int maxMom, int maxChild, double maxLogLikelihood,
+      double denovoProb, double ratio, double mendelianLog, double denovoLog) {
+    maxDadOrdinal[site] = maxDad;
+    maxMomOrdinal[site] = maxMom;
+    maxChildOrdinal[site] = maxChild;
+    maxLikelihood[site] = maxLogLikelihood;
+    bayesDenovoProb[site] = denovoProb;
+    likelihoodRatio[site] = ratio;
+    mendelianLogLikelihood[site] = mendelianLog;
+    denovoLogLikelihood[site] = denovoLog;
+  }
+
+  /**
+   * Copies the result of one site
+   *
+   * @param site index of the site
+   * @param result container to write the result into
+   * @return the result container
+   */
+  public MutableBayesInferenceResult getResult(int site, MutableBayesInferenceResult result) {
+    checkSite(site);
+    return result.set(maxDadOrdinal[site], maxMomOrdinal[site], maxChildOrdinal[site],
+        maxLikelihood[site], bayesDenovoProb[site], likelihoodRatio[site],
+        mendelianLogLikelihood[site], denovoLogLikelihood[site]);
+  }
+
+  /**
+   * @param site index of the site
+   * @return an immutable copy of the result of one site
+   */
+  public BayesInferenceResult getResult(int site) {
+    return getResult(site, new MutableBayesInferenceResult()).toBayesInferenceResult();
+  }
+
+  private void checkSite(int site) {
+    if (site < 0 || site >= size) {
+      throw new IndexOutOfBoundsException(String.format("Site %d of %d", site, size));
+    }
+  }
+
+  /**
+   * @param size the number of sites filled in directly through {@link #getAlleleCounts}
+   */
+  public void setSize(int size) {
+    if (size < 0 || size > capacity) {
+      throw new IllegalArgumentException(
+          String.format("Batch size must be between 0 and %d : %d", capacity, size));
+    }
+    this.size = size;
+  }
+
+  /**
+   * @return the number of sites in the batch
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return the capacity
+   */
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the maxDadOrdinal per site
+   */
+  public int[] getMaxDadOrdinal() {
+    return maxDadOrdinal;
+  }
+
+  /**
+   * @return the maxMomOrdinal per site
+   */
+  public int[] getMaxMomOrdinal() {
+    return maxMomOrdinal;
+  }
+
+  /**
+   * @return the maxChildOrdinal per site
+   */
+  public int[] getMaxChildOrdinal() {
+    return maxChildOrdinal;
+  }
+
+  /**
+   * @return the maxLikelihood per site
+   */
+  public double[] getMaxLikelihood() {
+    return maxLikelihood;
+  }
+
+  /**
+   * @return the bayesDenovoProb per site
+   */
+  public double[] getBayesDenovoProb() {
+    return bayesDenovoProb;
+  }
+
+  /**
+   * @return the likelihoodRatio per site
+   */
+  public double[] getLikelihoodRatio() {
+    return likelihoodRatio;
+  }
+
+  /**
+   * @return the mendelianLogLikelihood per site
+   */
+  public double[] getMendelianLogLikelihood() {
+    return mendelianLogLikelihood;
+  }
+
+  /**
+   * @return the denovoLogLikelihood per site
+   */
+  public double[] getDenovoLogLikelihood() {
+    return denovoLogLikelihood;
+  }
+}
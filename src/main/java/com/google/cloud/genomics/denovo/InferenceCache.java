@@ -0,0 +1,139 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+
+import java.util.Arrays;
+
+/**
+ * Bounded cache of inference results in front of the Bayes net. Sites across a genome tend to show
+ * the same trio pileups, so results are memoized by the trio allele counts together with the model
+ * parameters. Safe for concurrent use ; least recently used entries are evicted once the cache is
+ * full
+ */
+class InferenceCache {
+  private final DenovoBayesNet dbn;
+  private final double sequenceErrorRate;
+  private final double denovoMutationRate;
+  private final long maximumSize;
+  private final Cache<InferenceKey, BayesInferenceResult> cache;
+
+  /**
+   * @param dbn the bayes net computing the results
+   * @param shared the shared parameters for the tool
+   * @param maximumSize maximum number of cached results ; 0 disables caching
+   */
+  InferenceCache(DenovoBayesNet dbn, DenovoShared shared, long maximumSize) {
+    if (maximumSize < 0) {
+      throw new IllegalArgumentException("Cache size must be non negative : " + maximumSize);
+    }
+    this.dbn = dbn;
+    this.sequenceErrorRate = shared.getSequenceErrorRate();
+    this.denovoMutationRate = shared.getDenovoMutationRate();
+    this.maximumSize = maximumSize;
+    this.cache = CacheBuilder.newBuilder()
+        .maximumSize(maximumSize)
+        .recordStats()
+        .build();
+  }
+
+  /**
+   * Returns the cached inference result for the allele counts, running the inference on a miss
+   *
+   * @param alleleCounts read base counts laid out as described in
+   *        {@link DenovoBayesNet#getAlleleCountIndex}
+   * @return result of the inference
+   */
+  BayesInferenceResult performInference(int[] alleleCounts) {
+    if (maximumSize == 0) {
+      return compute(alleleCounts);
+    }
+    InferenceKey key = new InferenceKey(alleleCounts, sequenceErrorRate, denovoMutationRate);
+    BayesInferenceResult result = cache.getIfPresent(key);
+    if (result == null) {
+      // Concurrent misses on the same key compute the same value ; the last put wins
+      result = compute(alleleCounts);
+      cache.put(key, result);
+    }
+    return result;
+  }
+
+  private BayesInferenceResult compute(int[] alleleCounts) {
+    return dbn.performInference(alleleCounts, new MutableBayesInferenceResult())
+        .toBayesInferenceResult();
+  }
+
+  /**
+   * @return hit, miss and eviction counts of the cache
+   */
+  CacheStats getStats() {
+    return cache.stats();
+  }
+
+  /**
+   * @return the approximate number of cached results
+   */
+  long size() {
+    return cache.size();
+  }
+
+  /**
+   * @return the maximumSize
+   */
+  long getMaximumSize() {
+    return maximumSize;
+  }
+
+  /**
+   * Cache key : a private copy of the trio allele counts and the parameters of the model
+   */
+  private static final class InferenceKey {
+    private final int[] alleleCounts;
+    private final double sequenceErrorRate;
+    private final double denovoMutationRate;
+    private final int hashCode;
+
+    InferenceKey(int[] alleleCounts, double sequenceErrorRate, double denovoMutationRate) {
+      this.alleleCounts = alleleCounts.clone();
+      this.sequenceErrorRate = sequenceErrorRate;
+      this.denovoMutationRate = denovoMutationRate;
+      this.hashCode = 31 * (31 * Arrays.hashCode(this.alleleCounts)
+          + Double.valueOf(sequenceErrorRate).hashCode())
+          + Double.valueOf(denovoMutationRate).hashCode();
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof InferenceKey)) {
+        return false;
+      }
+      InferenceKey other = (InferenceKey) obj;
+      return hashCode == other.hashCode
+          && Double.compare(sequenceErrorRate, other.sequenceErrorRate) == 0
+          && Double.compare(denovoMutationRate, other.denovoMutationRate) == 0
+          && Arrays.equals(alleleCounts, other.alleleCounts);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+}
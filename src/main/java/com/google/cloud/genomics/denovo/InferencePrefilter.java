@@ -0,0 +1,104 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.NUM_GENOTYPES;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+/**
+ * First tier of the inference. Each trio member's reads are called on their own : the genotype
+ * maximizing the read likelihood, i.e. the allele balance call. When these three genotypes form a
+ * mendelian trio the denovo odds of the site are bounded in closed form without the bayes net :
+ * every denovo trio genotype has a read likelihood of at most the product of the three members'
+ * max likelihoods, which the mendelian trio of the calls reaches. Hence
+ * <pre>
+ * P(denovo, reads) / P(mendelian, reads) &lt;= P(denovo) / P(dad call, mom call, child call)
+ * </pre>
+ * a ratio of priors alone, tabulated for the 1000 trio genotypes. The same bound caps the ratio
+ * of the most likely denovo trio genotype to the most likely mendelian one. Immutable apart from
+ * per thread scratch space
+ */
+class InferencePrefilter {
+
+  private final DenovoBayesNet dbn;
+  /* Bound on the denovo odds when the member calls form the trio genotype, by dense index */
+  private final double[] denovoOddsBound =
+      new double[NUM_GENOTYPES * NUM_GENOTYPES * NUM_GENOTYPES];
+  private final ThreadLocal<double[]> scratch = new ThreadLocal<double[]>() {
+    @Override
+    protected double[] initialValue() {
+      return new double[NUM_GENOTYPES];
+    }
+  };
+
+  /**
+   * @param dbn the bayes net whose priors and error model are bounded
+   */
+  InferencePrefilter(DenovoBayesNet dbn) {
+    this.dbn = dbn;
+    double[] dadLogCpt = dbn.getNodeMap().get(DAD).getLogConditionalProbabilityTable();
+    double[] momLogCpt = dbn.getNodeMap().get(MOM).getLogConditionalProbabilityTable();
+    double[] childLogCpt = dbn.getNodeMap().get(CHILD).getLogConditionalProbabilityTable();
+
+    double denovoPrior = 0.0;
+    for (int trioIndex = 0; trioIndex < denovoOddsBound.length; trioIndex++) {
+      if (DenovoBayesNet.isDenovoTrioGenotype(trioIndex)) {
+        denovoPrior += Math.exp(getLogPrior(trioIndex, dadLogCpt, momLogCpt, childLogCpt));
+      }
+    }
+    for (int trioIndex = 0; trioIndex < denovoOddsBound.length; trioIndex++) {
+      denovoOddsBound[trioIndex] = DenovoBayesNet.isDenovoTrioGenotype(trioIndex)
+          ? Double.POSITIVE_INFINITY
+          : denovoPrior / Math.exp(getLogPrior(trioIndex, dadLogCpt, momLogCpt, childLogCpt));
+    }
+  }
+
+  private static double getLogPrior(int trioIndex, double[] dadLogCpt, double[] momLogCpt,
+      double[] childLogCpt) {
+    return dadLogCpt[trioIndex / (NUM_GENOTYPES * NUM_GENOTYPES)]
+        + momLogCpt[trioIndex / NUM_GENOTYPES % NUM_GENOTYPES] + childLogCpt[trioIndex];
+  }
+
+  /**
+   * Upper bound on both the likelihood ratio of denovo over mendelian and the ratio of the most
+   * likely denovo trio genotype over the most likely mendelian one
+   *
+   * @param alleleCounts read base counts laid out as described in
+   *        {@link DenovoBayesNet#getAlleleCountIndex}
+   * @return the bound, infinite when the member calls don't form a mendelian trio
+   */
+  double getDenovoOddsBound(int[] alleleCounts) {
+    return denovoOddsBound[DenovoBayesNet.getChildCptIndex(getCall(alleleCounts, DAD),
+        getCall(alleleCounts, MOM), getCall(alleleCounts, CHILD))];
+  }
+
+  /**
+   * @return ordinal of the genotype maximizing the likelihood of the member's reads
+   */
+  private int getCall(int[] alleleCounts, TrioMember person) {
+    double[] logLikelihood = scratch.get();
+    dbn.computeGenotypeLogLikelihood(alleleCounts, person, logLikelihood);
+    int call = 0;
+    for (int genotype = 1; genotype < NUM_GENOTYPES; genotype++) {
+      if (logLikelihood[genotype] > logLikelihood[call]) {
+        call = genotype;
+      }
+    }
+    return call;
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.GENOTYPES;
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.NUM_ALLELES;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+import com.google.common.collect.ImmutableList;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Precomputed inference results for low coverage sites. Every trio allele count vector where each
+ * member has at most depth reads is enumerated once and its MAP genotype, denovo posterior and
+ * likelihood ratio are kept in primitive arrays under a perfect index over the counts. Tables can
+ * be persisted and reused by runs with the same error and mutation rates
+ */
+class InferenceTable {
+
+  /** Heap budget of the result arrays of a table */
+  static final long MAX_TABLE_BYTES = 64L << 20;
+
+  /* MAP trio genotype, denovo posterior and likelihood ratio */
+  private static final int BYTES_PER_ENTRY = 2 + 8 + 8;
+
+  /**
+   * Largest depth whose table fits in {@link #MAX_TABLE_BYTES} ; the table grows with the twelfth
+   * power of the depth
+   */
+  static final int MAX_DEPTH;
+
+  private static final int MAGIC = 0x444e5442;
+  private static final int VERSION = 1;
+  private static final int NUM_MEMBERS = DenovoBayesNet.TRIO_MEMBERS.length;
+  private static final List<List<Genotype>> TRIO_GENOTYPES;
+
+  static {
+    ImmutableList.Builder<List<Genotype>> builder = ImmutableList.builder();
+    for (Genotype genoTypeDad : GENOTYPES) {
+      for (Genotype genoTypeMom : GENOTYPES) {
+        for (Genotype genoTypeChild : GENOTYPES) {
+          builder.add(ImmutableList.of(genoTypeDad, genoTypeMom, genoTypeChild));
+        }
+      }
+    }
+    TRIO_GENOTYPES = builder.build();
+
+    int maxDepth = 0;
+    while (getTableBytes(maxDepth + 1) <= MAX_TABLE_BYTES) {
+      maxDepth++;
+    }
+    MAX_DEPTH = maxDepth;
+  }
+
+  private final int depth;
+  private final double sequenceErrorRate;
+  private final double denovoMutationRate;
+  private final int[][] countTuples;
+  private final int[] tupleRank;
+  private final short[] maxTrioGenotype;
+  private final double[] bayesDenovoProb;
+  private final double[] likelihoodRatio;
+
+  private InferenceTable(int depth, double sequenceErrorRate, double denovoMutationRate) {
+    if (depth < 0) {
+      throw new IllegalArgumentException("Tabulation depth must not be negative : " + depth);
+    }
+    if (depth > MAX_DEPTH) {
+      throw new IllegalArgumentException(String.format(
+          "Tabulation depth %d needs %d MB for %d entries, over the budget of %d MB ; "
+          + "the largest depth within the budget is %d", depth, getTableBytes(depth) >> 20,
+          getNumEntries(depth), MAX_TABLE_BYTES >> 20, MAX_DEPTH));
+    }
+    this.depth = depth;
+    this.sequenceErrorRate = sequenceErrorRate;
+    this.denovoMutationRate = denovoMutationRate;
+
+    // Rank the per member allele count tuples with at most depth reads
+    int side = depth + 1;
+    tupleRank = new int[side * side * side * side];
+    List<int[]> tuples = new ArrayList<>();
+    for (int a = 0; a < side; a++) {
+      for (int c = 0; c < side; c++) {
+        for (int g = 0; g < side; g++) {
+          for (int t = 0; t < side; t++) {
+            int key = ((a * side + c) * side + g) * side + t;
+            if (a + c + g + t <= depth) {
+              tupleRank[key] = tuples.size();
+              tuples.add(new int[] {a, c, g, t});
+            } else {
+              tupleRank[key] = -1;
+            }
+          }
+        }
+      }
+    }
+    countTuples = tuples.toArray(new int[tuples.size()][]);
+
+    int numEntries = countTuples.length * countTuples.length * countTuples.length;
+    maxTrioGenotype = new short[numEntries];
+    bayesDenovoProb = new double[numEntries];
+    likelihoodRatio = new double[numEntries];
+  }
+
+  /**
+   * @param depth max number of reads of each trio member
+   * @return the number of trio allele count vectors with at most depth reads per member
+   */
+  static long getNumEntries(int depth) {
+    // count tuples of 4 alleles summing to at most depth, i.e. (depth + 4) choose 4
+    long numTuples = (long) (depth + 1) * (depth + 2) * (depth + 3) * (depth + 4) / 24;
+    return numTuples * numTuples * numTuples;
+  }
+
+  /**
+   * @param depth max number of reads of each trio member
+   * @return the heap size of the result arrays of a table of that depth
+   */
+  static long getTableBytes(int depth) {
+    return getNumEntries(depth) * BYTES_PER_ENTRY;
+  }
+
+  /**
+   * Tabulates the inference results of the bayes net
+   *
+   * @param dbn the bayes net computing the results
+   * @param shared the shared parameters for the tool
+   * @param depth max number of reads of each trio member
+   * @param numThreads number of threads running the inference
+   * @return the table
+   * @throws InterruptedException
+   * @throws ExecutionException
+   */
+  static InferenceTable build(DenovoBayesNet dbn, DenovoShared shared, int depth,
+      int numThreads) throws InterruptedException, ExecutionException {
+    return build(dbn, shared, depth, numThreads, shared.getSequenceErrorRate());
+  }
+
+  /**
+   * @param dbn the bayes net computing the results
+   * @param shared the shared parameters for the tool
+   * @param depth max number of reads of each trio member
+   * @param numThreads number of threads running the inference
+   * @param sequenceErrorRate sequence error rate of the bayes net
+   * @return the table
+   * @throws InterruptedException
+   * @throws ExecutionException
+   */
+  static InferenceTable build(final DenovoBayesNet dbn, DenovoShared shared, int depth,
+      int numThreads, double sequenceErrorRate) throws InterruptedException, ExecutionException {
+    final InferenceTable table = new InferenceTable(depth, sequenceErrorRate,
+        shared.getDenovoMutationRate());
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, numThreads));
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int rank = 0; rank < table.countTuples.length; rank++) {
+        final int firstRank = rank;
+        futures.add(executor.submit(new Runnable() {
+          @Override
+          public void run() {
+            table.fill(dbn, firstRank);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+    return table;
+  }
+
+  /**
+   * Fills in all the entries whose first trio member has the given count tuple
+   */
+  private void fill(DenovoBayesNet dbn, int firstRank) {
+    int numTuples = countTuples.length;
+    int[] alleleCounts = new int[NUM_MEMBERS * NUM_ALLELES];
+    MutableBayesInferenceResult result = new MutableBayesInferenceResult();
+
+    System.arraycopy(countTuples[firstRank], 0, alleleCounts, 0, NUM_ALLELES);
+    for (int secondRank = 0; secondRank < numTuples; secondRank++) {
+      System.arraycopy(countTuples[secondRank], 0, alleleCounts, NUM_ALLELES, NUM_ALLELES);
+      for (int thirdRank = 0; thirdRank < numTuples; thirdRank++) {
+        System.arraycopy(countTuples[thirdRank], 0, alleleCounts, 2 * NUM_ALLELES, NUM_ALLELES);
+        dbn.performInference(alleleCounts, result);
+
+        int index = (firstRank * numTuples + secondRank) * numTuples + thirdRank;
+        maxTrioGenotype[index] = (short) DenovoBayesNet.getChildCptIndex(
+            result.getMaxDadOrdinal(), result.getMaxMomOrdinal(), result.getMaxChildOrdinal());
+        bayesDenovoProb[index] = result.getBayesDenovoProb();
+        likelihoodRatio[index] = result.getLikelihoodRatio();
+      }
+    }
+  }
+
+  /**
+   * Perfect index of a trio allele count vector
+   *
+   * @param alleleCounts read base counts laid out as described in
+   *        {@link DenovoBayesNet#getAlleleCountIndex}
+   * @return the index of the entry or -1 if a trio member has more than depth reads
+   */
+  int getIndex(int[] alleleCounts) {
+    int side = depth + 1;
+    int index = 0;
+    for (int member = 0; member < NUM_MEMBERS; member++) {
+      int key = 0;
+      for (int allele = 0; allele < NUM_ALLELES; allele++) {
+        int count = alleleCounts[member * NUM_ALLELES + allele];
+        if (count > depth) {
+          return -1;
+        }
+        key = key * side + count;
+      }
+      int rank = tupleRank[key];
+      if (rank < 0) {
+        return -1;
+      }
+      index = index * countTuples.length + rank;
+    }
+    return index;
+  }
+
+  /**
+   * Looks up the inference result of a trio allele count vector. The table does not keep the
+   * likelihood values, so the max, mendelian and denovo log likelihoods of the result are NaN
+   *
+   * @param alleleCounts read base counts laid out as described in
+   *        {@link DenovoBayesNet#getAlleleCountIndex}
+   * @return the tabulated result or null if a trio member has more than depth reads
+   */
+  BayesInferenceResult get(int[] alleleCounts) {
+    int index = getIndex(alleleCounts);
+    if (index < 0) {
+      return null;
+    }
+    return new BayesInferenceResult(TRIO_GENOTYPES.get(maxTrioGenotype[index]), Double.NaN,
+        bayesDenovoProb[index], likelihoodRatio[index], Double.NaN, Double.NaN);
+  }
+
+  /**
+   * Writes the table to a file
+   *
+   * @param file the destination
+   * @throws IOException
+   */
+  void write(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(depth);
+      out.writeDouble(sequenceErrorRate);
+      out.writeDouble(denovoMutationRate);
+      out.writeInt(size());
+      for (int index = 0; index < size(); index++) {
+        out.writeShort(maxTrioGenotype[index]);
+        out.writeDouble(bayesDenovoProb[index]);
+        out.writeDouble(likelihoodRatio[index]);
+      }
+    }
+  }
+
+  /**
+   * Reads a table written by {@link #write}
+   *
+   * @param file the source
+   * @param depth the expected depth
+   * @param sequenceErrorRate the expected sequence error rate
+   * @param denovoMutationRate the expected denovo mutation rate
+   * @return the table or null if it was built with different parameters
+   * @throws IOException if the file is not a valid table
+   */
+  static InferenceTable read(File file, int depth, double sequenceErrorRate,
+      double denovoMutationRate) throws IOException {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        throw new IOException("Not an inference table : " + file);
+      }
+      if (in.readInt() != depth
+          || Double.compare(in.readDouble(), sequenceErrorRate) != 0
+          || Double.compare(in.readDouble(), denovoMutationRate) != 0) {
+        return null;
+      }
+      InferenceTable table = new InferenceTable(depth, sequenceErrorRate, denovoMutationRate);
+      if (in.readInt() != table.size()) {
+        throw new IOException("Inference table has the wrong size : " + file);
+      }
+      for (int index = 0; index < table.size(); index++) {
+        table.maxTrioGenotype[index] = in.readShort();
+        table.bayesDenovoProb[index] = in.readDouble();
+        table.likelihoodRatio[index] = in.readDouble();
+      }
+      return table;
+    }
+  }
+
+  /**
+   * Reuses the table persisted for the parameters of the run, otherwise builds it and persists it
+   *
+   * @param dbn the bayes net computing the results
+   * @param shared the shared parameters for the tool
+   * @param sequenceErrorRate sequence error rate of the bayes net
+   * @return the table
+   * @throws IOException
+   */
+  static InferenceTable loadOrBuild(DenovoBayesNet dbn, DenovoShared shared,
+      double sequenceErrorRate) throws IOException {
+    File file = shared.getInferenceTableFileName() == null
+        ? null
+        : DenovoUtil.getNormalizedFile(shared.getInferenceTableFileName());
+
+    if (file != null && file.exists()) {
+      InferenceTable table = read(file, shared.getTabulateDepth(), sequenceErrorRate,
+          shared.getDenovoMutationRate());
+      if (table != null) {
+        shared.getLogger().info(String.format("Loaded inference table %s", file));
+        return table;
+      }
+      shared.getLogger().info(
+          String.format("Inference table %s has different parameters ; rebuilding", file));
+    }
+
+    shared.getLogger().info(
+        String.format("Tabulating inference up to depth %d", shared.getTabulateDepth()));
+    InferenceTable table;
+    try {
+      table = build(dbn, shared, shared.getTabulateDepth(), shared.getNumThreads(),
+          sequenceErrorRate);
+    } catch (InterruptedException | ExecutionException e) {
+      throw new IOException("Failed to tabulate inference", e);
+    }
+    if (file != null) {
+      table.write(file);
+      shared.getLogger().info(String.format("Saved inference table %s", file));
+    }
+    return table;
+  }
+
+  /**
+   * @return the number of tabulated count vectors
+   */
+  int size() {
+    return maxTrioGenotype.length;
+  }
+
+  /**
+   * @return the depth
+   */
+  int getDepth() {
+    return depth;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.api.services.genomics.model.Variant;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * K-way merge of streams sorted by start position, one per trio member or any other split of the
+ * callsets, into a single stream sorted by start position. Variants starting at the same position
+ * come in the order of their streams. Pages of the merged stream hold up to a batch size of
+ * variants
+ */
+class MergedVariantStream implements VariantStream {
+
+  private final List<Cursor> cursors = new ArrayList<>();
+  /* Cursors with a variant left, by the start of their next variant */
+  private final PriorityQueue<Cursor> heads;
+  private final int batchSize;
+  private boolean started;
+
+  /**
+   * @param streams streams to merge, each sorted by start position
+   * @param batchSize max variants returned per page
+   */
+  MergedVariantStream(List<? extends VariantStream> streams, int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Expected a positive batch size : got " + batchSize);
+    }
+    for (VariantStream stream : streams) {
+      cursors.add(new Cursor(cursors.size(), stream));
+    }
+    heads = new PriorityQueue<>(Math.max(1, cursors.size()), new Comparator<Cursor>() {
+      @Override
+      public int compare(Cursor first, Cursor second) {
+        int byStart = Long.compare(first.getStart(), second.getStart());
+        return byStart != 0 ? byStart : Integer.compare(first.index, second.index);
+      }
+    });
+    this.batchSize = batchSize;
+  }
+
+  @Override
+  public boolean hasMore() {
+    return !started || !heads.isEmpty();
+  }
+
+  @Override
+  public List<Variant> getVariants() throws IOException {
+    if (!started) {
+      started = true;
+      for (Cursor cursor : cursors) {
+        if (cursor.advance()) {
+          heads.add(cursor);
+        }
+      }
+    }
+
+    List<Variant> batch = new ArrayList<>(Math.min(batchSize, 1024));
+    while (batch.size() < batchSize && !heads.isEmpty()) {
+      Cursor cursor = heads.poll();
+      batch.add(cursor.next());
+      if (cursor.advance()) {
+        heads.add(cursor);
+      }
+    }
+    return batch;
+  }
+
+  /**
+   * Position in the current page of a stream
+   */
+  private static class Cursor {
+    final int index;
+    final VariantStream stream;
+    List<Variant> page;
+    int position;
+
+    Cursor(int index, VariantStream stream) {
+      this.index = index;
+      this.stream = stream;
+    }
+
+    /**
+     * Fetches pages until one has a variant left
+     * @return whether the stream has a variant left
+     * @throws IOException API hangups
+     */
+    boolean advance() throws IOException {
+      while ((page == null || position == page.size()) && stream.hasMore()) {
+        page = stream.getVariants();
+        position = 0;
+      }
+      return page != null && position < page.size();
+    }
+
+    long getStart() {
+      return page.get(position).getStart();
+    }
+
+    /**
+     * @return the next variant, released from the page
+     */
+    Variant next() {
+      return page.set(position++, null);
+    }
+  }
+}
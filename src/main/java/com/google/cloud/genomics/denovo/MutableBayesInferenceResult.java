@@ -0,0 +1,145 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.GENOTYPES;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Reusable container for results from the primitive inference kernel of the Bayes Net. Genotypes
+ * are kept as ordinals so that filling in a result allocates nothing. Not thread safe; each thread
+ * should own its instance
+ */
+public class MutableBayesInferenceResult {
+  private int maxDadOrdinal;
+  private int maxMomOrdinal;
+  private int maxChildOrdinal;
+  private double maxLikelihood;
+  private double bayesDenovoProb;
+  private double likelihoodRatio;
+  private double mendelianLogLikelihood;
+  private double denovoLogLikelihood;
+
+  /**
+   * Overwrites all the fields of the result
+   * @param maxDadOrdinal ordinal of the dad genotype with max likelihood
+   * @param maxMomOrdinal ordinal of the mom genotype with max likelihood
+   * @param maxChildOrdinal ordinal of the child genotype with max likelihood
+   * @param maxLikelihood the max likelihood value
+   * @param bayesDenovoProb the bayesian probability of the position being denovo
+   * @param likelihoodRatio the likelihood ratio of denovo over mendelian
+   * @param mendelianLogLikelihood the log likelihood of the mendelian case
+   * @param denovoLogLikelihood the log likelihood of the denovo case
+   * @return this result
+   */
+  MutableBayesInferenceResult set(int maxDadOrdinal,
+      int maxMomOrdinal,
+      int maxChildOrdinal,
+      double maxLikelihood,
+      double bayesDenovoProb,
+      double likelihoodRatio,
+      double mendelianLogLikelihood,
+      double denovoLogLikelihood) {
+    this.maxDadOrdinal = maxDadOrdinal;
+    this.maxMomOrdinal = maxMomOrdinal;
+    this.maxChildOrdinal = maxChildOrdinal;
+    this.maxLikelihood = maxLikelihood;
+    this.bayesDenovoProb = bayesDenovoProb;
+    this.likelihoodRatio = likelihoodRatio;
+    this.mendelianLogLikelihood = mendelianLogLikelihood;
+    this.denovoLogLikelihood = denovoLogLikelihood;
+    return this;
+  }
+
+  /**
+   * @return an immutable copy of this result
+   */
+  public BayesInferenceResult toBayesInferenceResult() {
+    return new BayesInferenceResult(getMaxTrioGenotype(), maxLikelihood, bayesDenovoProb,
+        likelihoodRatio, mendelianLogLikelihood, denovoLogLikelihood);
+  }
+
+  @Override
+  public String toString() {
+    return toBayesInferenceResult().toString();
+  }
+
+  /**
+   * @return the maxTrioGenotype as dad, mom and child genotypes
+   */
+  public List<Genotype> getMaxTrioGenotype() {
+    return ImmutableList.of(GENOTYPES[maxDadOrdinal], GENOTYPES[maxMomOrdinal],
+        GENOTYPES[maxChildOrdinal]);
+  }
+
+  /**
+   * @return the maxDadOrdinal
+   */
+  public int getMaxDadOrdinal() {
+    return maxDadOrdinal;
+  }
+
+  /**
+   * @return the maxMomOrdinal
+   */
+  public int getMaxMomOrdinal() {
+    return maxMomOrdinal;
+  }
+
+  /**
+   * @return the maxChildOrdinal
+   */
+  public int getMaxChildOrdinal() {
+    return maxChildOrdinal;
+  }
+
+  /**
+   * @return the maxLikelihood
+   */
+  public double getMaxLikelihood() {
+    return maxLikelihood;
+  }
+
+  /**
+   * @return the bayesDenovoProb
+   */
+  public double getBayesDenovoProb() {
+    return bayesDenovoProb;
+  }
+
+  /**
+   * @return the likelihoodRatio
+   */
+  public double getLikelihoodRatio() {
+    return likelihoodRatio;
+  }
+
+  /**
+   * @return the mendelianLogLikelihood
+   */
+  public double getMendelianLogLikelihood() {
+    return mendelianLogLikelihood;
+  }
+
+  /**
+   * @return the denovoLogLikelihood
+   */
+  public double getDenovoLogLikelihood() {
+    return denovoLogLikelihood;
+  }
+}
@@ -26,11 +26,25 @@ class Node<K, V> {
   private final K id;
   private final List<Node<K, V>> parents;
   private final Map<List<V>, Double> conditionalProbabilityTable;
+  private final double[] logConditionalProbabilityTable;
 
   public Node(K individual, List<Node<K, V>> parents, Map<List<V>, Double> cpt) {
+    this(individual, parents, cpt, null);
+  }
+
+  /**
+   * @param individual id of the node
+   * @param parents parent nodes, null for root nodes
+   * @param cpt conditional probability table
+   * @param logCpt the same table in log space, flattened over the ordinals of the key values with
+   *        the last key varying fastest. Shared between threads and must not be modified
+   */
+  public Node(K individual, List<Node<K, V>> parents, Map<List<V>, Double> cpt,
+      double[] logCpt) {
     this.id = individual;
     this.parents = parents;
     this.conditionalProbabilityTable = cpt;
+    this.logConditionalProbabilityTable = logCpt;
   }
 
   /**
@@ -53,4 +67,11 @@ class Node<K, V> {
   Map<List<V>, Double> getConditionalProbabilityTable() {
     return conditionalProbabilityTable;
   }
+
+  /**
+   * @return the dense log space conditionalProbabilityTable, null if none was supplied
+   */
+  double[] getLogConditionalProbabilityTable() {
+    return logConditionalProbabilityTable;
+  }
 }
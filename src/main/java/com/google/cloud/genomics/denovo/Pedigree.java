@@ -0,0 +1,248 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Family structure read from a PED style description. Each line holds the family id, individual
+ * id, father id, mother id, sex and phenotype separated by whitespace, with 0 for an unknown
+ * parent. Individuals are kept with parents ahead of their children
+ */
+public class Pedigree {
+
+  static final String UNKNOWN_PARENT = "0";
+  private static final Splitter FIELD_SPLITTER = Splitter.onPattern("\\s+").omitEmptyStrings();
+  private static final int NUM_FIELDS = 6;
+
+  private final List<Individual> individuals;
+  private final Map<String, Integer> individualIndex;
+
+  /**
+   * Member of a pedigree
+   */
+  public static class Individual {
+    private final String familyId;
+    private final String id;
+    private final String fatherId;
+    private final String motherId;
+
+    /**
+     * @param familyId id of the family
+     * @param id id of the individual, unique in the pedigree
+     * @param fatherId id of the father, null for founders
+     * @param motherId id of the mother, null for founders
+     */
+    public Individual(String familyId, String id, String fatherId, String motherId) {
+      this.familyId = familyId;
+      this.id = id;
+      this.fatherId = fatherId;
+      this.motherId = motherId;
+    }
+
+    /**
+     * @return whether the parents of the individual are not in the pedigree
+     */
+    public boolean isFounder() {
+      return fatherId == null;
+    }
+
+    /**
+     * @return the familyId
+     */
+    public String getFamilyId() {
+      return familyId;
+    }
+
+    /**
+     * @return the id
+     */
+    public String getId() {
+      return id;
+    }
+
+    /**
+     * @return the fatherId
+     */
+    public String getFatherId() {
+      return fatherId;
+    }
+
+    /**
+     * @return the motherId
+     */
+    public String getMotherId() {
+      return motherId;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("<Individual %s %s father=%s mother=%s>", familyId, id, fatherId,
+          motherId);
+    }
+  }
+
+  /**
+   * @param individuals members of the pedigree in any order
+   * @throws IllegalArgumentException if ids are repeated, parents are missing from the pedigree
+   *         or belong to another family, only one parent is known or an individual is their own
+   *         ancestor
+   */
+  public Pedigree(List<Individual> individuals) {
+    Map<String, Individual> byId = new LinkedHashMap<>();
+    for (Individual individual : individuals) {
+      if (byId.put(individual.getId(), individual) != null) {
+        throw new IllegalArgumentException("Duplicate individual " + individual.getId());
+      }
+    }
+    for (Individual individual : individuals) {
+      if ((individual.getFatherId() == null) != (individual.getMotherId() == null)) {
+        throw new IllegalArgumentException("Expected both or no parents for " + individual);
+      }
+      for (String parentId : new String[] {individual.getFatherId(), individual.getMotherId()}) {
+        if (parentId == null) {
+          continue;
+        }
+        Individual parent = byId.get(parentId);
+        if (parent == null) {
+          throw new IllegalArgumentException("Unknown parent " + parentId + " of " + individual);
+        }
+        if (!parent.getFamilyId().equals(individual.getFamilyId())) {
+          throw new IllegalArgumentException("Parent " + parentId + " of " + individual
+              + " belongs to family " + parent.getFamilyId());
+        }
+      }
+    }
+
+    // Order parents ahead of children
+    List<Individual> ordered = new ArrayList<>();
+    Map<String, Boolean> visited = new HashMap<>();
+    for (Individual individual : individuals) {
+      addWithAncestors(individual, byId, visited, ordered);
+    }
+    this.individuals = ImmutableList.copyOf(ordered);
+    individualIndex = new HashMap<>();
+    for (int index = 0; index < ordered.size(); index++) {
+      individualIndex.put(ordered.get(index).getId(), index);
+    }
+  }
+
+  /**
+   * Depth first ordering of an individual after their ancestors
+   * @param individual individual to add
+   * @param byId individuals by id
+   * @param visited false for individuals being ordered, true for individuals already ordered
+   * @param ordered output
+   */
+  private static void addWithAncestors(Individual individual, Map<String, Individual> byId,
+      Map<String, Boolean> visited, List<Individual> ordered) {
+    Boolean done = visited.get(individual.getId());
+    if (done != null) {
+      if (!done) {
+        throw new IllegalArgumentException(individual.getId() + " is their own ancestor");
+      }
+      return;
+    }
+    visited.put(individual.getId(), false);
+    if (!individual.isFounder()) {
+      addWithAncestors(byId.get(individual.getFatherId()), byId, visited, ordered);
+      addWithAncestors(byId.get(individual.getMotherId()), byId, visited, ordered);
+    }
+    visited.put(individual.getId(), true);
+    ordered.add(individual);
+  }
+
+  /**
+   * Parses a PED style description. Blank lines and lines starting with # are skipped
+   * @param reader source of the description
+   * @return the pedigree
+   * @throws IOException
+   * @throws IllegalArgumentException if a line is malformed or the pedigree is inconsistent
+   */
+  public static Pedigree parse(Reader reader) throws IOException {
+    List<Individual> individuals = new ArrayList<>();
+    BufferedReader lines = new BufferedReader(reader);
+    int lineNumber = 0;
+    for (String line = lines.readLine(); line != null; line = lines.readLine()) {
+      lineNumber++;
+      String trimmed = line.trim();
+      if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+        continue;
+      }
+      List<String> fields = Lists.newArrayList(FIELD_SPLITTER.split(trimmed));
+      if (fields.size() < NUM_FIELDS) {
+        throw new IllegalArgumentException(String.format(
+            "Expected %d fields on line %d : got %d", NUM_FIELDS, lineNumber, fields.size()));
+      }
+      individuals.add(new Individual(fields.get(0), fields.get(1), parseParent(fields.get(2)),
+          parseParent(fields.get(3))));
+    }
+    return new Pedigree(individuals);
+  }
+
+  /**
+   * @param file PED file
+   * @return the pedigree
+   * @throws IOException
+   */
+  public static Pedigree fromFile(File file) throws IOException {
+    try (Reader reader = new FileReader(file)) {
+      return parse(reader);
+    }
+  }
+
+  private static String parseParent(String field) {
+    return UNKNOWN_PARENT.equals(field) ? null : field;
+  }
+
+  /**
+   * @return the individuals, parents ahead of children
+   */
+  public List<Individual> getIndividuals() {
+    return individuals;
+  }
+
+  /**
+   * @param id id of an individual
+   * @return position of the individual in {@link #getIndividuals()}
+   * @throws IllegalArgumentException if the individual is not in the pedigree
+   */
+  public int getIndex(String id) {
+    Integer index = individualIndex.get(id);
+    if (index == null) {
+      throw new IllegalArgumentException("Unknown individual " + id);
+    }
+    return index;
+  }
+
+  /**
+   * @return the number of individuals
+   */
+  public int size() {
+    return individuals.size();
+  }
+}
@@ -0,0 +1,557 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.ALLELES;
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.GENOTYPES;
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.NUM_ALLELES;
+import static com.google.cloud.genomics.denovo.DenovoBayesNet.NUM_GENOTYPES;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+import com.google.cloud.genomics.denovo.Pedigree.Individual;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bayes Net over the genotypes of a whole pedigree. Founders get the parent prior of
+ * {@link DenovoBayesNet} and every other member the child conditional probability table given
+ * their father and mother, so a trio pedigree is the trio net.
+ *
+ * Inference runs sum-product belief propagation on the bipartite graph of individuals and
+ * matings, where a mating joins a father, a mother and all their children. Conditioned on the
+ * parents the children of a mating are independent, and each mating keeps prefix and suffix
+ * products of its child factors so that all its messages together cost a number of operations
+ * linear in the number of children. A site costs one collect and one distribute pass, linear in
+ * the size of the family. This is exact when the graph is a tree ; pedigrees with loops such
+ * as consanguineous matings are rejected.
+ *
+ * No caller mode builds this net yet ; the command line modes call trios with
+ * {@link DenovoBayesNet} and pedigrees are called through this class as a library
+ */
+public class PedigreeBayesNet {
+
+  private static final int NUM_PARENT_GENOTYPES = NUM_GENOTYPES * NUM_GENOTYPES;
+
+  private final Pedigree pedigree;
+  private final ErrorModel errorModel;
+  private final QualityBins qualityBins;
+  private final Map<String, Node<String, Genotype>> nodeMap;
+  private final double[] founderPrior;
+  private final double[] childCpt;
+  private final double[] mendelianChildCpt;
+  private final double[] denovoChildCpt;
+
+  /* Edges join an individual to a mating they are a father, mother or child in */
+  private final int[] edgeIndividual;
+  private final int[] edgeMating;
+  private final boolean[] edgeIsChild;
+  private final int[][] individualEdges;
+  private final int[][] matingEdges;
+
+  /* Message passing order ; the edge of each step and whether the message goes to the mating */
+  private final int[] scheduleEdge;
+  private final boolean[] scheduleToMating;
+
+  private final ThreadLocal<PedigreeScratch> scratch = new ThreadLocal<PedigreeScratch>() {
+    @Override
+    protected PedigreeScratch initialValue() {
+      return new PedigreeScratch();
+    }
+  };
+
+  /**
+   * @param shared Shared parameters for tool
+   * @param pedigree family structure
+   * @throws IllegalArgumentException if the pedigree has loops
+   */
+  public PedigreeBayesNet(DenovoShared shared, Pedigree pedigree) {
+    this(shared, ErrorModel.fromShared(shared), pedigree);
+  }
+
+  /**
+   * @param shared Shared parameters for tool
+   * @param errorModel sequencing error model, may be shared with other nets
+   * @param pedigree family structure
+   * @throws IllegalArgumentException if the pedigree has loops
+   */
+  PedigreeBayesNet(DenovoShared shared, ErrorModel errorModel, Pedigree pedigree) {
+    this.pedigree = pedigree;
+    this.errorModel = errorModel;
+    this.qualityBins = errorModel.getNumQualityBins() == 1 ? null : shared.getQualityBins();
+
+    // Reuse the tables of the trio net
+    DenovoBayesNet trioNet = new DenovoBayesNet(shared, errorModel);
+    Node<?, Genotype> parentNode = trioNet.getNodeMap().get(DAD);
+    Node<?, Genotype> childNode = trioNet.getNodeMap().get(CHILD);
+    founderPrior = new double[NUM_GENOTYPES];
+    for (Map.Entry<List<Genotype>, Double> entry :
+        parentNode.getConditionalProbabilityTable().entrySet()) {
+      founderPrior[DenovoBayesNet.getCptIndex(entry.getKey())] = entry.getValue();
+    }
+    mendelianChildCpt = DenovoBayesNet.createChildCptPart(
+        childNode.getConditionalProbabilityTable(), false);
+    denovoChildCpt = DenovoBayesNet.createChildCptPart(
+        childNode.getConditionalProbabilityTable(), true);
+    childCpt = new double[mendelianChildCpt.length];
+    for (int index = 0; index < childCpt.length; index++) {
+      childCpt[index] = mendelianChildCpt[index] + denovoChildCpt[index];
+    }
+
+    // One node per individual, parents ahead of children
+    nodeMap = new LinkedHashMap<>();
+    for (Individual individual : pedigree.getIndividuals()) {
+      List<Node<String, Genotype>> parents = null;
+      Node<?, Genotype> source = parentNode;
+      if (!individual.isFounder()) {
+        parents = new ArrayList<>();
+        parents.add(nodeMap.get(individual.getFatherId()));
+        parents.add(nodeMap.get(individual.getMotherId()));
+        source = childNode;
+      }
+      nodeMap.put(individual.getId(), new Node<>(individual.getId(), parents,
+          source.getConditionalProbabilityTable(), source.getLogConditionalProbabilityTable()));
+    }
+
+    // Group the children by mating ; the father and mother edges come first in each mating
+    int numIndividuals = pedigree.size();
+    Map<List<Integer>, List<Integer>> matings = new LinkedHashMap<>();
+    for (Individual individual : pedigree.getIndividuals()) {
+      if (individual.isFounder()) {
+        continue;
+      }
+      List<Integer> couple = Arrays.asList(pedigree.getIndex(individual.getFatherId()),
+          pedigree.getIndex(individual.getMotherId()));
+      if (!matings.containsKey(couple)) {
+        matings.put(couple, new ArrayList<Integer>());
+      }
+      matings.get(couple).add(pedigree.getIndex(individual.getId()));
+    }
+    int numEdges = 0;
+    for (List<Integer> children : matings.values()) {
+      numEdges += 2 + children.size();
+    }
+    edgeIndividual = new int[numEdges];
+    edgeMating = new int[numEdges];
+    edgeIsChild = new boolean[numEdges];
+    matingEdges = new int[matings.size()][];
+    List<List<Integer>> edgesOfIndividual = new ArrayList<>();
+    for (int individual = 0; individual < numIndividuals; individual++) {
+      edgesOfIndividual.add(new ArrayList<Integer>());
+    }
+    int edge = 0;
+    int mating = 0;
+    for (Map.Entry<List<Integer>, List<Integer>> entry : matings.entrySet()) {
+      List<Integer> members = new ArrayList<>(entry.getKey());
+      members.addAll(entry.getValue());
+      matingEdges[mating] = new int[members.size()];
+      for (int slot = 0; slot < members.size(); slot++, edge++) {
+        edgeIndividual[edge] = members.get(slot);
+        edgeMating[edge] = mating;
+        edgeIsChild[edge] = slot >= 2;
+        matingEdges[mating][slot] = edge;
+        edgesOfIndividual.get(members.get(slot)).add(edge);
+      }
+      mating++;
+    }
+    individualEdges = new int[numIndividuals][];
+    for (int individual = 0; individual < numIndividuals; individual++) {
+      List<Integer> edges = edgesOfIndividual.get(individual);
+      individualEdges[individual] = new int[edges.size()];
+      for (int ii = 0; ii < edges.size(); ii++) {
+        individualEdges[individual][ii] = edges.get(ii);
+      }
+    }
+
+    scheduleEdge = new int[2 * numEdges];
+    scheduleToMating = new boolean[2 * numEdges];
+    createSchedule();
+  }
+
+  /**
+   * Orders the messages of the collect and distribute passes from a depth first traversal of
+   * each connected component of the graph
+   * @throws IllegalArgumentException if the graph has a cycle
+   */
+  private void createSchedule() {
+    int numIndividuals = individualEdges.length;
+    int numEdges = edgeIndividual.length;
+    // Vertices are individuals followed by matings
+    boolean[] visited = new boolean[numIndividuals + matingEdges.length];
+    int[] preorderEdge = new int[numEdges];
+    boolean[] preorderToMating = new boolean[numEdges];
+    int numVisitedEdges = 0;
+    Deque<int[]> stack = new ArrayDeque<>();
+
+    for (int root = 0; root < numIndividuals; root++) {
+      if (visited[root]) {
+        continue;
+      }
+      visited[root] = true;
+      stack.push(new int[] {root, -1});
+      while (!stack.isEmpty()) {
+        int[] top = stack.pop();
+        int vertex = top[0];
+        int parentEdge = top[1];
+        boolean isMating = vertex >= numIndividuals;
+        int[] edges = isMating ? matingEdges[vertex - numIndividuals] : individualEdges[vertex];
+        for (int edge : edges) {
+          if (edge == parentEdge) {
+            continue;
+          }
+          int next = isMating ? edgeIndividual[edge] : numIndividuals + edgeMating[edge];
+          if (visited[next]) {
+            throw new IllegalArgumentException(
+                "Pedigree has a loop through " + pedigree.getIndividuals().get(
+                    isMating ? edgeIndividual[edge] : vertex).getId());
+          }
+          visited[next] = true;
+          preorderEdge[numVisitedEdges] = edge;
+          preorderToMating[numVisitedEdges] = !isMating;
+          numVisitedEdges++;
+          stack.push(new int[] {next, edge});
+        }
+      }
+    }
+
+    // Collect towards the roots in reverse order, then distribute back in order
+    for (int step = 0; step < numEdges; step++) {
+      int reversed = numEdges - 1 - step;
+      scheduleEdge[step] = preorderEdge[reversed];
+      scheduleToMating[step] = !preorderToMating[reversed];
+      scheduleEdge[numEdges + step] = preorderEdge[step];
+      scheduleToMating[numEdges + step] = preorderToMating[step];
+    }
+  }
+
+  /**
+   * Index of the count of a read base for a pedigree member in the allele count arrays
+   * @param individual position of the individual in {@link Pedigree#getIndividuals()}
+   * @param allele read base
+   * @return index into the allele count array
+   */
+  int getAlleleCountIndex(int individual, Allele allele) {
+    return individual * errorModel.getNumAlleleCounts() + allele.ordinal();
+  }
+
+  /**
+   * Flattens the read summaries of a pedigree into an allele count array, by quality bin when the
+   * error model has bins. Individuals without a read summary have no reads
+   * @param readSummaryMap Summary stats for reads by individual id
+   * @return allele counts laid out as described in {@link #getAlleleCountIndex}, each allele
+   *         count block repeated for every quality bin
+   */
+  int[] getAlleleCounts(Map<String, ReadSummary> readSummaryMap) {
+    int numCounts = errorModel.getNumAlleleCounts();
+    int[] alleleCounts = new int[pedigree.size() * numCounts];
+    for (Map.Entry<String, ReadSummary> summary : readSummaryMap.entrySet()) {
+      int individual = pedigree.getIndex(summary.getKey());
+      int[] binnedCount = summary.getValue().getQualityBinnedCount();
+      if (qualityBins != null && binnedCount != null) {
+        System.arraycopy(binnedCount, 0, alleleCounts, individual * numCounts, numCounts);
+        continue;
+      }
+      int offset = qualityBins == null ? 0 : qualityBins.getDefaultBin() * NUM_ALLELES;
+      for (Map.Entry<Allele, Integer> entry : summary.getValue().getCount().entrySet()) {
+        alleleCounts[offset + getAlleleCountIndex(individual, entry.getKey())] +=
+            entry.getValue();
+      }
+    }
+    return alleleCounts;
+  }
+
+  /**
+   * Performs inference on the whole pedigree given the reads of its members
+   * @param readSummaryMap Summary stats for reads by individual id
+   * @return per individual genotypes and per child denovo posteriors
+   */
+  public PedigreeInferenceResult performInference(Map<String, ReadSummary> readSummaryMap) {
+    return performInference(getAlleleCounts(readSummaryMap));
+  }
+
+  /**
+   * Performs inference on the whole pedigree in one collect and one distribute pass
+   * @param alleleCounts read base counts laid out as described in {@link #getAlleleCountIndex}
+   * @return per individual genotypes and per child denovo posteriors
+   */
+  public PedigreeInferenceResult performInference(int[] alleleCounts) {
+    PedigreeScratch work = scratch.get();
+    int numIndividuals = pedigree.size();
+    Arrays.fill(work.childProductsValid, false);
+
+    // Read evidence, scaled to a max of one, times the founder prior
+    for (int individual = 0; individual < numIndividuals; individual++) {
+      double[] local = work.local[individual];
+      errorModel.computeGenotypeLogLikelihood(alleleCounts,
+          getAlleleCountIndex(individual, ALLELES[0]), local);
+      double maxLogLikelihood = Double.NEGATIVE_INFINITY;
+      for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+        maxLogLikelihood = Math.max(maxLogLikelihood, local[genotype]);
+      }
+      boolean isFounder = pedigree.getIndividuals().get(individual).isFounder();
+      for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+        local[genotype] = Math.exp(local[genotype] - maxLogLikelihood)
+            * (isFounder ? founderPrior[genotype] : 1.0);
+      }
+    }
+
+    for (int step = 0; step < scheduleEdge.length; step++) {
+      if (scheduleToMating[step]) {
+        sendToMating(scheduleEdge[step], work);
+      } else {
+        sendToIndividual(scheduleEdge[step], work);
+      }
+    }
+
+    // Genotype with the highest posterior marginal for every individual
+    Genotype[] maxGenotypes = new Genotype[numIndividuals];
+    for (int individual = 0; individual < numIndividuals; individual++) {
+      int maxGenotype = 0;
+      double maxBelief = Double.NEGATIVE_INFINITY;
+      for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+        double belief = work.local[individual][genotype];
+        for (int edge : individualEdges[individual]) {
+          belief *= work.toIndividual[edge][genotype];
+        }
+        if (belief > maxBelief) {
+          maxBelief = belief;
+          maxGenotype = genotype;
+        }
+      }
+      maxGenotypes[individual] = GENOTYPES[maxGenotype];
+    }
+
+    // Split the joint posterior of every child and their parents into denovo and mendelian mass
+    double[] bayesDenovoProb = new double[numIndividuals];
+    double[] likelihoodRatio = new double[numIndividuals];
+    Arrays.fill(bayesDenovoProb, Double.NaN);
+    Arrays.fill(likelihoodRatio, Double.NaN);
+    for (int edge = 0; edge < edgeIndividual.length; edge++) {
+      if (!edgeIsChild[edge]) {
+        continue;
+      }
+      double[] weight = computeParentWeight(edge, work);
+      double[] child = work.toMating[edge];
+      double denovoLikelihood = 0.0;
+      double mendelianLikelihood = 0.0;
+      for (int parents = 0; parents < NUM_PARENT_GENOTYPES; parents++) {
+        int offset = parents * NUM_GENOTYPES;
+        double denovoSum = 0.0;
+        double mendelianSum = 0.0;
+        for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+          denovoSum += denovoChildCpt[offset + genotype] * child[genotype];
+          mendelianSum += mendelianChildCpt[offset + genotype] * child[genotype];
+        }
+        denovoLikelihood += weight[parents] * denovoSum;
+        mendelianLikelihood += weight[parents] * mendelianSum;
+      }
+      int individual = edgeIndividual[edge];
+      bayesDenovoProb[individual] = denovoLikelihood / (denovoLikelihood + mendelianLikelihood);
+      likelihoodRatio[individual] = denovoLikelihood / mendelianLikelihood;
+    }
+    return new PedigreeInferenceResult(pedigree, maxGenotypes, bayesDenovoProb, likelihoodRatio);
+  }
+
+  /**
+   * Message from an individual to a mating : the local evidence times the messages from all the
+   * other matings of the individual
+   * @param edge edge between the individual and the mating
+   * @param work scratch space
+   */
+  private void sendToMating(int edge, PedigreeScratch work) {
+    int individual = edgeIndividual[edge];
+    double[] message = work.toMating[edge];
+    System.arraycopy(work.local[individual], 0, message, 0, NUM_GENOTYPES);
+    for (int other : individualEdges[individual]) {
+      if (other != edge) {
+        multiply(message, work.toIndividual[other]);
+      }
+    }
+    normalize(message);
+
+    // Sum out the child once for all the messages of the mating
+    if (edgeIsChild[edge]) {
+      work.childProductsValid[edgeMating[edge]] = false;
+      double[] childFactor = work.childFactor[edge];
+      for (int parents = 0; parents < NUM_PARENT_GENOTYPES; parents++) {
+        int offset = parents * NUM_GENOTYPES;
+        double sum = 0.0;
+        for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+          sum += childCpt[offset + genotype] * message[genotype];
+        }
+        childFactor[parents] = sum;
+      }
+    }
+  }
+
+  /**
+   * Message from a mating to one of its members, summing out all the other members
+   * @param edge edge between the mating and the individual
+   * @param work scratch space
+   */
+  private void sendToIndividual(int edge, PedigreeScratch work) {
+    int[] edges = matingEdges[edgeMating[edge]];
+    double[] weight = computeParentWeight(edge, work);
+    double[] message = work.toIndividual[edge];
+    Arrays.fill(message, 0.0);
+    for (int dad = 0; dad < NUM_GENOTYPES; dad++) {
+      for (int mom = 0; mom < NUM_GENOTYPES; mom++) {
+        int parents = dad * NUM_GENOTYPES + mom;
+        if (edge == edges[0]) {
+          message[dad] += weight[parents];
+        } else if (edge == edges[1]) {
+          message[mom] += weight[parents];
+        } else {
+          int offset = parents * NUM_GENOTYPES;
+          for (int genotype = 0; genotype < NUM_GENOTYPES; genotype++) {
+            message[genotype] += weight[parents] * childCpt[offset + genotype];
+          }
+        }
+      }
+    }
+    normalize(message);
+  }
+
+  /**
+   * Product over the parent genotypes of a mating of the messages from all members except one,
+   * taking the factors of the other children from the prefix and suffix products of the mating
+   * @param excludedEdge edge of the member left out
+   * @param work scratch space
+   * @return weights indexed by dad ordinal times ten plus mom ordinal, owned by the scratch space
+   */
+  private double[] computeParentWeight(int excludedEdge, PedigreeScratch work) {
+    int mating = edgeMating[excludedEdge];
+    int[] edges = matingEdges[mating];
+    if (!work.childProductsValid[mating]) {
+      computeChildProducts(mating, work);
+    }
+    // The edges of a mating are numbered consecutively ; a parent left out keeps all children
+    int numChildren = edges.length - 2;
+    int child = edgeIsChild[excludedEdge] ? excludedEdge - edges[2] : numChildren;
+    double[] before = work.childPrefix[mating][child];
+    double[] after = work.childSuffix[mating][Math.min(child + 1, numChildren)];
+    double[] dadMessage = work.toMating[edges[0]];
+    double[] momMessage = work.toMating[edges[1]];
+    double[] weight = work.parentWeight;
+    for (int dad = 0; dad < NUM_GENOTYPES; dad++) {
+      for (int mom = 0; mom < NUM_GENOTYPES; mom++) {
+        int parents = dad * NUM_GENOTYPES + mom;
+        weight[parents] = (edges[0] == excludedEdge ? 1.0 : dadMessage[dad])
+            * (edges[1] == excludedEdge ? 1.0 : momMessage[mom])
+            * before[parents] * after[parents];
+      }
+    }
+    return weight;
+  }
+
+  /**
+   * Products of the child factors of a mating over its first and its last children, so that
+   * leaving out any one child takes a single product of a prefix and a suffix
+   * @param mating index of the mating
+   * @param work scratch space
+   */
+  private void computeChildProducts(int mating, PedigreeScratch work) {
+    int[] edges = matingEdges[mating];
+    int numChildren = edges.length - 2;
+    double[][] prefix = work.childPrefix[mating];
+    double[][] suffix = work.childSuffix[mating];
+    for (int child = 0; child < numChildren; child++) {
+      double[] factor = work.childFactor[edges[2 + child]];
+      for (int parents = 0; parents < NUM_PARENT_GENOTYPES; parents++) {
+        prefix[child + 1][parents] = prefix[child][parents] * factor[parents];
+      }
+    }
+    for (int child = numChildren - 1; child >= 0; child--) {
+      double[] factor = work.childFactor[edges[2 + child]];
+      for (int parents = 0; parents < NUM_PARENT_GENOTYPES; parents++) {
+        suffix[child][parents] = suffix[child + 1][parents] * factor[parents];
+      }
+    }
+    work.childProductsValid[mating] = true;
+  }
+
+  private static void multiply(double[] values, double[] factor) {
+    for (int ii = 0; ii < values.length; ii++) {
+      values[ii] *= factor[ii];
+    }
+  }
+
+  /**
+   * Scales a message to sum to one so products over large families do not underflow
+   */
+  private static void normalize(double[] message) {
+    double sum = 0.0;
+    for (double value : message) {
+      sum += value;
+    }
+    if (sum > 0.0) {
+      for (int ii = 0; ii < message.length; ii++) {
+        message[ii] /= sum;
+      }
+    }
+  }
+
+  /**
+   * @return the pedigree
+   */
+  public Pedigree getPedigree() {
+    return pedigree;
+  }
+
+  /**
+   * @return the nodes by individual id, parents ahead of children
+   */
+  Map<String, Node<String, Genotype>> getNodeMap() {
+    return nodeMap;
+  }
+
+  /**
+   * Per thread messages of the inference
+   */
+  private class PedigreeScratch {
+    final double[][] local = new double[individualEdges.length][NUM_GENOTYPES];
+    final double[][] toMating = new double[edgeIndividual.length][NUM_GENOTYPES];
+    final double[][] toIndividual = new double[edgeIndividual.length][NUM_GENOTYPES];
+    final double[][] childFactor = new double[edgeIndividual.length][];
+    final double[] parentWeight = new double[NUM_PARENT_GENOTYPES];
+    /* Child factor products over the first and the last children of each mating, both with one
+       more entry than children ; the empty products are ones */
+    final double[][][] childPrefix = new double[matingEdges.length][][];
+    final double[][][] childSuffix = new double[matingEdges.length][][];
+    final boolean[] childProductsValid = new boolean[matingEdges.length];
+
+    PedigreeScratch() {
+      for (int edge = 0; edge < edgeIndividual.length; edge++) {
+        if (edgeIsChild[edge]) {
+          childFactor[edge] = new double[NUM_PARENT_GENOTYPES];
+        }
+      }
+      for (int mating = 0; mating < matingEdges.length; mating++) {
+        int numChildren = matingEdges[mating].length - 2;
+        childPrefix[mating] = new double[numChildren + 1][NUM_PARENT_GENOTYPES];
+        childSuffix[mating] = new double[numChildren + 1][NUM_PARENT_GENOTYPES];
+        Arrays.fill(childPrefix[mating][0], 1.0);
+        Arrays.fill(childSuffix[mating][numChildren], 1.0);
+      }
+    }
+  }
+}
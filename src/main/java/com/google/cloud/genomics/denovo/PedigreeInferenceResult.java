@@ -0,0 +1,91 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+import com.google.cloud.genomics.denovo.Pedigree.Individual;
+
+/**
+ * Container for results from the inference on a whole pedigree at one site
+ */
+public class PedigreeInferenceResult {
+  private final Pedigree pedigree;
+  private final Genotype[] maxGenotypes;
+  private final double[] bayesDenovoProb;
+  private final double[] likelihoodRatio;
+
+  /**
+   * @param pedigree family structure
+   * @param maxGenotypes genotype with max posterior marginal, indexed like the individuals
+   * @param bayesDenovoProb posterior probability of each child being denovo, NaN for founders
+   * @param likelihoodRatio likelihood ratio of denovo over mendelian, NaN for founders
+   */
+  PedigreeInferenceResult(Pedigree pedigree, Genotype[] maxGenotypes, double[] bayesDenovoProb,
+      double[] likelihoodRatio) {
+    this.pedigree = pedigree;
+    this.maxGenotypes = maxGenotypes;
+    this.bayesDenovoProb = bayesDenovoProb;
+    this.likelihoodRatio = likelihoodRatio;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("<");
+    for (Individual individual : pedigree.getIndividuals()) {
+      int index = pedigree.getIndex(individual.getId());
+      if (index > 0) {
+        sb.append(", ");
+      }
+      sb.append(individual.getId() + " : " + maxGenotypes[index]);
+      if (!individual.isFounder()) {
+        sb.append(" bayesProb : " + String.valueOf(bayesDenovoProb[index]));
+        sb.append(" llRatio : " + String.valueOf(likelihoodRatio[index]));
+      }
+    }
+    sb.append(">");
+    return sb.toString();
+  }
+
+  /**
+   * @param id id of an individual
+   * @return the genotype of the individual with max posterior marginal
+   */
+  public Genotype getMaxGenotype(String id) {
+    return maxGenotypes[pedigree.getIndex(id)];
+  }
+
+  /**
+   * @param id id of a child in the pedigree
+   * @return the bayesian probability of the child being denovo, NaN for founders
+   */
+  public double getBayesDenovoProb(String id) {
+    return bayesDenovoProb[pedigree.getIndex(id)];
+  }
+
+  /**
+   * @param id id of a child in the pedigree
+   * @return the likelihood ratio of denovo over mendelian for the child, NaN for founders
+   */
+  public double getLikelihoodRatio(String id) {
+    return likelihoodRatio[pedigree.getIndex(id)];
+  }
+
+  /**
+   * @return the pedigree
+   */
+  public Pedigree getPedigree() {
+    return pedigree;
+  }
+}
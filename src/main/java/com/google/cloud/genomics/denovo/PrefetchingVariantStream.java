@@ -0,0 +1,90 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.api.services.genomics.model.Variant;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches the next page of a stream in the background while the current page is processed. At
+ * most one page is fetched ahead, so every stream is throttled by its own consumer
+ */
+class PrefetchingVariantStream implements VariantStream {
+
+  private final VariantStream stream;
+  private final ExecutorService executor;
+  /* Page being fetched, null when no fetch is pending */
+  private Future<List<Variant>> nextPage;
+
+  /**
+   * Starts fetching the first page
+   * @param stream stream to prefetch, only accessed by one fetch at a time
+   * @param executor runs the fetches
+   */
+  PrefetchingVariantStream(VariantStream stream, ExecutorService executor) {
+    this.stream = stream;
+    this.executor = executor;
+    prefetch();
+  }
+
+  private void prefetch() {
+    if (!stream.hasMore()) {
+      return;
+    }
+    nextPage = executor.submit(new Callable<List<Variant>>() {
+      @Override
+      public List<Variant> call() throws IOException {
+        return stream.getVariants();
+      }
+    });
+  }
+
+  @Override
+  public boolean hasMore() {
+    return nextPage != null;
+  }
+
+  /**
+   * Waits for the pending page and starts fetching the one after it
+   */
+  @Override
+  public List<Variant> getVariants() throws IOException {
+    if (nextPage == null) {
+      throw new IllegalStateException("No more variants");
+    }
+    List<Variant> page;
+    try {
+      page = nextPage.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while fetching variants");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IllegalStateException("Failed to fetch variants", e.getCause());
+    } finally {
+      nextPage = null;
+    }
+    prefetch();
+    return page;
+  }
+}
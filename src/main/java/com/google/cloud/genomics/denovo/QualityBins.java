@@ -0,0 +1,122 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import java.util.List;
+
+/**
+ * Phred base quality bins. Qualities are clipped to 0..63 and mapped to bins through a 64 entry
+ * table, and every bin is scored with the mean error probability of its qualities. Counting read
+ * bases by allele and bin keeps the inference keyed by small integer counts, so it can still be
+ * cached and tabulated. Immutable
+ */
+public class QualityBins {
+
+  /** Number of distinct Phred qualities ; higher qualities are clipped */
+  public static final int NUM_QUALITIES = 64;
+
+  /** Error probability of every Phred quality */
+  static final double[] PHRED_ERROR_PROBABILITY = new double[NUM_QUALITIES];
+
+  /* Upper bound on bin error rates ; a base is then equally likely to read as any allele */
+  private static final double MAX_ERROR_RATE = 0.75;
+
+  static {
+    for (int quality = 0; quality < NUM_QUALITIES; quality++) {
+      PHRED_ERROR_PROBABILITY[quality] = Math.pow(10.0, -quality / 10.0);
+    }
+  }
+
+  private final int[] lowerBounds;
+  private final int[] qualityBins = new int[NUM_QUALITIES];
+  private final double[] binErrorRates;
+  private final int defaultBin;
+
+  /**
+   * @param lowerBounds lowest quality of every bin, strictly increasing. Qualities below the first
+   *        bound fall in the first bin
+   * @param defaultQuality quality of bases from reads without qualities
+   * @throws IllegalArgumentException if the bounds are empty, out of range or not increasing
+   */
+  public QualityBins(List<Integer> lowerBounds, int defaultQuality) {
+    if (lowerBounds.isEmpty()) {
+      throw new IllegalArgumentException("Expected at least one quality bin");
+    }
+    this.lowerBounds = new int[lowerBounds.size()];
+    for (int bin = 0; bin < lowerBounds.size(); bin++) {
+      int lowerBound = lowerBounds.get(bin);
+      if (lowerBound < 0 || lowerBound >= NUM_QUALITIES
+          || (bin > 0 && lowerBound <= this.lowerBounds[bin - 1])) {
+        throw new IllegalArgumentException(
+            "Quality bins must be increasing qualities below " + NUM_QUALITIES + " : "
+            + lowerBounds);
+      }
+      this.lowerBounds[bin] = lowerBound;
+    }
+
+    binErrorRates = new double[lowerBounds.size()];
+    int[] binSizes = new int[lowerBounds.size()];
+    int bin = 0;
+    for (int quality = 0; quality < NUM_QUALITIES; quality++) {
+      while (bin + 1 < this.lowerBounds.length && quality >= this.lowerBounds[bin + 1]) {
+        bin++;
+      }
+      qualityBins[quality] = bin;
+      binErrorRates[bin] += PHRED_ERROR_PROBABILITY[quality];
+      binSizes[bin]++;
+    }
+    for (bin = 0; bin < binErrorRates.length; bin++) {
+      binErrorRates[bin] = Math.min(MAX_ERROR_RATE, binErrorRates[bin] / binSizes[bin]);
+    }
+    defaultBin = getBin(defaultQuality);
+  }
+
+  /**
+   * @param errorRate error probability of a base
+   * @return the Phred quality closest to the error rate, clipped to the table
+   */
+  public static int toPhredQuality(double errorRate) {
+    long quality = Math.round(-10.0 * Math.log10(errorRate));
+    return (int) Math.max(0, Math.min(NUM_QUALITIES - 1, quality));
+  }
+
+  /**
+   * @param quality Phred base quality
+   * @return the bin of the quality
+   */
+  public int getBin(int quality) {
+    return qualityBins[Math.max(0, Math.min(NUM_QUALITIES - 1, quality))];
+  }
+
+  /**
+   * @return the bin of bases from reads without qualities
+   */
+  public int getDefaultBin() {
+    return defaultBin;
+  }
+
+  /**
+   * @return the number of bins
+   */
+  public int getNumBins() {
+    return lowerBounds.length;
+  }
+
+  /**
+   * @return the error rate of every bin, shared and must not be modified
+   */
+  public double[] getBinErrorRates() {
+    return binErrorRates;
+  }
+}
@@ -16,7 +16,6 @@ package com.google.cloud.genomics.denovo;
 import com.google.api.services.genomics.Genomics;
 import com.google.api.services.genomics.model.Read;
 import com.google.api.services.genomics.model.SearchReadsRequest;
-import com.google.cloud.genomics.denovo.DenovoUtil.Chromosome;
 import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
 
 import java.io.BufferedReader;
@@ -56,6 +55,7 @@ public class ReadCaller extends DenovoCaller {
   @Override
   public void execute() throws ParseException, IOException, IOException {
     shared.getLogger().info("---- Starting Bayesian Read Caller ----");
+    bayesInferrer.prepareInferenceTable();
 
     final File inputFile = DenovoUtil.getNormalizedFile(shared.getInputFileName());
     final File outputFile = DenovoUtil.getNormalizedFile(shared.getOutputFileName());
@@ -83,8 +83,7 @@ public class ReadCaller extends DenovoCaller {
         lineCount++;
         
         /* Skip variant if chromosome does not match */
-        if (!shared.getChromosomes().contains(
-            Chromosome.valueOf(callHolder.chromosome.toUpperCase()))) {
+        if (!shared.isSelectedContig(callHolder.chromosome)) {
           continue;
         }
 
@@ -99,9 +98,24 @@ public class ReadCaller extends DenovoCaller {
       while (!executor.isTerminated()) {
       }
     }
+    shared.getLogger().info(
+        String.format("Inference cache : %s", bayesInferrer.getCacheStats()));
+    shared.getLogger().info(
+        String.format("Inference tiers : %s", bayesInferrer.getTierCounts()));
+    logReadFilterCounts();
     shared.getLogger().info("---- Read caller terminated ----");
   }
   
+  /**
+   * Logs the number of reads each read filter rejected, if filtering is on
+   */
+  void logReadFilterCounts() {
+    if (shared.getReadFilterChain() != null) {
+      shared.getLogger().info(
+          String.format("Read filters : %s", shared.getReadFilterChain()));
+    }
+  }
+
   /**
    * Retreives Reads and makes a call to inference engine
    * @param callHolder container for storing candidate calls
@@ -119,12 +133,13 @@ public class ReadCaller extends DenovoCaller {
     BayesInfer.BayesCallResult result =
         bayesInferrer.infer(readSummaryMap, shared.getInferMethod());
 
+    // Details are only formatted for the calls written out
     if (result.isDenovo()) {
-      shared.getLogger().fine(String.format(
-          "%s,%d,%s", callHolder.chromosome, callHolder.position, result.getDetails()));
+      String call = String.format("%s,%d,%s", callHolder.chromosome, callHolder.position,
+          result.getDetails(shared.getLrtThresholds()));
+      shared.getLogger().fine(call);
       synchronized (this) {
-        writeCalls(writer, String.format("%s,%d,%s%n", callHolder.chromosome, callHolder.position,
-            result.getDetails()));
+        writeCalls(writer, call + System.lineSeparator());
       }
     }
   }
@@ -140,7 +155,8 @@ public class ReadCaller extends DenovoCaller {
     Map<TrioMember, ReadSummary> readSummaryMap = new TreeMap<>();
     for (TrioMember person : TrioMember.values()) {
       readSummaryMap.put(person,
-          new ReadSummary(readMap.get(person), candidatePosition));
+          new ReadSummary(readMap.get(person), candidatePosition, shared.getQualityBins(),
+              shared.getReadFilterChain()));
     }
     return readSummaryMap;
   }
@@ -182,7 +198,11 @@ public class ReadCaller extends DenovoCaller {
         .setStart(startPos)
         .setEnd(endPos);
 
-    return genomics.reads().search(request).execute().getAlignments();
+    Genomics.Reads.Search search = genomics.reads().search(request);
+    if (shared.getReadFilterChain() != null) {
+      search.setFields(shared.getReadFilterChain().getReadFields(shared.getQualityBins() != null));
+    }
+    return search.execute().getAlignments();
   }
 
   /**
@@ -0,0 +1,67 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.api.services.genomics.model.Read;
+
+/**
+ * Reasons for dropping a read before its bases are summarized. Each filter only looks at the
+ * alignment record and flags of the read, never at its sequence
+ */
+public enum ReadFilter {
+  /** Reads below the minimum mapping quality ; reads without a mapping quality are kept */
+  MAPPING_QUALITY {
+    @Override
+    boolean rejects(Read read, int minMappingQuality) {
+      Integer mappingQuality = read.getAlignment().getMappingQuality();
+      return mappingQuality != null && mappingQuality < minMappingQuality;
+    }
+  },
+  /** PCR or optical duplicates */
+  DUPLICATE {
+    @Override
+    boolean rejects(Read read, int minMappingQuality) {
+      return Boolean.TRUE.equals(read.getDuplicateFragment());
+    }
+  },
+  /** Alternative alignments of a read placed elsewhere */
+  SECONDARY {
+    @Override
+    boolean rejects(Read read, int minMappingQuality) {
+      return Boolean.TRUE.equals(read.getSecondaryAlignment());
+    }
+  },
+  /** Chimeric parts of a read */
+  SUPPLEMENTARY {
+    @Override
+    boolean rejects(Read read, int minMappingQuality) {
+      return Boolean.TRUE.equals(read.getSupplementaryAlignment());
+    }
+  },
+  /** Reads failing platform or vendor quality checks */
+  FAILED_QC {
+    @Override
+    boolean rejects(Read read, int minMappingQuality) {
+      return Boolean.TRUE.equals(read.getFailedVendorQualityChecks());
+    }
+  };
+
+  /**
+   * Should the read be dropped
+   * @param read an aligned read
+   * @param minMappingQuality the minimum mapping quality of kept reads
+   * @return whether the read is rejected by this filter
+   */
+  abstract boolean rejects(Read read, int minMappingQuality);
+}
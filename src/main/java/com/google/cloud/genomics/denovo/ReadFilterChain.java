@@ -0,0 +1,144 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.api.services.genomics.model.Read;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An ordered chain of read filters applied to every read before its bases are summarized. Counts
+ * the reads each filter rejects, a read being charged to the first filter rejecting it. Thread safe
+ */
+public class ReadFilterChain {
+
+  private final ReadFilter[] filters;
+  private final int minMappingQuality;
+  private final AtomicLongArray rejectedCounts = new AtomicLongArray(ReadFilter.values().length);
+  private final AtomicLong acceptedCount = new AtomicLong();
+
+  /**
+   * @param filters filters in the order they are applied, repeats are ignored
+   * @param minMappingQuality the minimum mapping quality of kept reads, used by
+   *        {@link ReadFilter#MAPPING_QUALITY}
+   */
+  public ReadFilterChain(List<ReadFilter> filters, int minMappingQuality) {
+    if (minMappingQuality < 0) {
+      throw new IllegalArgumentException(
+          "Minimum mapping quality must not be negative : " + minMappingQuality);
+    }
+    this.filters = new LinkedHashSet<>(filters).toArray(new ReadFilter[0]);
+    this.minMappingQuality = minMappingQuality;
+  }
+
+  /**
+   * @param read an aligned read
+   * @return whether the read passes every filter
+   */
+  public boolean accept(Read read) {
+    for (ReadFilter filter : filters) {
+      if (filter.rejects(read, minMappingQuality)) {
+        rejectedCounts.incrementAndGet(filter.ordinal());
+        return false;
+      }
+    }
+    acceptedCount.incrementAndGet();
+    return true;
+  }
+
+  /**
+   * @param filter a read filter
+   * @return the number of reads rejected by the filter so far
+   */
+  public long getRejectedCount(ReadFilter filter) {
+    return rejectedCounts.get(filter.ordinal());
+  }
+
+  /**
+   * @return the number of reads accepted so far
+   */
+  public long getAcceptedCount() {
+    return acceptedCount.get();
+  }
+
+  /**
+   * @return the filters in the order they are applied
+   */
+  public List<ReadFilter> getFilters() {
+    return ImmutableList.copyOf(filters);
+  }
+
+  /**
+   * @return the minMappingQuality
+   */
+  public int getMinMappingQuality() {
+    return minMappingQuality;
+  }
+
+  /**
+   * Partial response selector for read searches ; restricts the returned reads to the fields the
+   * pileup and the filters of this chain read
+   *
+   * @param withQualities whether base qualities are needed
+   * @return fields selector for the search reads request
+   */
+  public String getReadFields(boolean withQualities) {
+    List<String> fields = new ArrayList<>();
+    fields.add("alignedSequence");
+    if (withQualities) {
+      fields.add("alignedQuality");
+    }
+    fields.add(contains(ReadFilter.MAPPING_QUALITY)
+        ? "alignment(position,mappingQuality)"
+        : "alignment/position");
+    if (contains(ReadFilter.DUPLICATE)) {
+      fields.add("duplicateFragment");
+    }
+    if (contains(ReadFilter.SECONDARY)) {
+      fields.add("secondaryAlignment");
+    }
+    if (contains(ReadFilter.SUPPLEMENTARY)) {
+      fields.add("supplementaryAlignment");
+    }
+    if (contains(ReadFilter.FAILED_QC)) {
+      fields.add("failedVendorQualityChecks");
+    }
+    return "alignments(" + Joiner.on(',').join(fields) + ")";
+  }
+
+  private boolean contains(ReadFilter filter) {
+    for (ReadFilter member : filters) {
+      if (member == filter) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    List<String> counts = new ArrayList<>();
+    counts.add(String.format("accepted=%d", getAcceptedCount()));
+    for (ReadFilter filter : filters) {
+      counts.add(String.format("%s=%d", filter.name().toLowerCase(), getRejectedCount(filter)));
+    }
+    return Joiner.on(',').join(counts);
+  }
+}
@@ -16,15 +16,29 @@ package com.google.cloud.genomics.denovo;
 import com.google.api.services.genomics.model.Read;
 import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
 
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
 /**
- * Summary counts of a reads at a particular position
+ * Summary counts of a reads at a particular position, optionally also counted by base quality bin
  */
 public class ReadSummary {
+  private static final Allele[] ALLELES = Allele.values();
+
+  /* Allele ordinal of a read base character, -1 for other characters */
+  private static final int[] BASE_ALLELES = new int[128];
+
+  static {
+    Arrays.fill(BASE_ALLELES, -1);
+    for (Allele allele : ALLELES) {
+      BASE_ALLELES[allele.name().charAt(0)] = allele.ordinal();
+    }
+  }
+
   private Map<Allele, Integer> count = new TreeMap<>();
+  private int[] qualityBinnedCount;
 
   public ReadSummary() {
   }
@@ -43,18 +57,62 @@ public class ReadSummary {
    * @param candidatePosition
    */
   public ReadSummary(List<Read> reads, Long candidatePosition) {
+    this(reads, candidatePosition, null);
+  }
+
+  /**
+   * Init from list of reads at candidate position, also counting bases by quality bin
+   * @param reads
+   * @param candidatePosition
+   * @param qualityBins base quality bins, null to ignore base qualities
+   */
+  public ReadSummary(List<Read> reads, Long candidatePosition, QualityBins qualityBins) {
+    this(reads, candidatePosition, qualityBins, null);
+  }
+
+  /**
+   * Init from list of reads at candidate position, dropping the reads rejected by the filter chain
+   * before looking at their bases
+   * @param reads
+   * @param candidatePosition
+   * @param qualityBins base quality bins, null to ignore base qualities
+   * @param readFilterChain read filters, null to keep every read
+   */
+  public ReadSummary(List<Read> reads, Long candidatePosition, QualityBins qualityBins,
+      ReadFilterChain readFilterChain) {
+    int[] alleleCounts = new int[ALLELES.length];
+    if (qualityBins != null) {
+      qualityBinnedCount = new int[qualityBins.getNumBins() * ALLELES.length];
+    }
     for (Read read : reads) {
+      if (readFilterChain != null && !readFilterChain.accept(read)) {
+        continue;
+      }
       String alignedBases = read.getAlignedSequence();
-      Integer offset = (int) (candidatePosition - read.getAlignment().getPosition().getPosition());
-      String baseAtPos = alignedBases.substring(offset, offset + 1);
+      int offset = (int) (candidatePosition - read.getAlignment().getPosition().getPosition());
+      char baseAtPos = alignedBases.charAt(offset);
       
-      if (baseAtPos.equals("-")) {
+      if (baseAtPos == '-') {
         continue;
       }
-        
-      Allele alleleAtPos = Allele.valueOf(baseAtPos);
-      count.put(alleleAtPos,
-          (count.containsKey(alleleAtPos) ? count.get(alleleAtPos) : 0) + 1);
+
+      int allele = baseAtPos < BASE_ALLELES.length ? BASE_ALLELES[baseAtPos] : -1;
+      if (allele < 0) {
+        allele = Allele.valueOf(String.valueOf(baseAtPos)).ordinal();
+      }
+      alleleCounts[allele]++;
+      if (qualityBins != null) {
+        List<Integer> qualities = read.getAlignedQuality();
+        int bin = qualities == null || qualities.size() <= offset
+            ? qualityBins.getDefaultBin()
+            : qualityBins.getBin(qualities.get(offset));
+        qualityBinnedCount[bin * ALLELES.length + allele]++;
+      }
+    }
+    for (Allele allele : ALLELES) {
+      if (alleleCounts[allele.ordinal()] > 0) {
+        count.put(allele, alleleCounts[allele.ordinal()]);
+      }
     }
   }
 
@@ -71,4 +129,12 @@ public class ReadSummary {
     this.count = count;
     return this;
   }
+
+  /**
+   * @return base counts indexed by quality bin and then allele ordinal, null when the summary was
+   *         not built with quality bins
+   */
+  public int[] getQualityBinnedCount() {
+    return qualityBinnedCount;
+  }
 }
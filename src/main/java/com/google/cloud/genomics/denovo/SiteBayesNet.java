@@ -0,0 +1,158 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.cloud.genomics.denovo.DenovoBayesNet.InferenceScratch;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import java.util.Arrays;
+
+/**
+ * Trio bayes net over the genotype space of a single site, see {@link SiteGenotypes}. The tables
+ * are sized to the number of alleles at the site ; a biallelic site has 3 genotypes per member
+ * and 27 trio genotypes rather than the 1000 of {@link DenovoBayesNet}, so indels and multi-allelic
+ * sites are called at the cost of their own allele count. The priors and error model generalize
+ * those of {@link DenovoBayesNet} : parent genotypes follow Hardy-Weinberg over equally frequent
+ * alleles, children inherit one allele from each parent unless a denovo mutation happened, and a
+ * wrong read supports each other allele of the site equally. With the 4 bases as alleles the net
+ * gives the results of {@link DenovoBayesNet}.
+ * <p>
+ * Allele counts are the number of reads supporting each allele, laid out by trio member ordinal
+ * and then allele index. Shared between threads, each with its own scratch space
+ */
+public class SiteBayesNet {
+
+  private static final TrioMember[] TRIO_MEMBERS = TrioMember.values();
+
+  private final int numAlleles;
+  private final int numGenotypes;
+  /* indices of all genotypes, scanned for the max likelihood trio genotype */
+  private final int[] allGenotypes;
+  private final double[] parentLogPrior;
+  private final double[] childLogCpt;
+  private final double[] mendelianChildCpt;
+  private final double[] denovoChildCpt;
+  /* log likelihood of a read supporting an allele, indexed by allele and then genotype */
+  private final double[][] transposedLogLikelihoodMatrix;
+  private final ThreadLocal<InferenceScratch> scratch = new ThreadLocal<InferenceScratch>() {
+    @Override
+    protected InferenceScratch initialValue() {
+      return new InferenceScratch(numGenotypes);
+    }
+  };
+
+  /**
+   * @param numAlleles number of alleles of the sites, at least 2
+   * @param sequenceErrorRate probability of a read supporting a wrong allele
+   * @param denovoMutationRate probability of a child genotype being denovo
+   */
+  public SiteBayesNet(int numAlleles, double sequenceErrorRate, double denovoMutationRate) {
+    if (numAlleles < 2) {
+      throw new IllegalArgumentException("A site needs at least 2 alleles : " + numAlleles);
+    }
+    this.numAlleles = numAlleles;
+    numGenotypes = SiteGenotypes.getNumGenotypes(numAlleles);
+
+    // the net only depends on the number of alleles, not on their sequences
+    String[] alleleNames = new String[numAlleles];
+    for (int allele = 0; allele < numAlleles; allele++) {
+      alleleNames[allele] = String.valueOf(allele);
+    }
+    SiteGenotypes genotypes = new SiteGenotypes(Arrays.asList(alleleNames));
+
+    allGenotypes = new int[numGenotypes];
+    parentLogPrior = new double[numGenotypes];
+    transposedLogLikelihoodMatrix = new double[numAlleles][numGenotypes];
+    for (int genotype = 0; genotype < numGenotypes; genotype++) {
+      boolean homozygous = genotypes.isHomozygous(genotype);
+      allGenotypes[genotype] = genotype;
+      parentLogPrior[genotype] =
+          Math.log(DenovoBayesNet.getParentProbability(homozygous, numAlleles));
+      for (int allele = 0; allele < numAlleles; allele++) {
+        boolean match = genotypes.getFirstAllele(genotype) == allele
+            || genotypes.getSecondAllele(genotype) == allele;
+        transposedLogLikelihoodMatrix[allele][genotype] = ErrorModel.getBaseLogLikelihood(
+            sequenceErrorRate, numAlleles, homozygous, match);
+      }
+    }
+
+    int numTrioGenotypes = numGenotypes * numGenotypes * numGenotypes;
+    childLogCpt = new double[numTrioGenotypes];
+    mendelianChildCpt = new double[numTrioGenotypes];
+    denovoChildCpt = new double[numTrioGenotypes];
+    for (int dad = 0; dad < numGenotypes; dad++) {
+      for (int mom = 0; mom < numGenotypes; mom++) {
+        int numDenovoGenotypes = 0;
+        for (int child = 0; child < numGenotypes; child++) {
+          numDenovoGenotypes += genotypes.isDenovo(dad, mom, child) ? 1 : 0;
+        }
+        for (int child = 0; child < numGenotypes; child++) {
+          int index = getTrioIndex(dad, mom, child);
+          int transmissions = genotypes.getTransmissionCount(dad, mom, child);
+          double probability = DenovoBayesNet.getChildProbability(transmissions,
+              numDenovoGenotypes, denovoMutationRate);
+          (transmissions == 0 ? denovoChildCpt : mendelianChildCpt)[index] = probability;
+          childLogCpt[index] = Math.log(probability);
+        }
+      }
+    }
+  }
+
+  private int getTrioIndex(int dad, int mom, int child) {
+    return (dad * numGenotypes + mom) * numGenotypes + child;
+  }
+
+  /**
+   * Runs the dense trio kernel of {@link DenovoBayesNet} over the genotypes of the site, in a per
+   * thread scratch space
+   *
+   * @param siteGenotypes genotype space of the site, with the number of alleles of this net
+   * @param alleleCounts reads supporting each allele, by trio member ordinal and allele index
+   * @return the max likelihood trio genotype and the denovo posterior and likelihood ratio
+   */
+  public SiteInferenceResult performInference(SiteGenotypes siteGenotypes, int[] alleleCounts) {
+    if (siteGenotypes.getNumAlleles() != numAlleles
+        || alleleCounts.length != TRIO_MEMBERS.length * numAlleles) {
+      throw new IllegalArgumentException(String.format(
+          "Expected %d alleles per member : got %s and %d counts", numAlleles, siteGenotypes,
+          alleleCounts.length));
+    }
+    InferenceScratch workspace = scratch.get();
+    double[][] individualLogLikelihood = workspace.individualLogLikelihood;
+    for (TrioMember person : TRIO_MEMBERS) {
+      ErrorModel.computeGenotypeLogLikelihood(transposedLogLikelihoodMatrix, alleleCounts,
+          person.ordinal() * numAlleles, individualLogLikelihood[person.ordinal()]);
+    }
+
+    DenovoBayesNet.scanMaxTrioGenotype(allGenotypes, individualLogLikelihood, parentLogPrior,
+        parentLogPrior, childLogCpt, workspace);
+    DenovoBayesNet.sumOutChild(parentLogPrior, parentLogPrior, denovoChildCpt, mendelianChildCpt,
+        workspace);
+    double denovoLikelihood = workspace.denovoLikelihood;
+    double mendelianLikelihood = workspace.mendelianLikelihood;
+
+    int maxTrioIndex = workspace.maxTrioIndex;
+    return new SiteInferenceResult(siteGenotypes, maxTrioIndex / (numGenotypes * numGenotypes),
+        maxTrioIndex / numGenotypes % numGenotypes, maxTrioIndex % numGenotypes,
+        workspace.maxLogLikelihood, denovoLikelihood / (denovoLikelihood + mendelianLikelihood),
+        denovoLikelihood / mendelianLikelihood);
+  }
+
+  /**
+   * @return the number of alleles of the sites
+   */
+  public int getNumAlleles() {
+    return numAlleles;
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+/**
+ * Genotype space of a single site, built from the alleles actually seen there : the reference,
+ * SNV alternates and indel alternates alike. Alleles are indexed in order with the reference
+ * first, and the n(n+1)/2 unordered diploid genotypes as in VCF : genotype j/k with j &lt;= k has
+ * index k(k+1)/2 + j. A biallelic site thus has 3 genotypes instead of the 10 SNV genotypes of
+ * {@link DenovoUtil.Genotype}. Immutable
+ */
+public class SiteGenotypes {
+
+  private final List<String> alleles;
+  private final int[] firstAlleles;
+  private final int[] secondAlleles;
+
+  /**
+   * @param alleles distinct allele sequences of the site, reference first
+   */
+  public SiteGenotypes(List<String> alleles) {
+    if (alleles.isEmpty()) {
+      throw new IllegalArgumentException("A site needs at least a reference allele");
+    }
+    this.alleles = ImmutableList.copyOf(alleles);
+    int numGenotypes = getNumGenotypes(alleles.size());
+    firstAlleles = new int[numGenotypes];
+    secondAlleles = new int[numGenotypes];
+    for (int second = 0; second < alleles.size(); second++) {
+      for (int first = 0; first <= second; first++) {
+        firstAlleles[getGenotypeIndex(first, second)] = first;
+        secondAlleles[getGenotypeIndex(first, second)] = second;
+      }
+    }
+  }
+
+  /**
+   * @param numAlleles number of alleles of a site
+   * @return the number of diploid genotypes over the alleles
+   */
+  public static int getNumGenotypes(int numAlleles) {
+    return numAlleles * (numAlleles + 1) / 2;
+  }
+
+  /**
+   * @param allele1 index of one allele
+   * @param allele2 index of the other allele
+   * @return index of the unordered genotype made of both alleles
+   */
+  public static int getGenotypeIndex(int allele1, int allele2) {
+    int first = Math.min(allele1, allele2);
+    int second = Math.max(allele1, allele2);
+    return second * (second + 1) / 2 + first;
+  }
+
+  /**
+   * @param genotype index of a genotype
+   * @return index of the smaller allele of the genotype
+   */
+  public int getFirstAllele(int genotype) {
+    return firstAlleles[genotype];
+  }
+
+  /**
+   * @param genotype index of a genotype
+   * @return index of the larger allele of the genotype
+   */
+  public int getSecondAllele(int genotype) {
+    return secondAlleles[genotype];
+  }
+
+  /**
+   * @param genotype index of a genotype
+   * @return whether both alleles of the genotype are the same
+   */
+  public boolean isHomozygous(int genotype) {
+    return firstAlleles[genotype] == secondAlleles[genotype];
+  }
+
+  /**
+   * @param dad index of the dad genotype
+   * @param mom index of the mom genotype
+   * @param child index of the child genotype
+   * @return whether the child genotype can't be made of one dad allele and one mom allele
+   */
+  public boolean isDenovo(int dad, int mom, int child) {
+    return getTransmissionCount(dad, mom, child) == 0;
+  }
+
+  /**
+   * @param dad index of the dad genotype
+   * @param mom index of the mom genotype
+   * @param child index of the child genotype
+   * @return the number of the 4 equally likely allele transmissions giving the child genotype
+   */
+  int getTransmissionCount(int dad, int mom, int child) {
+    int[] dadAlleles = {firstAlleles[dad], secondAlleles[dad]};
+    int[] momAlleles = {firstAlleles[mom], secondAlleles[mom]};
+    int count = 0;
+    for (int dadAllele : dadAlleles) {
+      for (int momAllele : momAlleles) {
+        count += getGenotypeIndex(dadAllele, momAllele) == child ? 1 : 0;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * @return the alleles, reference first
+   */
+  public List<String> getAlleles() {
+    return alleles;
+  }
+
+  /**
+   * @return the number of alleles
+   */
+  public int getNumAlleles() {
+    return alleles.size();
+  }
+
+  /**
+   * @return the number of genotypes
+   */
+  public int getNumGenotypes() {
+    return firstAlleles.length;
+  }
+
+  /**
+   * @param genotype index of a genotype
+   * @return the genotype as its allele sequences separated by a slash, e.g. A/AT
+   */
+  public String getGenotypeName(int genotype) {
+    return alleles.get(firstAlleles[genotype]) + "/" + alleles.get(secondAlleles[genotype]);
+  }
+
+  @Override
+  public String toString() {
+    return alleles.toString();
+  }
+}
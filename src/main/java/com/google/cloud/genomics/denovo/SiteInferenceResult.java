@@ -0,0 +1,91 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+/**
+ * Container for results from the inference of a trio over a site local genotype space
+ */
+public class SiteInferenceResult {
+  private final SiteGenotypes siteGenotypes;
+  private final int maxDadGenotype;
+  private final int maxMomGenotype;
+  private final int maxChildGenotype;
+  private final double maxLogLikelihood;
+  private final double bayesDenovoProb;
+  private final double likelihoodRatio;
+
+  /**
+   * @param siteGenotypes genotype space of the site
+   * @param maxDadGenotype index of the dad genotype in the trio genotype with max likelihood
+   * @param maxMomGenotype index of the mom genotype in the trio genotype with max likelihood
+   * @param maxChildGenotype index of the child genotype in the trio genotype with max likelihood
+   * @param maxLogLikelihood the max log likelihood
+   * @param bayesDenovoProb the bayesian probability of the position being denovo
+   * @param likelihoodRatio the likelihood ratio of denovo over mendelian
+   */
+  SiteInferenceResult(SiteGenotypes siteGenotypes, int maxDadGenotype, int maxMomGenotype,
+      int maxChildGenotype, double maxLogLikelihood, double bayesDenovoProb,
+      double likelihoodRatio) {
+    this.siteGenotypes = siteGenotypes;
+    this.maxDadGenotype = maxDadGenotype;
+    this.maxMomGenotype = maxMomGenotype;
+    this.maxChildGenotype = maxChildGenotype;
+    this.maxLogLikelihood = maxLogLikelihood;
+    this.bayesDenovoProb = bayesDenovoProb;
+    this.likelihoodRatio = likelihoodRatio;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("<[%s, %s, %s], maxLogLikelihood : %s, bayesProb : %s, llRatio : %s>",
+        siteGenotypes.getGenotypeName(maxDadGenotype),
+        siteGenotypes.getGenotypeName(maxMomGenotype),
+        siteGenotypes.getGenotypeName(maxChildGenotype),
+        maxLogLikelihood, bayesDenovoProb, likelihoodRatio);
+  }
+
+  /**
+   * @param person a trio member
+   * @return index of the member's genotype in the trio genotype with max likelihood
+   */
+  public int getMaxGenotype(TrioMember person) {
+    return person == DAD ? maxDadGenotype : person == MOM ? maxMomGenotype : maxChildGenotype;
+  }
+
+  /**
+   * @return the maxLogLikelihood
+   */
+  public double getMaxLogLikelihood() {
+    return maxLogLikelihood;
+  }
+
+  /**
+   * @return the bayesDenovoProb
+   */
+  public double getBayesDenovoProb() {
+    return bayesDenovoProb;
+  }
+
+  /**
+   * @return the likelihoodRatio
+   */
+  public double getLikelihoodRatio() {
+    return likelihoodRatio;
+  }
+}
@@ -0,0 +1,383 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.common.base.Joiner;
+import com.google.common.primitives.Ints;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Calibrates the inference parameters. Collects the read counts of the trio at every candidate
+ * position once, or reloads them from a counts file, and then reruns the inference for every pair
+ * of sequence error and denovo mutation rates in the grid. Grid points run in parallel, each with
+ * its own bayes net. The sequence error rate can instead be fitted to the read counts
+ */
+public class SweepCaller extends DenovoCaller {
+
+  /** Number of sites inferred together by a grid point */
+  static final int BATCH_SIZE = 4096;
+
+  private static final int NUM_COUNTS =
+      DenovoBayesNet.TRIO_MEMBERS.length * DenovoBayesNet.NUM_ALLELES;
+
+  /** Start of the header line of a counts file */
+  private static final String COUNTS_HEADER_PREFIX = "#";
+
+  private final DenovoShared shared;
+
+  /**
+   * @param shared shared project state
+   */
+  public SweepCaller(DenovoShared shared) {
+    this.shared = shared;
+  }
+
+  /* (non-Javadoc)
+   * @see com.google.cloud.genomics.denovo.DenovoCaller#execute()
+   */
+  @Override
+  public void execute() throws ParseException, IOException {
+    shared.getLogger().info("---- Starting Parameter Sweep Caller ----");
+
+    ErrorRateEstimator errorRateEstimator = new ErrorRateEstimator();
+    List<SiteCounts> sites = getSiteCounts(errorRateEstimator);
+    shared.getLogger().info(String.format("%d candidate read counts", sites.size()));
+
+    List<Double> sequenceErrorRates = shared.getSweepSequenceErrorRates();
+    if (shared.isEstimateSequenceErrorRate()) {
+      double sequenceErrorRate = errorRateEstimator.estimate(shared.getSequenceErrorRate());
+      shared.getLogger().info(String.format("Estimated sequence error rate : %s",
+          sequenceErrorRate));
+      sequenceErrorRates = Collections.singletonList(sequenceErrorRate);
+    }
+    List<GridPoint> gridPoints = sweep(sites, sequenceErrorRates);
+
+    File outputFile = DenovoUtil.getNormalizedFile(shared.getOutputFileName());
+    File summaryFile = DenovoUtil.getNormalizedFile(shared.getOutputFileName() + ".summary");
+    try (PrintWriter outputWriter = new PrintWriter(outputFile);
+        PrintWriter summaryWriter = new PrintWriter(summaryFile)) {
+      for (GridPoint gridPoint : gridPoints) {
+        String summary = gridPoint.getSummary();
+        shared.getLogger().info(summary);
+        summaryWriter.println(summary);
+        for (int site = 0; site < sites.size(); site++) {
+          writeCalls(outputWriter, String.format("%s,%d,%s,%s,%b,%s,%s%n",
+              sites.get(site).chromosome, sites.get(site).position,
+              gridPoint.sequenceErrorRate, gridPoint.denovoMutationRate,
+              gridPoint.isDenovo[site], gridPoint.bayesDenovoProb[site],
+              gridPoint.likelihoodRatio[site]));
+        }
+      }
+    }
+    shared.getLogger().info("---- Parameter sweep caller terminated ----");
+  }
+
+  /**
+   * Read counts of the candidates ; from the counts file when it was saved from the current input
+   * calls file, otherwise from the reads at the positions of the input calls file, saved to the
+   * counts file when one is set
+   * @param errorRateEstimator tallies the counts of every candidate
+   * @return read counts in the order of the candidates
+   * @throws ParseException
+   * @throws IOException
+   */
+  List<SiteCounts> getSiteCounts(ErrorRateEstimator errorRateEstimator)
+      throws ParseException, IOException {
+    File inputFile = DenovoUtil.getNormalizedFile(shared.getInputFileName());
+    String header = getCountsHeader(inputFile);
+    File countsFile = shared.getCountsFileName() == null
+        ? null
+        : DenovoUtil.getNormalizedFile(shared.getCountsFileName());
+    if (countsFile != null && countsFile.exists()) {
+      if (header.equals(readCountsHeader(countsFile))) {
+        shared.getLogger().info(String.format("Loading read counts from %s",
+            countsFile.getAbsolutePath()));
+        List<SiteCounts> sites = readSiteCounts(countsFile);
+        for (SiteCounts site : sites) {
+          errorRateEstimator.add(site.alleleCounts);
+        }
+        return sites;
+      }
+      shared.getLogger().warning(String.format(
+          "Read counts in %s were not saved from %s as it is now ; rebuilding them",
+          countsFile.getAbsolutePath(), inputFile.getAbsolutePath()));
+    }
+    List<SiteCounts> sites = fetchSiteCounts(inputFile, errorRateEstimator);
+    if (countsFile != null) {
+      writeSiteCounts(countsFile, header, sites);
+    }
+    return sites;
+  }
+
+  /**
+   * Runs the read stage over the input calls file
+   * @param inputFile the input calls file
+   * @param errorRateEstimator tallies the counts of every candidate from the fetching threads
+   * @return read counts in the order of the candidates
+   * @throws ParseException
+   * @throws IOException
+   */
+  private List<SiteCounts> fetchSiteCounts(File inputFile,
+      final ErrorRateEstimator errorRateEstimator) throws ParseException, IOException {
+    final ReadCaller readCaller = new ReadCaller(shared);
+    ExecutorService executor = Executors.newFixedThreadPool(shared.getNumThreads());
+    List<Future<SiteCounts>> futures = new ArrayList<>();
+    try (BufferedReader inputReader = new BufferedReader(new FileReader(inputFile))) {
+      for (String line; (line = inputReader.readLine()) != null;) {
+        final CallHolder callHolder = parseLine(line);
+        if (!shared.isSelectedContig(callHolder.chromosome)) {
+          continue;
+        }
+        futures.add(executor.submit(new Callable<SiteCounts>() {
+          @Override
+          public SiteCounts call() throws IOException {
+            int[] alleleCounts = DenovoBayesNet.getAlleleCounts(readCaller.getReadSummaryMap(
+                callHolder.position,
+                readCaller.getReadMap(callHolder.chromosome, callHolder.position)));
+            errorRateEstimator.add(alleleCounts);
+            return new SiteCounts(callHolder.chromosome, callHolder.position, alleleCounts);
+          }
+        }));
+      }
+      List<SiteCounts> sites = new ArrayList<>(futures.size());
+      for (Future<SiteCounts> future : futures) {
+        sites.add(getUnchecked(future));
+        if (sites.size() % DenovoUtil.READ_LOG_FREQ == 0) {
+          shared.getLogger().info(String.format("%d Read candidates processed", sites.size()));
+        }
+      }
+      readCaller.logReadFilterCounts();
+      return sites;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Reruns the inference over all the sites for every point of the parameter grid
+   * @param sites read counts of the candidates
+   * @return results of each grid point, sequence error rates varying slowest
+   * @throws IOException
+   */
+  List<GridPoint> sweep(List<SiteCounts> sites) throws IOException {
+    return sweep(sites, shared.getSweepSequenceErrorRates());
+  }
+
+  /**
+   * Reruns the inference over all the sites for the given sequence error rates and every denovo
+   * mutation rate of the grid
+   * @param sites read counts of the candidates
+   * @param sequenceErrorRates sequence error rates to sweep
+   * @return results of each grid point, sequence error rates varying slowest
+   * @throws IOException
+   */
+  List<GridPoint> sweep(final List<SiteCounts> sites, List<Double> sequenceErrorRates)
+      throws IOException {
+    ExecutorService executor = Executors.newFixedThreadPool(shared.getNumThreads());
+    List<Future<GridPoint>> futures = new ArrayList<>();
+    try {
+      for (final double sequenceErrorRate : sequenceErrorRates) {
+        for (final double denovoMutationRate : shared.getSweepDenovoMutationRates()) {
+          futures.add(executor.submit(new Callable<GridPoint>() {
+            @Override
+            public GridPoint call() {
+              return new GridPoint(sequenceErrorRate, denovoMutationRate, sites);
+            }
+          }));
+        }
+      }
+      List<GridPoint> gridPoints = new ArrayList<>(futures.size());
+      for (Future<GridPoint> future : futures) {
+        gridPoints.add(getUnchecked(future));
+      }
+      return gridPoints;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static <T> T getUnchecked(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Header line of a counts file naming the calls file the counts were read for, along with its
+   * size and modification time so that counts of an edited or replaced calls file are rebuilt
+   * @param inputFile the input calls file
+   * @return the header line
+   */
+  static String getCountsHeader(File inputFile) {
+    return String.format("%scalls=%s,size=%d,modified=%d", COUNTS_HEADER_PREFIX,
+        inputFile.getAbsolutePath(), inputFile.length(), inputFile.lastModified());
+  }
+
+  /**
+   * @param countsFile file written by {@link #writeSiteCounts}
+   * @return the header line of the file, null if it has none
+   * @throws IOException
+   */
+  static String readCountsHeader(File countsFile) throws IOException {
+    try (BufferedReader reader = new BufferedReader(new FileReader(countsFile))) {
+      String line = reader.readLine();
+      return line != null && line.startsWith(COUNTS_HEADER_PREFIX) ? line : null;
+    }
+  }
+
+  /**
+   * Saves read counts as a header line followed by lines of chromosome, position and the allele
+   * counts laid out as in {@link DenovoBayesNet#getAlleleCountIndex}
+   * @param countsFile file to write
+   * @param header header line from {@link #getCountsHeader}
+   * @param sites read counts of the candidates
+   * @throws IOException
+   */
+  static void writeSiteCounts(File countsFile, String header, List<SiteCounts> sites)
+      throws IOException {
+    try (PrintWriter writer = new PrintWriter(countsFile)) {
+      writer.println(header);
+      for (SiteCounts site : sites) {
+        writer.printf("%s,%d,%s%n", site.chromosome, site.position,
+            Joiner.on(",").join(Ints.asList(site.alleleCounts)));
+      }
+    }
+  }
+
+  /**
+   * @param countsFile file written by {@link #writeSiteCounts}
+   * @return read counts of the candidates
+   * @throws ParseException
+   * @throws IOException
+   */
+  static List<SiteCounts> readSiteCounts(File countsFile) throws ParseException, IOException {
+    List<SiteCounts> sites = new ArrayList<>();
+    try (BufferedReader reader = new BufferedReader(new FileReader(countsFile))) {
+      for (String line; (line = reader.readLine()) != null;) {
+        if (line.startsWith(COUNTS_HEADER_PREFIX)) {
+          continue;
+        }
+        String[] splitLine = line.split(",");
+        if (splitLine.length != 2 + NUM_COUNTS) {
+          throw new ParseException("Could not parse counts line : " + line, 0);
+        }
+        int[] alleleCounts = new int[NUM_COUNTS];
+        try {
+          for (int ii = 0; ii < NUM_COUNTS; ii++) {
+            alleleCounts[ii] = Integer.parseInt(splitLine[2 + ii]);
+          }
+          sites.add(new SiteCounts(splitLine[0], Long.valueOf(splitLine[1]), alleleCounts));
+        } catch (NumberFormatException e) {
+          throw new ParseException("Could not parse counts line : " + line, 0);
+        }
+      }
+    }
+    return sites;
+  }
+
+  /**
+   * Read counts of the trio at a candidate position
+   */
+  static class SiteCounts {
+    final String chromosome;
+    final long position;
+    final int[] alleleCounts;
+
+    /**
+     * @param chromosome chromosome of the candidate
+     * @param position position of the candidate
+     * @param alleleCounts allele counts laid out as in {@link DenovoBayesNet#getAlleleCountIndex}
+     */
+    SiteCounts(String chromosome, long position, int[] alleleCounts) {
+      this.chromosome = chromosome;
+      this.position = position;
+      this.alleleCounts = alleleCounts;
+    }
+  }
+
+  /**
+   * Inference results of all the sites for one sequence error and denovo mutation rate
+   */
+  class GridPoint {
+    final double sequenceErrorRate;
+    final double denovoMutationRate;
+    final boolean[] isDenovo;
+    final double[] bayesDenovoProb;
+    final double[] likelihoodRatio;
+    int numCalls;
+
+    GridPoint(double sequenceErrorRate, double denovoMutationRate, List<SiteCounts> sites) {
+      this.sequenceErrorRate = sequenceErrorRate;
+      this.denovoMutationRate = denovoMutationRate;
+      isDenovo = new boolean[sites.size()];
+      bayesDenovoProb = new double[sites.size()];
+      likelihoodRatio = new double[sites.size()];
+
+      DenovoShared gridShared = new DenovoShared.Builder()
+          .sequenceErrorRate(sequenceErrorRate)
+          .denovoMutationRate(denovoMutationRate)
+          .lrtThresholds(shared.getLrtThresholds())
+          .inferMethod(shared.getInferMethod())
+          .logger(shared.getLogger())
+          .build();
+      DenovoBayesNet dbn = new DenovoBayesNet(gridShared);
+      InferenceBatch batch = new InferenceBatch(Math.max(1, Math.min(BATCH_SIZE, sites.size())));
+      for (int start = 0; start < sites.size(); start += batch.getCapacity()) {
+        int end = Math.min(sites.size(), start + batch.getCapacity());
+        batch.clear();
+        for (int site = start; site < end; site++) {
+          batch.add(sites.get(site).alleleCounts);
+        }
+        dbn.performInference(batch);
+        for (int site = start; site < end; site++) {
+          BayesInferenceResult result = batch.getResult(site - start);
+          isDenovo[site] = gridShared.getInferMethod().isDenovo(result, gridShared);
+          bayesDenovoProb[site] = result.getBayesDenovoProb();
+          likelihoodRatio[site] = result.getLikelihoodRatio();
+          numCalls += isDenovo[site] ? 1 : 0;
+        }
+      }
+    }
+
+    /**
+     * @return the call counts of the grid point
+     */
+    String getSummary() {
+      return String.format("seq_err_rate=%s,denovo_mut_rate=%s,sites=%d,calls=%d",
+          sequenceErrorRate, denovoMutationRate, isDenovo.length, numCalls);
+    }
+  }
+}
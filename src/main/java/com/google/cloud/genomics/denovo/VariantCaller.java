@@ -15,22 +15,24 @@ package com.google.cloud.genomics.denovo;
 
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
 
-import com.google.api.services.genomics.model.ReferenceBound;
 import com.google.api.services.genomics.model.Variant;
 import com.google.api.services.genomics.model.VariantCall;
-import com.google.cloud.genomics.denovo.DenovoUtil.Chromosome;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
 import com.google.cloud.genomics.denovo.VariantsBuffer.PositionCall;
 import com.google.common.base.Optional;
-import com.google.common.base.Predicate;
-import com.google.common.collect.FluentIterable;
 import com.google.common.collect.Lists;
 
-import org.javatuples.Pair;
-
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -41,13 +43,67 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class VariantCaller extends DenovoCaller {
 
+  private static final TrioMember[] TRIO_MEMBERS = TrioMember.values();
+
   private final DenovoShared shared;
   private final AtomicInteger variantCounter = new AtomicInteger();
+  private final ConcurrentMap<Integer, SiteBayesNet> siteBayesNets = new ConcurrentHashMap<>();
+  /* Callset id of every trio member, indexed by member ordinal */
+  private final String[] memberCallsetIds = new String[TRIO_MEMBERS.length];
+  /* Callset ids of the children of the parents, the first is the CHILD callset */
+  private final String[] childCallsetIds;
+  /* Fetches the pages of per member streams in the background, null without them */
+  private ExecutorService prefetchExecutor;
 
   public VariantCaller(DenovoShared shared){
     this.shared = shared;
+    if (shared.getPersonToCallsetIdMap() != null) {
+      for (TrioMember person : TRIO_MEMBERS) {
+        memberCallsetIds[person.ordinal()] = shared.getPersonToCallsetIdMap().get(person);
+      }
+    }
+    childCallsetIds = shared.getChildCallsetIds() == null
+        ? new String[] {memberCallsetIds[CHILD.ordinal()]}
+        : shared.getChildCallsetIds().toArray(new String[0]);
+  }
+
+  /**
+   * @param callSetId callset id of a call
+   * @return the trio member with the callset, null for other callsets
+   */
+  TrioMember getMember(String callSetId) {
+    for (int member = 0; member < memberCallsetIds.length; member++) {
+      if (callSetId.equals(memberCallsetIds[member])) {
+        return TRIO_MEMBERS[member];
+      }
+    }
+    return null;
+  }
 
+  /**
+   * @param callSetId callset id of a call
+   * @return the index of the child with the callset, -1 for other callsets
+   */
+  int getChild(String callSetId) {
+    for (int child = 0; child < childCallsetIds.length; child++) {
+      if (callSetId.equals(childCallsetIds[child])) {
+        return child;
+      }
+    }
+    return -1;
   }
+
+  /**
+   * @param child index of a child
+   * @return the output file of the calls of the child ; the output file for the first child and
+   *         the output file suffixed with the callset name for the others
+   */
+  File getOutputFile(int child) {
+    return DenovoUtil.getNormalizedFile(child == 0
+        ? shared.getOutputFileName()
+        : shared.getOutputFileName() + "." + shared.getChildCallsetNames().get(child));
+  }
+
   /* (non-Javadoc)
    * @see com.google.cloud.genomics.denovo.DenovoCaller#execute()
    */
@@ -57,103 +113,160 @@ public class VariantCaller extends DenovoCaller {
     shared.getLogger().info("---- Starting Variant Caller ----");
 
 
-    // Define Experiment Specific Constant Values
-    final File outputFile = DenovoUtil.getNormalizedFile(shared.getOutputFileName());
-    shared.getLogger().fine(String.format("Output File : %s", outputFile.getAbsolutePath()));
-
-    List<ReferenceBound> allContigBounds = shared.getGenomics().variantsets()
-        .get(shared.getDatasetId())
-        .setDisableGZipContent(true)
-        .execute()
-        .getReferenceBounds();
-
-
-    // Open File Outout handles
-    try (PrintWriter callWriter = new PrintWriter(outputFile);) {
-
-      /* Get a list of all the contigs */
-      List<ReferenceBound> contigBounds = FluentIterable
-          .from(allContigBounds)
-          .filter(new Predicate<ReferenceBound>() {
+    // Open File Outout handles, one per child
+    PrintWriter[] callWriters = new PrintWriter[childCallsetIds.length];
+    if (shared.isPerMemberStreams()) {
+      prefetchExecutor = Executors.newCachedThreadPool();
+    }
+    try {
+      for (int child = 0; child < childCallsetIds.length; child++) {
+        File outputFile = getOutputFile(child);
+        shared.getLogger().fine(String.format("Output File : %s", outputFile.getAbsolutePath()));
+        callWriters[child] = new PrintWriter(outputFile);
+      }
 
-            @Override
-            public boolean apply(ReferenceBound cb) {
-              return shared.getChromosomes().contains(
-                  Chromosome.valueOf(cb.getReferenceName().toUpperCase()));
-            }
-          }).toImmutableList();
+      ContigDictionary contigs = shared.getContigDictionary();
+      List<Shard> shards = planShards(contigs, shared.getSelectedContigIds(),
+          shared.getStartPosition(), shared.getEndPosition(), shared.getNumThreads());
+      shared.getLogger().info(String.format("Processing %d shards over %d contigs",
+          shards.size(), shared.getSelectedContigIds().length));
 
       ExecutorService executor = Executors.newFixedThreadPool(shared.getNumThreads());
-      /* Iterate through each contig and do variant filtering for each contig */
-      for (ReferenceBound contigBound : contigBounds) {
-        Long startContigPos = shared.getStartPosition() == null ? 1L : shared.getStartPosition();
-        Long endContigPos = shared.getEndPosition() == null
-            ? contigBound.getUpperBound() : shared.getEndPosition();
-        Long strideLength = (endContigPos - startContigPos) / shared.getNumThreads();
-
-        shared.getLogger().info("Processing Chromosome : " + contigBound.getReferenceName());
-
-        for (int threadIdx = 0 ; threadIdx < shared.getNumThreads() ; threadIdx++) {
-          long start = startContigPos + threadIdx * strideLength;
-          long end = threadIdx == shared.getNumThreads() - 1 ? endContigPos : start + strideLength - 1;
-          Runnable worker = new SimpleDenovoRunnable(callWriter, contigBound.getReferenceName(),
-              start, end);
-          executor.execute(worker);
-        }
+      /* Do variant filtering for each shard */
+      for (Shard shard : shards) {
+        Runnable worker = new SimpleDenovoRunnable(callWriters, contigs.getName(shard.contigId),
+            shard.start, shard.end);
+        executor.execute(worker);
       }
 
       executor.shutdown();
       while (!executor.isTerminated()) {
       }
       shared.getLogger().info("---- Variant caller terminated ----");
+    } finally {
+      if (prefetchExecutor != null) {
+        prefetchExecutor.shutdownNow();
+        prefetchExecutor = null;
+      }
+      for (PrintWriter callWriter : callWriters) {
+        if (callWriter != null) {
+          callWriter.close();
+        }
+      }
+    }
+  }
+
+  /**
+   * Splits the selected contigs into shards of about the same length, so that short contigs are
+   * not split as finely as long ones
+   * @param contigs contigs of the reference
+   * @param contigIds ids of the contigs to search
+   * @param startPosition first position searched on every contig, null for 1
+   * @param endPosition last position searched on every contig, null or past the contig end for
+   *        the contig end
+   * @param numShards target number of shards
+   * @return shards in contig order
+   */
+  static List<Shard> planShards(ContigDictionary contigs, int[] contigIds, Long startPosition,
+      Long endPosition, int numShards) {
+    long start = startPosition == null ? 1L : startPosition;
+    long totalLength = 0;
+    for (int contigId : contigIds) {
+      long end = getShardEnd(contigs, contigId, endPosition);
+      totalLength += Math.max(0L, end - start + 1);
+    }
+    long shardLength = Math.max(1L, (totalLength + numShards - 1) / numShards);
+
+    List<Shard> shards = new ArrayList<>();
+    for (int contigId : contigIds) {
+      long end = getShardEnd(contigs, contigId, endPosition);
+      long length = end - start + 1;
+      if (length <= 0) {
+        continue;
+      }
+      long numContigShards = (length + shardLength - 1) / shardLength;
+      long stride = (length + numContigShards - 1) / numContigShards;
+      for (long shardStart = start; shardStart <= end; shardStart += stride) {
+        shards.add(new Shard(contigId, shardStart, Math.min(end, shardStart + stride - 1)));
+      }
     }
+    return shards;
+  }
+
+  private static long getShardEnd(ContigDictionary contigs, int contigId, Long endPosition) {
+    return endPosition == null
+        ? contigs.getLength(contigId)
+        : Math.min(endPosition, contigs.getLength(contigId));
   }
 
   /**
-   * Run caller through region and record denovo calls if any
-   * @param callWriter print stream
+   * @param contig chromosome
+   * @param startPosition
+   * @param endPosition
+   * @param callsetIds callsets of the family
+   * @return a single stream of the variants of all the callsets, or with per member streams the
+   *         merge of a prefetched stream per callset
+   */
+  VariantStream createVariantStream(String contig, Long startPosition, Long endPosition,
+      List<String> callsetIds) {
+    if (!shared.isPerMemberStreams()) {
+      return new VariantContigStream(contig, startPosition, endPosition, callsetIds, shared);
+    }
+    List<VariantStream> memberStreams = new ArrayList<>();
+    for (String callsetId : callsetIds) {
+      VariantStream memberStream = new VariantContigStream(contig, startPosition, endPosition,
+          Collections.singletonList(callsetId), shared);
+      memberStreams.add(prefetchExecutor == null
+          ? memberStream
+          : new PrefetchingVariantStream(memberStream, prefetchExecutor));
+    }
+    return new MergedVariantStream(memberStreams, (int) shared.getMaxVariantResults());
+  }
+
+  /**
+   * Run caller through region and record denovo calls if any. The variants of the parents and of
+   * all the children are fetched once, by a single stream or merged per member streams, and
+   * every child is called against the same parent calls
+   * @param callWriters print stream of every child
    * @param contig chromosome
    * @param startPosition
    * @param endPosition
    * @throws IOException API hangups
    */
-  void callSimpleDenovo(PrintWriter callWriter, String contig,
+  void callSimpleDenovo(PrintWriter[] callWriters, String contig,
       Long startPosition, Long endPosition)
       throws IOException {
 
     // Create new buffer object for storing retreived variants
-    VariantsBuffer vbuffer = new VariantsBuffer();
+    VariantsBuffer vbuffer = new VariantsBuffer(childCallsetIds.length, shared.isIncludeIndels());
 
     // Create a stream for retreiving variants
-    VariantContigStream variantContigStream = new VariantContigStream(contig,
-        startPosition,
-        endPosition,
-        Lists.newArrayList(shared.getPersonToCallsetIdMap().values()),
-        shared);
+    Set<String> callsetIds = new LinkedHashSet<>(shared.getPersonToCallsetIdMap().values());
+    callsetIds.addAll(Arrays.asList(childCallsetIds));
+    VariantStream variantStream = createVariantStream(contig, startPosition, endPosition,
+        Lists.newArrayList(callsetIds));
 
     // Keep retreiving variants
-    while (variantContigStream.hasMore()) {
-      StringBuilder builder = new StringBuilder();
+    while (variantStream.hasMore()) {
+      StringBuilder[] builders = newBuilders();
 
       // Get a fresh batch of variants and filter those without calls
       Optional<List<Variant>> variantsFromStream =
-          Optional.fromNullable(variantContigStream.getVariants());
+          Optional.fromNullable(variantStream.getVariants());
 
       if (!variantsFromStream.isPresent()) {
         return;
       }
 
-      // Filter variants with  missing calls
-      Iterable<Variant> variants = FluentIterable
-        .from(variantsFromStream.get())
-        .filter(new Predicate<Variant>() {
-          @Override
-          public boolean apply(Variant variant) {
-            return variant.getCalls() != null;
-          }});
-
+      List<Variant> variants = variantsFromStream.get();
+      for (int idx = 0; idx < variants.size(); idx++) {
+        // Release the page's variants as they are decoded into the buffer
+        Variant variant = variants.set(idx, null);
 
-      for (Variant variant : variants) {
+        // Skip variants with missing calls
+        if (variant.getCalls() == null) {
+          continue;
+        }
 
         // Logging related
         synchronized (this) {
@@ -167,46 +280,118 @@ public class VariantCaller extends DenovoCaller {
 
         // Push into queue
         for (VariantCall call : variant.getCalls()) {
-          vbuffer.checkAndAdd(shared.getCallsetIdToPersonMap().get(call.getCallSetId()),
-              Pair.with(variant, call));
+          int child = getChild(call.getCallSetId());
+          if (child >= 0) {
+            vbuffer.checkAndAddChild(child, variant, call);
+          } else {
+            vbuffer.checkAndAdd(getMember(call.getCallSetId()), variant, call);
+          }
         }
+
         // Try to process buffer elements eagerly
-        while(vbuffer.canProcess()) {
-          Optional<PositionCall> nextCall = Optional.fromNullable(vbuffer.retrieveNextCall());
-          if (nextCall.isPresent()) {
-            if (nextCall.get().isDenovo()) {
-              builder.append(String.format("%s,%d,%s%n", contig, nextCall.get().getPosition(),
-                  nextCall.get()));
-
-              // Logging
-              shared.getLogger().fine(String.format("%s,%d,%s", contig,
-                  nextCall.get().getPosition(), nextCall.get()));
-            }
+        for (int child = 0; child < childCallsetIds.length; child++) {
+          while (vbuffer.canProcess(child)) {
+            appendDenovoCall(builders[child], contig, vbuffer.retrieveNextCall(child));
+            vbuffer.popChild(child);
           }
-          vbuffer.pop(CHILD);
         }
       }
-      writeCalls(callWriter, builder.toString());
+      writeCalls(callWriters, builders);
     }
 
     // Flush remaining buffer
-    StringBuilder builder = new StringBuilder();
-    while (!vbuffer.isEmpty(CHILD)) {
-      Optional<PositionCall> nextCall = Optional.fromNullable(vbuffer.retrieveNextCall());
-      if (nextCall.isPresent()) {
-        if (nextCall.get().isDenovo()) {
-          builder.append(
-              String.format("%s,%d,%s%n", contig, nextCall.get().getPosition(),
-                  nextCall.get()));
-
-          // Logging
-          shared.getLogger().fine(String.format("%s,%d,%s", contig,
-              nextCall.get().getPosition(), nextCall.get()));
-        }
+    StringBuilder[] builders = newBuilders();
+    for (int child = 0; child < childCallsetIds.length; child++) {
+      while (!vbuffer.isChildEmpty(child)) {
+        appendDenovoCall(builders[child], contig, vbuffer.retrieveNextCall(child));
+        vbuffer.popChild(child);
+      }
+    }
+    writeCalls(callWriters, builders);
+  }
+
+  private StringBuilder[] newBuilders() {
+    StringBuilder[] builders = new StringBuilder[childCallsetIds.length];
+    for (int child = 0; child < builders.length; child++) {
+      builders[child] = new StringBuilder();
+    }
+    return builders;
+  }
+
+  private void writeCalls(PrintWriter[] callWriters, StringBuilder[] builders) {
+    for (int child = 0; child < builders.length; child++) {
+      if (builders[child].length() > 0) {
+        writeCalls(callWriters[child], builders[child].toString());
       }
-      vbuffer.pop(CHILD);
     }
-    writeCalls(callWriter, builder.toString());
+  }
+
+  /**
+   * Record a call if it is denovo
+   * @param builder calls of the child
+   * @param contig chromosome
+   * @param call next call of the child, null if a parent has no call at its position
+   */
+  private void appendDenovoCall(StringBuilder builder, String contig, PositionCall call) {
+    if (call != null && call.isDenovo()) {
+      String callLine = formatCall(contig, call);
+      builder.append(String.format("%s%n", callLine));
+
+      // Logging
+      shared.getLogger().fine(callLine);
+    }
+  }
+
+  /**
+   * @param contig chromosome
+   * @param call denovo call
+   * @return the output line of the call ; calls over the genotype space of their site also get the
+   *         denovo posterior and likelihood ratio of their allele depths
+   */
+  String formatCall(String contig, PositionCall call) {
+    String callLine = String.format("%s,%d,%s", contig, call.getPosition(), call);
+    if (call.getSiteGenotypes() == null) {
+      return callLine;
+    }
+    SiteInferenceResult result = getSiteBayesNet(call.getSiteGenotypes().getNumAlleles())
+        .performInference(call.getSiteGenotypes(), call.getAlleleDepths());
+    return String.format("%s,bayesDenovoProb=%s,likelihoodRatio=%s", callLine,
+        result.getBayesDenovoProb(), result.getLikelihoodRatio());
+  }
+
+  /**
+   * @param numAlleles number of alleles of a site
+   * @return the bayes net for sites with that many alleles, built once per allele count
+   */
+  private SiteBayesNet getSiteBayesNet(int numAlleles) {
+    SiteBayesNet siteBayesNet = siteBayesNets.get(numAlleles);
+    if (siteBayesNet == null) {
+      siteBayesNet = new SiteBayesNet(numAlleles, shared.getSequenceErrorRate(),
+          shared.getDenovoMutationRate());
+      SiteBayesNet previous = siteBayesNets.putIfAbsent(numAlleles, siteBayesNet);
+      siteBayesNet = previous == null ? siteBayesNet : previous;
+    }
+    return siteBayesNet;
+  }
+
+  /**
+   * Range of positions of a contig, both ends included
+   */
+  static class Shard {
+    final int contigId;
+    final long start;
+    final long end;
+
+    Shard(int contigId, long start, long end) {
+      this.contigId = contigId;
+      this.start = start;
+      this.end = end;
+    }
+
+    @Override
+    public String toString() {
+      return String.format("<%d,%d-%d>", contigId, start, end);
+    }
   }
 
   /**
@@ -214,14 +399,14 @@ public class VariantCaller extends DenovoCaller {
    */
   private class SimpleDenovoRunnable implements Runnable {
 
-    private final PrintWriter writer;
+    private final PrintWriter[] writers;
     private final String contig;
     private final Long startPos;
     private final Long endPos;
 
-    public SimpleDenovoRunnable(PrintWriter writer, String contig,
+    public SimpleDenovoRunnable(PrintWriter[] writers, String contig,
         Long startPosition, Long endPosition) {
-      this.writer = writer;
+      this.writers = writers;
       this.contig = contig;
       this.startPos = startPosition;
       this.endPos = endPosition;
@@ -230,7 +415,7 @@ public class VariantCaller extends DenovoCaller {
     @Override
     public void run() {
       try {
-        callSimpleDenovo(writer, contig, startPos, endPos);
+        callSimpleDenovo(writers, contig, startPos, endPos);
       } catch (IOException e) {
         e.printStackTrace();
         System.err.printf("Failed to run contig : %s%n", contig);
@@ -24,7 +24,12 @@ import java.util.List;
 /**
  * Creates a Stream of variants for a particular contig
  */
-public class VariantContigStream {
+public class VariantContigStream implements VariantStream {
+
+  /* Partial response of the fields the variants buffer decodes */
+  static final String VARIANT_FIELDS = "nextPageToken,"
+      + "variants(start,end,referenceBases,alternateBases,calls(callSetId,genotype,info))";
+
   private int requestCount = 0;
   private String nextPageToken;
   SearchVariantsRequest request;
@@ -51,6 +56,7 @@ public class VariantContigStream {
   /**
    * @return if Stream has more objects
    */
+  @Override
   public boolean hasMore() {
     return requestCount == 0 || !Strings.isNullOrEmpty(nextPageToken);
   }
@@ -59,6 +65,7 @@ public class VariantContigStream {
    * @return get variants
    * @throws IOException API hangups
    */
+  @Override
   public List<Variant> getVariants() throws IOException {
 
     requestCount++;
@@ -67,7 +74,9 @@ public class VariantContigStream {
     shared.getLogger().finer(
       String.format("Executing Search Variants Request : " + String.valueOf(requestCount)));
 
-    SearchVariantsResponse response = shared.getGenomics().variants().search(request).execute();
+    SearchVariantsResponse response = shared.getGenomics().variants().search(request)
+        .setFields(VARIANT_FIELDS)
+        .execute();
 
     nextPageToken = response.getNextPageToken();
     return response.getVariants();
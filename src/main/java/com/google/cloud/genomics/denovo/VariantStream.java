@@ -0,0 +1,36 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import com.google.api.services.genomics.model.Variant;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Paged stream of the variants of a contig, in order of start position
+ */
+interface VariantStream {
+
+  /**
+   * @return if Stream has more objects
+   */
+  boolean hasMore();
+
+  /**
+   * @return the next page of variants, null or empty if the page has none
+   * @throws IOException API hangups
+   */
+  List<Variant> getVariants() throws IOException;
+}
@@ -22,116 +22,180 @@ import com.google.api.services.genomics.model.VariantCall;
 import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
 import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
 import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
-import com.google.common.base.Function;
-import com.google.common.base.Joiner;
-import com.google.common.base.Optional;
-import com.google.common.collect.FluentIterable;
-import com.google.common.collect.Ranges;
-
-import org.javatuples.Pair;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
 
 import java.util.Arrays;
-import java.util.Deque;
-import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 
-/** Provide Buffering for fetching variants
+/** Provide Buffering for fetching variants. Child SNVs are called over the 10 SNV genotypes ; when
+ * indels are included, child indels and sites where a parent carries an indel are called over the
+ * genotype space of the alleles seen at the site, see {@link SiteGenotypes}
+ * <p>
+ * Calls are decoded once when added and kept in a growable ring buffer of primitive fields per
+ * trio member, indexed by member ordinal : start, end, SNV genotype and reference base ordinals
+ * and flags, and the read depth of reference calls when indels are included. Only the alleles and
+ * depths of non reference calls are kept as objects, and only when indels are included. The depth
+ * of a reference call counts as reads of the site reference when the site is called over its
+ * genotype space
+ * <p>
+ * Several children of the same parents can share the buffer. Each child has its own queue and
+ * every child call is checked against the same parent queues, which only evict calls ending
+ * before the first call of every child
  */
 class VariantsBuffer {
-  private Map<TrioMember, Deque<Pair<Variant,VariantCall>>> bufferMap = new TreeMap<>();
-  private Map<TrioMember, Long> mostRecentStartPosition = new TreeMap<>();
+
+  private static final TrioMember[] TRIO_MEMBERS = TrioMember.values();
+  private static final Genotype[] GENOTYPES = Genotype.values();
+  private static final Allele[] ALLELES = Allele.values();
+
+  /* Allele ordinal of a base character, -1 for other characters */
+  private static final int[] BASE_ALLELES = new int[128];
+
+  static {
+    Arrays.fill(BASE_ALLELES, -1);
+    for (Allele allele : ALLELES) {
+      BASE_ALLELES[allele.name().charAt(0)] = allele.ordinal();
+    }
+  }
+
+  /* Flags of a buffered call */
+  private static final byte SNP = 1;
+  private static final byte HOM_REF = 2;
+
+  private final CallRing[] rings = new CallRing[TRIO_MEMBERS.length];
+  /* Rings of the children of the parents, the first is the ring of CHILD */
+  private final CallRing[] childRings;
+  private final long[] mostRecentStartPosition = new long[TRIO_MEMBERS.length];
+  private final boolean includeIndels;
 
   VariantsBuffer() {
-    for (TrioMember person : TrioMember.values()) {
-      bufferMap.put(person, new LinkedList<Pair<Variant,VariantCall>>());
-      mostRecentStartPosition.put(person, 0L);
+    this(false);
+  }
+
+  /**
+   * @param includeIndels whether to keep insertions and deletions instead of discarding them
+   */
+  VariantsBuffer(boolean includeIndels) {
+    this(1, includeIndels);
+  }
+
+  /**
+   * @param numChildren number of children of the parents
+   * @param includeIndels whether to keep insertions and deletions instead of discarding them
+   */
+  VariantsBuffer(int numChildren, boolean includeIndels) {
+    if (numChildren < 1) {
+      throw new IllegalArgumentException("Expected at least one child : got " + numChildren);
+    }
+    this.includeIndels = includeIndels;
+    for (TrioMember person : TRIO_MEMBERS) {
+      rings[person.ordinal()] = new CallRing();
+    }
+    childRings = new CallRing[numChildren];
+    childRings[0] = getRing(CHILD);
+    for (int child = 1; child < numChildren; child++) {
+      childRings[child] = new CallRing();
     }
   }
 
-  /** Enqueue element
+  /** Decode a call and enqueue it without filtering it
    * @param person trio member
-   * @param pair pair of variant and call
+   * @param variant
+   * @param call call of the person
    */
-  void push(TrioMember person, Pair<Variant,VariantCall> pair) {
-    getQueue(person).addLast(pair);
-    mostRecentStartPosition.put(person, pair.getValue0().getStart());
+  void push(TrioMember person, Variant variant, VariantCall call) {
+    decodeAndPush(person, getRing(person), variant, call, false);
   }
 
   /** Pop first element from queue
    * @param person
-   * @return first element in queue
    */
-  Pair<Variant,VariantCall> pop(TrioMember person) {
+  void pop(TrioMember person) {
     if (isEmpty(person)) {
       throw new IllegalStateException("Trying to pop from empty queue");
     }
-    return getQueue(person).removeFirst();
+    getRing(person).removeFirst();
+  }
+
+  /** Pop first element from the queue of a child
+   * @param child index of the child
+   */
+  void popChild(int child) {
+    if (isChildEmpty(child)) {
+      throw new IllegalStateException("Trying to pop from empty queue");
+    }
+    childRings[child].removeFirst();
   }
 
   /** Checks if first variant in CHILD buffer can be processed
    */
   boolean canProcess() {
-    return (!isEmpty(CHILD)
-        && getMostRecentStartPosition(MOM) >= getStartPosition(CHILD)
-        && getMostRecentStartPosition(DAD) >= getStartPosition(CHILD));
+    return canProcess(0);
   }
 
-  /**
-   * @param person trio member
-   * @return the start position of the most recently retrived variant
+  /** Checks if first variant in the buffer of a child can be processed
+   * @param child index of the child
    */
-  private Long getMostRecentStartPosition(TrioMember person) {
-    return mostRecentStartPosition.get(person);
+  boolean canProcess(int child) {
+    if (isChildEmpty(child)) {
+      return false;
+    }
+    long childStart = childRings[child].getStart(0);
+    return mostRecentStartPosition[MOM.ordinal()] >= childStart
+        && mostRecentStartPosition[DAD.ordinal()] >= childStart;
   }
 
   /** start position of first elememt in queue
    * @param person
    * @return 0 if the buffer is empty for that person otherwise coord position
    */
-  Long getStartPosition(TrioMember person) {
-    return isEmpty(person) ? 0 : getQueue(person).getFirst().getValue0().getStart();
+  long getStartPosition(TrioMember person) {
+    return isEmpty(person) ? 0 : getRing(person).getStart(0);
   }
 
   /** end position of last element in queue
    * @param person
    * @return 0 if the buffer is empty for that person otherwise coord position
    */
-  Long getEndPosition(TrioMember person) {
-    return isEmpty(person) ? 0 : getQueue(person).getLast().getValue0().getEnd();
+  long getEndPosition(TrioMember person) {
+    return isEmpty(person) ? 0 : getRing(person).getEnd(size(person) - 1);
   }
 
   @Override
-  public int hashCode() {
-    return bufferMap.hashCode();
+  public String toString() {
+    StringBuilder builder = new StringBuilder();
+    for (TrioMember person : TRIO_MEMBERS) {
+      appendRing(builder.append(person == TRIO_MEMBERS[0] ? "" : ", ").append(person),
+          getRing(person));
+    }
+    for (int child = 1; child < childRings.length; child++) {
+      appendRing(builder.append(", ").append(CHILD).append(child), childRings[child]);
+    }
+    return builder.toString();
   }
 
-  @Override
-  public String toString() {
-    final Function<Pair<Variant,VariantCall>, String> getStartAndEnd = new Function<Pair<Variant,VariantCall>, String>() {
-      @Override
-      public String apply(Pair<Variant,VariantCall> pair) {
-        return pair.getValue0().getStart().toString() + "-"
-            + pair.getValue0().getEnd().toString();
-      }
-    };
-
-    return Joiner.on(", ").join(FluentIterable.from(Arrays.asList(TrioMember.values()))
-        .transform(new Function<TrioMember, String>() {
-          @Override
-          public String apply(TrioMember person) {
-            return person.toString() + ":[" + Joiner.on(",").join(
-                FluentIterable.from(getQueue(person)).transform(getStartAndEnd)) + "]";
-          }
-        }));
+  private static void appendRing(StringBuilder builder, CallRing ring) {
+    builder.append(":[");
+    for (int idx = 0; idx < ring.size(); idx++) {
+      builder.append(idx == 0 ? "" : ",").append(ring.getStart(idx)).append('-')
+          .append(ring.getEnd(idx));
+    }
+    builder.append(']');
   }
 
-  Map<TrioMember, Deque<Pair<Variant,VariantCall>>> getBufferMap() {
-    return bufferMap;
+  private CallRing getRing(TrioMember person) {
+    return rings[person.ordinal()];
   }
 
-  Deque<Pair<Variant,VariantCall>> getQueue(TrioMember person) {
-    return bufferMap.get(person);
+  /**
+   * @param person trio member
+   * @return the number of buffered calls of the person
+   */
+  int size(TrioMember person) {
+    return getRing(person).size();
   }
 
   /**
@@ -139,103 +203,322 @@ class VariantsBuffer {
    * @return are all varaints exhausted
    */
   boolean isEmpty(TrioMember person) {
-    return getQueue(person).isEmpty();
+    return getRing(person).size() == 0;
   }
 
-  /** Evicts parent variants that are no longer needed
+  /**
+   * @param child index of the child
+   * @return are all variants of the child exhausted
+   */
+  boolean isChildEmpty(int child) {
+    return childRings[child].size() == 0;
+  }
+
+  /**
+   * @return the number of children of the parents
+   */
+  int getNumChildren() {
+    return childRings.length;
+  }
+
+  /** Evicts parent variants that no child needs any longer ; children without buffered variants
+   * only get variants starting after the ones already streamed
    */
   private void evictParents() {
-    if (isEmpty(CHILD)) {
+    long childStart = Long.MAX_VALUE;
+    for (CallRing childRing : childRings) {
+      if (childRing.size() > 0) {
+        childStart = Math.min(childStart, childRing.getStart(0));
+      }
+    }
+    if (childStart == Long.MAX_VALUE) {
       return;
     }
 
-    for (TrioMember parent : Arrays.asList(MOM, DAD)) {
-      while (!isEmpty(parent) && getFirst(parent).getValue0().getEnd() < getStartPosition(CHILD)) {
-        pop(parent);
+    for (TrioMember parent : TrioMember.PARENTS) {
+      CallRing ring = getRing(parent);
+      while (ring.size() > 0 && ring.getEnd(0) < childStart) {
+        ring.removeFirst();
       }
     }
   }
 
-  /**
-   * @param person
-   * @return first element in queue without removing
+  /** Check if a call passes filters for queue and then add it
+   * @param person trio member, null for calls of other callsets
+   * @param variant
+   * @param call call of the person
+   * @return success
    */
-  Pair<Variant,VariantCall> getFirst(TrioMember person) {
-    return getQueue(person).getFirst();
+  boolean checkAndAdd(TrioMember person, Variant variant, VariantCall call) {
+    if (person == null || !passesFilter(call)) {
+      return false;
+    }
+    return decodeAndPush(person, getRing(person), variant, call, true);
   }
 
-  /** Check if a call passes filters for queue and then add it
-   * @param person
-   * @param pair
+  /** Check if a call of a child passes filters for queue and then add it
+   * @param child index of the child
+   * @param variant
+   * @param call call of the child
    * @return success
    */
-  boolean checkAndAdd(TrioMember person, Pair<Variant, VariantCall> pair) {
-
-    VariantCall variant = pair.getValue1();
-    if (person == CHILD && !isSnp(pair)
-        ||callContainsDot(variant)
-        || !callIsBiAllelic(variant)
-        || !passesFilter(variant)
-        || isInsertion(pair)
-        || isDeletion(pair)) {
+  boolean checkAndAddChild(int child, Variant variant, VariantCall call) {
+    if (!passesFilter(call)) {
       return false;
     }
-    push(person, pair);
+    return decodeAndPush(CHILD, childRings[child], variant, call, true);
+  }
+
+  /**
+   * Classifies a call and resolves its SNV genotype in a single pass over its alleles, then
+   * enqueues its decoded fields ; nothing refers to the variant or the call afterwards unless the
+   * call is kept for the site local genotype space
+   * @param person trio member
+   * @param ring queue of the person
+   * @param variant
+   * @param call call of the person
+   * @param filter whether to drop calls the buffer can't use
+   * @return whether the call was enqueued
+   */
+  private boolean decodeAndPush(TrioMember person, CallRing ring, Variant variant,
+      VariantCall call, boolean filter) {
+    List<Integer> callAlleles = call.getGenotype();
+    // Only diploid calls without '.'
+    if (filter && callAlleles.size() != 2) {
+      return false;
+    }
+    int allele1 = callAlleles.get(0);
+    int allele2 = callAlleles.get(1);
+    if (filter && (allele1 < 0 || allele2 < 0)) {
+      return false;
+    }
+
+    long start = variant.getStart();
+    long end = variant.getEnd();
+    String reference = variant.getReferenceBases();
+    List<String> alternates = variant.getAlternateBases();
+    int base1 = getBaseAllele(reference, alternates, allele1);
+    int base2 = getBaseAllele(reference, alternates, allele2);
+    boolean deletion = reference.length() != 1;
+    boolean insertion = allele1 > 0 && alternates.get(allele1 - 1).length() != 1
+        || allele2 > 0 && alternates.get(allele2 - 1).length() != 1;
+    boolean snp = end == start + 1 && !deletion && !insertion;
+    boolean indel = (deletion || insertion) && alternates != null && !alternates.isEmpty()
+        && end - start == reference.length();
+
+    if (filter) {
+      boolean usable = includeIndels
+          ? person != CHILD || snp || indel
+          : (person != CHILD || snp) && !deletion && !insertion;
+      // SNVs must be made of bases the SNV genotypes know
+      if (!usable || snp && (base1 < 0 || base2 < 0)) {
+        return false;
+      }
+    }
+
+    byte flags = 0;
+    byte genotype = -1;
+    byte referenceAllele = -1;
+    if (snp && base1 >= 0 && base2 >= 0) {
+      flags |= SNP;
+      genotype = (byte) Genotype.valueOfPairAlleles(ALLELES[base1], ALLELES[base2]).ordinal();
+      referenceAllele = (byte) getBaseAllele(reference, alternates, 0);
+    }
+    if (allele1 == 0 && allele2 == 0) {
+      flags |= HOM_REF;
+    }
+    SiteRecord siteRecord = includeIndels && (flags & HOM_REF) == 0
+        ? new SiteRecord(variant, call)
+        : null;
+    int referenceDepth = includeIndels && (flags & HOM_REF) != 0 ? getReferenceDepth(call) : 0;
+    ring.add(start, end, genotype, referenceAllele, flags, siteRecord, referenceDepth);
+    mostRecentStartPosition[person.ordinal()] = start;
     return true;
   }
 
-  /** Does the call contain two alleles
+  /**
+   * @param call homozygous reference call
+   * @return the read depth of the call, the minimum depth over the block for reference blocks, 0
+   *         when the call has no depth or a missing or malformed one
+   */
+  static int getReferenceDepth(VariantCall call) {
+    if (call.getInfo() == null) {
+      return 0;
+    }
+    List<Object> depth = call.getInfo().containsKey("MIN_DP")
+        ? call.getInfo().get("MIN_DP")
+        : call.getInfo().get("DP");
+    if (depth == null || depth.isEmpty()) {
+      return 0;
+    }
+    try {
+      return Math.max(0, Integer.parseInt(String.valueOf(depth.get(0))));
+    } catch (NumberFormatException e) {
+      return 0;
+    }
+  }
+
+  /**
+   * @param reference reference bases of a variant
+   * @param alternates alternate bases of the variant
+   * @param allele index of a call allele, 0 for the reference
+   * @return the allele ordinal of a single base allele, -1 for other alleles
    */
-  private boolean callIsBiAllelic(VariantCall call) {
-    return call.getGenotype().size() == 2;
+  private static int getBaseAllele(String reference, List<String> alternates, int allele) {
+    String bases = allele == 0 ? reference : allele > 0 ? alternates.get(allele - 1) : "";
+    char base = bases.length() == 1 ? bases.charAt(0) : 0;
+    return base < BASE_ALLELES.length ? BASE_ALLELES[base] : -1;
   }
 
   /**
    * Returns the next available PositionCall
    */
   PositionCall retrieveNextCall() {
-    evictParents();
+    return retrieveNextCall(0);
+  }
 
-    Pair<Variant, VariantCall> childSNP = getNextSNP(CHILD);
-    Long snpPosition = childSNP.getValue0().getStart();
-    String referenceBase = childSNP.getValue0().getReferenceBases();
-    Map<TrioMember, Genotype> genotypeMap = new TreeMap<>();
+  /**
+   * Returns the next available PositionCall of a child
+   * @param child index of the child
+   */
+  PositionCall retrieveNextCall(int child) {
+    evictParents();
 
-    for (TrioMember person : TrioMember.values()) {
+    CallRing childRing = childRings[child];
+    if ((childRing.getFlags(0) & SNP) == 0) {
+      if (!includeIndels) {
+        throw new IllegalStateException("Expected SNP : got " + childRing.getStart(0));
+      }
+      return retrieveNextSiteCall(childRing);
+    }
+    long snpPosition = childRing.getStart(0);
+    if (includeIndels && isSiteLocal(snpPosition)) {
+      return retrieveNextSiteCall(childRing);
+    }
 
-      if (person == CHILD) {
-        genotypeMap.put(CHILD, getGenotypeFromSNP(childSNP));
+    Map<TrioMember, Genotype> genotypeMap = new TreeMap<>();
+    genotypeMap.put(CHILD, GENOTYPES[childRing.getGenotype(0)]);
+    for (TrioMember parent : TrioMember.PARENTS) {
+      CallRing ring = getRing(parent);
+      int idx = ring.findCovering(snpPosition);
+      if (idx < 0) {
+        return null;
+      }
+      if ((ring.getFlags(idx) & SNP) != 0) {
+        genotypeMap.put(parent, GENOTYPES[ring.getGenotype(idx)]);
         continue;
       }
-
-      Optional<Pair<Variant, VariantCall>> parentVariant =
-          Optional.fromNullable(getMatchingPair(person, snpPosition));
-      if (!parentVariant.isPresent()) {
+      // a parent without a SNP call carries the reference, which needs a known base
+      int referenceAllele = childRing.getReferenceAllele(0);
+      if (referenceAllele < 0) {
         return null;
       }
-
-      genotypeMap.put(person, isSnp(parentVariant.get())
-          ? getGenotypeFromSNP(parentVariant.get())
-          : Genotype.valueOf(referenceBase + referenceBase));
+      Allele referenceBase = ALLELES[referenceAllele];
+      genotypeMap.put(parent, Genotype.valueOfPairAlleles(referenceBase, referenceBase));
     }
     return new PositionCall(snpPosition, genotypeMap);
   }
 
-  /** Return the genotype corresponding to the SNP
-   * @param pair of variant,call corresponding to snp
-   * @return genotype corresponding to the SNP
+  /** Does a parent carry an indel at the position of the child SNV, so that the site needs the
+   * site local genotype space
+   * @param position position of the child SNV
    */
-  private Genotype getGenotypeFromSNP(Pair<Variant, VariantCall> pair) {
-    Variant variant = pair.getValue0();
-    VariantCall call = pair.getValue1();
-    Allele[] allelePair = new Allele[2];
+  private boolean isSiteLocal(long position) {
+    for (TrioMember parent : TrioMember.PARENTS) {
+      CallRing ring = getRing(parent);
+      int idx = ring.findCovering(position);
+      if (idx >= 0 && (ring.getFlags(idx) & (SNP | HOM_REF)) == 0) {
+        return true;
+      }
+    }
+    return false;
+  }
 
-    for (int idx = 0; idx < 2; idx++) {
-      int gtidx = call.getGenotype().get(idx);
-      allelePair[idx] = gtidx > 0 ? Allele.valueOf(variant.getAlternateBases().get(gtidx - 1))
-          : Allele.valueOf(variant.getReferenceBases());
+  /**
+   * Returns the call at the position of the first child variant over the genotype space of the
+   * alleles the trio carries there. Alleles of variants with different reference lengths are
+   * extended to the longest reference so that they compare as sequences
+   * @param childRing queue of the child
+   * @return the call or null if a parent has no call or overlapping calls can't be reconciled
+   */
+  private PositionCall retrieveNextSiteCall(CallRing childRing) {
+    long position = childRing.getStart(0);
+
+    Map<TrioMember, SiteRecord> recordMap = new TreeMap<>();
+    int[] referenceDepths = new int[TRIO_MEMBERS.length];
+    String siteReference = "";
+    for (TrioMember person : TRIO_MEMBERS) {
+      CallRing ring = person == CHILD ? childRing : getRing(person);
+      int idx = person == CHILD ? 0 : ring.findCovering(position);
+      if (idx < 0) {
+        return null;
+      }
+      if ((ring.getFlags(idx) & HOM_REF) != 0) {
+        referenceDepths[person.ordinal()] = ring.getReferenceDepth(idx);
+        continue;
+      }
+      // a parent variant starting before the child's overlaps it with a different reference
+      if (ring.getStart(idx) != position) {
+        return null;
+      }
+      SiteRecord record = ring.getSiteRecord(idx);
+      if (record.reference.length() > siteReference.length()) {
+        siteReference = record.reference;
+      }
+      recordMap.put(person, record);
+    }
+
+    List<String> alleles = Lists.newArrayList(siteReference);
+    Map<TrioMember, int[]> alleleIndexMap = new TreeMap<>();
+    for (Map.Entry<TrioMember, SiteRecord> entry : recordMap.entrySet()) {
+      SiteRecord record = entry.getValue();
+      if (!siteReference.startsWith(record.reference)) {
+        return null;
+      }
+      String suffix = siteReference.substring(record.reference.length());
+      int numRecordAlleles = 1 + record.alternates.size();
+      int[] alleleIndices = new int[numRecordAlleles];
+      for (int recordAllele = 0; recordAllele < numRecordAlleles; recordAllele++) {
+        String allele = (recordAllele == 0
+            ? record.reference : record.alternates.get(recordAllele - 1)) + suffix;
+        // only the alleles present in the genotypes make it to the site
+        if (record.allele1 != recordAllele && record.allele2 != recordAllele) {
+          alleleIndices[recordAllele] = allele.equals(siteReference) ? 0 : -1;
+          continue;
+        }
+        if (!alleles.contains(allele)) {
+          alleles.add(allele);
+        }
+        alleleIndices[recordAllele] = alleles.indexOf(allele);
+      }
+      alleleIndexMap.put(entry.getKey(), alleleIndices);
+    }
+
+    SiteGenotypes siteGenotypes = new SiteGenotypes(alleles);
+    Map<TrioMember, Integer> genotypeMap = new TreeMap<>();
+    int[] alleleDepths = new int[TRIO_MEMBERS.length * alleles.size()];
+    for (TrioMember person : TRIO_MEMBERS) {
+      if (!recordMap.containsKey(person)) {
+        // the reads of a reference call all support the site reference
+        genotypeMap.put(person, SiteGenotypes.getGenotypeIndex(0, 0));
+        alleleDepths[person.ordinal() * alleles.size()] = referenceDepths[person.ordinal()];
+        continue;
+      }
+      int[] alleleIndices = alleleIndexMap.get(person);
+      SiteRecord record = recordMap.get(person);
+      genotypeMap.put(person, SiteGenotypes.getGenotypeIndex(
+          alleleIndices[record.allele1], alleleIndices[record.allele2]));
+
+      if (record.depths != null && record.depths.length == alleleIndices.length) {
+        for (int recordAllele = 0; recordAllele < alleleIndices.length; recordAllele++) {
+          if (alleleIndices[recordAllele] >= 0) {
+            alleleDepths[person.ordinal() * alleles.size() + alleleIndices[recordAllele]] +=
+                record.depths[recordAllele];
+          }
+        }
+      }
     }
-    return Genotype.valueOfPairAlleles(allelePair[0], allelePair[1]);
+    return new PositionCall(position, siteGenotypes, genotypeMap, alleleDepths);
   }
 
   /** Check if a call has PASS filter annotation
@@ -248,114 +531,236 @@ class VariantsBuffer {
         call.getInfo().get("FILTER").get(0).equals("PASS");
   }
 
-  /** Call contains '.' character
-   * @param call
-   * @return succcess
-   */
-  private boolean callContainsDot(VariantCall call) {
-    // Check if call is unknown
-    return call.getGenotype().contains(-1);
-  }
-
-  /** Is variant, call pair a snp
-   * @param pair
-   * @return success
+  /**
+   * Growable ring buffer of the decoded calls of a trio member, oldest first. Indices passed to
+   * the getters are relative to the oldest call
    */
-  private boolean isSnp(Pair<Variant, VariantCall> pair) {
-    Variant variant = pair.getValue0();
-    VariantCall call = pair.getValue1();
-    if (variant.getEnd() != variant.getStart() + Long.valueOf(1L)) {
-      return false;
+  private static class CallRing {
+    private long[] starts = new long[16];
+    private long[] ends = new long[16];
+    /* Running max of the ends of all the calls added up to and including the slot */
+    private long[] maxEnds = new long[16];
+    private byte[] genotypes = new byte[16];
+    private byte[] referenceAlleles = new byte[16];
+    private byte[] flags = new byte[16];
+    private SiteRecord[] siteRecords = new SiteRecord[16];
+    private int[] referenceDepths = new int[16];
+    private int head;
+    private int size;
+    private long maxEnd = Long.MIN_VALUE;
+    /* Whether the calls were added in order of start, as the variant stream returns them */
+    private boolean sorted = true;
+
+    void add(long start, long end, byte genotype, byte referenceAllele, byte callFlags,
+        SiteRecord siteRecord, int referenceDepth) {
+      if (size == starts.length) {
+        grow();
+      }
+      int slot = (head + size) & (starts.length - 1);
+      sorted &= size == 0 || starts[slot(size - 1)] <= start;
+      maxEnd = Math.max(maxEnd, end);
+      starts[slot] = start;
+      ends[slot] = end;
+      maxEnds[slot] = maxEnd;
+      genotypes[slot] = genotype;
+      referenceAlleles[slot] = referenceAllele;
+      flags[slot] = callFlags;
+      siteRecords[slot] = siteRecord;
+      referenceDepths[slot] = referenceDepth;
+      size++;
     }
 
-    // check for Indels
-    if (variant.getReferenceBases().length() != 1) {
-      return false;
+    void removeFirst() {
+      siteRecords[head] = null;
+      head = (head + 1) & (starts.length - 1);
+      size--;
+      if (size == 0) {
+        maxEnd = Long.MIN_VALUE;
+        sorted = true;
+      }
     }
 
-    for (int gtIdx : call.getGenotype()) {
-      if (gtIdx > 0 && variant.getAlternateBases().get(gtIdx - 1).length() != 1) {
-        return false;
+    /**
+     * Calls ending at or before the position are skipped by a binary search on the running max of
+     * the ends, so that a lookup only scans the calls starting at or before the position whose
+     * predecessors all end before it. Calls evicted from the front end before the positions looked
+     * up later, so in practice the first call scanned is the answer ; a stream that is not sorted
+     * by start falls back to a linear scan
+     * @param position
+     * @return index of the oldest call whose range contains the position, -1 if none
+     */
+    int findCovering(long position) {
+      if (!sorted) {
+        for (int idx = 0; idx < size; idx++) {
+          if (getStart(idx) <= position && position < getEnd(idx)) {
+            return idx;
+          }
+        }
+        return -1;
       }
+
+      // first call whose running max end is past the position ; all calls before it end earlier
+      int low = 0;
+      int high = size;
+      while (low < high) {
+        int mid = (low + high) >>> 1;
+        if (maxEnds[slot(mid)] <= position) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      for (int idx = low; idx < size && getStart(idx) <= position; idx++) {
+        if (position < getEnd(idx)) {
+          return idx;
+        }
+      }
+      return -1;
     }
-    return true;
-  }
 
-  /** Is variant, call a deletion
-   * @param pair
-   * @return match
-   */
-  private boolean isDeletion(Pair<Variant, VariantCall> pair) {
-    Variant variant = pair.getValue0();
-    return variant.getReferenceBases().length() != 1 ;
-  }
+    private void grow() {
+      int capacity = starts.length * 2;
+      int firstPart = Math.min(size, starts.length - head);
+      starts = unwrap(starts, new long[capacity], firstPart);
+      ends = unwrap(ends, new long[capacity], firstPart);
+      maxEnds = unwrap(maxEnds, new long[capacity], firstPart);
+      genotypes = unwrap(genotypes, new byte[capacity], firstPart);
+      referenceAlleles = unwrap(referenceAlleles, new byte[capacity], firstPart);
+      flags = unwrap(flags, new byte[capacity], firstPart);
+      siteRecords = unwrap(siteRecords, new SiteRecord[capacity], firstPart);
+      referenceDepths = unwrap(referenceDepths, new int[capacity], firstPart);
+      head = 0;
+    }
 
-  /** is variant , call an insertion
-   * @param pair
-   * @return match
-   */
-  private boolean isInsertion(Pair<Variant, VariantCall> pair) {
-    Variant variant = pair.getValue0();
-    VariantCall call = pair.getValue1();
-    for (int gtIdx : call.getGenotype()) {
-      if (gtIdx > 0 && variant.getAlternateBases().get(gtIdx - 1).length() != 1) {
-        return true;
-      }
+    /* Copies the calls of an array oldest first into a larger one ; the first part runs from the
+     * head to the end of the array and the rest wraps around to its start */
+    private <T> T unwrap(T from, T to, int firstPart) {
+      System.arraycopy(from, head, to, 0, firstPart);
+      System.arraycopy(from, 0, to, firstPart, size - firstPart);
+      return to;
     }
-    return false;
-  }
 
+    private int slot(int idx) {
+      return (head + idx) & (starts.length - 1);
+    }
 
-  /** Get Matching variant from the queue
-   * @param person trio member
-   * @param snpPosition
-   * @return Get matching variant call pairs at matching position
-   */
-  private Pair<Variant, VariantCall> getMatchingPair(TrioMember person, Long snpPosition) {
-    for (Pair<Variant, VariantCall> pair : getQueue(person)) {
-      Variant variant = pair.getValue0();
+    int size() {
+      return size;
+    }
 
-      if (Ranges.closedOpen(variant.getStart(), variant.getEnd()).contains(snpPosition)) {
-        return pair;
-      }
+    long getStart(int idx) {
+      return starts[slot(idx)];
+    }
+
+    long getEnd(int idx) {
+      return ends[slot(idx)];
+    }
+
+    byte getGenotype(int idx) {
+      return genotypes[slot(idx)];
+    }
+
+    byte getReferenceAllele(int idx) {
+      return referenceAlleles[slot(idx)];
+    }
+
+    byte getFlags(int idx) {
+      return flags[slot(idx)];
+    }
+
+    SiteRecord getSiteRecord(int idx) {
+      return siteRecords[slot(idx)];
+    }
+
+    int getReferenceDepth(int idx) {
+      return referenceDepths[slot(idx)];
     }
-    return null;
   }
 
-  /** Get next available SNP
-   * @param person trio member
-   * @return next pair of variant, call corresponding to snp for person
+  /**
+   * Alleles, genotype and allele depths of a non reference call, kept for the site local genotype
+   * space
    */
-  private Pair<Variant, VariantCall> getNextSNP(TrioMember person) {
-    Pair<Variant, VariantCall> pair = getFirst(person);
-
-    if (!isSnp(pair)) {
-      throw new IllegalStateException("Expected SNP : got " + pair);
+  private static class SiteRecord {
+    final String reference;
+    final List<String> alternates;
+    final int allele1;
+    final int allele2;
+    final int[] depths;
+
+    SiteRecord(Variant variant, VariantCall call) {
+      reference = variant.getReferenceBases();
+      alternates = variant.getAlternateBases() == null
+          ? ImmutableList.<String>of()
+          : ImmutableList.copyOf(variant.getAlternateBases());
+      allele1 = call.getGenotype().get(0);
+      allele2 = call.getGenotype().get(1);
+      List<?> alleleDepths = call.getInfo().get("AD");
+      if (alleleDepths == null) {
+        depths = null;
+      } else {
+        depths = new int[alleleDepths.size()];
+        for (int allele = 0; allele < depths.length; allele++) {
+          depths[allele] = Integer.parseInt(String.valueOf(alleleDepths.get(allele)));
+        }
+      }
     }
-    return pair;
   }
 
-  /** A data class for storing position
+  /** A data class for storing position. Holds SNV genotypes, or genotype indices into the genotype
+   * space of the site along with the allele depths of the trio
    */
   static class PositionCall {
     private final Long position;
     private final Map<TrioMember, Genotype> genotypeMap;
+    private final SiteGenotypes siteGenotypes;
+    private final Map<TrioMember, Integer> siteGenotypeMap;
+    private final int[] alleleDepths;
 
     PositionCall(Long snpPosition, Map<TrioMember, Genotype> map) {
       this.position = snpPosition;
       this.genotypeMap = map;
+      this.siteGenotypes = null;
+      this.siteGenotypeMap = null;
+      this.alleleDepths = null;
+    }
+
+    /**
+     * @param position
+     * @param siteGenotypes genotype space of the site
+     * @param map genotype index of every trio member
+     * @param alleleDepths reads supporting each allele, by trio member ordinal and allele index
+     */
+    PositionCall(Long position, SiteGenotypes siteGenotypes, Map<TrioMember, Integer> map,
+        int[] alleleDepths) {
+      this.position = position;
+      this.genotypeMap = null;
+      this.siteGenotypes = siteGenotypes;
+      this.siteGenotypeMap = map;
+      this.alleleDepths = alleleDepths;
     }
 
     /*
      * Is call denovo
      */
     boolean isDenovo() {
+      if (siteGenotypes != null) {
+        return siteGenotypes.isDenovo(siteGenotypeMap.get(DAD), siteGenotypeMap.get(MOM),
+            siteGenotypeMap.get(CHILD));
+      }
       return DenovoUtil.checkTrioGenoTypeIsDenovo(getGenotypeMap().get(DAD),
             getGenotypeMap().get(MOM),getGenotypeMap().get(CHILD));
     }
 
     @Override
     public String toString() {
+      if (siteGenotypes != null) {
+        Map<TrioMember, String> nameMap = new TreeMap<>();
+        for (Map.Entry<TrioMember, Integer> entry : siteGenotypeMap.entrySet()) {
+          nameMap.put(entry.getKey(), siteGenotypes.getGenotypeName(entry.getValue()));
+        }
+        return "[" + getPosition().toString() + "," + nameMap.toString() + "]";
+      }
       return "[" + getPosition().toString() + "," + getGenotypeMap().toString() + "]";
     }
 
@@ -372,5 +777,26 @@ class VariantsBuffer {
     public Map<TrioMember, Genotype> getGenotypeMap() {
       return genotypeMap;
     }
+
+    /**
+     * @return the genotype space of the site, null for SNV genotypes
+     */
+    public SiteGenotypes getSiteGenotypes() {
+      return siteGenotypes;
+    }
+
+    /**
+     * @return the genotype index of every trio member, null for SNV genotypes
+     */
+    public Map<TrioMember, Integer> getSiteGenotypeMap() {
+      return siteGenotypeMap;
+    }
+
+    /**
+     * @return the allele depths by trio member ordinal and allele index, null for SNV genotypes
+     */
+    public int[] getAlleleDepths() {
+      return alleleDepths;
+    }
   }
 }
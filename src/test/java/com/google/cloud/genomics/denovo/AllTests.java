@@ -20,10 +20,25 @@ import org.junit.runners.Suite.SuiteClasses;
 @RunWith(Suite.class)
 @SuiteClasses({NodeTest.class,
   DenovoBayesNetTest.class,
+  ErrorModelTest.class,
+  ErrorRateEstimatorTest.class,
+  QualityBinsTest.class,
+  ReadFilterChainTest.class,
+  InferenceCacheTest.class,
+  InferenceTableTest.class,
+  InferenceBatchTest.class,
+  PedigreeTest.class,
+  PedigreeBayesNetTest.class,
   DenovoUtilTest.class,
   BayesInferMapTest.class,
   BayesInferBayesTest.class,
   BayesInferLRTTest.class,
+  BayesInferAllTest.class,
+  BayesInferPrefilterTest.class,
+  ContigDictionaryTest.class,
+  SiteBayesNetTest.class,
+  SweepCallerTest.class,
+  MergedVariantStreamTest.class,
   VariantsBufferTest.class
   })
 public class AllTests {}
@@ -0,0 +1,86 @@
+/*
+ *Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod.ALL;
+import static com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod.BAYES;
+import static com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod.LRT;
+import static com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod.MAP;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class BayesInferAllTest extends BayesInferTest {
+
+  private static final List<Double> LRT_THRESHOLDS = Arrays.asList(1.0, 1e300);
+
+  @Before
+  public void setUpThresholds() {
+    bayesInferrer = new BayesInfer(new DenovoShared.Builder()
+        .sequenceErrorRate(shared.getSequenceErrorRate())
+        .denovoMutationRate(shared.getDenovoMutationRate())
+        .lrtThresholds(LRT_THRESHOLDS)
+        .build());
+  }
+
+  @Test
+  public void testAllBasesSame() {
+    ReadSummary summary = createSameReadSummary();
+    Map<TrioMember, ReadSummary> summaryMap = createMapReadSummary(summary, summary, summary);
+
+    BayesInfer.BayesCallResult result = bayesInferrer.infer(summaryMap, ALL);
+    assertFalse(result.isDenovo());
+    String details = result.getDetails(LRT_THRESHOLDS);
+    assertTrue(details, details.contains("map=false,bayes=false,lrt=1.0:false;1.0E300:false,"));
+  }
+
+  @Test
+  public void testTrioPosChr1pos75884343() {
+    Map<TrioMember, ReadSummary> readSummaryMap = createReadSummaryMapChr1Pos75884343();
+    BayesInfer.BayesCallResult result = bayesInferrer.infer(readSummaryMap, ALL);
+
+    assertTrue(result.isDenovo());
+    String details = result.getDetails(LRT_THRESHOLDS);
+    assertTrue(details, details.contains("map=true,bayes=true,lrt=1.0:true;1.0E300:false,"));
+  }
+
+  @Test
+  public void testMatchesSingleMethods() {
+    for (Map<TrioMember, ReadSummary> readSummaryMap : Arrays.asList(
+        createReadSummaryMapChrXPos154226820(),
+        createReadSummaryMapChr1Pos816785(),
+        createReadSummaryMapChr1Pos149035163L(),
+        createReadSummaryMapChr1Pos75884343(),
+        createReadSummaryMapChr1Pos110583335())) {
+      BayesInfer.BayesCallResult result = bayesInferrer.infer(readSummaryMap, ALL);
+      boolean mapDenovo = bayesInferrer.infer(readSummaryMap, MAP).isDenovo();
+      boolean bayesDenovo = bayesInferrer.infer(readSummaryMap, BAYES).isDenovo();
+      boolean lrtDenovo = bayesInferrer.infer(readSummaryMap, LRT).isDenovo();
+
+      assertEquals(mapDenovo || bayesDenovo || lrtDenovo, result.isDenovo());
+      String details = result.getDetails(LRT_THRESHOLDS);
+      assertTrue(details, details.contains(String.format(
+          "map=%b,bayes=%b,lrt=1.0:%b;", mapDenovo, bayesDenovo, lrtDenovo)));
+    }
+  }
+}
@@ -19,6 +19,7 @@ import static com.google.cloud.genomics.denovo.DenovoUtil.Genotype.CT;
 import static com.google.cloud.genomics.denovo.DenovoUtil.Genotype.GG;
 import static com.google.cloud.genomics.denovo.DenovoUtil.Genotype.TT;
 import static com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod.BAYES;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -29,6 +30,7 @@ import org.junit.Test;
 
 import java.util.Arrays;
 import java.util.Map;
+import java.util.TreeMap;
 
 public class BayesInferBayesTest extends BayesInferTest {
 
@@ -82,4 +84,24 @@ public class BayesInferBayesTest extends BayesInferTest {
     assertEquals("110583335 => [GG,GG,AG]", Arrays.asList(GG, GG, AG), result.getMaxTrioGenoType());
     assertTrue(result.isDenovo());
   }
+
+  @Test
+  public void testTypedResult() {
+    Map<TrioMember, ReadSummary> readSummaryMap = new TreeMap<>(
+        createReadSummaryMapChr1Pos75884343());
+    BayesInfer.BayesCallResult result = bayesInferrer.infer(readSummaryMap, BAYES);
+    BayesInferenceResult expected =
+        new DenovoBayesNet(shared).performInference(readSummaryMap);
+
+    assertFalse(result.isPrefiltered());
+    assertArrayEquals(DenovoBayesNet.getAlleleCounts(readSummaryMap), result.getReadCounts());
+    assertEquals(expected.getBayesDenovoProb(), result.getBayesDenovoProb(), 1e-12);
+    assertEquals(expected.getLikelihoodRatio(), result.getLikelihoodRatio(),
+        1e-9 * expected.getLikelihoodRatio());
+    assertEquals(String.format("readCounts=CHILD:%s;MOM:%s;DAD:%s,maxGenoType=[TT, TT, CT],"
+        + "isDenovo=true", new TreeMap<>(readSummaryMap.get(TrioMember.CHILD).getCount()),
+        new TreeMap<>(readSummaryMap.get(TrioMember.MOM).getCount()),
+        new TreeMap<>(readSummaryMap.get(TrioMember.DAD).getCount())),
+        result.getDetails(shared.getLrtThresholds()));
+  }
 }
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod.ALL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Checks that the prefilter tier of the inference calls every simulated site exactly as the full
+ * bayes net does
+ */
+public class BayesInferPrefilterTest extends DenovoTest {
+
+  private static final Allele[] ALLELES = Allele.values();
+  private static final double SEQUENCE_ERROR_RATE = 1e-2;
+
+  private List<Map<TrioMember, ReadSummary>> sites;
+
+  /**
+   * Reads of a member with the given two alleles ; each read base is drawn from the genotype and
+   * then wrong at the sequence error rate
+   */
+  private static ReadSummary simulateReads(Random random, Allele first, Allele second,
+      int depth) {
+    Map<Allele, Integer> count = new EnumMap<>(Allele.class);
+    for (int read = 0; read < depth; read++) {
+      Allele allele = random.nextBoolean() ? first : second;
+      if (random.nextDouble() < SEQUENCE_ERROR_RATE) {
+        allele = ALLELES[(allele.ordinal() + 1 + random.nextInt(3)) % ALLELES.length];
+      }
+      count.put(allele, count.containsKey(allele) ? count.get(allele) + 1 : 1);
+    }
+    return new ReadSummary(count);
+  }
+
+  /**
+   * Biallelic sites of mendelian trios at depths from 0 to 40, with one in ten children carrying
+   * a denovo allele
+   */
+  @Before
+  public void setUpSites() {
+    Random random = new Random(7);
+    sites = new ArrayList<>();
+    for (int site = 0; site < 2000; site++) {
+      Allele ref = ALLELES[random.nextInt(ALLELES.length)];
+      Allele alt = ALLELES[(ref.ordinal() + 1 + random.nextInt(3)) % ALLELES.length];
+      Allele[] dad = {random.nextBoolean() ? ref : alt, random.nextBoolean() ? ref : alt};
+      Allele[] mom = {random.nextBoolean() ? ref : alt, random.nextBoolean() ? ref : alt};
+      Allele[] child = {dad[random.nextInt(2)], mom[random.nextInt(2)]};
+      if (random.nextInt(10) == 0) {
+        child[1] = ALLELES[(ref.ordinal() + 2) % ALLELES.length] == alt
+            ? ALLELES[(ref.ordinal() + 3) % ALLELES.length]
+            : ALLELES[(ref.ordinal() + 2) % ALLELES.length];
+      }
+      sites.add(createMapReadSummary(
+          simulateReads(random, dad[0], dad[1], random.nextInt(41)),
+          simulateReads(random, mom[0], mom[1], random.nextInt(41)),
+          simulateReads(random, child[0], child[1], random.nextInt(41))));
+    }
+  }
+
+  private static DenovoShared createShared(double denovoMutationRate, boolean prefilter) {
+    return new DenovoShared.Builder()
+        .sequenceErrorRate(SEQUENCE_ERROR_RATE)
+        .denovoMutationRate(denovoMutationRate)
+        .lrtThresholds(Arrays.asList(1.0, 1e-6, 1e3))
+        .inferenceCacheSize(0)
+        .prefilter(prefilter)
+        .build();
+  }
+
+  private static long getTierCount(BayesInfer bayesInferrer, String tier) {
+    for (String count : bayesInferrer.getTierCounts().split(",")) {
+      if (count.startsWith(tier + "=")) {
+        return Long.parseLong(count.substring(tier.length() + 1));
+      }
+    }
+    throw new IllegalArgumentException(tier);
+  }
+
+  private void checkMatchesBayesNet(double denovoMutationRate) {
+    BayesInfer full = new BayesInfer(createShared(denovoMutationRate, false));
+    BayesInfer tiered = new BayesInfer(createShared(denovoMutationRate, true));
+    for (InferenceMethod inferMethod : InferenceMethod.values()) {
+      for (Map<TrioMember, ReadSummary> site : sites) {
+        BayesInfer.BayesCallResult expected = full.infer(site, inferMethod);
+        BayesInfer.BayesCallResult result = tiered.infer(site, inferMethod);
+        String details = expected.getDetails(shared.getLrtThresholds());
+        assertEquals(details, expected.isDenovo(), result.isDenovo());
+        if (result.getMaxTrioGenoType() != null) {
+          assertEquals(details, result.getDetails(shared.getLrtThresholds()));
+        }
+      }
+    }
+    long prefiltered = getTierCount(tiered, "prefilter");
+    assertEquals(InferenceMethod.values().length * sites.size(),
+        prefiltered + getTierCount(tiered, "bayesNet"));
+    assertEquals(0, getTierCount(full, "prefilter"));
+  }
+
+  @Test
+  public void testMatchesBayesNet() {
+    checkMatchesBayesNet(1e-8);
+  }
+
+  @Test
+  public void testMatchesBayesNet_HighMutationRate() {
+    checkMatchesBayesNet(1e-2);
+  }
+
+  @Test
+  public void testMostSitesPrefiltered() {
+    BayesInfer tiered = new BayesInfer(createShared(1e-8, true));
+    int numDenovo = 0;
+    for (Map<TrioMember, ReadSummary> site : sites) {
+      numDenovo += tiered.infer(site, InferenceMethod.BAYES).isDenovo() ? 1 : 0;
+    }
+    long prefiltered = getTierCount(tiered, "prefilter");
+    assertTrue(tiered.getTierCounts(), prefiltered > sites.size() * 3 / 4);
+    assertTrue(tiered.getTierCounts(), prefiltered <= sites.size() - numDenovo);
+
+    // with the all method the lowest LRT threshold decides
+    BayesInfer tieredAll = new BayesInfer(createShared(1e-8, true));
+    for (Map<TrioMember, ReadSummary> site : sites) {
+      tieredAll.infer(site, ALL);
+    }
+    assertTrue(tieredAll.getTierCounts(), getTierCount(tieredAll, "prefilter") < prefiltered);
+  }
+
+  @Test
+  public void testBatchMatchesBayesNet() {
+    BayesInfer full = new BayesInfer(createShared(1e-8, false));
+    BayesInfer tiered = new BayesInfer(createShared(1e-8, true));
+    List<BayesInfer.BayesCallResult> expected = full.infer(sites, InferenceMethod.LRT);
+    List<BayesInfer.BayesCallResult> results = tiered.infer(sites, InferenceMethod.LRT);
+    for (int site = 0; site < sites.size(); site++) {
+      assertEquals(expected.get(site).isDenovo(), results.get(site).isDenovo());
+    }
+    assertTrue(getTierCount(tiered, "prefilter") > 0);
+    assertEquals(sites.size(),
+        getTierCount(tiered, "prefilter") + getTierCount(tiered, "bayesNet"));
+  }
+
+  @Test
+  public void testPrefilteredResult() {
+    BayesInfer tiered = new BayesInfer(createShared(1e-8, true));
+    ReadSummary summary = createSameReadSummary();
+    BayesInfer.BayesCallResult result = tiered.infer(
+        createMapReadSummary(summary, summary, summary), InferenceMethod.BAYES);
+    assertNull(result.getMaxTrioGenoType());
+    String details = result.getDetails(shared.getLrtThresholds());
+    assertTrue(details, details.endsWith("isDenovo=false,prefiltered=true"));
+  }
+}
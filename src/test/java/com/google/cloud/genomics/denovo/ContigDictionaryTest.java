@@ -0,0 +1,161 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.services.genomics.model.ReferenceBound;
+import com.google.cloud.genomics.denovo.VariantCaller.Shard;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tests ContigDictionary class and the shard planning over it
+ */
+public class ContigDictionaryTest extends DenovoTest {
+
+  private static final ContigDictionary GRCH38 = new ContigDictionary(
+      Arrays.asList("1", "2", "MT", "chrUn_KI270302v1", "HLA-A*01:01:01:01"),
+      Arrays.asList(248956422L, 242193529L, 16569L, 2274L, 3503L));
+
+  @Test
+  public void testGetId() {
+    assertEquals(0, GRCH38.getId("1"));
+    assertEquals(0, GRCH38.getId("chr1"));
+    assertEquals(1, GRCH38.getId("CHR2"));
+    assertEquals(2, GRCH38.getId("chrM"));
+    assertEquals(3, GRCH38.getId("chrUn_KI270302v1"));
+    assertEquals(4, GRCH38.getId("HLA-A*01:01:01:01"));
+    assertEquals(-1, GRCH38.getId("chr100"));
+    assertEquals(16569L, GRCH38.getLength(2));
+    assertEquals("MT", GRCH38.getName(2));
+  }
+
+  @Test
+  public void testGetId_AmbiguousAlias() {
+    ContigDictionary contigs = new ContigDictionary(Arrays.asList("chr1", "1"),
+        Arrays.asList(10L, 20L));
+    assertEquals(0, contigs.getId("chr1"));
+    assertEquals(1, contigs.getId("1"));
+    assertEquals(-1, contigs.getId("CHR1"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRepeatedContig() {
+    new ContigDictionary(Arrays.asList("1", "1"), Arrays.asList(10L, 10L));
+  }
+
+  @Test
+  public void testGetIds() {
+    BitSet ids = GRCH38.getIds(Arrays.asList("chrM", "2"));
+    assertEquals(2, ids.cardinality());
+    assertTrue(ids.get(1) && ids.get(2));
+    // the default skips the unplaced and alt contigs
+    assertEquals("{0, 1, 2}", GRCH38.getIds(null).toString());
+    ContigDictionary nonHuman = new ContigDictionary(Arrays.asList("2L", "2R"),
+        Arrays.asList(23513712L, 25286936L));
+    assertEquals("{0, 1}", nonHuman.getIds(null).toString());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetIds_UnknownContig() {
+    GRCH38.getIds(Arrays.asList("chr100"));
+  }
+
+  @Test
+  public void testSelectedContigs() {
+    DenovoShared contigShared = new DenovoShared.Builder()
+        .contigDictionary(GRCH38)
+        .chromosomes(Arrays.asList("chr2", "1"))
+        .build();
+    assertTrue(contigShared.isSelectedContig("chr1"));
+    assertTrue(contigShared.isSelectedContig("2"));
+    assertFalse(contigShared.isSelectedContig("MT"));
+    assertFalse(contigShared.isSelectedContig("decoy"));
+    assertEquals("[0, 1]", Arrays.toString(contigShared.getSelectedContigIds()));
+  }
+
+  @Test
+  public void testFromReferenceBounds() {
+    ContigDictionary contigs = ContigDictionary.fromReferenceBounds(Arrays.asList(
+        new ReferenceBound().setReferenceName("chr20").setUpperBound(64444167L),
+        new ReferenceBound().setReferenceName("chr21").setUpperBound(46709983L)));
+    assertEquals("[chr20:64444167, chr21:46709983]", contigs.toString());
+  }
+
+  @Test
+  public void testWithReferenceNames() {
+    ContigDictionary contigs = GRCH38.withReferenceNames(Arrays.asList("chr1", "chrM"));
+    assertEquals("[chr1:248956422, 2:242193529, chrM:16569, chrUn_KI270302v1:2274, "
+        + "HLA-A*01:01:01:01:3503]", contigs.toString());
+    assertEquals(0, contigs.getId("1"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testWithReferenceNames_Mismatch() {
+    GRCH38.withReferenceNames(Arrays.asList("chr1", "NC_000001.11"));
+  }
+
+  @Test
+  public void testFromFile() throws IOException {
+    File dict = File.createTempFile("reference", ".dict");
+    dict.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(dict)) {
+      writer.println("@HD\tVN:1.5");
+      writer.println("@SQ\tSN:chr1\tLN:248956422\tM5:6aef897c3d6ff0c78aff06ac189178dd");
+      writer.println("@SQ\tSN:chrM\tLN:16569");
+    }
+    assertEquals("[chr1:248956422, chrM:16569]", ContigDictionary.fromFile(dict).toString());
+
+    File fai = File.createTempFile("reference", ".fa.fai");
+    fai.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(fai)) {
+      writer.println("1\t248956422\t112\t70\t71");
+      writer.println("MT\t16569\t252513167\t70\t71");
+    }
+    assertEquals("[1:248956422, MT:16569]", ContigDictionary.fromFile(fai).toString());
+  }
+
+  @Test
+  public void testPlanShards() {
+    List<Shard> shards = VariantCaller.planShards(GRCH38, new int[] {0, 1, 2}, null, null, 4);
+    // the long contigs share the shards, the mitochondrion gets a single one
+    assertEquals(6, shards.size());
+    assertEquals("<0,1-82985474>", shards.get(0).toString());
+    assertEquals("<1,1-121096765>", shards.get(3).toString());
+    assertEquals("<2,1-16569>", shards.get(5).toString());
+
+    long covered = 0;
+    for (Shard shard : shards) {
+      covered += shard.end - shard.start + 1;
+    }
+    assertEquals(248956422L + 242193529L + 16569L, covered);
+  }
+
+  @Test
+  public void testPlanShards_PositionRange() {
+    List<Shard> shards =
+        VariantCaller.planShards(GRCH38, new int[] {0, 2}, 1000L, 20000L, 2);
+    assertEquals("[<0,1000-10500>, <0,10501-20000>, <2,1000-16569>]", shards.toString());
+  }
+}
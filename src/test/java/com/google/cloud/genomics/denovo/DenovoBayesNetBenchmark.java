@@ -0,0 +1,93 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH comparison of the per site and batch inference paths of the Bayes Net. Scores are per site.
+ * Run with
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=DenovoBayesNetBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DenovoBayesNetBenchmark {
+
+  static final int NUM_SITES = 4096;
+
+  private DenovoBayesNet dbn;
+  private int[][] siteAlleleCounts;
+  private MutableBayesInferenceResult result;
+  private InferenceBatch batch;
+
+  @Setup
+  public void setUp() {
+    DenovoShared shared = new DenovoShared.Builder()
+        .sequenceErrorRate(1e-2)
+        .denovoMutationRate(1e-8)
+        .build();
+    dbn = new DenovoBayesNet(shared);
+    result = new MutableBayesInferenceResult();
+    batch = new InferenceBatch(NUM_SITES);
+
+    // Mostly homozygous pileups with the occasional second allele, as seen at candidate sites
+    Random random = new Random(20141002L);
+    siteAlleleCounts = new int[NUM_SITES][12];
+    for (int site = 0; site < NUM_SITES; site++) {
+      for (int member = 0; member < 3; member++) {
+        siteAlleleCounts[site][member * 4 + random.nextInt(4)] += 20 + random.nextInt(40);
+        siteAlleleCounts[site][member * 4 + random.nextInt(4)] += random.nextInt(3);
+      }
+      batch.add(siteAlleleCounts[site]);
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SITES)
+  public void perSite(Blackhole blackhole) {
+    for (int site = 0; site < NUM_SITES; site++) {
+      blackhole.consume(dbn.performInference(siteAlleleCounts[site], result)
+          .getBayesDenovoProb());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NUM_SITES)
+  public void batch(Blackhole blackhole) {
+    dbn.performInference(batch);
+    blackhole.consume(batch.getBayesDenovoProb());
+  }
+}
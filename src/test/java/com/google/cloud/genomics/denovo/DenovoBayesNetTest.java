@@ -27,14 +27,18 @@ import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
 import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
 import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
 
+import org.junit.Assume;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
@@ -42,6 +46,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 /**
  * Tests DenovoBayesNet
@@ -54,6 +59,7 @@ public class DenovoBayesNetTest extends DenovoTest {
   private static final double EPS_SMALLER = 1e-20;
   private static final double EPS_MEDIUM = 1e-5;
   private static final double EPS_LARGE = 1;
+  private static final long ALLOCATION_SLACK_BYTES = 1024;
 
   static {
     conditionalProbabilityTable = new HashMap<>();
@@ -197,6 +203,37 @@ public class DenovoBayesNetTest extends DenovoTest {
     }
   }
   
+  @Test
+  public void testLogConditionalProbabilityTable_Parents() {
+    for (TrioMember person : TrioMember.PARENTS) {
+      Map<List<Genotype>, Double> cpt =
+          dbn.getNodeMap().get(person).getConditionalProbabilityTable();
+      double[] logCpt = dbn.getNodeMap().get(person).getLogConditionalProbabilityTable();
+      assertEquals(Genotype.values().length, logCpt.length);
+      for (Genotype genotype : Genotype.values()) {
+        assertEquals(Math.log(cpt.get(Collections.singletonList(genotype))),
+            logCpt[genotype.ordinal()], EPS_SMALL);
+      }
+    }
+  }
+
+  @Test
+  public void testLogConditionalProbabilityTable_Child() {
+    Map<List<Genotype>, Double> cpt =
+        dbn.getNodeMap().get(CHILD).getConditionalProbabilityTable();
+    double[] logCpt = dbn.getNodeMap().get(CHILD).getLogConditionalProbabilityTable();
+    assertEquals(1000, logCpt.length);
+    for (Genotype genoTypeDad : Genotype.values()) {
+      for (Genotype genoTypeMom : Genotype.values()) {
+        for (Genotype genoTypeChild : Genotype.values()) {
+          assertEquals(Math.log(cpt.get(Arrays.asList(genoTypeDad, genoTypeMom, genoTypeChild))),
+              logCpt[DenovoBayesNet.getChildCptIndex(genoTypeDad.ordinal(), genoTypeMom.ordinal(),
+                  genoTypeChild.ordinal())], EPS_SMALL);
+        }
+      }
+    }
+  }
+
   @Test
   public void testBaseLogLikelihood_HomozygousMatch() {
     for(Genotype genotype : Genotype.values()) {
@@ -431,4 +468,143 @@ public class DenovoBayesNetTest extends DenovoTest {
     
     assertEquals("ll(AA,AA,AA)", answer, result.getMaxLikelihood(), EPS_SMALL);
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testPerformInference_PrimitiveMatchesMap() {
+    Map<TrioMember, ReadSummary> summaryMap = createMapReadSummary(createSameReadSummary(),
+        createAlmostSameReadSummary(), createAlmostSameReadSummary());
+    BayesInferenceResult expected = dbn.performInference(summaryMap);
+    MutableBayesInferenceResult result = dbn.performInference(
+        DenovoBayesNet.getAlleleCounts(summaryMap), new MutableBayesInferenceResult());
+
+    assertEquals(expected.getMaxTrioGenotype(), result.getMaxTrioGenotype());
+    assertEquals(expected.getMaxLikelihood(), result.getMaxLikelihood(), EPS_SMALL);
+    assertEquals(expected.getBayesDenovoProb(), result.getBayesDenovoProb(), EPS_SMALL);
+    assertEquals(expected.getLikelihoodRatio(), result.getLikelihoodRatio(), EPS_SMALL);
+  }
+
+  @Test
+  public void testPerformInference_PrimitiveDoesNotAllocate() {
+    ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationBean =
+        (com.sun.management.ThreadMXBean) threadBean;
+    Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported());
+    allocationBean.setThreadAllocatedMemoryEnabled(true);
+
+    int[] alleleCounts = DenovoBayesNet.getAlleleCounts(createMapReadSummary(
+        createSameReadSummary(), createAlmostSameReadSummary(), createAlmostSameReadSummary()));
+    MutableBayesInferenceResult result = new MutableBayesInferenceResult();
+    final int numCalls = 1000;
+
+    // Warm up the thread local scratch space
+    for (int i = 0; i < numCalls; i++) {
+      dbn.performInference(alleleCounts, result);
+    }
+
+    long threadId = Thread.currentThread().getId();
+    long before = allocationBean.getThreadAllocatedBytes(threadId);
+    long measurementOverhead = allocationBean.getThreadAllocatedBytes(threadId) - before;
+    before = allocationBean.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < numCalls; i++) {
+      dbn.performInference(alleleCounts, result);
+    }
+    long allocated = allocationBean.getThreadAllocatedBytes(threadId) - before
+        - measurementOverhead;
+
+    // a stray allocation per call would add up to numCalls times its size ; the slack covers
+    // the allocations of the JVM itself on this thread
+    assertTrue("allocated " + allocated + " bytes over " + numCalls + " calls",
+        allocated <= ALLOCATION_SLACK_BYTES);
+  }
+
+  @Test
+  public void testObservedGenotypes() {
+    int acMask = (1 << Allele.A.ordinal()) | (1 << Allele.C.ordinal());
+    assertTrue(Arrays.equals(new int[] {AA.ordinal(), AC.ordinal(), CC.ordinal()},
+        DenovoBayesNet.getObservedGenotypes(acMask)));
+    assertEquals(0, DenovoBayesNet.getObservedGenotypes(0).length);
+    assertEquals(1, DenovoBayesNet.getObservedGenotypes(1 << Allele.T.ordinal()).length);
+    assertEquals(10, DenovoBayesNet.getObservedGenotypes(15).length);
+
+    int[] alleleCounts = new int[12];
+    alleleCounts[DenovoBayesNet.getAlleleCountIndex(DAD, Allele.A)] = 3;
+    alleleCounts[DenovoBayesNet.getAlleleCountIndex(CHILD, Allele.C)] = 1;
+    assertEquals(acMask, DenovoBayesNet.getObservedAlleleMask(alleleCounts));
+  }
+
+  @Test
+  public void testPerformInference_RestrictedMatchesFullScan() {
+    Random random = new Random(20141005L);
+    for (int trial = 0; trial < 2000; trial++) {
+      // low depths and empty members make for near ties with unobserved genotypes
+      int[] alleleCounts = new int[12];
+      for (int member = 0; member < 3; member++) {
+        int depth = random.nextInt(4) == 0 ? 0 : random.nextInt(trial % 2 == 0 ? 3 : 40);
+        int first = random.nextInt(4);
+        int second = random.nextInt(4);
+        for (int read = 0; read < depth; read++) {
+          alleleCounts[member * 4 + (random.nextInt(5) == 0 ? second : first)]++;
+        }
+      }
+      MutableBayesInferenceResult expected =
+          dbn.performInference(alleleCounts, new MutableBayesInferenceResult(), false);
+      MutableBayesInferenceResult result =
+          dbn.performInference(alleleCounts, new MutableBayesInferenceResult(), true);
+
+      String message = Arrays.toString(alleleCounts);
+      assertEquals(message, expected.getMaxTrioGenotype(), result.getMaxTrioGenotype());
+      assertEquals(message, expected.getMaxLikelihood(), result.getMaxLikelihood(), 0.0);
+      assertEquals(message, expected.getBayesDenovoProb(), result.getBayesDenovoProb(), 0.0);
+    }
+  }
+
+  @Test
+  public void testPerformInference_FactorizedMatchesEnumeration() {
+    Random random = new Random(20141001L);
+    for (int trial = 0; trial < 500; trial++) {
+      Map<TrioMember, ReadSummary> summaryMap = createMapReadSummary(
+          createRandomReadSummary(random), createRandomReadSummary(random),
+          createRandomReadSummary(random));
+      int[] alleleCounts = DenovoBayesNet.getAlleleCounts(summaryMap);
+      MutableBayesInferenceResult expected =
+          dbn.enumerateInference(alleleCounts, new MutableBayesInferenceResult());
+      MutableBayesInferenceResult result =
+          dbn.performInference(alleleCounts, new MutableBayesInferenceResult());
+
+      String message = summaryMap.toString();
+      assertEquals(message, expected.getMaxTrioGenotype(), result.getMaxTrioGenotype());
+      assertEquals(message, expected.getMaxLikelihood(), result.getMaxLikelihood(), EPS_SMALL);
+      assertEquals(message, expected.getBayesDenovoProb(), result.getBayesDenovoProb(),
+          Math.abs(expected.getBayesDenovoProb()) * 1e-9);
+      assertEquals(message, expected.getLikelihoodRatio(), result.getLikelihoodRatio(),
+          Math.abs(expected.getLikelihoodRatio()) * 1e-9);
+      assertEquals(message, expected.getMendelianLogLikelihood(),
+          result.getMendelianLogLikelihood(), 1e-9);
+      assertEquals(message, expected.getDenovoLogLikelihood(),
+          result.getDenovoLogLikelihood(), 1e-9);
+    }
+  }
+
+  @Test
+  public void testPerformInference_HighDepthDoesNotUnderflow() {
+    Map<Allele, Integer> parentCount = new HashMap<>();
+    parentCount.put(Allele.A, 980);
+    parentCount.put(Allele.T, 20);
+    Map<Allele, Integer> childCount = new HashMap<>();
+    childCount.put(Allele.A, 500);
+    childCount.put(Allele.C, 500);
+    int[] alleleCounts = DenovoBayesNet.getAlleleCounts(createMapReadSummary(
+        new ReadSummary(parentCount), new ReadSummary(parentCount), new ReadSummary(childCount)));
+
+    MutableBayesInferenceResult expected =
+        dbn.enumerateInference(alleleCounts, new MutableBayesInferenceResult());
+    MutableBayesInferenceResult result =
+        dbn.performInference(alleleCounts, new MutableBayesInferenceResult());
+
+    assertTrue(Double.isNaN(expected.getBayesDenovoProb()));
+    assertEquals(Arrays.asList(AA, AA, AC), result.getMaxTrioGenotype());
+    assertEquals(1.0, result.getBayesDenovoProb(), EPS_SMALL);
+    assertTrue(result.getLikelihoodRatio() > 1.0);
+  }
+}
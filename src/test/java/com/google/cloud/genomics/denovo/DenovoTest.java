@@ -27,8 +27,10 @@ import org.mockito.MockitoAnnotations;
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Random;
 
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.*;
 import static org.junit.Assert.assertEquals;
@@ -67,6 +69,7 @@ public abstract class DenovoTest {
     Mockito.when(shared.getSequenceErrorRate()).thenReturn(1e-2);
     Mockito.when(shared.getDenovoMutationRate()).thenReturn(1e-8);
     Mockito.when(shared.getLrtThreshold()).thenReturn(1.0);
+    Mockito.when(shared.getLrtThresholds()).thenReturn(Collections.singletonList(1.0));
   }
 
   @Before
@@ -102,6 +105,17 @@ public abstract class DenovoTest {
     return new ReadSummary().setCount(baseCount);
   }
   
+  ReadSummary createRandomReadSummary(Random random) {
+    Map<Allele, Integer> baseCount = new HashMap<>();
+    Allele[] alleles = Allele.values();
+    baseCount.put(alleles[random.nextInt(alleles.length)], random.nextInt(30));
+    Allele second = alleles[random.nextInt(alleles.length)];
+    if (!baseCount.containsKey(second)) {
+      baseCount.put(second, random.nextBoolean() ? random.nextInt(30) : random.nextInt(3));
+    }
+    return new ReadSummary(baseCount);
+  }
+
   Map<TrioMember, ReadSummary> createMapReadSummary(ReadSummary dad, ReadSummary mom,
       ReadSummary child) {
     Map<TrioMember, ReadSummary> readSummaryMap = new HashMap<>();
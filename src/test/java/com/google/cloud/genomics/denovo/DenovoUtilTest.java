@@ -176,4 +176,28 @@ public class DenovoUtilTest extends DenovoTest {
     assertEquals(Genotype.CT, Genotype.valueOfPairAlleles(Allele.C, Allele.T));
     assertEquals(Genotype.CT, Genotype.valueOfPairAlleles(Allele.T, Allele.C));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void testGetTransmissionCount() {
+    for (Genotype dad : Genotype.values()) {
+      for (Genotype mom : Genotype.values()) {
+        int total = 0;
+        for (Genotype child : Genotype.values()) {
+          int trioIndex =
+              DenovoUtil.getTrioGenotypeIndex(dad.ordinal(), mom.ordinal(), child.ordinal());
+          int count = DenovoUtil.getTransmissionCount(trioIndex);
+          assertEquals(count == 0, DenovoUtil.isDenovoTrioGenotype(trioIndex));
+          assertEquals(count == 0, DenovoUtil.checkTrioGenoTypeIsDenovo(dad, mom, child));
+          total += count;
+        }
+        assertEquals(4, total);
+      }
+    }
+    assertEquals(4, DenovoUtil.getTransmissionCount(DenovoUtil.getTrioGenotypeIndex(
+        AA.ordinal(), AA.ordinal(), AA.ordinal())));
+    assertEquals(1, DenovoUtil.getTransmissionCount(DenovoUtil.getTrioGenotypeIndex(
+        AC.ordinal(), GT.ordinal(), CG.ordinal())));
+    assertEquals(2, DenovoUtil.getTransmissionCount(DenovoUtil.getTrioGenotypeIndex(
+        AC.ordinal(), AC.ordinal(), AC.ordinal())));
+  }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests ErrorModel class
+ */
+public class ErrorModelTest extends DenovoTest {
+
+  private ErrorModel errorModel;
+  private double EPS = 1e-12;
+
+  @Before
+  public void setUp() {
+    errorModel = ErrorModel.fromShared(shared);
+  }
+
+  @Test
+  public void testFromShared() {
+    assertEquals(1e-2, errorModel.getSequenceErrorRate(), EPS);
+  }
+
+  @Test
+  public void testLogLikelihoodMatrix() {
+    double[][] matrix = errorModel.getLogLikelihoodMatrix();
+    assertEquals(Genotype.values().length, matrix.length);
+    for (Genotype genotype : Genotype.values()) {
+      assertEquals(Allele.values().length, matrix[genotype.ordinal()].length);
+      for (Allele allele : Allele.values()) {
+        double expected = !genotype.containsAllele(allele)
+            ? Math.log(1e-2 / 3)
+            : genotype.isHomozygous()
+                ? Math.log(0.99)
+                : Math.log(0.5 * (1 - 2 * 1e-2 / 3));
+        assertEquals(expected, matrix[genotype.ordinal()][allele.ordinal()], EPS);
+        assertEquals(expected, errorModel.getBaseLogLikelihood(genotype, allele), EPS);
+      }
+    }
+  }
+
+  @Test
+  public void testComputeGenotypeLogLikelihood() {
+    int[] alleleCounts = {99, 38, 2, 0, 7, 99};
+    double[] genotypeLogLikelihood = new double[Genotype.values().length];
+    errorModel.computeGenotypeLogLikelihood(alleleCounts, 1, genotypeLogLikelihood);
+
+    for (Genotype genotype : Genotype.values()) {
+      double expected = 38 * errorModel.getBaseLogLikelihood(genotype, Allele.A)
+          + 2 * errorModel.getBaseLogLikelihood(genotype, Allele.C)
+          + 7 * errorModel.getBaseLogLikelihood(genotype, Allele.T);
+      assertEquals(expected, genotypeLogLikelihood[genotype.ordinal()], EPS);
+    }
+  }
+
+  @Test
+  public void testComputeGenotypeLogLikelihood_QualityBins() {
+    ErrorModel binnedModel = new ErrorModel(new double[] {1e-1, 1e-2, 1e-3});
+    assertEquals(3, binnedModel.getNumQualityBins());
+    assertEquals(12, binnedModel.getNumAlleleCounts());
+    assertEquals(errorModel.getBaseLogLikelihood(Genotype.AC, Allele.G),
+        binnedModel.getBaseLogLikelihood(Genotype.AC, Allele.G, 1), 0.0);
+
+    // counts by bin and then allele, after one leading entry
+    int[] alleleCounts = {99, 3, 0, 1, 0, 20, 0, 0, 2, 0, 10, 0, 0};
+    double[] genotypeLogLikelihood = new double[Genotype.values().length];
+    binnedModel.computeGenotypeLogLikelihood(alleleCounts, 1, genotypeLogLikelihood);
+
+    ErrorModel lowModel = new ErrorModel(1e-1);
+    ErrorModel highModel = new ErrorModel(1e-3);
+    for (Genotype genotype : Genotype.values()) {
+      double expected = 3 * lowModel.getBaseLogLikelihood(genotype, Allele.A)
+          + lowModel.getBaseLogLikelihood(genotype, Allele.G)
+          + 20 * errorModel.getBaseLogLikelihood(genotype, Allele.A)
+          + 2 * errorModel.getBaseLogLikelihood(genotype, Allele.T)
+          + 10 * highModel.getBaseLogLikelihood(genotype, Allele.C);
+      assertEquals(expected, genotypeLogLikelihood[genotype.ordinal()], EPS);
+    }
+  }
+
+  @Test
+  public void testBayesNetUsesErrorModel() {
+    DenovoBayesNet dbn = new DenovoBayesNet(shared, errorModel);
+    assertSame(errorModel, dbn.getErrorModel());
+  }
+
+  @Test(expected = NullPointerException.class)
+  public void testGetBaseLogLikelihood_Null() {
+    errorModel.getBaseLogLikelihood(null, Allele.A);
+  }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests ErrorRateEstimator class
+ */
+public class ErrorRateEstimatorTest extends DenovoTest {
+
+  /**
+   * Trio pileups at a given depth ; each member is homozygous for A or heterozygous for A and C,
+   * read bases are wrong at the error rate and then uniformly one of the other alleles
+   */
+  private static int[] simulateCounts(Random random, int depth, double errorRate,
+      double hetFraction) {
+    int[] alleleCounts = new int[DenovoBayesNet.TRIO_MEMBERS.length * DenovoBayesNet.NUM_ALLELES];
+    for (int member = 0; member < DenovoBayesNet.TRIO_MEMBERS.length; member++) {
+      boolean het = random.nextDouble() < hetFraction;
+      for (int read = 0; read < depth; read++) {
+        int trueAllele = het && random.nextBoolean() ? 1 : 0;
+        int allele = trueAllele;
+        if (random.nextDouble() < errorRate) {
+          allele = (trueAllele + 1 + random.nextInt(3)) % DenovoBayesNet.NUM_ALLELES;
+        }
+        alleleCounts[member * DenovoBayesNet.NUM_ALLELES + allele]++;
+      }
+    }
+    return alleleCounts;
+  }
+
+  @Test
+  public void testEstimate() {
+    Random random = new Random(42);
+    for (double errorRate : new double[] {1e-3, 1e-2, 5e-2}) {
+      ErrorRateEstimator estimator = new ErrorRateEstimator();
+      for (int site = 0; site < 20000; site++) {
+        estimator.add(simulateCounts(random, 30, errorRate, 0.3));
+      }
+      assertEquals(errorRate, estimator.estimate(0.1), 0.05 * errorRate);
+      assertEquals(errorRate, estimator.estimate(1e-4), 0.05 * errorRate);
+    }
+  }
+
+  @Test
+  public void testEstimate_NoReads() {
+    ErrorRateEstimator estimator = new ErrorRateEstimator();
+    estimator.add(new int[12]);
+    assertEquals(0, estimator.getStatistics().size());
+    assertEquals(1e-2, estimator.estimate(1e-2), 0.0);
+  }
+
+  @Test
+  public void testAdd_Threads() throws InterruptedException {
+    final ErrorRateEstimator estimator = new ErrorRateEstimator();
+    final int[] alleleCounts = {10, 0, 1, 0, 4, 5, 0, 1, 0, 0, 0, 0};
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    for (int task = 0; task < 100; task++) {
+      executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          estimator.add(alleleCounts);
+        }
+      });
+    }
+    executor.shutdown();
+    executor.awaitTermination(1, TimeUnit.MINUTES);
+
+    assertEquals(200, estimator.getStatistics().size());
+    assertEquals(100, estimator.getStatistics().count(ErrorRateEstimator.encode(10, 1, 0)));
+    assertEquals(100, estimator.getStatistics().count(ErrorRateEstimator.encode(5, 4, 1)));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testEstimate_InvalidInitialRate() {
+    new ErrorRateEstimator().estimate(0.0);
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests InferenceBatch class and the batch inference of the Bayes Net
+ */
+public class InferenceBatchTest extends DenovoTest {
+
+  @Test
+  public void testBatchMatchesPerSite() {
+    // the site count leaves a partial block
+    DenovoBayesNet dbn = new DenovoBayesNet(shared);
+    assertBatchMatchesPerSite(dbn, createRandomSites(new Random(20141002L), 603));
+  }
+
+  @Test
+  public void testBatchMatchesPerSite_ZeroErrorRate() {
+    DenovoBayesNet dbn = new DenovoBayesNet(shared, new ErrorModel(0.0));
+    assertBatchMatchesPerSite(dbn, createRandomSites(new Random(20141003L), 50));
+  }
+
+  @Test
+  public void testFillDirectly() {
+    InferenceBatch batch = new InferenceBatch(4);
+    batch.getAlleleCounts(TrioMember.DAD, Allele.A)[1] = 30;
+    batch.getAlleleCounts(TrioMember.MOM, Allele.A)[1] = 28;
+    batch.getAlleleCounts(TrioMember.CHILD, Allele.A)[1] = 15;
+    batch.getAlleleCounts(TrioMember.CHILD, Allele.C)[1] = 14;
+    batch.setSize(2);
+    new DenovoBayesNet(shared).performInference(batch);
+
+    BayesInferenceResult result = batch.getResult(1);
+    assertEquals(DenovoUtil.Genotype.AC.ordinal(), batch.getMaxChildOrdinal()[1]);
+    assertEquals(batch.getBayesDenovoProb()[1], result.getBayesDenovoProb(), 0.0);
+  }
+
+  @Test
+  public void testClear() {
+    InferenceBatch batch = new InferenceBatch(2);
+    assertEquals(0, batch.add(new int[12]));
+    assertEquals(1, batch.add(new int[12]));
+    batch.clear();
+    assertEquals(0, batch.size());
+    assertEquals(0, batch.add(new int[12]));
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testAddWhenFull() {
+    InferenceBatch batch = new InferenceBatch(1);
+    batch.add(new int[12]);
+    batch.add(new int[12]);
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGetResultOutOfRange() {
+    InferenceBatch batch = new InferenceBatch(2);
+    batch.add(new int[12]);
+    batch.getResult(1);
+  }
+
+  @Test
+  public void testBayesInferBatch() {
+    BayesInfer bayesInferrer = new BayesInfer(shared);
+    List<Map<TrioMember, ReadSummary>> sites = createRandomSites(new Random(20141004L), 20);
+    List<BayesInfer.BayesCallResult> results =
+        bayesInferrer.infer(sites, DenovoUtil.InferenceMethod.BAYES);
+
+    assertEquals(sites.size(), results.size());
+    for (int site = 0; site < sites.size(); site++) {
+      BayesInfer.BayesCallResult expected =
+          bayesInferrer.infer(sites.get(site), DenovoUtil.InferenceMethod.BAYES);
+      assertEquals(expected.isDenovo(), results.get(site).isDenovo());
+      assertEquals(expected.getDetails(shared.getLrtThresholds()),
+          results.get(site).getDetails(shared.getLrtThresholds()));
+    }
+  }
+
+  private void assertBatchMatchesPerSite(DenovoBayesNet dbn,
+      List<Map<TrioMember, ReadSummary>> sites) {
+    InferenceBatch batch = new InferenceBatch(sites.size());
+    for (Map<TrioMember, ReadSummary> site : sites) {
+      batch.add(site);
+    }
+    dbn.performInference(batch);
+
+    MutableBayesInferenceResult result = new MutableBayesInferenceResult();
+    for (int site = 0; site < sites.size(); site++) {
+      MutableBayesInferenceResult expected = dbn.performInference(
+          DenovoBayesNet.getAlleleCounts(sites.get(site)), new MutableBayesInferenceResult());
+      batch.getResult(site, result);
+      String message = "site " + site;
+      assertEquals(message, expected.getMaxTrioGenotype(), result.getMaxTrioGenotype());
+      assertEquals(message, expected.getMaxLikelihood(), result.getMaxLikelihood(), 0.0);
+      assertEquals(message, expected.getBayesDenovoProb(), result.getBayesDenovoProb(), 0.0);
+      assertEquals(message, expected.getLikelihoodRatio(), result.getLikelihoodRatio(), 0.0);
+      assertEquals(message, expected.getMendelianLogLikelihood(),
+          result.getMendelianLogLikelihood(), 0.0);
+      assertEquals(message, expected.getDenovoLogLikelihood(),
+          result.getDenovoLogLikelihood(), 0.0);
+    }
+  }
+
+  private List<Map<TrioMember, ReadSummary>> createRandomSites(Random random, int numSites) {
+    List<Map<TrioMember, ReadSummary>> sites = new ArrayList<>();
+    for (int site = 0; site < numSites; site++) {
+      sites.add(createMapReadSummary(createRandomReadSummary(random),
+          createRandomReadSummary(random), createRandomReadSummary(random)));
+    }
+    return sites;
+  }
+}
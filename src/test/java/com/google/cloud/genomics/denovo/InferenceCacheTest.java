@@ -0,0 +1,109 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.common.cache.CacheStats;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+/**
+ * Tests InferenceCache class
+ */
+public class InferenceCacheTest extends DenovoTest {
+
+  private DenovoBayesNet dbn;
+  private int[] sameCounts;
+  private int[] almostSameCounts;
+
+  @Before
+  public void setUp() {
+    dbn = new DenovoBayesNet(shared);
+    sameCounts = DenovoBayesNet.getAlleleCounts(createMapReadSummary(
+        createSameReadSummary(), createSameReadSummary(), createSameReadSummary()));
+    almostSameCounts = DenovoBayesNet.getAlleleCounts(createMapReadSummary(
+        createSameReadSummary(), createSameReadSummary(), createAlmostSameReadSummary()));
+  }
+
+  @Test
+  public void testHitsAndMisses() {
+    InferenceCache inferenceCache = new InferenceCache(dbn, shared, 100);
+
+    BayesInferenceResult first = inferenceCache.performInference(sameCounts);
+    assertSame(first, inferenceCache.performInference(sameCounts.clone()));
+    inferenceCache.performInference(almostSameCounts);
+
+    CacheStats stats = inferenceCache.getStats();
+    assertEquals(1, stats.hitCount());
+    assertEquals(2, stats.missCount());
+    assertEquals(2, inferenceCache.size());
+  }
+
+  @Test
+  public void testMatchesBayesNet() {
+    InferenceCache inferenceCache = new InferenceCache(dbn, shared, 100);
+    Map<DenovoUtil.TrioMember, ReadSummary> summaryMap = createMapReadSummary(
+        createSameReadSummary(), createSameReadSummary(), createAlmostSameReadSummary());
+    BayesInferenceResult expected = dbn.performInference(summaryMap);
+
+    for (int i = 0; i < 2; i++) {
+      BayesInferenceResult result = inferenceCache.performInference(almostSameCounts);
+      assertEquals(expected.getMaxTrioGenotype(), result.getMaxTrioGenotype());
+      assertEquals(expected.getBayesDenovoProb(), result.getBayesDenovoProb(), 0.0);
+      assertEquals(expected.getLikelihoodRatio(), result.getLikelihoodRatio(), 0.0);
+    }
+  }
+
+  @Test
+  public void testKeyIsNotAliased() {
+    InferenceCache inferenceCache = new InferenceCache(dbn, shared, 100);
+    int[] counts = sameCounts.clone();
+    inferenceCache.performInference(counts);
+    counts[0]++;
+    inferenceCache.performInference(sameCounts);
+    assertEquals(1, inferenceCache.getStats().hitCount());
+  }
+
+  @Test
+  public void testBounded() {
+    InferenceCache inferenceCache = new InferenceCache(dbn, shared, 10);
+    int[] counts = sameCounts.clone();
+    for (int i = 0; i < 100; i++) {
+      counts[0] = i;
+      inferenceCache.performInference(counts);
+    }
+    assertTrue(inferenceCache.size() <= 10);
+    assertTrue(inferenceCache.getStats().evictionCount() >= 90);
+  }
+
+  @Test
+  public void testDisabled() {
+    InferenceCache inferenceCache = new InferenceCache(dbn, shared, 0);
+    inferenceCache.performInference(sameCounts);
+    inferenceCache.performInference(sameCounts);
+    assertEquals(0, inferenceCache.getStats().requestCount());
+    assertEquals(0, inferenceCache.size());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeSize() {
+    new InferenceCache(dbn, shared, -1);
+  }
+}
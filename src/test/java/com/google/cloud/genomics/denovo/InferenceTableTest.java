@@ -0,0 +1,135 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tests InferenceTable class
+ */
+public class InferenceTableTest extends DenovoTest {
+
+  private static final int DEPTH = 2;
+  // number of allele count tuples with at most DEPTH reads : (DEPTH + 4) choose 4
+  private static final int NUM_TUPLES = 15;
+
+  private DenovoBayesNet dbn;
+  private InferenceTable table;
+
+  @Before
+  public void setUp() throws Exception {
+    dbn = new DenovoBayesNet(shared);
+    table = InferenceTable.build(dbn, shared, DEPTH, 2);
+  }
+
+  @Test
+  public void testSize() {
+    assertEquals(NUM_TUPLES * NUM_TUPLES * NUM_TUPLES, table.size());
+    assertEquals(DEPTH, table.getDepth());
+  }
+
+  @Test
+  public void testIndexIsPerfect() {
+    Set<Integer> indices = new HashSet<>();
+    int[] alleleCounts = new int[12];
+    for (int code = 0; code < 1 << 12; code++) {
+      boolean withinDepth = true;
+      for (int member = 0; member < 3; member++) {
+        int total = 0;
+        for (int allele = 0; allele < 4; allele++) {
+          alleleCounts[member * 4 + allele] = (code >> (member * 4 + allele)) & 1;
+          total += alleleCounts[member * 4 + allele];
+        }
+        withinDepth &= total <= DEPTH;
+      }
+      int index = table.getIndex(alleleCounts);
+      if (withinDepth) {
+        assertTrue(index >= 0 && index < table.size());
+        assertTrue(indices.add(index));
+      } else {
+        assertEquals(-1, index);
+      }
+    }
+  }
+
+  @Test
+  public void testMatchesBayesNet() {
+    int[][] cases = {
+        {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0},
+        {2, 0, 0, 0, 2, 0, 0, 0, 1, 1, 0, 0},
+        {0, 1, 0, 1, 0, 0, 2, 0, 0, 0, 0, 2},
+        {1, 0, 0, 1, 0, 2, 0, 0, 0, 0, 1, 0}};
+    for (int[] alleleCounts : cases) {
+      BayesInferenceResult expected =
+          dbn.performInference(alleleCounts, new MutableBayesInferenceResult())
+          .toBayesInferenceResult();
+      BayesInferenceResult result = table.get(alleleCounts);
+      assertEquals(expected.getMaxTrioGenotype(), result.getMaxTrioGenotype());
+      assertEquals(expected.getBayesDenovoProb(), result.getBayesDenovoProb(), 0.0);
+      assertEquals(expected.getLikelihoodRatio(), result.getLikelihoodRatio(), 0.0);
+    }
+  }
+
+  @Test
+  public void testBeyondDepth() {
+    assertNull(table.get(new int[] {3, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}));
+    assertNull(table.get(new int[] {0, 0, 0, 0, 1, 1, 1, 0, 0, 0, 0, 0}));
+  }
+
+  @Test
+  public void testWriteAndRead() throws IOException {
+    File file = File.createTempFile("inference", ".table");
+    file.deleteOnExit();
+    table.write(file);
+
+    InferenceTable copy = InferenceTable.read(file, DEPTH, 1e-2, 1e-8);
+    assertNotNull(copy);
+    assertEquals(table.size(), copy.size());
+    int[] alleleCounts = {2, 0, 0, 0, 2, 0, 0, 0, 1, 1, 0, 0};
+    assertEquals(table.get(alleleCounts).getMaxTrioGenotype(),
+        copy.get(alleleCounts).getMaxTrioGenotype());
+    assertEquals(table.get(alleleCounts).getBayesDenovoProb(),
+        copy.get(alleleCounts).getBayesDenovoProb(), 0.0);
+
+    assertNull(InferenceTable.read(file, DEPTH, 1e-3, 1e-8));
+    assertNull(InferenceTable.read(file, DEPTH, 1e-2, 1e-9));
+    assertNull(InferenceTable.read(file, DEPTH + 1, 1e-2, 1e-8));
+  }
+
+  @Test
+  public void testMaxDepth() {
+    assertEquals(125L, InferenceTable.getNumEntries(1));
+    assertEquals(126L * 126 * 126, InferenceTable.getNumEntries(5));
+    assertTrue(InferenceTable.getTableBytes(InferenceTable.MAX_DEPTH)
+        <= InferenceTable.MAX_TABLE_BYTES);
+    assertTrue(InferenceTable.getTableBytes(InferenceTable.MAX_DEPTH + 1)
+        > InferenceTable.MAX_TABLE_BYTES);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDepthTooLarge() throws Exception {
+    InferenceTable.build(dbn, shared, InferenceTable.MAX_DEPTH + 1, 1);
+  }
+}
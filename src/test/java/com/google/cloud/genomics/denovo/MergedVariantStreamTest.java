@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.services.genomics.model.Variant;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Tests the k-way merge of variant streams and their prefetching
+ */
+public class MergedVariantStreamTest extends DenovoTest {
+
+  /**
+   * Stream over fixed pages of variants starting at the given positions
+   */
+  private static class PagedStream implements VariantStream {
+    private final List<long[]> pages;
+    private int requestCount;
+
+    PagedStream(long[]... pages) {
+      this.pages = Arrays.asList(pages);
+    }
+
+    @Override
+    public boolean hasMore() {
+      return requestCount < pages.size();
+    }
+
+    @Override
+    public List<Variant> getVariants() {
+      long[] starts = pages.get(requestCount++);
+      if (starts == null) {
+        return null;
+      }
+      List<Variant> page = new ArrayList<>();
+      for (long start : starts) {
+        page.add(new Variant().setStart(start).setEnd(start + 1));
+      }
+      return page;
+    }
+  }
+
+  /**
+   * Stream of a single page
+   */
+  private static class ListStream implements VariantStream {
+    private List<Variant> page;
+    private boolean fetched;
+
+    ListStream(List<Variant> page) {
+      this.page = page;
+    }
+
+    @Override
+    public boolean hasMore() {
+      return !fetched;
+    }
+
+    @Override
+    public List<Variant> getVariants() throws IOException {
+      fetched = true;
+      return page;
+    }
+  }
+
+  private static List<Long> getStarts(VariantStream stream) throws IOException {
+    List<Long> starts = new ArrayList<>();
+    while (stream.hasMore()) {
+      for (Variant variant : stream.getVariants()) {
+        starts.add(variant.getStart());
+      }
+    }
+    return starts;
+  }
+
+  @Test
+  public void testGetVariants_MergesByStart() throws IOException {
+    PagedStream child = new PagedStream(new long[] {5L, 40L}, null, new long[] {90L});
+    PagedStream mom = new PagedStream(new long[] {1L, 10L, 20L}, new long[] {30L, 40L, 100L});
+    PagedStream dad = new PagedStream(new long[] {}, new long[] {1L, 95L});
+    MergedVariantStream merged = new MergedVariantStream(Arrays.asList(child, mom, dad), 4);
+
+    assertTrue(merged.hasMore());
+    assertEquals(Arrays.asList(1L, 1L, 5L, 10L, 20L, 30L, 40L, 40L, 90L, 95L, 100L),
+        getStarts(merged));
+  }
+
+  @Test
+  public void testGetVariants_Batches() throws IOException {
+    PagedStream child = new PagedStream(new long[] {5L, 40L}, null, new long[] {90L});
+    PagedStream mom = new PagedStream(new long[] {1L, 10L, 20L}, new long[] {30L, 40L, 100L});
+    PagedStream dad = new PagedStream(new long[] {}, new long[] {1L, 95L});
+    MergedVariantStream merged = new MergedVariantStream(Arrays.asList(child, mom, dad), 4);
+
+    assertEquals(4, merged.getVariants().size());
+    assertEquals(4, merged.getVariants().size());
+    List<Variant> last = merged.getVariants();
+    assertEquals(3, last.size());
+    assertEquals(100L, (long) last.get(2).getStart());
+    assertFalse(merged.hasMore());
+  }
+
+  @Test
+  public void testGetVariants_OrderOfTies() throws IOException {
+    List<Variant> child = new ArrayList<>(Arrays.asList(
+        new Variant().setStart(10L).setReferenceBases("A")));
+    List<Variant> mom = new ArrayList<>(Arrays.asList(
+        new Variant().setStart(10L).setReferenceBases("C")));
+    MergedVariantStream merged = new MergedVariantStream(Arrays.asList(
+        new ListStream(mom), new ListStream(child)), 10);
+
+    List<Variant> variants = merged.getVariants();
+    assertEquals("C", variants.get(0).getReferenceBases());
+    assertEquals("A", variants.get(1).getReferenceBases());
+  }
+
+  @Test
+  public void testGetVariants_Prefetched() throws IOException {
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      List<VariantStream> streams = new ArrayList<>();
+      streams.add(new PrefetchingVariantStream(
+          new PagedStream(new long[] {5L, 40L}, null, new long[] {90L}), executor));
+      streams.add(new PrefetchingVariantStream(
+          new PagedStream(new long[] {1L, 10L, 20L}, new long[] {30L, 40L, 100L}), executor));
+      streams.add(new PrefetchingVariantStream(
+          new PagedStream(new long[] {}, new long[] {1L, 95L}), executor));
+
+      assertEquals(Arrays.asList(1L, 1L, 5L, 10L, 20L, 30L, 40L, 40L, 90L, 95L, 100L),
+          getStarts(new MergedVariantStream(streams, 3)));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test(expected = IOException.class)
+  public void testGetVariants_PrefetchFailure() throws IOException {
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      new PrefetchingVariantStream(new ListStream(null) {
+        @Override
+        public List<Variant> getVariants() throws IOException {
+          throw new IOException("API hangup");
+        }
+      }, executor).getVariants();
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+}
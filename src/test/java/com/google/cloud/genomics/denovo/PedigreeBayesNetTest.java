@@ -0,0 +1,221 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+import com.google.cloud.genomics.denovo.Pedigree.Individual;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Tests PedigreeBayesNet class
+ */
+public class PedigreeBayesNetTest extends DenovoTest {
+
+  private static final double EPS = 1e-9;
+
+  private ErrorModel errorModel;
+
+  @Before
+  public void setUp() {
+    errorModel = ErrorModel.fromShared(shared);
+  }
+
+  @Test
+  public void testNodes() throws IOException {
+    PedigreeBayesNet net = new PedigreeBayesNet(shared, PedigreeTest.parse(
+        "FAM1 kid dad mom 1 1", "FAM1 dad 0 0 1 1", "FAM1 mom 0 0 2 1"));
+    Map<String, Node<String, Genotype>> nodeMap = net.getNodeMap();
+
+    assertEquals(3, nodeMap.size());
+    assertNull(nodeMap.get("dad").getParents());
+    List<Node<String, Genotype>> parents = nodeMap.get("kid").getParents();
+    assertEquals("dad", parents.get(0).getId());
+    assertEquals("mom", parents.get(1).getId());
+    assertSumsToOne(nodeMap.get("mom").getConditionalProbabilityTable().values(), EPS);
+  }
+
+  @Test
+  public void testTrio_MatchesDenovoBayesNet() throws IOException {
+    DenovoBayesNet dbn = new DenovoBayesNet(shared, errorModel);
+    PedigreeBayesNet net = new PedigreeBayesNet(shared, errorModel, PedigreeTest.parse(
+        "FAM1 dad 0 0 1 1", "FAM1 mom 0 0 2 1", "FAM1 kid dad mom 1 1"));
+
+    Random random = new Random(10);
+    for (int site = 0; site < 200; site++) {
+      Map<TrioMember, ReadSummary> trioReads = createMapReadSummary(
+          createRandomReadSummary(random), createRandomReadSummary(random),
+          createRandomReadSummary(random));
+      Map<String, ReadSummary> reads = new HashMap<>();
+      reads.put("dad", trioReads.get(DAD));
+      reads.put("mom", trioReads.get(MOM));
+      reads.put("kid", trioReads.get(CHILD));
+
+      BayesInferenceResult expected = dbn.performInference(trioReads);
+      PedigreeInferenceResult result = net.performInference(reads);
+      assertEquals(expected.getBayesDenovoProb(), result.getBayesDenovoProb("kid"),
+          EPS * Math.max(1.0, expected.getBayesDenovoProb()));
+      assertEquals(expected.getLikelihoodRatio(), result.getLikelihoodRatio("kid"),
+          EPS * expected.getLikelihoodRatio());
+      assertTrue(Double.isNaN(result.getBayesDenovoProb("dad")));
+    }
+  }
+
+  @Test
+  public void testQuad_MatchesEnumeration() throws IOException {
+    checkMatchesEnumeration(PedigreeTest.parse(
+        "FAM1 dad 0 0 1 1", "FAM1 mom 0 0 2 1", "FAM1 kid1 dad mom 1 2", "FAM1 kid2 dad mom 2 1"),
+        new Random(11));
+  }
+
+  @Test
+  public void testThreeChildren_MatchesEnumeration() throws IOException {
+    // the middle child takes the factors of its siblings from both a prefix and a suffix
+    checkMatchesEnumeration(PedigreeTest.parse(
+        "FAM1 dad 0 0 1 1", "FAM1 mom 0 0 2 1", "FAM1 kid1 dad mom 1 2", "FAM1 kid2 dad mom 2 1",
+        "FAM1 kid3 dad mom 1 2"), new Random(13));
+  }
+
+  @Test
+  public void testThreeGenerations_MatchesEnumeration() throws IOException {
+    checkMatchesEnumeration(PedigreeTest.parse(
+        "FAM1 grandpa 0 0 1 1", "FAM1 grandma 0 0 2 1", "FAM1 dad grandpa grandma 1 1",
+        "FAM1 mom 0 0 2 1", "FAM1 kid dad mom 1 2"), new Random(12));
+  }
+
+  @Test
+  public void testMissingReads() throws IOException {
+    PedigreeBayesNet net = new PedigreeBayesNet(shared, errorModel, PedigreeTest.parse(
+        "FAM1 grandpa 0 0 1 1", "FAM1 grandma 0 0 2 1", "FAM1 dad grandpa grandma 1 1",
+        "FAM1 mom 0 0 2 1", "FAM1 kid dad mom 1 2"));
+    Map<String, ReadSummary> reads = new HashMap<>();
+    reads.put("dad", createSameReadSummary());
+    reads.put("mom", createSameReadSummary());
+    reads.put("kid", createSameReadSummary());
+
+    PedigreeInferenceResult result = net.performInference(reads);
+    assertEquals(Genotype.AA, result.getMaxGenotype("kid"));
+    // a grandparent without reads only has to pass on the A allele
+    assertTrue(result.getMaxGenotype("grandpa").containsAllele(Allele.A));
+    assertTrue(result.getBayesDenovoProb("kid") < 1e-6);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testConsanguineous_Rejected() throws IOException {
+    new PedigreeBayesNet(shared, PedigreeTest.parse(
+        "FAM1 dad 0 0 1 1", "FAM1 mom 0 0 2 1", "FAM1 son dad mom 1 1",
+        "FAM1 daughter dad mom 2 1", "FAM1 kid son daughter 1 2"));
+  }
+
+  /**
+   * Compares the pedigree inference against a sum over every joint genotype of the pedigree
+   */
+  private void checkMatchesEnumeration(Pedigree pedigree, Random random) {
+    PedigreeBayesNet net = new PedigreeBayesNet(shared, errorModel, pedigree);
+    Map<String, Node<String, Genotype>> nodeMap = net.getNodeMap();
+    List<Individual> individuals = pedigree.getIndividuals();
+    int size = individuals.size();
+    int numGenotypes = Genotype.values().length;
+
+    for (int site = 0; site < 20; site++) {
+      Map<String, ReadSummary> reads = new HashMap<>();
+      for (Individual individual : individuals) {
+        reads.put(individual.getId(), createRandomReadSummary(random));
+      }
+      int[] alleleCounts = net.getAlleleCounts(reads);
+      double[][] logLikelihood = new double[size][numGenotypes];
+      for (int ii = 0; ii < size; ii++) {
+        errorModel.computeGenotypeLogLikelihood(alleleCounts, ii * 4, logLikelihood[ii]);
+        double max = Double.NEGATIVE_INFINITY;
+        for (double value : logLikelihood[ii]) {
+          max = Math.max(max, value);
+        }
+        for (int genotype = 0; genotype < numGenotypes; genotype++) {
+          logLikelihood[ii][genotype] -= max;
+        }
+      }
+
+      double[] denovo = new double[size];
+      double[] mendelian = new double[size];
+      double[][] marginal = new double[size][numGenotypes];
+      int[] genotypes = new int[size];
+      for (int code = 0; code < (int) Math.pow(numGenotypes, size); code++) {
+        for (int ii = 0, rest = code; ii < size; ii++, rest /= numGenotypes) {
+          genotypes[ii] = rest % numGenotypes;
+        }
+        double logJoint = 0.0;
+        for (int ii = 0; ii < size; ii++) {
+          Individual individual = individuals.get(ii);
+          double[] logCpt = nodeMap.get(individual.getId()).getLogConditionalProbabilityTable();
+          logJoint += logLikelihood[ii][genotypes[ii]] + (individual.isFounder()
+              ? logCpt[genotypes[ii]]
+              : logCpt[DenovoBayesNet.getChildCptIndex(
+                  genotypes[pedigree.getIndex(individual.getFatherId())],
+                  genotypes[pedigree.getIndex(individual.getMotherId())], genotypes[ii])]);
+        }
+        double joint = Math.exp(logJoint);
+        for (int ii = 0; ii < size; ii++) {
+          Individual individual = individuals.get(ii);
+          marginal[ii][genotypes[ii]] += joint;
+          if (!individual.isFounder()) {
+            boolean isDenovo = DenovoUtil.checkTrioGenoTypeIsDenovo(
+                Genotype.values()[genotypes[pedigree.getIndex(individual.getFatherId())]],
+                Genotype.values()[genotypes[pedigree.getIndex(individual.getMotherId())]],
+                Genotype.values()[genotypes[ii]]);
+            if (isDenovo) {
+              denovo[ii] += joint;
+            } else {
+              mendelian[ii] += joint;
+            }
+          }
+        }
+      }
+
+      PedigreeInferenceResult result = net.performInference(alleleCounts);
+      for (int ii = 0; ii < size; ii++) {
+        String id = individuals.get(ii).getId();
+        int maxGenotype = 0;
+        for (int genotype = 1; genotype < numGenotypes; genotype++) {
+          if (marginal[ii][genotype] > marginal[ii][maxGenotype]) {
+            maxGenotype = genotype;
+          }
+        }
+        assertEquals(Genotype.values()[maxGenotype], result.getMaxGenotype(id));
+        if (!individuals.get(ii).isFounder()) {
+          double bayesDenovoProb = denovo[ii] / (denovo[ii] + mendelian[ii]);
+          double likelihoodRatio = denovo[ii] / mendelian[ii];
+          assertEquals(bayesDenovoProb, result.getBayesDenovoProb(id),
+              1e-7 * Math.max(1e-12, bayesDenovoProb));
+          assertEquals(likelihoodRatio, result.getLikelihoodRatio(id), 1e-7 * likelihoodRatio);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.genomics.denovo.Pedigree.Individual;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+/**
+ * Tests Pedigree class
+ */
+public class PedigreeTest extends DenovoTest {
+
+  static Pedigree parse(String... lines) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (String line : lines) {
+      sb.append(line).append('\n');
+    }
+    return Pedigree.parse(new StringReader(sb.toString()));
+  }
+
+  @Test
+  public void testParse() throws IOException {
+    Pedigree pedigree = parse(
+        "# family individual father mother sex phenotype",
+        "FAM1 kid1 dad mom 1 2",
+        "",
+        "FAM1\tdad\t0\t0\t1\t1",
+        "FAM1 mom 0 0 2 1",
+        "FAM1 kid2 dad mom 2 1");
+
+    assertEquals(4, pedigree.size());
+    Individual kid = pedigree.getIndividuals().get(pedigree.getIndex("kid1"));
+    assertEquals("FAM1", kid.getFamilyId());
+    assertEquals("dad", kid.getFatherId());
+    assertEquals("mom", kid.getMotherId());
+    assertFalse(kid.isFounder());
+
+    Individual dad = pedigree.getIndividuals().get(pedigree.getIndex("dad"));
+    assertNull(dad.getFatherId());
+    assertTrue(dad.isFounder());
+
+    // parents come ahead of their children
+    for (Individual individual : pedigree.getIndividuals()) {
+      if (!individual.isFounder()) {
+        int index = pedigree.getIndex(individual.getId());
+        assertTrue(pedigree.getIndex(individual.getFatherId()) < index);
+        assertTrue(pedigree.getIndex(individual.getMotherId()) < index);
+      }
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParse_MissingFields() throws IOException {
+    parse("FAM1 kid1 dad mom");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParse_UnknownParent() throws IOException {
+    parse("FAM1 dad 0 0 1 1", "FAM1 kid1 dad mom 1 1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParse_OneParent() throws IOException {
+    parse("FAM1 dad 0 0 1 1", "FAM1 kid1 dad 0 1 1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParse_Duplicate() throws IOException {
+    parse("FAM1 dad 0 0 1 1", "FAM1 dad 0 0 1 1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParse_OtherFamily() throws IOException {
+    parse("FAM1 dad 0 0 1 1", "FAM1 mom 0 0 2 1", "FAM2 kid1 dad mom 1 1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testParse_OwnAncestor() throws IOException {
+    parse("FAM1 a b c 1 1", "FAM1 b a c 1 1", "FAM1 c 0 0 2 1");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testGetIndex_Unknown() throws IOException {
+    parse("FAM1 dad 0 0 1 1").getIndex("mom");
+  }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.api.services.genomics.model.LinearAlignment;
+import com.google.api.services.genomics.model.Position;
+import com.google.api.services.genomics.model.Read;
+import com.google.cloud.genomics.denovo.DenovoUtil.Allele;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tests QualityBins class and the quality aware pileups and inference
+ */
+public class QualityBinsTest extends DenovoTest {
+
+  private final QualityBins qualityBins = new QualityBins(Arrays.asList(0, 10, 30), 20);
+
+  static Read createRead(long position, String bases, Integer... qualities) {
+    return new Read()
+        .setAlignedSequence(bases)
+        .setAlignedQuality(qualities.length == 0 ? null : Arrays.asList(qualities))
+        .setAlignment(new LinearAlignment().setPosition(new Position().setPosition(position)));
+  }
+
+  @Test
+  public void testBins() {
+    assertEquals(3, qualityBins.getNumBins());
+    assertEquals(0, qualityBins.getBin(-1));
+    assertEquals(0, qualityBins.getBin(9));
+    assertEquals(1, qualityBins.getBin(10));
+    assertEquals(1, qualityBins.getBin(29));
+    assertEquals(2, qualityBins.getBin(30));
+    assertEquals(2, qualityBins.getBin(93));
+    assertEquals(1, qualityBins.getDefaultBin());
+    assertEquals(20, QualityBins.toPhredQuality(1e-2));
+  }
+
+  @Test
+  public void testBinErrorRates() {
+    double[] binErrorRates = qualityBins.getBinErrorRates();
+    double expected = 0.0;
+    for (int quality = 10; quality < 30; quality++) {
+      expected += Math.pow(10.0, -quality / 10.0);
+    }
+    assertEquals(expected / 20, binErrorRates[1], 1e-15);
+    assertEquals(0.75, new QualityBins(Arrays.asList(0, 1), 20).getBinErrorRates()[0], 0.0);
+    for (int bin = 1; bin < binErrorRates.length; bin++) {
+      assertEquals(true, binErrorRates[bin] < binErrorRates[bin - 1]);
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBins_NotIncreasing() {
+    new QualityBins(Arrays.asList(0, 20, 20), 20);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testBins_OutOfRange() {
+    new QualityBins(Arrays.asList(0, 64), 20);
+  }
+
+  @Test
+  public void testReadSummary() {
+    List<Read> reads = Arrays.asList(
+        createRead(100L, "GAT", 30, 35, 30),
+        createRead(101L, "AC", 5, 30),
+        createRead(99L, "CCCC"),
+        createRead(101L, "-A", 30, 30),
+        createRead(100L, "TTT", 12, 40, 12));
+
+    ReadSummary summary = new ReadSummary(reads, 101L, qualityBins);
+    assertEquals("{A=2, C=1, T=1}", summary.getCount().toString());
+    assertArrayEquals(new int[] {1, 0, 0, 0, 0, 1, 0, 0, 1, 0, 0, 1},
+        summary.getQualityBinnedCount());
+    assertNull(new ReadSummary(reads, 101L).getQualityBinnedCount());
+    assertEquals(summary.getCount(), new ReadSummary(reads, 101L).getCount());
+  }
+
+  @Test
+  public void testInference_SingleBinMatchesErrorRate() {
+    Map<TrioMember, ReadSummary> readSummaryMap = createMapReadSummary(
+        createAlmostSameReadSummary(), createSameReadSummary(), createAlmostSameReadSummary());
+    int[] alleleCounts = DenovoBayesNet.getAlleleCounts(readSummaryMap, qualityBins);
+    assertEquals(36, alleleCounts.length);
+    assertEquals(38, alleleCounts[CHILD.ordinal() * 12 + 4 + Allele.A.ordinal()]);
+    assertEquals(40, alleleCounts[MOM.ordinal() * 12 + 4 + Allele.A.ordinal()]);
+    assertEquals(3, alleleCounts[DAD.ordinal() * 12 + 4 + Allele.G.ordinal()]);
+
+    // all bases in the default bin score like a single error rate equal to that bin's
+    double binErrorRate = qualityBins.getBinErrorRates()[1];
+    DenovoBayesNet binnedNet = new DenovoBayesNet(shared,
+        new ErrorModel(qualityBins.getBinErrorRates()));
+    DenovoBayesNet plainNet = new DenovoBayesNet(shared, new ErrorModel(binErrorRate));
+    MutableBayesInferenceResult binned =
+        binnedNet.performInference(alleleCounts, new MutableBayesInferenceResult());
+    MutableBayesInferenceResult plain = plainNet.performInference(
+        DenovoBayesNet.getAlleleCounts(readSummaryMap), new MutableBayesInferenceResult());
+    assertEquals(plain.getMaxTrioGenotype(), binned.getMaxTrioGenotype());
+    assertEquals(plain.getMaxLikelihood(), binned.getMaxLikelihood(), 1e-9);
+    assertEquals(plain.getBayesDenovoProb(), binned.getBayesDenovoProb(), 1e-12);
+  }
+
+  @Test
+  public void testInference_LowQualityBasesCountLess() {
+    // a child het call backed by low quality bases only is less likely denovo
+    Map<TrioMember, ReadSummary> readSummaryMap = createMapReadSummary(
+        createSameReadSummary(), createSameReadSummary(), createSameReadSummary());
+    int[] highQuality = DenovoBayesNet.getAlleleCounts(readSummaryMap, qualityBins);
+    int[] lowQuality = highQuality.clone();
+    highQuality[CHILD.ordinal() * 12 + 8 + Allele.C.ordinal()] = 15;
+    lowQuality[CHILD.ordinal() * 12 + Allele.C.ordinal()] = 15;
+
+    DenovoBayesNet binnedNet = new DenovoBayesNet(shared,
+        new ErrorModel(qualityBins.getBinErrorRates()));
+    double highProb = binnedNet.performInference(highQuality, new MutableBayesInferenceResult())
+        .getBayesDenovoProb();
+    double lowProb = binnedNet.performInference(lowQuality, new MutableBayesInferenceResult())
+        .getBayesDenovoProb();
+    assertEquals(true, lowProb < highProb);
+  }
+}
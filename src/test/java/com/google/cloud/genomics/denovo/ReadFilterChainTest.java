@@ -0,0 +1,123 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.api.services.genomics.model.LinearAlignment;
+import com.google.api.services.genomics.model.Position;
+import com.google.api.services.genomics.model.Read;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests ReadFilterChain class
+ */
+public class ReadFilterChainTest extends DenovoTest {
+
+  private final ReadFilterChain chain = new ReadFilterChain(Arrays.asList(
+      ReadFilter.MAPPING_QUALITY, ReadFilter.DUPLICATE, ReadFilter.SECONDARY,
+      ReadFilter.SUPPLEMENTARY, ReadFilter.FAILED_QC), 20);
+
+  private static Read createRead(String bases, Integer mappingQuality) {
+    return new Read()
+        .setAlignedSequence(bases)
+        .setAlignment(new LinearAlignment()
+            .setMappingQuality(mappingQuality)
+            .setPosition(new Position().setPosition(100L)));
+  }
+
+  @Test
+  public void testAccept() {
+    assertTrue(chain.accept(createRead("A", 60)));
+    assertTrue(chain.accept(createRead("A", null)));
+    assertTrue(chain.accept(createRead("A", 20).setDuplicateFragment(false)));
+    assertFalse(chain.accept(createRead("A", 19)));
+    assertFalse(chain.accept(createRead("A", 60).setDuplicateFragment(true)));
+    assertFalse(chain.accept(createRead("A", 60).setSecondaryAlignment(true)));
+    assertFalse(chain.accept(createRead("A", 60).setSupplementaryAlignment(true)));
+    assertFalse(chain.accept(createRead("A", 60).setFailedVendorQualityChecks(true)));
+
+    assertEquals(3, chain.getAcceptedCount());
+    for (ReadFilter filter : ReadFilter.values()) {
+      assertEquals(1, chain.getRejectedCount(filter));
+    }
+  }
+
+  @Test
+  public void testFirstRejectingFilterIsCharged() {
+    assertFalse(chain.accept(createRead("A", 0).setDuplicateFragment(true)));
+    assertEquals(1, chain.getRejectedCount(ReadFilter.MAPPING_QUALITY));
+    assertEquals(0, chain.getRejectedCount(ReadFilter.DUPLICATE));
+    assertEquals("accepted=0,mapping_quality=1,duplicate=0,secondary=0,supplementary=0,"
+        + "failed_qc=0", chain.toString());
+  }
+
+  @Test
+  public void testDisabledFilters() {
+    ReadFilterChain duplicatesOnly = new ReadFilterChain(
+        Arrays.asList(ReadFilter.DUPLICATE, ReadFilter.DUPLICATE), 20);
+    assertEquals(Collections.singletonList(ReadFilter.DUPLICATE), duplicatesOnly.getFilters());
+    assertTrue(duplicatesOnly.accept(createRead("A", 0).setSecondaryAlignment(true)));
+    assertFalse(duplicatesOnly.accept(createRead("A", 60).setDuplicateFragment(true)));
+  }
+
+  @Test
+  public void testCreateReadFilterChain() {
+    // reads are only filtered on request
+    CommandLine cmdLine = new CommandLine();
+    assertNull(DenovoRunner.createReadFilterChain(cmdLine));
+
+    cmdLine.minMappingQuality = 20;
+    cmdLine.readFilters = Arrays.asList(ReadFilter.DUPLICATE);
+    assertEquals(Arrays.asList(ReadFilter.MAPPING_QUALITY, ReadFilter.DUPLICATE),
+        DenovoRunner.createReadFilterChain(cmdLine).getFilters());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testNegativeMappingQuality() {
+    new ReadFilterChain(Collections.<ReadFilter>emptyList(), -1);
+  }
+
+  @Test
+  public void testReadFields() {
+    assertEquals("alignments(alignedSequence,alignment(position,mappingQuality),"
+        + "duplicateFragment,secondaryAlignment,supplementaryAlignment,"
+        + "failedVendorQualityChecks)", chain.getReadFields(false));
+    assertEquals("alignments(alignedSequence,alignedQuality,alignment/position)",
+        new ReadFilterChain(Collections.<ReadFilter>emptyList(), 0).getReadFields(true));
+  }
+
+  @Test
+  public void testReadSummary() {
+    // rejected reads are dropped before their bases are looked at
+    List<Read> reads = Arrays.asList(
+        createRead("A", 60),
+        createRead("C", 60).setDuplicateFragment(true),
+        createRead(null, 3),
+        createRead("A", 40));
+    ReadSummary summary = new ReadSummary(reads, 100L, null, chain);
+    assertEquals("{A=2}", summary.toString());
+    assertEquals(2, chain.getAcceptedCount());
+    assertEquals(1, chain.getRejectedCount(ReadFilter.DUPLICATE));
+    assertEquals(1, chain.getRejectedCount(ReadFilter.MAPPING_QUALITY));
+  }
+}
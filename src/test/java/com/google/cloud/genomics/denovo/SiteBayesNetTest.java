@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Tests SiteGenotypes and SiteBayesNet classes
+ */
+public class SiteBayesNetTest extends DenovoTest {
+
+  private static final double SEQ_ERR_RATE = 1e-2;
+  private static final double DENOVO_MUT_RATE = 1e-8;
+
+  @Test
+  public void testSiteGenotypes() {
+    SiteGenotypes genotypes = new SiteGenotypes(Arrays.asList("A", "AT", "G"));
+    assertEquals(6, genotypes.getNumGenotypes());
+    assertEquals(3, SiteGenotypes.getNumGenotypes(2));
+    assertEquals("A/A", genotypes.getGenotypeName(0));
+    assertEquals("A/AT", genotypes.getGenotypeName(1));
+    assertEquals("AT/AT", genotypes.getGenotypeName(2));
+    assertEquals("AT/G", genotypes.getGenotypeName(SiteGenotypes.getGenotypeIndex(2, 1)));
+    assertTrue(genotypes.isHomozygous(5));
+    assertFalse(genotypes.isHomozygous(4));
+
+    // A/A x A/AT can't give AT/AT, can give A/AT from half of the transmissions
+    assertTrue(genotypes.isDenovo(0, 1, 2));
+    assertFalse(genotypes.isDenovo(0, 1, 1));
+    assertEquals(2, genotypes.getTransmissionCount(0, 1, 1));
+    assertEquals(4, genotypes.getTransmissionCount(0, 0, 0));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSiteBayesNet_TooFewAlleles() {
+    new SiteBayesNet(1, SEQ_ERR_RATE, DENOVO_MUT_RATE);
+  }
+
+  /**
+   * With the 4 bases as alleles the site net is the SNV net
+   */
+  @Test
+  public void testPerformInference_MatchesDenovoBayesNet() {
+    DenovoShared snvShared = new DenovoShared.Builder()
+        .sequenceErrorRate(SEQ_ERR_RATE)
+        .denovoMutationRate(DENOVO_MUT_RATE)
+        .build();
+    DenovoBayesNet dbn = new DenovoBayesNet(snvShared);
+    SiteBayesNet sbn = new SiteBayesNet(4, SEQ_ERR_RATE, DENOVO_MUT_RATE);
+    SiteGenotypes bases = new SiteGenotypes(Arrays.asList("A", "C", "G", "T"));
+    MutableBayesInferenceResult expected = new MutableBayesInferenceResult();
+
+    Random random = new Random(42);
+    for (int site = 0; site < 200; site++) {
+      int[] alleleCounts = new int[12];
+      for (int member = 0; member < 3; member++) {
+        int first = random.nextInt(4);
+        int second = random.nextInt(4);
+        for (int read = 0; read < 1 + random.nextInt(20); read++) {
+          alleleCounts[member * 4 + (random.nextBoolean() ? first : second)]++;
+        }
+        alleleCounts[member * 4 + random.nextInt(4)] += random.nextInt(2);
+      }
+      dbn.performInference(alleleCounts, expected);
+      SiteInferenceResult result = sbn.performInference(bases, alleleCounts);
+
+      String message = Arrays.toString(alleleCounts);
+      assertEquals(message, expected.getBayesDenovoProb(), result.getBayesDenovoProb(),
+          1e-9 * Math.max(1e-300, expected.getBayesDenovoProb()) + 1e-12);
+      assertEquals(message, 1.0, result.getLikelihoodRatio() / expected.getLikelihoodRatio(),
+          1e-9);
+      // the genotypes may differ among trio genotypes tied for the max, so score them in the SNV
+      // net instead
+      assertEquals(message, expected.getMaxLikelihood(), result.getMaxLogLikelihood(), 1e-9);
+      assertEquals(message, expected.getMaxLikelihood(),
+          getTrioLogLikelihood(dbn, alleleCounts, toGenotype(bases, result.getMaxGenotype(DAD)),
+              toGenotype(bases, result.getMaxGenotype(MOM)),
+              toGenotype(bases, result.getMaxGenotype(CHILD))), 1e-9);
+    }
+
+    // a clear denovo SNV has a single max trio genotype
+    int[] alleleCounts = {20, 0, 0, 18, 40, 0, 0, 0, 35, 0, 0, 1};
+    dbn.performInference(alleleCounts, expected);
+    SiteInferenceResult result = sbn.performInference(bases, alleleCounts);
+    assertEquals(expected.getMaxTrioGenotype(), Arrays.asList(
+        toGenotype(bases, result.getMaxGenotype(DAD)),
+        toGenotype(bases, result.getMaxGenotype(MOM)),
+        toGenotype(bases, result.getMaxGenotype(CHILD))));
+    assertEquals(expected.getBayesDenovoProb(), result.getBayesDenovoProb(),
+        1e-9 * expected.getBayesDenovoProb());
+  }
+
+  private static Genotype toGenotype(SiteGenotypes bases, int genotype) {
+    return Genotype.valueOf(bases.getGenotypeName(genotype).replace("/", ""));
+  }
+
+  private static double getTrioLogLikelihood(DenovoBayesNet dbn, int[] alleleCounts,
+      Genotype dad, Genotype mom, Genotype child) {
+    double logLikelihood = dbn.getRelationshipLogLikelihood(dad, mom, child);
+    double[] genotypeLogLikelihood = new double[Genotype.values().length];
+    for (TrioMember person : TrioMember.values()) {
+      dbn.computeGenotypeLogLikelihood(alleleCounts, person, genotypeLogLikelihood);
+      Genotype genotype = person == DAD ? dad : person == MOM ? mom : child;
+      logLikelihood += genotypeLogLikelihood[genotype.ordinal()];
+    }
+    return logLikelihood;
+  }
+
+  @Test
+  public void testPerformInference_DenovoInsertion() {
+    SiteGenotypes genotypes = new SiteGenotypes(Arrays.asList("A", "AT"));
+    SiteBayesNet sbn = new SiteBayesNet(2, SEQ_ERR_RATE, DENOVO_MUT_RATE);
+    assertEquals(2, sbn.getNumAlleles());
+
+    // child, mom, dad depths of the reference and the insertion
+    SiteInferenceResult denovo = sbn.performInference(genotypes,
+        new int[] {20, 18, 40, 0, 35, 1});
+    assertEquals(1, denovo.getMaxGenotype(CHILD));
+    assertEquals(0, denovo.getMaxGenotype(MOM));
+    assertEquals(0, denovo.getMaxGenotype(DAD));
+    assertTrue(denovo.getBayesDenovoProb() > 0.5);
+    assertTrue(denovo.getLikelihoodRatio() > 1.0);
+
+    SiteInferenceResult inherited = sbn.performInference(genotypes,
+        new int[] {20, 18, 20, 20, 35, 1});
+    assertEquals(1, inherited.getMaxGenotype(MOM));
+    assertTrue(inherited.getBayesDenovoProb() < 1e-6);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testPerformInference_WrongAlleleCount() {
+    new SiteBayesNet(2, SEQ_ERR_RATE, DENOVO_MUT_RATE).performInference(
+        new SiteGenotypes(Arrays.asList("A", "AT", "G")), new int[9]);
+  }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.cloud.genomics.denovo.DenovoUtil.InferenceMethod;
+import com.google.cloud.genomics.denovo.SweepCaller.GridPoint;
+import com.google.cloud.genomics.denovo.SweepCaller.SiteCounts;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Logger;
+
+/**
+ * Tests SweepCaller class
+ */
+public class SweepCallerTest extends DenovoTest {
+
+  private List<SiteCounts> sites;
+
+  @Before
+  public void setUp() {
+    Random random = new Random(13);
+    sites = new ArrayList<>();
+    for (int site = 0; site < 50; site++) {
+      sites.add(new SiteCounts("chr1", 1000L + site, DenovoBayesNet.getAlleleCounts(
+          createMapReadSummary(createRandomReadSummary(random), createRandomReadSummary(random),
+              createRandomReadSummary(random)))));
+    }
+  }
+
+  /**
+   * @return a calls file at the positions of the sites, with a counts file saved for it
+   */
+  private File createCallsFile(File countsFile) throws IOException {
+    File callsFile = File.createTempFile("sweep", ".calls");
+    callsFile.deleteOnExit();
+    try (PrintWriter writer = new PrintWriter(callsFile)) {
+      for (SiteCounts site : sites) {
+        writer.printf("%s,%d%n", site.chromosome, site.position);
+      }
+    }
+    SweepCaller.writeSiteCounts(countsFile, SweepCaller.getCountsHeader(callsFile), sites);
+    return callsFile;
+  }
+
+  private DenovoShared createShared(String inputFileName, String outputFileName,
+      String countsFileName) {
+    return new DenovoShared.Builder()
+        .sequenceErrorRate(1e-2)
+        .denovoMutationRate(1e-8)
+        .sweepSequenceErrorRates(Arrays.asList(1e-2, 1e-3))
+        .sweepDenovoMutationRates(Arrays.asList(1e-8, 1e-4, 1e-2))
+        .lrtThreshold(1.0)
+        .inferMethod(InferenceMethod.BAYES)
+        .numThreads(2)
+        .inputFileName(inputFileName)
+        .outputFileName(outputFileName)
+        .countsFileName(countsFileName)
+        .logger(Logger.getLogger(SweepCallerTest.class.getName()))
+        .build();
+  }
+
+  @Test
+  public void testWriteAndReadSiteCounts() throws Exception {
+    File file = File.createTempFile("sweep", ".counts");
+    file.deleteOnExit();
+    SweepCaller.writeSiteCounts(file, "#calls=calls.txt", sites);
+
+    assertEquals("#calls=calls.txt", SweepCaller.readCountsHeader(file));
+    List<SiteCounts> copy = SweepCaller.readSiteCounts(file);
+    assertEquals(sites.size(), copy.size());
+    for (int site = 0; site < sites.size(); site++) {
+      assertEquals(sites.get(site).chromosome, copy.get(site).chromosome);
+      assertEquals(sites.get(site).position, copy.get(site).position);
+      assertArrayEquals(sites.get(site).alleleCounts, copy.get(site).alleleCounts);
+    }
+  }
+
+  @Test
+  public void testCountsHeader_ChangesWithCallsFile() throws Exception {
+    File countsFile = File.createTempFile("sweep", ".counts");
+    countsFile.deleteOnExit();
+    File callsFile = createCallsFile(countsFile);
+    assertEquals(SweepCaller.getCountsHeader(callsFile), SweepCaller.readCountsHeader(countsFile));
+
+    try (PrintWriter writer = new PrintWriter(new FileWriter(callsFile, true))) {
+      writer.println("chr2,1000");
+    }
+    assertFalse(SweepCaller.getCountsHeader(callsFile).equals(
+        SweepCaller.readCountsHeader(countsFile)));
+  }
+
+  @Test
+  public void testSweepMatchesBayesNet() throws Exception {
+    DenovoShared sweepShared = createShared(null, null, null);
+    List<GridPoint> gridPoints = new SweepCaller(sweepShared).sweep(sites);
+    assertEquals(6, gridPoints.size());
+
+    int index = 0;
+    for (double sequenceErrorRate : sweepShared.getSweepSequenceErrorRates()) {
+      for (double denovoMutationRate : sweepShared.getSweepDenovoMutationRates()) {
+        GridPoint gridPoint = gridPoints.get(index++);
+        assertEquals(sequenceErrorRate, gridPoint.sequenceErrorRate, 0.0);
+        assertEquals(denovoMutationRate, gridPoint.denovoMutationRate, 0.0);
+
+        DenovoBayesNet dbn = new DenovoBayesNet(new DenovoShared.Builder()
+            .sequenceErrorRate(sequenceErrorRate)
+            .denovoMutationRate(denovoMutationRate)
+            .build());
+        int numCalls = 0;
+        for (int site = 0; site < sites.size(); site++) {
+          MutableBayesInferenceResult expected = dbn.performInference(
+              sites.get(site).alleleCounts, new MutableBayesInferenceResult());
+          assertEquals(expected.getBayesDenovoProb(), gridPoint.bayesDenovoProb[site], 0.0);
+          assertEquals(expected.getLikelihoodRatio(), gridPoint.likelihoodRatio[site], 0.0);
+          assertEquals(expected.getBayesDenovoProb() > 0.5, gridPoint.isDenovo[site]);
+          numCalls += gridPoint.isDenovo[site] ? 1 : 0;
+        }
+        assertEquals(numCalls, gridPoint.numCalls);
+      }
+    }
+  }
+
+  @Test
+  public void testExecuteFromCountsFile() throws Exception {
+    File countsFile = File.createTempFile("sweep", ".counts");
+    countsFile.deleteOnExit();
+    File callsFile = createCallsFile(countsFile);
+    File outputFile = File.createTempFile("sweep", ".out");
+    outputFile.deleteOnExit();
+    File summaryFile = new File(outputFile.getAbsolutePath() + ".summary");
+    summaryFile.deleteOnExit();
+
+    new SweepCaller(createShared(callsFile.getAbsolutePath(), outputFile.getAbsolutePath(),
+        countsFile.getAbsolutePath())).execute();
+
+    List<String> output = Files.readAllLines(outputFile.toPath(), StandardCharsets.UTF_8);
+    assertEquals(6 * sites.size(), output.size());
+    assertEquals("chr1,1000,0.01,1.0E-8,", output.get(0).substring(0, 22));
+    List<String> summary = Files.readAllLines(summaryFile.toPath(), StandardCharsets.UTF_8);
+    assertEquals(6, summary.size());
+    assertEquals("seq_err_rate=0.01,denovo_mut_rate=1.0E-8,sites=50,calls=",
+        summary.get(0).substring(0, summary.get(0).lastIndexOf('=') + 1));
+  }
+
+  @Test
+  public void testExecuteWithEstimatedErrorRate() throws Exception {
+    File countsFile = File.createTempFile("sweep", ".counts");
+    countsFile.deleteOnExit();
+    File callsFile = createCallsFile(countsFile);
+    File outputFile = File.createTempFile("sweep", ".out");
+    outputFile.deleteOnExit();
+    File summaryFile = new File(outputFile.getAbsolutePath() + ".summary");
+    summaryFile.deleteOnExit();
+
+    new SweepCaller(new DenovoShared.Builder()
+        .sequenceErrorRate(1e-2)
+        .estimateSequenceErrorRate(true)
+        .sweepSequenceErrorRates(Arrays.asList(1e-2, 1e-3))
+        .sweepDenovoMutationRates(Arrays.asList(1e-8, 1e-4, 1e-2))
+        .inferMethod(InferenceMethod.BAYES)
+        .numThreads(2)
+        .inputFileName(callsFile.getAbsolutePath())
+        .outputFileName(outputFile.getAbsolutePath())
+        .countsFileName(countsFile.getAbsolutePath())
+        .logger(Logger.getLogger(SweepCallerTest.class.getName()))
+        .build()).execute();
+
+    // the fitted rate replaces the swept sequence error rates
+    ErrorRateEstimator estimator = new ErrorRateEstimator();
+    for (SiteCounts site : sites) {
+      estimator.add(site.alleleCounts);
+    }
+    double sequenceErrorRate = estimator.estimate(1e-2);
+    List<String> summary = Files.readAllLines(summaryFile.toPath(), StandardCharsets.UTF_8);
+    assertEquals(3, summary.size());
+    assertEquals("seq_err_rate=" + sequenceErrorRate + ",denovo_mut_rate=1.0E-8,sites=50,calls=",
+        summary.get(0).substring(0, summary.get(0).lastIndexOf('=') + 1));
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2014 Google Inc. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except
+ * in compliance with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License
+ * is distributed on an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express
+ * or implied. See the License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package com.google.cloud.genomics.denovo;
+
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
+
+import com.google.api.services.genomics.model.Variant;
+import com.google.api.services.genomics.model.VariantCall;
+import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH benchmark of the parent lookups of the variants buffer over gVCF like parent queues : runs
+ * of short reference blocks with a SNV now and then. The mom queue starts after a gap in her
+ * calls, and the child SNVs in the gap miss ; a linear lookup searches the whole queue for each of
+ * them. Such queues build up when a parent stream runs ahead of the child's. Scores are per child
+ * SNV and should not grow with the queue size. Run with
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=org.openjdk.jmh.Main -Dexec.args=VariantsBufferBenchmark
+ * </pre>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VariantsBufferBenchmark {
+
+  static final long GAP_END = 100000L;
+  static final int NUM_QUERIES = 1024;
+
+  @Param({"1000", "100000"})
+  public int queueSize;
+
+  private VariantsBuffer buffer;
+  private Variant[] missSnvs;
+  private int query;
+
+  private static Variant variant(long start, long end, String alternate, int allele1,
+      int allele2) {
+    Map<String, List<Object>> info =
+        Collections.singletonMap("FILTER", Arrays.<Object>asList("PASS"));
+    return new Variant().setStart(start).setEnd(end).setReferenceBases("A")
+        .setAlternateBases(alternate == null
+            ? Collections.<String>emptyList() : Arrays.asList(alternate))
+        .setCalls(Arrays.asList(new VariantCall().setGenotype(Arrays.asList(allele1, allele2))
+            .setInfo(info)));
+  }
+
+  private static void add(VariantsBuffer buffer, TrioMember person, Variant v) {
+    buffer.checkAndAdd(person, v, v.getCalls().get(0));
+  }
+
+  @Setup
+  public void setUp() {
+    Random random = new Random(42);
+    buffer = new VariantsBuffer();
+    add(buffer, DAD, variant(0L, Long.MAX_VALUE, null, 0, 0));
+    long start = GAP_END;
+    for (int call = 0; call < queueSize; call++) {
+      if (random.nextInt(20) == 0) {
+        add(buffer, MOM, variant(start, start + 1, "G", 0, 1));
+        start++;
+      } else {
+        long length = 1 + random.nextInt(50);
+        add(buffer, MOM, variant(start, start + length, null, 0, 0));
+        start += length;
+      }
+    }
+
+    missSnvs = new Variant[NUM_QUERIES];
+    for (int idx = 0; idx < NUM_QUERIES; idx++) {
+      long position = random.nextInt((int) GAP_END);
+      missSnvs[idx] = variant(position, position + 1, "C", 0, 1);
+    }
+  }
+
+  /**
+   * Looks up the parent calls of one child SNV in the gap ; the buffer is left as it was
+   */
+  @Benchmark
+  public VariantsBuffer.PositionCall miss() {
+    query = (query + 1) & (NUM_QUERIES - 1);
+    Variant snv = missSnvs[query];
+    buffer.push(CHILD, snv, snv.getCalls().get(0));
+    VariantsBuffer.PositionCall call = buffer.retrieveNextCall();
+    buffer.pop(CHILD);
+    return call;
+  }
+}
@@ -13,10 +13,14 @@
  */
 package com.google.cloud.genomics.denovo;
 
+import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.CHILD;
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.DAD;
 import static com.google.cloud.genomics.denovo.DenovoUtil.TrioMember.MOM;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import com.google.api.services.genomics.model.Variant;
@@ -24,11 +28,13 @@ import com.google.api.services.genomics.model.VariantCall;
 import com.google.cloud.genomics.denovo.DenovoUtil.Genotype;
 import com.google.cloud.genomics.denovo.DenovoUtil.TrioMember;
 
-import org.javatuples.Pair;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -37,67 +43,205 @@ import java.util.Map;
 public class VariantsBufferTest extends DenovoTest {
 
   VariantsBuffer vbuf;
-  VariantCall dummyCall;
-  Variant variant;
 
   @Before
   public void setUp() throws Exception {
     vbuf = new VariantsBuffer();
-    dummyCall = new VariantCall();
+  }
+
+  /**
+   * @return a variant holding a single PASS call of the alleles, with allele depths if any
+   */
+  private static Variant record(long start, String reference, List<String> alternates,
+      int allele1, int allele2, Integer... depths) {
+    Map<String, List<Object>> info = new HashMap<>();
+    info.put("FILTER", Arrays.<Object>asList("PASS"));
+    if (depths.length > 0) {
+      info.put("AD", Arrays.<Object>asList((Object[]) depths));
+    }
+    return new Variant().setStart(start).setEnd(start + reference.length())
+        .setReferenceBases(reference).setAlternateBases(alternates)
+        .setCalls(Arrays.asList(new VariantCall().setGenotype(Arrays.asList(allele1, allele2))
+            .setInfo(info)));
+  }
+
+  /**
+   * @return a variant holding a homozygous reference block call over [start, end)
+   */
+  private static Variant refBlock(long start, long end) {
+    return record(start, "A", Collections.<String>emptyList(), 0, 0).setEnd(end);
+  }
+
+  /**
+   * @return a variant holding a homozygous reference block call over [start, end) with a minimum
+   *         read depth
+   */
+  private static Variant refBlock(long start, long end, int minDepth) {
+    Variant v = refBlock(start, end);
+    v.getCalls().get(0).getInfo().put("MIN_DP", Arrays.<Object>asList(minDepth));
+    return v;
+  }
+
+  private static boolean add(VariantsBuffer buffer, TrioMember person, Variant v) {
+    return buffer.checkAndAdd(person, v, v.getCalls().get(0));
+  }
+
+  private static void push(VariantsBuffer buffer, TrioMember person, Variant v) {
+    buffer.push(person, v, v.getCalls().get(0));
   }
 
   @Test
   public void testPush() {
-    Variant v = new Variant().setStart(1L).setEnd(100001L);
-    Pair<Variant, VariantCall> pair = Pair.with(v,dummyCall);
+    push(vbuf, DAD, refBlock(1L, 100001L));
 
-    vbuf.push(DAD, pair);
-
-    assertEquals(1, vbuf.getBufferMap().get(DAD).size());
-    assertEquals(pair, vbuf.getBufferMap().get(DAD).getFirst());
+    assertEquals(1, vbuf.size(DAD));
+    assertEquals(1L, vbuf.getStartPosition(DAD));
+    assertEquals(100001L, vbuf.getEndPosition(DAD));
   }
 
   @Test
   public void testPop() {
-    Variant v = new Variant().setStart(1L).setEnd(100001L);
-    Pair<Variant, VariantCall> pair = Pair.with(v,dummyCall);
-    vbuf.push(DAD, pair);
-    Pair<Variant,VariantCall> popv = vbuf.pop(DAD);
+    push(vbuf, DAD, refBlock(1L, 100001L));
+    vbuf.pop(DAD);
+
+    assertEquals(0, vbuf.size(DAD));
+    assertTrue(vbuf.isEmpty(DAD));
+  }
 
-    assertEquals(0, vbuf.getBufferMap().get(DAD).size());
-    assertEquals(pair, popv);
+  @Test(expected = IllegalStateException.class)
+  public void testPop_Empty() {
+    vbuf.pop(MOM);
   }
 
   @Test
   public void testGetStartPosition() {
-    vbuf.push(DAD, Pair.with(new Variant().setStart(1L).setEnd(10001L), dummyCall));
-    vbuf.push(DAD, Pair.with(new Variant().setStart(10002L).setEnd(10003L), dummyCall));
+    push(vbuf, DAD, refBlock(1L, 10001L));
+    push(vbuf, DAD, refBlock(10002L, 10003L));
 
-    assertEquals(Long.valueOf(0L), vbuf.getStartPosition(MOM));
-    assertEquals(Long.valueOf(1L), vbuf.getStartPosition(DAD));
+    assertEquals(0L, vbuf.getStartPosition(MOM));
+    assertEquals(1L, vbuf.getStartPosition(DAD));
   }
 
   @Test
   public void testGetEndPosition() {
-    vbuf.push(DAD, Pair.with(new Variant().setStart(1L).setEnd(10001L), dummyCall));
-    vbuf.push(DAD, Pair.with(new Variant().setStart(10002L).setEnd(10003L), dummyCall));
+    push(vbuf, DAD, refBlock(1L, 10001L));
+    push(vbuf, DAD, refBlock(10002L, 10003L));
 
-    assertEquals(Long.valueOf(0L), vbuf.getEndPosition(MOM));
-    assertEquals(Long.valueOf(10003L), vbuf.getEndPosition(DAD));
+    assertEquals(0L, vbuf.getEndPosition(MOM));
+    assertEquals(10003L, vbuf.getEndPosition(DAD));
   }
 
   @Test
   public void testToString() {
-    Variant v = new Variant().setStart(1L).setEnd(1000L);
-    Pair<Variant, VariantCall> pair = Pair.with(v, dummyCall);
-    vbuf.push(DAD, pair);
-    vbuf.push(DAD, pair);
-    vbuf.push(DAD, pair);
-    vbuf.push(MOM, pair);
-    vbuf.push(MOM, Pair.with(new Variant().setStart(3L).setEnd(5000L), dummyCall));
+    push(vbuf, DAD, refBlock(1L, 1000L));
+    push(vbuf, DAD, refBlock(1L, 1000L));
+    push(vbuf, DAD, refBlock(1L, 1000L));
+    push(vbuf, MOM, refBlock(1L, 1000L));
+    push(vbuf, MOM, refBlock(3L, 5000L));
     assertEquals("CHILD:[], MOM:[1-1000,3-5000], DAD:[1-1000,1-1000,1-1000]", vbuf.toString());
   }
 
+  @Test
+  public void testRingGrowsAcrossWrap() {
+    // interleave pushes and pops so that the ring wraps before it grows
+    long next = 0;
+    for (int round = 0; round < 10; round++) {
+      push(vbuf, DAD, refBlock(next, next + 1));
+      next++;
+    }
+    for (int round = 0; round < 8; round++) {
+      vbuf.pop(DAD);
+    }
+    for (int round = 0; round < 40; round++) {
+      push(vbuf, DAD, refBlock(next, next + 1));
+      next++;
+    }
+    assertEquals(42, vbuf.size(DAD));
+    assertEquals(8L, vbuf.getStartPosition(DAD));
+    assertEquals(next, vbuf.getEndPosition(DAD));
+    for (long start = 8; start < next; start++) {
+      assertEquals(start, vbuf.getStartPosition(DAD));
+      vbuf.pop(DAD);
+    }
+  }
+
+  @Test
+  public void testRetrieveNextCall_Snv() {
+    add(vbuf, CHILD, record(100L, "A", Arrays.asList("C"), 0, 1));
+    add(vbuf, MOM, refBlock(10L, 200L));
+    add(vbuf, DAD, record(100L, "A", Arrays.asList("G"), 0, 1));
+    assertFalse(add(vbuf, DAD, record(150L, "A", Arrays.asList("AT"), 0, 1)));
+    assertFalse(vbuf.canProcess());
+    add(vbuf, MOM, refBlock(200L, 300L));
+    assertTrue(vbuf.canProcess());
+
+    VariantsBuffer.PositionCall pc = vbuf.retrieveNextCall();
+    assertEquals(Genotype.AC, pc.getGenotypeMap().get(CHILD));
+    assertEquals(Genotype.AA, pc.getGenotypeMap().get(MOM));
+    assertEquals(Genotype.AG, pc.getGenotypeMap().get(DAD));
+    assertTrue(pc.isDenovo());
+  }
+
+  @Test
+  public void testRetrieveNextCall_UnknownReferenceBase() {
+    add(vbuf, CHILD, record(100L, "N", Arrays.asList("C", "T"), 1, 2));
+    add(vbuf, CHILD, record(110L, "N", Arrays.asList("C"), 1, 1));
+    add(vbuf, MOM, record(100L, "N", Arrays.asList("C"), 1, 1));
+    add(vbuf, MOM, refBlock(101L, 200L));
+    add(vbuf, DAD, record(100L, "N", Arrays.asList("T"), 1, 1));
+    add(vbuf, DAD, refBlock(101L, 200L));
+
+    // parents with SNV calls need no reference base
+    VariantsBuffer.PositionCall pc = vbuf.retrieveNextCall();
+    assertEquals(Genotype.CT, pc.getGenotypeMap().get(CHILD));
+    assertEquals(Genotype.CC, pc.getGenotypeMap().get(MOM));
+    assertEquals(Genotype.TT, pc.getGenotypeMap().get(DAD));
+    vbuf.pop(CHILD);
+
+    // a reference block of an unknown base has no genotype
+    assertNull(vbuf.retrieveNextCall());
+  }
+
+  @Test
+  public void testRetrieveNextCall_EvictsParents() {
+    add(vbuf, MOM, refBlock(10L, 50L));
+    add(vbuf, MOM, refBlock(50L, 200L));
+    add(vbuf, DAD, refBlock(10L, 99L));
+    add(vbuf, CHILD, record(100L, "A", Arrays.asList("C"), 0, 1));
+    // no dad call covers the child SNV
+    assertNull(vbuf.retrieveNextCall());
+    assertEquals("CHILD:[100-101], MOM:[50-200], DAD:[]", vbuf.toString());
+  }
+
+  @Test
+  public void testRetrieveNextCall_Siblings() {
+    vbuf = new VariantsBuffer(2, false);
+    add(vbuf, MOM, refBlock(10L, 50L));
+    add(vbuf, MOM, record(100L, "A", Arrays.asList("G"), 0, 1));
+    add(vbuf, MOM, refBlock(101L, 300L));
+    add(vbuf, DAD, refBlock(10L, 300L));
+    add(vbuf, DAD, refBlock(300L, 400L));
+    Variant sibling = record(40L, "A", Arrays.asList("T"), 0, 1);
+    assertTrue(vbuf.checkAndAddChild(1, sibling, sibling.getCalls().get(0)));
+    add(vbuf, CHILD, record(100L, "A", Arrays.asList("C"), 0, 1));
+    assertEquals("CHILD:[100-101], MOM:[10-50,100-101,101-300], DAD:[10-300,300-400],"
+        + " CHILD1:[40-41]", vbuf.toString());
+
+    // the first child keeps the parent calls the sibling still needs
+    VariantsBuffer.PositionCall pc = vbuf.retrieveNextCall(0);
+    assertEquals(Genotype.AG, pc.getGenotypeMap().get(MOM));
+    assertTrue(pc.isDenovo());
+    vbuf.popChild(0);
+    assertFalse(vbuf.canProcess(0));
+
+    assertTrue(vbuf.canProcess(1));
+    pc = vbuf.retrieveNextCall(1);
+    assertEquals(Genotype.AT, pc.getGenotypeMap().get(CHILD));
+    assertEquals(Genotype.AA, pc.getGenotypeMap().get(MOM));
+    vbuf.popChild(1);
+    assertTrue(vbuf.isChildEmpty(1));
+  }
+
   // Position VariantCall tests
   @Test
   public void testPositionCall_1() {
@@ -109,4 +253,146 @@ public class VariantsBufferTest extends DenovoTest {
     assertTrue(pc.isDenovo());
     assertEquals(map, pc.getGenotypeMap());
   }
+
+  /**
+   * Mom genotype at the child SNV at the position, null when no mom call covers it
+   */
+  private Genotype getMomGenotype(long position) {
+    add(vbuf, CHILD, record(position, "A", Arrays.asList("C"), 0, 1));
+    VariantsBuffer.PositionCall pc = vbuf.retrieveNextCall();
+    vbuf.pop(CHILD);
+    return pc == null ? null : pc.getGenotypeMap().get(MOM);
+  }
+
+  @Test
+  public void testRetrieveNextCall_ParentLookup() {
+    add(vbuf, DAD, refBlock(0L, 100000L));
+    // a block overlapping later calls, a gap, then a run of short blocks and SNVs
+    add(vbuf, MOM, refBlock(10L, 500L));
+    add(vbuf, MOM, record(200L, "A", Arrays.asList("T"), 1, 1));
+    add(vbuf, MOM, record(300L, "A", Arrays.asList("G"), 0, 1));
+    for (long start = 1000L; start < 2000L; start += 10) {
+      add(vbuf, MOM, refBlock(start, start + 10));
+    }
+    add(vbuf, MOM, record(2000L, "A", Arrays.asList("G"), 1, 1));
+    add(vbuf, MOM, refBlock(2001L, 3000L));
+
+    // the oldest covering call wins
+    assertEquals(Genotype.AA, getMomGenotype(300L));
+    assertNull(getMomGenotype(700L));
+    assertEquals(Genotype.AA, getMomGenotype(1555L));
+    assertEquals(Genotype.GG, getMomGenotype(2000L));
+    assertNull(getMomGenotype(3000L));
+  }
+
+  @Test
+  public void testRetrieveNextCall_UnsortedParentCalls() {
+    add(vbuf, DAD, refBlock(0L, 100000L));
+    add(vbuf, MOM, refBlock(100L, 200L));
+    add(vbuf, MOM, record(50L, "A", Arrays.asList("G"), 1, 1));
+
+    assertEquals(Genotype.GG, getMomGenotype(50L));
+    assertEquals(Genotype.AA, getMomGenotype(150L));
+  }
+
+  @Test
+  public void testCheckAndAdd_IndelsDiscardedByDefault() {
+    assertFalse(add(vbuf, CHILD, record(100L, "A", Arrays.asList("AT"), 0, 1, 10, 12)));
+    assertTrue(add(new VariantsBuffer(true), CHILD,
+        record(100L, "A", Arrays.asList("AT"), 0, 1, 10, 12)));
+  }
+
+  @Test
+  public void testCheckAndAdd_RejectedCalls() {
+    Variant noCall = record(100L, "A", Arrays.asList("C"), 0, 1);
+    noCall.getCalls().get(0).setGenotype(Arrays.asList(0, -1));
+    Variant failed = record(100L, "A", Arrays.asList("C"), 0, 1);
+    failed.getCalls().get(0).getInfo().put("FILTER", Arrays.<Object>asList("LowQual"));
+
+    assertFalse(add(vbuf, CHILD, record(100L, "A", Arrays.asList("N"), 0, 1)));
+    assertFalse(add(vbuf, CHILD, noCall));
+    assertFalse(add(vbuf, CHILD, failed));
+    assertFalse(add(vbuf, null, record(100L, "A", Arrays.asList("C"), 0, 1)));
+    assertTrue(vbuf.isEmpty(CHILD));
+  }
+
+  @Test
+  public void testRetrieveNextCall_DenovoInsertion() {
+    vbuf = new VariantsBuffer(true);
+    add(vbuf, CHILD, record(100L, "A", Arrays.asList("AT"), 0, 1, 10, 12));
+    // reference blocks covering the insertion
+    add(vbuf, MOM, refBlock(50L, 150L, 20));
+    add(vbuf, MOM, record(150L, "C", Arrays.asList("G"), 0, 1, 5, 5));
+    add(vbuf, DAD, refBlock(100L, 200L, 25));
+    assertTrue(vbuf.canProcess());
+
+    VariantsBuffer.PositionCall pc = vbuf.retrieveNextCall();
+    assertNull(pc.getGenotypeMap());
+    assertEquals(Arrays.asList("A", "AT"), pc.getSiteGenotypes().getAlleles());
+    assertTrue(pc.isDenovo());
+    assertEquals("[100,{CHILD=A/AT, MOM=A/A, DAD=A/A}]", pc.toString());
+    // the reference block depths of the parents support the reference allele
+    assertArrayEquals(new int[] {10, 12, 20, 0, 25, 0}, pc.getAlleleDepths());
+  }
+
+  /**
+   * Denovo posterior of a child insertion with 15 reads per allele against reference blocks of
+   * the parents with the given depth
+   */
+  private static double getInsertionDenovoProb(int parentDepth) {
+    VariantsBuffer buffer = new VariantsBuffer(true);
+    add(buffer, CHILD, record(100L, "A", Arrays.asList("AT"), 0, 1, 15, 15));
+    add(buffer, MOM, refBlock(50L, 200L, parentDepth));
+    add(buffer, DAD, refBlock(90L, 200L, parentDepth));
+    VariantsBuffer.PositionCall pc = buffer.retrieveNextCall();
+    return new SiteBayesNet(2, 1e-2, 1e-8)
+        .performInference(pc.getSiteGenotypes(), pc.getAlleleDepths()).getBayesDenovoProb();
+  }
+
+  @Test
+  public void testGetReferenceDepth() {
+    assertEquals(25, VariantsBuffer.getReferenceDepth(
+        refBlock(1L, 10L, 25).getCalls().get(0)));
+    // missing and malformed depths count as no depth
+    for (Object depth : Arrays.<Object>asList(".", "12.5", "")) {
+      VariantCall call = refBlock(1L, 10L).getCalls().get(0);
+      call.getInfo().put("DP", Arrays.asList(depth));
+      assertEquals(0, VariantsBuffer.getReferenceDepth(call));
+    }
+  }
+
+  @Test
+  public void testRetrieveNextCall_DenovoInsertionPosterior() {
+    assertTrue(getInsertionDenovoProb(40) > 0.99);
+    // without parent reads the posterior stays near the prior
+    assertTrue(getInsertionDenovoProb(0) < 1e-3);
+  }
+
+  @Test
+  public void testRetrieveNextCall_MultiAllelicDeletion() {
+    vbuf = new VariantsBuffer(true);
+    // child carries a deletion and an SNV, parents a longer deletion and the SNV
+    add(vbuf, CHILD, record(100L, "AC", Arrays.asList("A", "GC"), 1, 2, 0, 9, 11));
+    add(vbuf, MOM, record(100L, "ACT", Arrays.asList("AT", "A"), 0, 1, 8, 7, 0));
+    add(vbuf, DAD, record(100L, "A", Arrays.asList("G"), 1, 1, 0, 15));
+
+    VariantsBuffer.PositionCall pc = vbuf.retrieveNextCall();
+    assertEquals(Arrays.asList("ACT", "AT", "GCT"), pc.getSiteGenotypes().getAlleles());
+    assertEquals("[100,{CHILD=AT/GCT, MOM=ACT/AT, DAD=GCT/GCT}]", pc.toString());
+    assertFalse(pc.isDenovo());
+    assertArrayEquals(new int[] {0, 9, 11, 8, 7, 0, 0, 0, 15}, pc.getAlleleDepths());
+  }
+
+  @Test
+  public void testRetrieveNextCall_SnvOverSnvGenotypes() {
+    vbuf = new VariantsBuffer(true);
+    add(vbuf, CHILD, record(100L, "A", Arrays.asList("C"), 0, 1));
+    add(vbuf, MOM, record(100L, "A", Arrays.asList("C"), 0, 1));
+    add(vbuf, DAD, refBlock(100L, 101L));
+
+    VariantsBuffer.PositionCall pc = vbuf.retrieveNextCall();
+    assertNull(pc.getSiteGenotypes());
+    assertEquals(Genotype.AC, pc.getGenotypeMap().get(CHILD));
+    assertFalse(pc.isDenovo());
+  }
 }
\ No newline at end of file